@@ -215,14 +215,29 @@ db.counter.insertOne({
 });
 
 // Create indexes for better query performance
+// (the service also ensures these on startup, see BooksDbMongo.ensureIndexes)
+db.book.createIndex({ book_id: 1 }, { unique: true });
 db.book.createIndex({ isbn: 1 }, { unique: true });
 db.book.createIndex({ title: 'text' });
+db.book.createIndex({ title: 1 });
 db.book.createIndex({ 'authors.name': 1 });
 db.book.createIndex({ 'genres.name': 1 });
+db.book.createIndex({ average_rating: 1 });
+db.book.createIndex({ 'ratings.user_id': 1 });
 db.author.createIndex({ author_id: 1 }, { unique: true });
+db.author.createIndex({ name: 1 }, { name: 'name_ci', collation: { locale: 'en', strength: 2 } });
 db.genre.createIndex({ genre_id: 1 }, { unique: true });
+db.genre.createIndex({ name: 1 }, { name: 'name_ci', collation: { locale: 'en', strength: 2 } });
 db.app_user.createIndex({ user_id: 1 }, { unique: true });
 db.app_user.createIndex({ username: 1 }, { unique: true });
 
+// Pre-images let change stream delete events carry book_id (cross-node invalidation).
+// Only supported on replica sets; skipped on a standalone server.
+try {
+  db.runCommand({ collMod: 'book', changeStreamPreAndPostImages: { enabled: true } });
+} catch (e) {
+  print('Change stream pre-images not enabled: ' + e.message);
+}
+
 print('✅ MongoDB initialization complete! Inserted 6 books, 8 authors, 7 genres, 3 users.');
 
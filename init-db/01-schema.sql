@@ -19,10 +19,17 @@ CREATE TABLE IF NOT EXISTS genre (
 
 CREATE TABLE IF NOT EXISTS book (
     book_id INT AUTO_INCREMENT PRIMARY KEY,
-    isbn VARCHAR(20) NOT NULL UNIQUE,
+    isbn VARCHAR(20) NOT NULL,
     title VARCHAR(300) NOT NULL,
     published DATE,
     created_by_user_id INT,
+    -- Set by deleteBook; the book's rows are removed later by the purger (books.purge.*)
+    deleted_at TIMESTAMP NULL,
+    -- 1 for books that are not deleted, NULL otherwise; NULLs never collide in
+    -- uq_book_isbn, so a deleted book's ISBN can be added again before the purge
+    live TINYINT AS (IF(deleted_at IS NULL, 1, NULL)) STORED,
+    UNIQUE KEY uq_book_isbn (isbn, live),
+    INDEX idx_book_deleted (deleted_at),
     FOREIGN KEY (created_by_user_id) REFERENCES app_user(user_id)
 );
 
@@ -67,3 +74,38 @@ CREATE TABLE IF NOT EXISTS review (
     FOREIGN KEY (created_by_user_id) REFERENCES app_user(user_id)
 );
 
+-- Changed book ids for cross-node cache invalidation (books.invalidation.enabled).
+-- Written in the same transaction as the change, polled by every instance.
+CREATE TABLE IF NOT EXISTS book_outbox (
+    event_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    book_id INT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_outbox_created (created_at)
+);
+
+-- Denormalized search read model: one row per book, so searches read a single
+-- table. Maintained by BooksDbMySql in the same transaction as book changes and
+-- ratings; rebuilt on connect when it does not match book (books.mysql.book-card-rebuild).
+CREATE TABLE IF NOT EXISTS book_card (
+    book_id INT PRIMARY KEY,
+    isbn VARCHAR(20) NOT NULL,
+    title VARCHAR(300) NOT NULL,
+    published DATE,
+    authors JSON NOT NULL,
+    genres JSON NOT NULL,
+    rating_count INT NOT NULL DEFAULT 0,
+    rating_sum INT NOT NULL DEFAULT 0,
+    rating_1 INT NOT NULL DEFAULT 0,
+    rating_2 INT NOT NULL DEFAULT 0,
+    rating_3 INT NOT NULL DEFAULT 0,
+    rating_4 INT NOT NULL DEFAULT 0,
+    rating_5 INT NOT NULL DEFAULT 0,
+    rating_avg DOUBLE AS (IF(rating_count = 0, 0, rating_sum / rating_count)) STORED,
+    title_key VARCHAR(300) AS (LOWER(title)) STORED,
+    -- Lowercased names joined by newlines, written with the card; a search term
+    -- without a newline can only match inside one name
+    author_key TEXT NOT NULL,
+    genre_key TEXT NOT NULL,
+    INDEX idx_card_isbn (isbn),
+    INDEX idx_card_rating (rating_avg)
+);
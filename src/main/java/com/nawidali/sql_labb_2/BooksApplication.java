@@ -2,8 +2,10 @@ package com.nawidali.sql_labb_2;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
 
-@SpringBootApplication
+// BooksDbMongo creates its own MongoClient; Boot's would be an unused second connection pool
+@SpringBootApplication(exclude = MongoAutoConfiguration.class)
 public class BooksApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,39 @@
+package com.nawidali.sql_labb_2.config;
+
+import com.nawidali.sql_labb_2.model.SessionTokens;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Base64;
+
+/**
+ * Session tokens. All instances behind one load balancer need the same
+ * {@code books.auth.secret}; without one, each node signs with its own
+ * random key and tokens are lost on restart.
+ */
+@Configuration
+public class AuthConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthConfig.class);
+
+    @Value("${books.auth.secret:}")
+    private String secret;
+
+    @Value("${books.auth.token-ttl-minutes:60}")
+    private long tokenTtlMinutes;
+
+    @Bean
+    public SessionTokens sessionTokens() {
+        byte[] key;
+        if (secret.isBlank()) {
+            log.warn("books.auth.secret is not set; session tokens are only valid on this instance until restart");
+            key = SessionTokens.randomSecret();
+        } else {
+            key = Base64.getDecoder().decode(secret.trim());
+        }
+        return new SessionTokens(key, tokenTtlMinutes * 60_000);
+    }
+}
@@ -1,8 +1,24 @@
 package com.nawidali.sql_labb_2.config;
 
+import com.mongodb.ReadPreference;
+import com.nawidali.sql_labb_2.model.AdaptiveLimiter;
+import com.nawidali.sql_labb_2.model.BookChangePublisher;
+import com.nawidali.sql_labb_2.model.BookProjector;
+import com.nawidali.sql_labb_2.model.BookPurger;
 import com.nawidali.sql_labb_2.model.BooksDbMongo;
 import com.nawidali.sql_labb_2.model.BooksDbMySql;
+import com.nawidali.sql_labb_2.model.CachingBooksDb;
+import com.nawidali.sql_labb_2.model.CoalescingBooksDb;
+import com.nawidali.sql_labb_2.model.ConcurrencyLimitedBooksDb;
+import com.nawidali.sql_labb_2.model.CqrsBooksDb;
 import com.nawidali.sql_labb_2.model.IBooksDb;
+import com.nawidali.sql_labb_2.model.NotifyingBooksDb;
+import com.nawidali.sql_labb_2.model.OffHeapBookCache;
+import com.nawidali.sql_labb_2.model.ReadRoute;
+import com.nawidali.sql_labb_2.model.ReferenceData;
+import com.nawidali.sql_labb_2.model.ReplicaRoutingBooksDb;
+import com.nawidali.sql_labb_2.model.RequestCoalescer;
+import com.nawidali.sql_labb_2.model.ShardedBooksDb;
 import com.nawidali.sql_labb_2.model.exceptions.ConnectionException;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
@@ -13,29 +29,288 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
 /**
- * Selects database implementation based on books.db.type property.
+ * Selects database implementation based on books.db.type property:
+ * mysql, mongo, or cqrs (writes to MySQL, reads from MongoDB documents
+ * projected from MySQL).
  */
 @Configuration
 public class DatabaseConfig {
 
     private static final Logger log = LoggerFactory.getLogger(DatabaseConfig.class);
 
+    // Mongo rejects a maxStaleness below 90 seconds
+    private static final long MONGO_MIN_STALENESS_SECONDS = 90;
+
     @Value("${books.db.url}")
     private String databaseUrl;
 
+    @Value("${books.db.replica-urls:}")
+    private List<String> replicaUrls;
+
+    @Value("${books.db.shard-urls:}")
+    private List<String> shardUrls;
+
+    @Value("${books.db.shard-max-results:1000}")
+    private int shardMaxResults;
+
+    @Value("${books.db.replica-max-lag-ms:5000}")
+    private long replicaMaxLagMillis;
+
+    @Value("${books.db.read-your-writes-ms:5000}")
+    private long readYourWritesMillis;
+
+    @Value("${books.mongo.collscan-check:WARN}")
+    private BooksDbMongo.CollectionScanCheck collectionScanCheck;
+
+    @Value("${books.mysql.book-card-rebuild:IF_INCOMPLETE}")
+    private BooksDbMySql.BookCardRebuild bookCardRebuild;
+
+    @Value("${books.db.limiter.read-max:64}")
+    private int readMaxConcurrency;
+
+    @Value("${books.db.limiter.write-max:16}")
+    private int writeMaxConcurrency;
+
+    @Value("${books.db.limiter.target-latency-ms:250}")
+    private long targetLatencyMillis;
+
+    @Value("${books.db.limiter.queue-size:50}")
+    private int limiterQueueSize;
+
+    @Value("${books.db.limiter.max-wait-ms:500}")
+    private long limiterMaxWaitMillis;
+
+    @Value("${books.db.coalesce-reads:true}")
+    private boolean coalesceReads;
+
+    @Value("${books.cache.offheap-mb:64}")
+    private int cacheMegabytes;
+
+    @Value("${books.cache.max-entries:200000}")
+    private int cacheMaxEntries;
+
+    @Value("${books.refdata.refresh-ms:30000}")
+    private long referenceRefreshMillis;
+
+    @Value("${books.purge.batch-rows:500}")
+    private int purgeBatchRows;
+
+    @Value("${books.purge.interval-ms:1000}")
+    private long purgeIntervalMillis;
+
+    @Value("${books.invalidation.enabled:false}")
+    private boolean invalidationEnabled;
+
+    @Value("${books.invalidation.outbox-retention-minutes:60}")
+    private int outboxRetentionMinutes;
+
+    @Value("${books.cqrs.mongo-url:}")
+    private String cqrsMongoUrl;
+
+    @Value("${books.cqrs.max-lag-ms:2000}")
+    private long cqrsMaxLagMillis;
+
+    @Value("${books.cqrs.poll-ms:200}")
+    private long cqrsPollMillis;
+
     @Bean
     @ConditionalOnProperty(name = "books.db.type", havingValue = "mysql")
     public IBooksDb mysqlDatabase() {
         log.info("Using MySQL database");
-        return new BooksDbMySql();
+        List<String> shards = urls(shardUrls);
+        if (!shards.isEmpty()) {
+            int count = shards.size() + 1;
+            return decorate(sharded(mysqlPrimary(0, count), shards, i -> mysqlPrimary(i, count)));
+        }
+        return decorate(withReplicas(mysqlPrimary(0, 1), () -> {
+            BooksDbMySql replica = new BooksDbMySql();
+            replica.setReferenceData(referenceData());
+            return replica;
+        }));
     }
 
     @Bean
     @ConditionalOnProperty(name = "books.db.type", havingValue = "mongo")
     public IBooksDb mongoDatabase() {
         log.info("Using MongoDB database");
-        return new BooksDbMongo();
+        List<String> shards = urls(shardUrls);
+        if (!shards.isEmpty()) {
+            int count = shards.size() + 1;
+            return decorate(sharded(mongoShard(0, count), shards, i -> mongoShard(i, count)));
+        }
+        long staleness = Math.max(MONGO_MIN_STALENESS_SECONDS, replicaMaxLagMillis / 1000);
+        BooksDbMongo primary = mongo(ReadPreference.primary());
+        bookPurger().register(primary);
+        return decorate(withReplicas(primary,
+                () -> mongo(ReadPreference.secondaryPreferred(staleness, TimeUnit.SECONDS))));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "books.db.type", havingValue = "cqrs")
+    public IBooksDb cqrsDatabase(BookProjector bookProjector) {
+        log.info("Using MySQL for writes and projected MongoDB documents for reads");
+        if (!urls(replicaUrls).isEmpty() || !urls(shardUrls).isEmpty()) {
+            log.warn("books.db.replica-urls and books.db.shard-urls are ignored when books.db.type=cqrs");
+        }
+        BooksDbMySql writes = mysqlPrimary(0, 1);
+        writes.setWriteOutbox(true);
+        return decorate(new CqrsBooksDb(writes, mongo(ReadPreference.primary()), bookProjector,
+                cqrsMongoUrl, cqrsMaxLagMillis));
+    }
+
+    /**
+     * Copies MySQL changes into the MongoDB documents read in cqrs mode.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "books.db.type", havingValue = "cqrs")
+    public BookProjector bookProjector() {
+        return new BookProjector(databaseUrl, cqrsMongoUrl, cqrsPollMillis, outboxRetentionMinutes);
+    }
+
+    /**
+     * Wraps the backend: concurrency limits closest to the database, then
+     * request coalescing so joined callers do not take a limiter slot, the
+     * book cache so hits skip both, and change events outermost so they fire
+     * only for completed writes.
+     */
+    private IBooksDb decorate(IBooksDb backend) {
+        IBooksDb db = new ConcurrencyLimitedBooksDb(backend, readLimiter(), writeLimiter());
+        if (coalesceReads) {
+            db = backend instanceof ReadRoute route
+                    ? new CoalescingBooksDb(db, requestCoalescer(), route)
+                    : new CoalescingBooksDb(db, requestCoalescer());
+        }
+        if (cacheMegabytes > 0) {
+            db = new CachingBooksDb(db, bookCache());
+        }
+        return new NotifyingBooksDb(db, bookChangePublisher());
+    }
+
+    /**
+     * Catalog change events; in-memory indexes register here.
+     */
+    @Bean
+    public BookChangePublisher bookChangePublisher() {
+        return new BookChangePublisher();
+    }
+
+    @Bean
+    public RequestCoalescer requestCoalescer() {
+        return new RequestCoalescer();
+    }
+
+    /**
+     * Off-heap cache for lookups by ISBN and id; zero capacity when disabled.
+     */
+    @Bean
+    public OffHeapBookCache bookCache() {
+        int bytes = (int) Math.min(Integer.MAX_VALUE, Math.max(0, cacheMegabytes) * 1024L * 1024L);
+        OffHeapBookCache cache = new OffHeapBookCache(bytes, cacheMaxEntries);
+        cache.setReferenceData(referenceData());
+        return cache;
+    }
+
+    /**
+     * Removes the data of deleted books from every writable backend in small batches.
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public BookPurger bookPurger() {
+        return new BookPurger(purgeBatchRows, purgeIntervalMillis);
+    }
+
+    /**
+     * Authors and genres shared by every backend instance and the book cache.
+     */
+    @Bean
+    public ReferenceData referenceData() {
+        return new ReferenceData(referenceRefreshMillis);
+    }
+
+    /**
+     * Bulkhead for searches, lookups and review listings.
+     */
+    @Bean
+    public AdaptiveLimiter readLimiter() {
+        return limiter("read", readMaxConcurrency);
+    }
+
+    /**
+     * Bulkhead for book changes, ratings and reviews.
+     */
+    @Bean
+    public AdaptiveLimiter writeLimiter() {
+        return limiter("write", writeMaxConcurrency);
+    }
+
+    private AdaptiveLimiter limiter(String name, int maxConcurrency) {
+        return new AdaptiveLimiter(name, Math.max(1, maxConcurrency / 4), 1, maxConcurrency,
+                targetLatencyMillis, limiterQueueSize, limiterMaxWaitMillis);
+    }
+
+    /**
+     * A writable MySQL backend; with shards, one whose new book ids belong to shard {@code shard}.
+     */
+    private BooksDbMySql mysqlPrimary(int shard, int shardCount) {
+        BooksDbMySql db = new BooksDbMySql();
+        db.setWriteOutbox(invalidationEnabled);
+        db.setBookCardRebuild(bookCardRebuild);
+        db.setReferenceData(referenceData());
+        if (shardCount > 1) {
+            db.setBookIdSequence(ShardedBooksDb.bookIdOffset(shard), shardCount);
+        }
+        bookPurger().register(db);
+        return db;
+    }
+
+    private BooksDbMongo mongoShard(int shard, int shardCount) {
+        BooksDbMongo db = mongo(ReadPreference.primary());
+        db.setBookIdSequence(ShardedBooksDb.bookIdOffset(shard), shardCount);
+        bookPurger().register(db);
+        return db;
+    }
+
+    private BooksDbMongo mongo(ReadPreference readPreference) {
+        BooksDbMongo mongo = new BooksDbMongo(readPreference);
+        mongo.setCollectionScanCheck(collectionScanCheck);
+        mongo.setReferenceData(referenceData());
+        return mongo;
+    }
+
+    /**
+     * Wraps the primary in a read router when replica URLs are configured.
+     */
+    private IBooksDb withReplicas(IBooksDb primary, Supplier<IBooksDb> replicaFactory) {
+        List<String> urls = urls(replicaUrls);
+        if (urls.isEmpty()) {
+            return primary;
+        }
+        log.info("Routing reads to {} replica(s)", urls.size());
+        return new ReplicaRoutingBooksDb(primary, urls, replicaFactory,
+                replicaMaxLagMillis, readYourWritesMillis);
+    }
+
+    /**
+     * Spreads books over {@code books.db.url} and the shard URLs. Replicas are
+     * not combined with shards.
+     */
+    private IBooksDb sharded(IBooksDb first, List<String> urls, IntFunction<IBooksDb> shardFactory) {
+        if (!urls(replicaUrls).isEmpty()) {
+            log.warn("books.db.replica-urls is ignored when books.db.shard-urls is set");
+        }
+        log.info("Sharding books over {} databases", urls.size() + 1);
+        return new ShardedBooksDb(first, urls, shardFactory, shardMaxResults);
+    }
+
+    private static List<String> urls(List<String> configured) {
+        return configured.stream().filter(u -> !u.isBlank()).map(String::trim).toList();
     }
 
     @Bean
@@ -43,11 +318,22 @@ public class DatabaseConfig {
         return new DatabaseConnectionManager(database, databaseUrl);
     }
 
+    /**
+     * Connects the database in the background so it overlaps with the rest of
+     * context startup. Until the connection is up, {@link #isConnected()} is
+     * false and the web layer answers 503 (see ReadinessInterceptor). Failed
+     * attempts are retried with backoff instead of failing startup.
+     */
     public static class DatabaseConnectionManager {
 
         private static final Logger log = LoggerFactory.getLogger(DatabaseConnectionManager.class);
+        private static final long MAX_RETRY_DELAY_MILLIS = 10_000;
+
         private final IBooksDb database;
         private final String databaseUrl;
+        private final CompletableFuture<IBooksDb> connected = new CompletableFuture<>();
+        private volatile boolean closed;
+        private Thread connector;
 
         public DatabaseConnectionManager(IBooksDb database, String databaseUrl) {
             this.database = database;
@@ -55,14 +341,54 @@ public class DatabaseConfig {
         }
 
         @PostConstruct
-        public void connect() throws ConnectionException {
-            log.info("Connecting to database...");
-            database.connect(databaseUrl);
-            log.info("Database connected");
+        public void connect() {
+            connector = new Thread(this::connectWithRetry, "db-connect");
+            connector.setDaemon(true);
+            connector.start();
+        }
+
+        private void connectWithRetry() {
+            long delay = 250;
+            while (!closed) {
+                log.info("Connecting to database...");
+                try {
+                    database.connect(databaseUrl);
+                    log.info("Database connected {} ms after JVM start",
+                            ManagementFactory.getRuntimeMXBean().getUptime());
+                    connected.complete(database);
+                    return;
+                } catch (ConnectionException e) {
+                    log.warn("Database connection failed, retrying in {} ms: {}", delay, e.getMessage());
+                }
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                delay = Math.min(delay * 2, MAX_RETRY_DELAY_MILLIS);
+            }
+        }
+
+        public boolean isConnected() {
+            return connected.isDone();
+        }
+
+        /**
+         * Completes with the connected database once the connection is up.
+         */
+        public CompletableFuture<IBooksDb> whenConnected() {
+            return connected;
         }
 
         @PreDestroy
         public void disconnect() {
+            closed = true;
+            if (connector != null) {
+                connector.interrupt();
+            }
+            if (!isConnected()) {
+                return;
+            }
             log.info("Disconnecting from database...");
             try {
                 database.disconnect();
@@ -0,0 +1,26 @@
+package com.nawidali.sql_labb_2.config;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports DOWN until the background database connection is established.
+ * Part of the readiness group, so load balancers hold traffic until then.
+ */
+@Component("database")
+public class DatabaseHealthIndicator implements HealthIndicator {
+
+    private final DatabaseConfig.DatabaseConnectionManager connectionManager;
+
+    public DatabaseHealthIndicator(DatabaseConfig.DatabaseConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    @Override
+    public Health health() {
+        return connectionManager.isConnected()
+                ? Health.up().build()
+                : Health.down().withDetail("reason", "connecting").build();
+    }
+}
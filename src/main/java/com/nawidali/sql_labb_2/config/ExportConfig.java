@@ -0,0 +1,34 @@
+package com.nawidali.sql_labb_2.config;
+
+import com.nawidali.sql_labb_2.model.AdaptiveLimiter;
+import com.nawidali.sql_labb_2.model.CatalogExporter;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Catalog export limits. Exports back off while interactive reads are
+ * queued at the read limiter.
+ */
+@Configuration
+public class ExportConfig {
+
+    @Value("${books.export.page-size:500}")
+    private int pageSize;
+
+    @Value("${books.export.max-concurrent:2}")
+    private int maxConcurrent;
+
+    @Value("${books.export.max-books-per-second:20000}")
+    private int maxBooksPerSecond;
+
+    @Value("${books.export.busy-backoff-ms:50}")
+    private long busyBackoffMillis;
+
+    @Bean
+    public CatalogExporter catalogExporter(@Qualifier("readLimiter") AdaptiveLimiter readLimiter) {
+        return new CatalogExporter(pageSize, maxConcurrent, maxBooksPerSecond, busyBackoffMillis,
+                () -> readLimiter.getQueued() > 0);
+    }
+}
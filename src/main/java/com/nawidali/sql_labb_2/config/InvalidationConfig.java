@@ -0,0 +1,88 @@
+package com.nawidali.sql_labb_2.config;
+
+import com.nawidali.sql_labb_2.model.BookChangePublisher;
+import com.nawidali.sql_labb_2.model.FanInTransport;
+import com.nawidali.sql_labb_2.model.InvalidationBus;
+import com.nawidali.sql_labb_2.model.InvalidationListener;
+import com.nawidali.sql_labb_2.model.InvalidationTransport;
+import com.nawidali.sql_labb_2.model.MongoChangeStreamTransport;
+import com.nawidali.sql_labb_2.model.MySqlOutboxTransport;
+import com.nawidali.sql_labb_2.model.OffHeapBookCache;
+import com.nawidali.sql_labb_2.model.RequestCoalescer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cross-node cache invalidation for running several instances against one
+ * database. MySQL uses the book_outbox table, MongoDB a change stream; with
+ * shards, every shard is followed, since each records only its own changes.
+ */
+@Configuration
+@ConditionalOnProperty(name = "books.invalidation.enabled", havingValue = "true")
+public class InvalidationConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(InvalidationConfig.class);
+
+    @Value("${books.db.type}")
+    private String databaseType;
+
+    @Value("${books.db.url}")
+    private String databaseUrl;
+
+    @Value("${books.db.shard-urls:}")
+    private List<String> shardUrls;
+
+    @Value("${books.invalidation.batch-ms:100}")
+    private long batchMillis;
+
+    @Value("${books.invalidation.poll-ms:250}")
+    private long pollMillis;
+
+    @Value("${books.invalidation.outbox-retention-minutes:60}")
+    private int outboxRetentionMinutes;
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public InvalidationBus invalidationBus(BookChangePublisher publisher,
+                                           ObjectProvider<RequestCoalescer> coalescer,
+                                           ObjectProvider<OffHeapBookCache> bookCache) {
+        List<String> urls = new ArrayList<>();
+        urls.add(databaseUrl);
+        shardUrls.stream().filter(u -> !u.isBlank()).map(String::trim).forEach(urls::add);
+        List<InvalidationTransport> perDatabase = new ArrayList<>();
+        for (String url : urls) {
+            perDatabase.add("mongo".equals(databaseType)
+                    ? new MongoChangeStreamTransport(url, batchMillis)
+                    : new MySqlOutboxTransport(url, pollMillis, outboxRetentionMinutes));
+        }
+        InvalidationTransport transport = perDatabase.size() == 1
+                ? perDatabase.get(0)
+                : new FanInTransport(perDatabase);
+        log.info("Cross-node invalidation via {} on {} database(s)",
+                perDatabase.get(0).getClass().getSimpleName(), perDatabase.size());
+
+        InvalidationBus bus = new InvalidationBus(transport, batchMillis);
+        publisher.addListener(bus);
+        bookCache.ifAvailable(bus::addListener);
+        // Reads in flight may predate a remote write; stop sharing them
+        coalescer.ifAvailable(c -> bus.addListener(new InvalidationListener() {
+            @Override
+            public void invalidate(int[] bookIds) {
+                c.invalidate();
+            }
+
+            @Override
+            public void invalidateAll() {
+                c.invalidate();
+            }
+        }));
+        return bus;
+    }
+}
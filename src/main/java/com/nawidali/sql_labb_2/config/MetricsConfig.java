@@ -0,0 +1,185 @@
+package com.nawidali.sql_labb_2.config;
+
+import com.nawidali.sql_labb_2.model.AdaptiveLimiter;
+import com.nawidali.sql_labb_2.model.BookProjector;
+import com.nawidali.sql_labb_2.model.BookPurger;
+import com.nawidali.sql_labb_2.model.CatalogExporter;
+import com.nawidali.sql_labb_2.model.InvalidationBus;
+import com.nawidali.sql_labb_2.model.OffHeapBookCache;
+import com.nawidali.sql_labb_2.model.ReferenceData;
+import com.nawidali.sql_labb_2.model.RequestCoalescer;
+import com.nawidali.sql_labb_2.model.SessionTokens;
+import com.nawidali.sql_labb_2.model.SimilarBooksIndex;
+import com.nawidali.sql_labb_2.model.TrendingBooks;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Publishes database-layer state as Micrometer meters (see /actuator/metrics).
+ * The model classes stay free of Micrometer; meters read their getters.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder databaseLimiterMetrics(ObjectProvider<AdaptiveLimiter> limiters) {
+        return registry -> limiters.orderedStream().forEach(limiter -> {
+            String bulkhead = limiter.getName();
+            Gauge.builder("books.db.limiter.limit", limiter, AdaptiveLimiter::getLimit)
+                    .tag("bulkhead", bulkhead)
+                    .description("Current adaptive concurrency limit")
+                    .register(registry);
+            Gauge.builder("books.db.limiter.inflight", limiter, AdaptiveLimiter::getInFlight)
+                    .tag("bulkhead", bulkhead)
+                    .register(registry);
+            Gauge.builder("books.db.limiter.queued", limiter, AdaptiveLimiter::getQueued)
+                    .tag("bulkhead", bulkhead)
+                    .register(registry);
+            Gauge.builder("books.db.limiter.latency", limiter, AdaptiveLimiter::getSmoothedLatencyMillis)
+                    .tag("bulkhead", bulkhead)
+                    .baseUnit("milliseconds")
+                    .description("Smoothed database call latency")
+                    .register(registry);
+            FunctionCounter.builder("books.db.limiter.rejected", limiter, AdaptiveLimiter::getRejected)
+                    .tag("bulkhead", bulkhead)
+                    .description("Calls shed because the limit and queue were full")
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    public MeterBinder requestCoalescingMetrics(ObjectProvider<RequestCoalescer> coalescers) {
+        return registry -> coalescers.ifAvailable(coalescer -> {
+            FunctionCounter.builder("books.db.coalescing.calls", coalescer, RequestCoalescer::getCalls)
+                    .description("Coalescable reads requested")
+                    .register(registry);
+            FunctionCounter.builder("books.db.coalescing.joined", coalescer, RequestCoalescer::getCoalesced)
+                    .description("Reads that shared an identical in-flight call")
+                    .register(registry);
+            Gauge.builder("books.db.coalescing.inflight", coalescer, RequestCoalescer::getInFlight)
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    public MeterBinder bookCacheMetrics(ObjectProvider<OffHeapBookCache> caches) {
+        return registry -> caches.ifAvailable(cache -> {
+            Gauge.builder("books.cache.offheap.used", cache, OffHeapBookCache::getUsedBytes)
+                    .baseUnit("bytes")
+                    .description("Off-heap bytes held by cached books")
+                    .register(registry);
+            Gauge.builder("books.cache.offheap.capacity", cache, OffHeapBookCache::getCapacityBytes)
+                    .baseUnit("bytes")
+                    .register(registry);
+            Gauge.builder("books.cache.entries", cache, OffHeapBookCache::getEntries)
+                    .register(registry);
+            FunctionCounter.builder("books.cache.hits", cache, OffHeapBookCache::getHits)
+                    .register(registry);
+            FunctionCounter.builder("books.cache.misses", cache, OffHeapBookCache::getMisses)
+                    .register(registry);
+            FunctionCounter.builder("books.cache.evictions", cache, OffHeapBookCache::getEvictions)
+                    .description("Books dropped to make room")
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    public MeterBinder referenceDataMetrics(ObjectProvider<ReferenceData> referenceData) {
+        return registry -> referenceData.ifAvailable(ref -> {
+            Gauge.builder("books.refdata.authors", ref, ReferenceData::getAuthorCount)
+                    .register(registry);
+            Gauge.builder("books.refdata.genres", ref, ReferenceData::getGenreCount)
+                    .register(registry);
+            FunctionCounter.builder("books.refdata.hits", ref, ReferenceData::getHits)
+                    .description("Authors and genres served as the shared cached instance")
+                    .register(registry);
+            FunctionCounter.builder("books.refdata.misses", ref, ReferenceData::getMisses)
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    public MeterBinder bookPurgeMetrics(ObjectProvider<BookPurger> purgers) {
+        return registry -> purgers.ifAvailable(purger ->
+                FunctionCounter.builder("books.purge.rows", purger, BookPurger::getPurgedRows)
+                        .description("Rows or documents of deleted books removed")
+                        .register(registry));
+    }
+
+    @Bean
+    public MeterBinder bookProjectionMetrics(ObjectProvider<BookProjector> projectors) {
+        return registry -> projectors.ifAvailable(projector -> {
+            Gauge.builder("books.cqrs.projection.lag", projector, BookProjector::getLagMillis)
+                    .description("Milliseconds since the projection last had nothing pending, -1 before the first")
+                    .baseUnit("milliseconds")
+                    .register(registry);
+            FunctionCounter.builder("books.cqrs.projected", projector, BookProjector::getProjected)
+                    .description("Book documents written by the projector")
+                    .register(registry);
+            FunctionCounter.builder("books.cqrs.deleted", projector, BookProjector::getDeleted)
+                    .register(registry);
+            FunctionCounter.builder("books.cqrs.rebuilds", projector, BookProjector::getRebuilds)
+                    .description("Full projections of every book")
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    public MeterBinder similarBooksMetrics(ObjectProvider<SimilarBooksIndex> indexes) {
+        return registry -> indexes.ifAvailable(index -> {
+            Gauge.builder("books.similar.books", index, SimilarBooksIndex::getBookCount)
+                    .description("Books with at least one co-rated neighbor")
+                    .register(registry);
+            Gauge.builder("books.similar.users", index, SimilarBooksIndex::getUserCount)
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    public MeterBinder trendingMetrics(ObjectProvider<TrendingBooks> trending) {
+        return registry -> trending.ifAvailable(t ->
+                Gauge.builder("books.trending.tracked", t, TrendingBooks::getTrackedBooks)
+                        .description("Books with a recent rating or review")
+                        .register(registry));
+    }
+
+    @Bean
+    public MeterBinder catalogExportMetrics(ObjectProvider<CatalogExporter> exporters) {
+        return registry -> exporters.ifAvailable(exporter ->
+                Gauge.builder("books.export.active", exporter, CatalogExporter::getActiveExports)
+                        .description("Catalog exports currently streaming")
+                        .register(registry));
+    }
+
+    @Bean
+    public MeterBinder invalidationBusMetrics(ObjectProvider<InvalidationBus> buses) {
+        return registry -> buses.ifAvailable(bus -> {
+            FunctionCounter.builder("books.invalidation.batches.sent", bus, InvalidationBus::getBatchesSent)
+                    .register(registry);
+            FunctionCounter.builder("books.invalidation.batches.received", bus, InvalidationBus::getBatchesReceived)
+                    .register(registry);
+            FunctionCounter.builder("books.invalidation.ids.received", bus, InvalidationBus::getIdsReceived)
+                    .register(registry);
+            FunctionCounter.builder("books.invalidation.full-flushes", bus, InvalidationBus::getFullFlushes)
+                    .description("Full cache flushes after reconnects")
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    public MeterBinder sessionTokenMetrics(ObjectProvider<SessionTokens> sessionTokens) {
+        return registry -> sessionTokens.ifAvailable(tokens -> {
+            FunctionCounter.builder("books.auth.tokens.issued", tokens, SessionTokens::getIssued)
+                    .register(registry);
+            FunctionCounter.builder("books.auth.tokens.rejected", tokens, SessionTokens::getRejected)
+                    .description("Malformed, forged, expired or revoked tokens")
+                    .register(registry);
+            Gauge.builder("books.auth.denylist.size", tokens, SessionTokens::getDenyListSize)
+                    .register(registry);
+        });
+    }
+}
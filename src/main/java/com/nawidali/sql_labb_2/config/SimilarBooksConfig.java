@@ -0,0 +1,89 @@
+package com.nawidali.sql_labb_2.config;
+
+import com.nawidali.sql_labb_2.model.BookChangePublisher;
+import com.nawidali.sql_labb_2.model.IBooksDb;
+import com.nawidali.sql_labb_2.model.SimilarBooksIndex;
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the "readers also rated" index once the database is connected and
+ * keeps it current through rating events. Ratings made on other instances
+ * only arrive with the periodic reload every books.similar.reload-minutes.
+ * Loads run on an executor owned by this configuration and stopped with the
+ * context. It is not a bean, since a ScheduledExecutorService bean would
+ * replace the scheduler that runs {@code @Scheduled} methods.
+ */
+@Configuration
+public class SimilarBooksConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(SimilarBooksConfig.class);
+
+    private static final long LOAD_RETRY_MILLIS = 30_000;
+
+    private final ScheduledExecutorService loader = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "similar-index-reload");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @Bean
+    public SimilarBooksIndex similarBooksIndex(BookChangePublisher publisher,
+                                               DatabaseConfig.DatabaseConnectionManager connectionManager,
+                                               @Value("${books.similar.max-neighbors:200}") int maxNeighbors,
+                                               @Value("${books.similar.max-books-per-user:200}") int maxBooksPerUser,
+                                               @Value("${books.similar.load-threads:4}") int loadThreads,
+                                               @Value("${books.similar.reload-minutes:60}") long reloadMinutes) {
+        SimilarBooksIndex index = new SimilarBooksIndex(maxNeighbors, maxBooksPerUser, loadThreads);
+        // Subscribe before loading so ratings made during the load are not lost
+        publisher.addListener(index);
+        connectionManager.whenConnected().thenAcceptAsync(db -> {
+            loadWithRetry(index, db);
+            if (reloadMinutes > 0) {
+                loader.scheduleWithFixedDelay(() -> reload(index, db), reloadMinutes, reloadMinutes, TimeUnit.MINUTES);
+            }
+        }, loader);
+        return index;
+    }
+
+    // Interrupts a running load or retry wait
+    @PreDestroy
+    public void stopLoader() {
+        loader.shutdownNow();
+    }
+
+    private static void loadWithRetry(SimilarBooksIndex index, IBooksDb db) {
+        while (true) {
+            try {
+                index.load(db);
+                return;
+            } catch (SelectException | RuntimeException e) {
+                log.warn("Could not load similar books index, retrying in {} ms: {}", LOAD_RETRY_MILLIS, e.getMessage());
+            }
+            try {
+                Thread.sleep(LOAD_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Keeps serving the current index when a reload fails; the next one retries
+    private static void reload(SimilarBooksIndex index, IBooksDb db) {
+        try {
+            index.load(db);
+        } catch (SelectException | RuntimeException e) {
+            log.warn("Could not reload similar books index: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.nawidali.sql_labb_2.config;
+
+import com.nawidali.sql_labb_2.model.SuggestIndex;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Saves the suggest index to books.snapshot.path every
+ * books.snapshot.interval-ms and on shutdown, so the next start can serve
+ * from it right away (see SuggestConfig). The path is checked at runtime
+ * rather than with a condition, so AOT builds keep the bean.
+ */
+@Configuration
+@EnableScheduling
+public class SnapshotConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotConfig.class);
+
+    private final SuggestIndex suggestIndex;
+    private final String snapshotPath;
+
+    public SnapshotConfig(SuggestIndex suggestIndex, @Value("${books.snapshot.path:}") String snapshotPath) {
+        this.suggestIndex = suggestIndex;
+        this.snapshotPath = snapshotPath;
+    }
+
+    @Scheduled(initialDelayString = "${books.snapshot.interval-ms:600000}",
+            fixedDelayString = "${books.snapshot.interval-ms:600000}")
+    public void writeSnapshot() {
+        if (snapshotPath.isBlank()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            if (suggestIndex.writeSnapshot(Path.of(snapshotPath))) {
+                log.info("Suggest index snapshot written to {} in {} ms",
+                        snapshotPath, (System.nanoTime() - start) / 1_000_000);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not write suggest index snapshot to {}: {}", snapshotPath, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void writeOnShutdown() {
+        writeSnapshot();
+    }
+}
@@ -0,0 +1,128 @@
+package com.nawidali.sql_labb_2.config;
+
+import com.nawidali.sql_labb_2.model.BookChangePublisher;
+import com.nawidali.sql_labb_2.model.IBooksDb;
+import com.nawidali.sql_labb_2.model.InvalidationBus;
+import com.nawidali.sql_labb_2.model.InvalidationListener;
+import com.nawidali.sql_labb_2.model.SuggestIndex;
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Builds the autocomplete index once the database is connected and keeps it
+ * current through catalog change events. With books.snapshot.path set, the
+ * index starts from the last snapshot (see SnapshotConfig) and is ready
+ * before the database connects; it then only catches up on changes.
+ */
+@Configuration
+public class SuggestConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(SuggestConfig.class);
+
+    private static final long LOAD_RETRY_MILLIS = 30_000;
+
+    @Value("${books.snapshot.path:}")
+    private String snapshotPath;
+
+    private static final Executor LOADER = task -> {
+        Thread t = new Thread(task, "suggest-index-load");
+        t.setDaemon(true);
+        t.start();
+    };
+
+    @Bean
+    public SuggestIndex suggestIndex(BookChangePublisher publisher,
+                                     DatabaseConfig.DatabaseConnectionManager connectionManager,
+                                     ObjectProvider<InvalidationBus> invalidationBus) {
+        SuggestIndex index = new SuggestIndex();
+        // Subscribe before loading so changes made during the load are not lost
+        publisher.addListener(index);
+        invalidationBus.ifAvailable(bus -> bus.addListener(new RemoteChanges(index, connectionManager)));
+        if (loadSnapshot(index)) {
+            connectionManager.whenConnected().thenAcceptAsync(db -> catchUpOrReload(index, db), LOADER);
+        } else {
+            connectionManager.whenConnected().thenAcceptAsync(db -> loadWithRetry(index, db), LOADER);
+        }
+        return index;
+    }
+
+    private boolean loadSnapshot(SuggestIndex index) {
+        if (snapshotPath.isBlank()) {
+            return false;
+        }
+        try {
+            return index.loadSnapshot(Path.of(snapshotPath));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring suggest index snapshot, loading from the database instead: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    // Keeps serving the snapshot while a failed catch-up falls back to a full load
+    private static void catchUpOrReload(SuggestIndex index, IBooksDb db) {
+        try {
+            index.catchUp(db);
+        } catch (SelectException | RuntimeException e) {
+            log.warn("Suggest index catch-up failed, reloading: {}", e.getMessage());
+            loadWithRetry(index, db);
+        }
+    }
+
+    private static void loadWithRetry(SuggestIndex index, IBooksDb db) {
+        while (true) {
+            try {
+                index.load(db);
+                return;
+            } catch (SelectException | RuntimeException e) {
+                log.warn("Could not load suggest index, retrying in {} ms: {}", LOAD_RETRY_MILLIS, e.getMessage());
+            }
+            try {
+                Thread.sleep(LOAD_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applies changes made on other nodes: re-reads the changed books, or
+     * reloads the whole index after a full flush.
+     */
+    private record RemoteChanges(SuggestIndex index,
+                                 DatabaseConfig.DatabaseConnectionManager connectionManager)
+            implements InvalidationListener {
+
+        @Override
+        public void invalidate(int[] bookIds) {
+            IBooksDb db = connectionManager.whenConnected().getNow(null);
+            if (db == null) {
+                return;
+            }
+            try {
+                List<Integer> ids = Arrays.stream(bookIds).boxed().toList();
+                index.refresh(bookIds, db.findBooksByIds(ids).values());
+            } catch (SelectException e) {
+                log.warn("Could not refresh {} suggest entries: {}", bookIds.length, e.getMessage());
+            }
+        }
+
+        @Override
+        public void invalidateAll() {
+            IBooksDb db = connectionManager.whenConnected().getNow(null);
+            if (db != null) {
+                LOADER.execute(() -> loadWithRetry(index, db));
+            }
+        }
+    }
+}
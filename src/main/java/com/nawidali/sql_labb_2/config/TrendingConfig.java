@@ -0,0 +1,68 @@
+package com.nawidali.sql_labb_2.config;
+
+import com.nawidali.sql_labb_2.model.BookChangePublisher;
+import com.nawidali.sql_labb_2.model.TrendingBooks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Feeds ratings and reviews into {@link TrendingBooks} and re-ranks it every
+ * books.trending.refresh-ms. Windows are listed in books.trending.windows
+ * with the names clients use, e.g. {@code 1h,1d,7d}. Ranking runs on
+ * Spring's scheduler, so it stops with the context.
+ */
+@Configuration
+@EnableScheduling
+public class TrendingConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(TrendingConfig.class);
+
+    @Bean
+    public TrendingBooks trendingBooks(BookChangePublisher publisher,
+                                       @Value("${books.trending.windows:1h,1d,7d}") List<String> windows,
+                                       @Value("${books.trending.top-k:100}") int topK) {
+        Map<String, Duration> byName = new LinkedHashMap<>();
+        for (String window : windows) {
+            String name = window.trim();
+            byName.put(name, DurationStyle.detectAndParse(name));
+        }
+        TrendingBooks trending = new TrendingBooks(byName, topK);
+        publisher.addListener(trending);
+        return trending;
+    }
+
+    /**
+     * Re-ranks {@link TrendingBooks}; a separate bean because a configuration
+     * class cannot be injected with a bean it defines itself.
+     */
+    @Configuration
+    static class Ranker {
+
+        private final TrendingBooks trending;
+
+        Ranker(TrendingBooks trending) {
+            this.trending = trending;
+        }
+
+        @Scheduled(initialDelayString = "${books.trending.refresh-ms:5000}",
+                fixedDelayString = "${books.trending.refresh-ms:5000}")
+        public void refresh() {
+            try {
+                trending.refresh();
+            } catch (RuntimeException e) {
+                log.warn("Ranking trending books failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.nawidali.sql_labb_2.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.nawidali.sql_labb_2.model.SessionTokens;
+import com.nawidali.sql_labb_2.rest.CurrentUserInterceptor;
+import com.nawidali.sql_labb_2.rest.ReadinessInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Web layer setup: request interceptors (readiness gate, current user) and
+ * binary response encodings.
+ * JSON stays the default; clients opt in with application/cbor or
+ * application/x-jackson-smile. Both converters share the application's
+ * Jackson settings so dates and property names match the JSON output.
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final ObjectProvider<DatabaseConfig.DatabaseConnectionManager> connectionManager;
+    private final ObjectProvider<SessionTokens> sessionTokens;
+
+    public WebConfig(ObjectProvider<DatabaseConfig.DatabaseConnectionManager> connectionManager,
+                     ObjectProvider<SessionTokens> sessionTokens) {
+        this.connectionManager = connectionManager;
+        this.sessionTokens = sessionTokens;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        DatabaseConfig.DatabaseConnectionManager manager = connectionManager.getIfAvailable();
+        BooleanSupplier ready = manager != null ? manager::isConnected : () -> true;
+        // Suggest has its own readiness and can serve from a snapshot before the database is up
+        registry.addInterceptor(new ReadinessInterceptor(ready)).excludePathPatterns("/actuator/**", "/books/suggest");
+        registry.addInterceptor(new CurrentUserInterceptor(sessionTokens.getIfAvailable()));
+    }
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(
+                builder.createXmlMapper(false).factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(
+                builder.createXmlMapper(false).factory(new SmileFactory()).build());
+    }
+}
@@ -0,0 +1,66 @@
+package com.nawidali.sql_labb_2.migration;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command-line entry point for {@link MySqlToMongoMigrator}. Runs outside
+ * Spring; see the README for how to start it from the application jar.
+ * <p>
+ * Exits with 0 when every range is verified, 1 when some ranges failed (run
+ * again to retry them) and 2 on bad arguments.
+ */
+public final class MigrationTool {
+
+    private static final String DEFAULT_DB = "booksdb";
+
+    private MigrationTool() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = parse(args);
+        String mysql = opts.get("mysql");
+        String mongo = opts.get("mongo");
+        if (mysql == null || mongo == null) {
+            System.err.println("Usage: MigrationTool --mysql=<jdbc url> --mongo=<mongodb uri> "
+                    + "[--threads=N] [--range-size=5000] [--batch-size=1000] [--restart]");
+            System.exit(2);
+        }
+        int threads = Integer.parseInt(opts.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int rangeSize = Integer.parseInt(opts.getOrDefault("range-size", "5000"));
+        int batchSize = Integer.parseInt(opts.getOrDefault("batch-size", "1000"));
+
+        ConnectionString uri = new ConnectionString(mongo);
+        String dbName = uri.getDatabase() != null ? uri.getDatabase() : DEFAULT_DB;
+        MySqlToMongoMigrator.Report report;
+        try (MongoClient client = MongoClients.create(uri)) {
+            report = new MySqlToMongoMigrator(mysql, client.getDatabase(dbName), threads, rangeSize, batchSize)
+                    .run(opts.containsKey("restart"));
+        }
+        if (!report.failedRanges().isEmpty()) {
+            System.err.println("Not verified: " + String.join(", ", report.failedRanges()));
+            System.exit(1);
+        }
+    }
+
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                opts.put(arg.substring(2), "true");
+            } else {
+                opts.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return opts;
+    }
+}
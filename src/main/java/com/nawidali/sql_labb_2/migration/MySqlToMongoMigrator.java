@@ -0,0 +1,436 @@
+package com.nawidali.sql_labb_2.migration;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.DeleteResult;
+import com.nawidali.sql_labb_2.model.BookDocumentReader;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Copies the MySQL catalog into MongoDB in the embedded document shape that
+ * {@code BooksDbMongo} reads and writes: one {@code book} document per book
+ * with its authors, genres, ratings, reviews and {@code created_by}.
+ * <p>
+ * The book id space is split into ranges that are migrated in parallel, each
+ * on its own JDBC connection. Documents are upserted by {@code book_id} with
+ * unordered bulk writes, so re-running a range is harmless; documents in the
+ * range whose book is gone from MySQL (deleted, or marked deleted) are
+ * removed. After a range is
+ * written, its counts and rating sum are compared between MySQL and MongoDB,
+ * and only verified ranges are checkpointed in {@code migration_checkpoint};
+ * a second run skips them and retries the rest.
+ */
+public class MySqlToMongoMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(MySqlToMongoMigrator.class);
+
+    static final String CHECKPOINTS = "migration_checkpoint";
+
+    private final String mysqlUrl;
+    private final MongoDatabase mongo;
+    private final int threads;
+    private final int rangeSize;
+    private final int batchSize;
+
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder booksWritten = new LongAdder();
+    private final BookDocumentReader documents = new BookDocumentReader(rowsRead);
+    private final RangeSource source;
+    private final RangeTarget target;
+
+    public MySqlToMongoMigrator(String mysqlUrl, MongoDatabase mongo, int threads, int rangeSize, int batchSize) {
+        this.mysqlUrl = mysqlUrl;
+        this.mongo = mongo;
+        this.threads = Math.max(1, threads);
+        this.rangeSize = Math.max(1, rangeSize);
+        this.batchSize = Math.max(1, batchSize);
+        this.source = this::readRange;
+        this.target = new MongoRangeTarget();
+    }
+
+    /**
+     * Migrates ranges between the given source and target (for tests); {@link #run} is not available.
+     */
+    MySqlToMongoMigrator(RangeSource source, RangeTarget target) {
+        this.mysqlUrl = null;
+        this.mongo = null;
+        this.threads = 1;
+        this.rangeSize = 1;
+        this.batchSize = 1;
+        this.source = source;
+        this.target = target;
+    }
+
+    /**
+     * Runs (or resumes) the migration.
+     * @param restart forget earlier checkpoints and migrate every range again.
+     */
+    public Report run(boolean restart) throws SQLException, InterruptedException {
+        long start = System.nanoTime();
+        MongoCollection<Document> checkpoints = mongo.getCollection(CHECKPOINTS);
+        if (restart) {
+            checkpoints.deleteMany(new Document());
+        }
+
+        List<KeyRange> ranges;
+        try (Connection conn = DriverManager.getConnection(mysqlUrl)) {
+            copyReferenceData(conn);
+            ranges = ranges(conn);
+        }
+        Set<String> done = new HashSet<>();
+        for (Document d : checkpoints.find(Filters.eq("status", "verified"))) {
+            done.add(d.getString("_id"));
+        }
+        List<KeyRange> todo = ranges.stream().filter(r -> !done.contains(r.id())).toList();
+        log.info("{} book id ranges, {} already migrated, {} to go on {} threads",
+                ranges.size(), ranges.size() - todo.size(), todo.size(), threads);
+
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+        progress.scheduleAtFixedRate(() -> logProgress(start), 10, 10, TimeUnit.SECONDS);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<String> failed = new ArrayList<>();
+        try {
+            List<Future<RangeResult>> results = new ArrayList<>();
+            for (KeyRange range : todo) {
+                results.add(workers.submit(() -> migrateRange(range)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    RangeResult r = results.get(i).get();
+                    if (!r.verified()) {
+                        failed.add(r.range().id());
+                    }
+                } catch (ExecutionException e) {
+                    KeyRange range = todo.get(i);
+                    log.error("Range {} failed: {}", range.id(), e.getCause().toString());
+                    failed.add(range.id());
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+            progress.shutdownNow();
+        }
+
+        double seconds = Math.max(0.001, (System.nanoTime() - start) / 1e9);
+        Report report = new Report(ranges.size(), todo.size() - failed.size(), List.copyOf(failed),
+                booksWritten.sum(), rowsRead.sum(), seconds);
+        log.info("Migration finished: {} books, {} rows in {} s ({} rows/s), {} ranges failed",
+                report.books(), report.rows(), String.format("%.1f", seconds),
+                String.format("%.0f", report.rowsPerSecond()), failed.size());
+        return report;
+    }
+
+    private void logProgress(long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        log.info("Progress: {} books, {} rows, {} rows/s", booksWritten.sum(), rowsRead.sum(),
+                String.format("%.0f", rowsRead.sum() / Math.max(0.001, seconds)));
+    }
+
+    // ---------------- REFERENSDATA ----------------
+
+    /**
+     * Users, authors and genres are small; they are upserted in one pass.
+     * The id counters are raised so new books and reviews get fresh ids.
+     */
+    private void copyReferenceData(Connection conn) throws SQLException {
+        upsertAll(conn, "SELECT user_id, username, password_hash FROM app_user", "app_user", "user_id",
+                rs -> new Document("user_id", rs.getInt("user_id"))
+                        .append("username", rs.getString("username"))
+                        .append("password_hash", rs.getString("password_hash")));
+        upsertAll(conn, "SELECT author_id, name, birth_date FROM author", "author", "author_id",
+                rs -> new Document("author_id", rs.getInt("author_id"))
+                        .append("name", rs.getString("name"))
+                        .append("birth_date", BookDocumentReader.toDate(rs.getDate("birth_date"))));
+        upsertAll(conn, "SELECT genre_id, name FROM genre", "genre", "genre_id",
+                rs -> new Document("genre_id", rs.getInt("genre_id"))
+                        .append("name", rs.getString("name")));
+
+        int maxBookId = scalar(conn, "SELECT COALESCE(MAX(book_id), 0) FROM book");
+        int maxReviewId = scalar(conn, "SELECT COALESCE(MAX(review_id), 0) FROM review");
+        mongo.getCollection("counter").updateOne(Filters.eq("_id", "counters"),
+                Updates.combine(Updates.max("next_book_id", maxBookId + 1),
+                        Updates.max("next_review_id", maxReviewId + 1)),
+                new UpdateOptions().upsert(true));
+    }
+
+    private void upsertAll(Connection conn, String sql, String collection, String idField, RowMapper mapper)
+            throws SQLException {
+        List<WriteModel<Document>> writes = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                Document doc = mapper.map(rs);
+                writes.add(new ReplaceOneModel<>(Filters.eq(idField, doc.get(idField)), doc,
+                        new ReplaceOptions().upsert(true)));
+                rowsRead.increment();
+            }
+        }
+        bulkWrite(mongo.getCollection(collection), writes);
+        log.info("Copied {} {} rows", writes.size(), collection);
+    }
+
+    // ---------------- BOKINTERVALL ----------------
+
+    private List<KeyRange> ranges(Connection conn) throws SQLException {
+        int min = scalar(conn, "SELECT COALESCE(MIN(book_id), 0) FROM book");
+        int max = scalar(conn, "SELECT COALESCE(MAX(book_id), -1) FROM book");
+        return split(min, max, rangeSize);
+    }
+
+    /**
+     * Splits {@code [min, max]} into consecutive ranges of {@code size} ids.
+     */
+    static List<KeyRange> split(int min, int max, int size) {
+        List<KeyRange> out = new ArrayList<>();
+        for (long from = min; from <= max; from += size) {
+            out.add(new KeyRange((int) from, (int) Math.min(max, from + size - 1)));
+        }
+        return out;
+    }
+
+    RangeResult migrateRange(KeyRange range) throws SQLException {
+        RangeData data = source.read(range);
+
+        target.write(List.copyOf(data.books().values()));
+        // Books deleted in MySQL since an earlier run are not in the read; drop their documents
+        target.deleteExcept(range, data.books().keySet());
+        booksWritten.add(data.books().size());
+
+        Totals written = target.totals(range);
+        boolean verified = data.totals().equals(written);
+        if (verified) {
+            target.markVerified(range, data.totals().books());
+        } else {
+            log.warn("Range {} does not match after migration: mysql {} mongo {}", range.id(), data.totals(), written);
+        }
+        return new RangeResult(range, verified);
+    }
+
+    /**
+     * Reads the range's books and their totals from one MySQL snapshot.
+     */
+    private RangeData readRange(KeyRange range) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(mysqlUrl)) {
+            conn.setReadOnly(true);
+            // One snapshot for the range's reads and its verification totals
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setAutoCommit(false);
+            try {
+                return new RangeData(documents.readRange(conn, range.from(), range.to()), sourceTotals(conn, range));
+            } finally {
+                conn.commit();
+            }
+        }
+    }
+
+    /**
+     * Writes ranges to the MongoDB {@code book} collection and checkpoints them.
+     */
+    private final class MongoRangeTarget implements RangeTarget {
+
+        @Override
+        public void write(List<Document> books) {
+            List<WriteModel<Document>> writes = new ArrayList<>(books.size());
+            for (Document doc : books) {
+                writes.add(new ReplaceOneModel<>(Filters.eq("book_id", doc.getInteger("book_id")), doc,
+                        new ReplaceOptions().upsert(true)));
+            }
+            MongoCollection<Document> col = mongo.getCollection("book");
+            for (int i = 0; i < writes.size(); i += batchSize) {
+                bulkWrite(col, writes.subList(i, Math.min(writes.size(), i + batchSize)));
+            }
+        }
+
+        @Override
+        public void deleteExcept(KeyRange range, Set<Integer> bookIds) {
+            DeleteResult res = mongo.getCollection("book").deleteMany(Filters.and(
+                    Filters.gte("book_id", range.from()), Filters.lte("book_id", range.to()),
+                    Filters.nin("book_id", bookIds)));
+            if (res.getDeletedCount() > 0) {
+                log.info("Range {}: removed {} documents of books no longer in MySQL",
+                        range.id(), res.getDeletedCount());
+            }
+        }
+
+        @Override
+        public Totals totals(KeyRange range) {
+            return targetTotals(mongo.getCollection("book"), range);
+        }
+
+        @Override
+        public void markVerified(KeyRange range, long books) {
+            mongo.getCollection(CHECKPOINTS).replaceOne(Filters.eq("_id", range.id()),
+                    new Document("_id", range.id())
+                            .append("from", range.from())
+                            .append("to", range.to())
+                            .append("status", "verified")
+                            .append("books", books)
+                            .append("finished_at", new Date()),
+                    new ReplaceOptions().upsert(true));
+        }
+    }
+
+    // ---------------- VERIFIERING ----------------
+
+    private static Totals sourceTotals(Connection conn, KeyRange range) throws SQLException {
+        // Bocker markerade som borttagna migreras inte
+        String live = " x JOIN book b ON b.book_id = x.book_id AND b.deleted_at IS NULL WHERE x.book_id BETWEEN ? AND ?)";
+        String sql = "SELECT " +
+                "(SELECT COUNT(*) FROM book WHERE book_id BETWEEN ? AND ? AND deleted_at IS NULL), " +
+                "(SELECT COUNT(*) FROM book_author" + live + ", " +
+                "(SELECT COUNT(*) FROM book_genre" + live + ", " +
+                "(SELECT COUNT(*) FROM rating" + live + ", " +
+                "(SELECT COALESCE(SUM(x.rating), 0) FROM rating" + live + ", " +
+                "(SELECT COUNT(*) FROM review" + live;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < 6; i++) {
+                stmt.setInt(2 * i + 1, range.from());
+                stmt.setInt(2 * i + 2, range.to());
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return new Totals(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5), rs.getLong(6));
+            }
+        }
+    }
+
+    private static Totals targetTotals(MongoCollection<Document> col, KeyRange range) {
+        Document totals = col.aggregate(List.of(
+                Aggregates.match(Filters.and(Filters.gte("book_id", range.from()), Filters.lte("book_id", range.to()))),
+                Aggregates.group(null,
+                        Accumulators.sum("books", 1),
+                        Accumulators.sum("authors", size("$authors")),
+                        Accumulators.sum("genres", size("$genres")),
+                        Accumulators.sum("ratings", size("$ratings")),
+                        Accumulators.sum("ratingSum", new Document("$sum", "$ratings.rating")),
+                        Accumulators.sum("reviews", size("$reviews"))))).first();
+        if (totals == null) {
+            return new Totals(0, 0, 0, 0, 0, 0);
+        }
+        return new Totals(number(totals, "books"), number(totals, "authors"), number(totals, "genres"),
+                number(totals, "ratings"), number(totals, "ratingSum"), number(totals, "reviews"));
+    }
+
+    private static Document size(String arrayField) {
+        return new Document("$size", new Document("$ifNull", List.of(arrayField, List.of())));
+    }
+
+    private static long number(Document doc, String field) {
+        Object v = doc.get(field);
+        return v instanceof Number n ? n.longValue() : 0;
+    }
+
+    // ---------------- HJALPMETODER ----------------
+
+    private static int scalar(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static void bulkWrite(MongoCollection<Document> col, List<WriteModel<Document>> writes) {
+        if (writes.isEmpty()) {
+            return;
+        }
+        try {
+            col.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            // Unordered: the other writes went through; the range will not verify
+            log.warn("{} of {} writes to {} failed, first: {}", e.getWriteErrors().size(), writes.size(),
+                    col.getNamespace().getCollectionName(), e.getWriteErrors().get(0).getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowMapper {
+        Document map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Inclusive book id range; its id names the checkpoint.
+     */
+    record KeyRange(int from, int to) {
+        String id() {
+            return "book:" + from + "-" + to;
+        }
+    }
+
+    record RangeResult(KeyRange range, boolean verified) {
+    }
+
+    /**
+     * The MySQL side of a range: its books as documents, keyed by book id, and its totals.
+     */
+    record RangeData(Map<Integer, Document> books, Totals totals) {
+    }
+
+    interface RangeSource {
+        RangeData read(KeyRange range) throws SQLException;
+    }
+
+    /**
+     * The MongoDB side of a range.
+     */
+    interface RangeTarget {
+
+        /**
+         * Upserts the documents by book_id.
+         */
+        void write(List<Document> books);
+
+        /**
+         * Removes the range's documents whose book id is not among {@code bookIds}.
+         */
+        void deleteExcept(KeyRange range, Set<Integer> bookIds);
+
+        Totals totals(KeyRange range);
+
+        void markVerified(KeyRange range, long books);
+    }
+
+    /**
+     * What must match between MySQL and MongoDB for a verified range.
+     */
+    record Totals(long books, long authors, long genres, long ratings, long ratingSum, long reviews) {
+    }
+
+    public record Report(int ranges, int migratedRanges, List<String> failedRanges,
+                         long books, long rows, double seconds) {
+        public double rowsPerSecond() {
+            return rows / seconds;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.OverloadedException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit that adapts to observed latency (AIMD).
+ * <p>
+ * Each completed call is a latency sample. While samples stay under the
+ * target latency and the limit is actually in use, the limit grows by about
+ * one per limit's worth of calls (additive increase). A sample over the target
+ * cuts the limit by {@link #BACKOFF_RATIO} (multiplicative decrease), at most
+ * once per target-latency interval so a single slow burst does not collapse it.
+ * <p>
+ * Calls over the limit wait in a bounded queue for a bounded time; beyond
+ * that they are rejected with {@link OverloadedException}, so request threads
+ * fail fast instead of piling up behind a slow database.
+ */
+public class AdaptiveLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double LATENCY_SMOOTHING = 0.1;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetLatencyNanos;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+
+    // Written under lock, volatile so metrics can read without it
+    private volatile double limit;
+    private volatile int inFlight;
+    private volatile int queued;
+    private volatile long rejected;
+    private volatile double smoothedLatencyMillis;
+    private long lastDecreaseNanos;
+
+    public AdaptiveLimiter(String name,
+                           int initialLimit,
+                           int minLimit,
+                           int maxLimit,
+                           long targetLatencyMillis,
+                           int maxQueued,
+                           long maxWaitMillis) {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("Invalid limit range " + minLimit + ".." + maxLimit);
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+        this.maxQueued = maxQueued;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * Runs the call within the limit.
+     * @throws OverloadedException if no slot became free within the queue budget.
+     */
+    public <T, E extends Exception> T execute(Call<T, E> call) throws E {
+        acquire();
+        long start = System.nanoTime();
+        try {
+            return call.run();
+        } finally {
+            release(System.nanoTime() - start);
+        }
+    }
+
+    private void acquire() {
+        lock.lock();
+        try {
+            if (inFlight < currentLimit()) {
+                inFlight++;
+                return;
+            }
+            if (queued >= maxQueued) {
+                throw reject();
+            }
+            queued++;
+            try {
+                long remaining = maxWaitNanos;
+                while (inFlight >= currentLimit()) {
+                    if (remaining <= 0) {
+                        throw reject();
+                    }
+                    remaining = slotFreed.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw reject();
+            } finally {
+                queued--;
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long latencyNanos) {
+        lock.lock();
+        try {
+            boolean wasAtLimit = inFlight >= currentLimit();
+            inFlight--;
+            double latencyMillis = latencyNanos / 1_000_000.0;
+            smoothedLatencyMillis = smoothedLatencyMillis == 0
+                    ? latencyMillis
+                    : smoothedLatencyMillis + LATENCY_SMOOTHING * (latencyMillis - smoothedLatencyMillis);
+
+            long now = System.nanoTime();
+            if (latencyNanos > targetLatencyNanos) {
+                if (now - lastDecreaseNanos >= targetLatencyNanos) {
+                    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                    lastDecreaseNanos = now;
+                }
+            } else if (wasAtLimit || queued > 0) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            if (queued > 0) {
+                slotFreed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    private OverloadedException reject() {
+        rejected++;
+        return new OverloadedException("Databasen ar overbelastad (" + name + ")", retryAfterSeconds());
+    }
+
+    /**
+     * Rough time until the current queue has drained, at least one second.
+     */
+    private long retryAfterSeconds() {
+        double drainMillis = smoothedLatencyMillis * (queued + 1) / Math.max(1, currentLimit());
+        return Math.max(1, (long) Math.ceil(drainMillis / 1000));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return currentLimit();
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public int getQueued() {
+        return queued;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public double getSmoothedLatencyMillis() {
+        return smoothedLatencyMillis;
+    }
+
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T run() throws E;
+    }
+}
@@ -0,0 +1,172 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Reads the {@code authors} and {@code genres} JSON columns of book_card
+ * ({@code [{"id":1,"name":"...","birth":"1961-05-01"}]}) with a streaming
+ * parser. Entries equal to the cached reference data come back as the
+ * shared instances, and their names and dates are compared in place instead
+ * of being turned into new objects.
+ */
+final class BookCardJson {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private BookCardJson() {
+    }
+
+    static List<Author> authors(String json, ReferenceData ref) throws IOException {
+        List<Author> out = new ArrayList<>(2);
+        if (json == null) {
+            return out;
+        }
+        try (JsonParser p = FACTORY.createParser(json)) {
+            if (p.nextToken() != JsonToken.START_ARRAY) {
+                return out;
+            }
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                int id = -1;
+                Author cached = null;
+                String name = null;
+                boolean sameName = false;
+                LocalDate birth = null;
+                boolean sameBirth = false;
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.currentName();
+                    JsonToken value = p.nextToken();
+                    switch (field) {
+                        case "id" -> {
+                            id = p.getIntValue();
+                            cached = ref.author(id);
+                        }
+                        case "name" -> {
+                            if (value == JsonToken.VALUE_NULL) {
+                                name = null;
+                            } else if (cached != null && textEquals(p, cached.getName())) {
+                                sameName = true;
+                            } else {
+                                name = p.getText();
+                            }
+                        }
+                        case "birth" -> {
+                            if (value == JsonToken.VALUE_NULL) {
+                                birth = null;
+                            } else if (cached != null && dateEquals(p, cached.getBirthDate())) {
+                                sameBirth = true;
+                            } else {
+                                birth = LocalDate.parse(p.getText());
+                            }
+                        }
+                        default -> p.skipChildren();
+                    }
+                }
+                // "id" normally comes first (MySQL orders keys by length); otherwise compare afterwards
+                if (cached != null && (sameName || Objects.equals(name, cached.getName()))
+                        && (sameBirth || Objects.equals(birth, cached.getBirthDate()))) {
+                    ref.recordHit();
+                    out.add(cached);
+                } else {
+                    ref.recordMiss();
+                    out.add(new Author(id, sameName ? cached.getName() : name,
+                            sameBirth ? cached.getBirthDate() : birth));
+                }
+            }
+        }
+        return out;
+    }
+
+    static List<Genre> genres(String json, ReferenceData ref) throws IOException {
+        List<Genre> out = new ArrayList<>(2);
+        if (json == null) {
+            return out;
+        }
+        try (JsonParser p = FACTORY.createParser(json)) {
+            if (p.nextToken() != JsonToken.START_ARRAY) {
+                return out;
+            }
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                int id = -1;
+                Genre cached = null;
+                String name = null;
+                boolean sameName = false;
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.currentName();
+                    JsonToken value = p.nextToken();
+                    if ("id".equals(field)) {
+                        id = p.getIntValue();
+                        cached = ref.genre(id);
+                    } else if ("name".equals(field) && value != JsonToken.VALUE_NULL) {
+                        if (cached != null && textEquals(p, cached.getName())) {
+                            sameName = true;
+                        } else {
+                            name = p.getText();
+                        }
+                    } else {
+                        p.skipChildren();
+                    }
+                }
+                if (cached != null && (sameName || Objects.equals(name, cached.getName()))) {
+                    ref.recordHit();
+                    out.add(cached);
+                } else {
+                    ref.recordMiss();
+                    out.add(new Genre(id, sameName ? cached.getName() : name));
+                }
+            }
+        }
+        return out;
+    }
+
+    private static boolean textEquals(JsonParser p, String expected) throws IOException {
+        if (expected == null) {
+            return false;
+        }
+        char[] chars = p.getTextCharacters();
+        int offset = p.getTextOffset();
+        int length = p.getTextLength();
+        if (length != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chars[offset + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // "yyyy-mm-dd" compared as digits, without parsing a LocalDate
+    private static boolean dateEquals(JsonParser p, LocalDate expected) throws IOException {
+        if (expected == null || p.getTextLength() != 10) {
+            return false;
+        }
+        char[] c = p.getTextCharacters();
+        int o = p.getTextOffset();
+        if (c[o + 4] != '-' || c[o + 7] != '-') {
+            return false;
+        }
+        return digits(c, o, 4) == expected.getYear()
+                && digits(c, o + 5, 2) == expected.getMonthValue()
+                && digits(c, o + 8, 2) == expected.getDayOfMonth();
+    }
+
+    private static int digits(char[] c, int from, int count) {
+        int v = 0;
+        for (int i = from; i < from + count; i++) {
+            if (c[i] < '0' || c[i] > '9') {
+                return -1;
+            }
+            v = v * 10 + (c[i] - '0');
+        }
+        return v;
+    }
+}
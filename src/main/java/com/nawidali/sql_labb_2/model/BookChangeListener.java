@@ -0,0 +1,37 @@
+package com.nawidali.sql_labb_2.model;
+
+/**
+ * Notified after a change to the catalog has been committed, e.g. to keep
+ * in-memory indexes in step with the database. Called on the thread that
+ * made the change, so implementations must be quick and thread-safe.
+ */
+public interface BookChangeListener {
+
+    /**
+     * @param book the book as returned by {@link IBooksDb#addBook}.
+     */
+    void bookAdded(Book book);
+
+    void bookDeleted(int bookId);
+
+    /**
+     * The book's ratings or reviews changed.
+     */
+    default void bookChanged(int bookId) {
+    }
+
+    /**
+     * A user rated the book (new rating or a changed one). Listeners that do
+     * not care who rated get it as {@link #bookChanged}.
+     */
+    default void bookRated(int bookId, int userId, int rating) {
+        bookChanged(bookId);
+    }
+
+    /**
+     * A user reviewed the book. Delivered as {@link #bookChanged} unless overridden.
+     */
+    default void bookReviewed(int bookId, int userId) {
+        bookChanged(bookId);
+    }
+}
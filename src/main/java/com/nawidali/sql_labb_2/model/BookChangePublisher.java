@@ -0,0 +1,81 @@
+package com.nawidali.sql_labb_2.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Fans change events out to every registered listener. A failing listener
+ * is logged and does not affect the others or the write that caused the event.
+ */
+public class BookChangePublisher implements BookChangeListener {
+
+    private static final Logger log = LoggerFactory.getLogger(BookChangePublisher.class);
+
+    private final List<BookChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(BookChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(BookChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void bookAdded(Book book) {
+        for (BookChangeListener listener : listeners) {
+            try {
+                listener.bookAdded(book);
+            } catch (RuntimeException e) {
+                log.warn("Listener {} failed on bookAdded({}): {}", listener, book.getBookId(), e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void bookDeleted(int bookId) {
+        for (BookChangeListener listener : listeners) {
+            try {
+                listener.bookDeleted(bookId);
+            } catch (RuntimeException e) {
+                log.warn("Listener {} failed on bookDeleted({}): {}", listener, bookId, e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void bookRated(int bookId, int userId, int rating) {
+        for (BookChangeListener listener : listeners) {
+            try {
+                listener.bookRated(bookId, userId, rating);
+            } catch (RuntimeException e) {
+                log.warn("Listener {} failed on bookRated({}): {}", listener, bookId, e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void bookReviewed(int bookId, int userId) {
+        for (BookChangeListener listener : listeners) {
+            try {
+                listener.bookReviewed(bookId, userId);
+            } catch (RuntimeException e) {
+                log.warn("Listener {} failed on bookReviewed({}): {}", listener, bookId, e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void bookChanged(int bookId) {
+        for (BookChangeListener listener : listeners) {
+            try {
+                listener.bookChanged(bookId);
+            } catch (RuntimeException e) {
+                log.warn("Listener {} failed on bookChanged({}): {}", listener, bookId, e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.nawidali.sql_labb_2.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compact binary form of a {@link Book} for {@link OffHeapBookCache}.
+ * <p>
+ * Layout: book id, ISBN, title, publication day, average rating, then the
+ * authors (id, name, birth day) and genres (id, name). Strings are UTF-8
+ * with an unsigned 16-bit length, {@code 0xFFFF} meaning null. Days are
+ * epoch days, {@link Integer#MIN_VALUE} meaning null.
+ */
+final class BookCodec {
+
+    private static final int NULL_STRING = 0xFFFF;
+    private static final int MAX_STRING_BYTES = NULL_STRING - 1;
+    private static final int NULL_DAY = Integer.MIN_VALUE;
+
+    private BookCodec() {
+    }
+
+    /**
+     * @return the encoded book, or null if a field is too large to encode.
+     */
+    static byte[] encode(Book book) {
+        List<Author> authors = book.getAuthors();
+        List<Genre> genres = book.getGenres();
+        if (authors.size() > Short.MAX_VALUE || genres.size() > Short.MAX_VALUE) {
+            return null;
+        }
+        byte[] isbn = utf8(book.getIsbn());
+        byte[] title = utf8(book.getTitle());
+        byte[][] authorNames = new byte[authors.size()][];
+        byte[][] genreNames = new byte[genres.size()][];
+
+        int size = 4 + stringSize(isbn) + stringSize(title) + 4 + 8 + 2 + 2;
+        for (int i = 0; i < authorNames.length; i++) {
+            authorNames[i] = utf8(authors.get(i).getName());
+            size += 4 + stringSize(authorNames[i]) + 4;
+        }
+        for (int i = 0; i < genreNames.length; i++) {
+            genreNames[i] = utf8(genres.get(i).getName());
+            size += 4 + stringSize(genreNames[i]);
+        }
+        if (tooLong(isbn) || tooLong(title) || anyTooLong(authorNames) || anyTooLong(genreNames)) {
+            return null;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(book.getBookId());
+        putString(out, isbn);
+        putString(out, title);
+        out.putInt(book.getPublished() == null ? NULL_DAY : (int) book.getPublished().toLocalDate().toEpochDay());
+        out.putDouble(book.getAverageRating());
+        out.putShort((short) authors.size());
+        for (int i = 0; i < authorNames.length; i++) {
+            Author a = authors.get(i);
+            out.putInt(a.getAuthorId());
+            putString(out, authorNames[i]);
+            out.putInt(a.getBirthDate() == null ? NULL_DAY : (int) a.getBirthDate().toEpochDay());
+        }
+        out.putShort((short) genres.size());
+        for (int i = 0; i < genreNames.length; i++) {
+            out.putInt(genres.get(i).getGenreId());
+            putString(out, genreNames[i]);
+        }
+        return out.array();
+    }
+
+    /**
+     * Decodes the book starting at {@code offset}; reads with absolute gets,
+     * so concurrent decoders may share the buffer.
+     */
+    static Book decode(ByteBuffer in, int offset) {
+        return decode(in, offset, null);
+    }
+
+    /**
+     * As {@link #decode(ByteBuffer, int)}, but authors and genres that match
+     * {@code ref} are returned as its shared instances, without decoding their names.
+     */
+    static Book decode(ByteBuffer in, int offset, ReferenceData ref) {
+        Reader r = new Reader(in, offset);
+        int bookId = r.readInt();
+        String isbn = r.readString();
+        String title = r.readString();
+        int publishedDay = r.readInt();
+        double rating = r.readDouble();
+        int authorCount = r.readShort();
+        List<Author> authors = new ArrayList<>(authorCount);
+        for (int i = 0; i < authorCount; i++) {
+            int id = r.readInt();
+            Author cached = ref != null ? ref.author(id) : null;
+            String name = r.readString(cached != null ? cached.getName() : null);
+            int birthDay = r.readInt();
+            LocalDate birthDate = birthDay == NULL_DAY ? null : LocalDate.ofEpochDay(birthDay);
+            if (cached != null && name == cached.getName() && Objects.equals(birthDate, cached.getBirthDate())) {
+                ref.recordHit();
+                authors.add(cached);
+            } else {
+                if (ref != null) {
+                    ref.recordMiss();
+                }
+                authors.add(new Author(id, name, birthDate));
+            }
+        }
+        int genreCount = r.readShort();
+        List<Genre> genres = new ArrayList<>(genreCount);
+        for (int i = 0; i < genreCount; i++) {
+            int id = r.readInt();
+            Genre cached = ref != null ? ref.genre(id) : null;
+            String name = r.readString(cached != null ? cached.getName() : null);
+            if (cached != null && name == cached.getName()) {
+                ref.recordHit();
+                genres.add(cached);
+            } else {
+                if (ref != null) {
+                    ref.recordMiss();
+                }
+                genres.add(new Genre(id, name));
+            }
+        }
+        Date published = publishedDay == NULL_DAY ? null : Date.valueOf(LocalDate.ofEpochDay(publishedDay));
+        return new Book(bookId, isbn, title, published, authors, genres, rating);
+    }
+
+    /**
+     * Reads only the ISBN of the book at {@code offset}, to confirm a hash match.
+     */
+    static String decodeIsbn(ByteBuffer in, int offset) {
+        return new Reader(in, offset + 4).readString();
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringSize(byte[] s) {
+        return 2 + (s == null ? 0 : s.length);
+    }
+
+    private static boolean tooLong(byte[] s) {
+        return s != null && s.length > MAX_STRING_BYTES;
+    }
+
+    private static boolean anyTooLong(byte[][] strings) {
+        for (byte[] s : strings) {
+            if (tooLong(s)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void putString(ByteBuffer out, byte[] s) {
+        if (s == null) {
+            out.putShort((short) NULL_STRING);
+            return;
+        }
+        out.putShort((short) s.length);
+        out.put(s);
+    }
+
+    private static final class Reader {
+        private final ByteBuffer in;
+        private int pos;
+
+        private Reader(ByteBuffer in, int pos) {
+            this.in = in;
+            this.pos = pos;
+        }
+
+        int readInt() {
+            int v = in.getInt(pos);
+            pos += 4;
+            return v;
+        }
+
+        int readShort() {
+            int v = in.getShort(pos);
+            pos += 2;
+            return v;
+        }
+
+        double readDouble() {
+            double v = in.getDouble(pos);
+            pos += 8;
+            return v;
+        }
+
+        String readString() {
+            return readString(null);
+        }
+
+        /**
+         * Returns {@code candidate} itself when the stored string equals it and
+         * is ASCII, saving the decode; otherwise decodes a new string.
+         */
+        String readString(String candidate) {
+            int len = Short.toUnsignedInt(in.getShort(pos));
+            pos += 2;
+            if (len == NULL_STRING) {
+                return null;
+            }
+            if (candidate != null && asciiEquals(candidate, len)) {
+                pos += len;
+                return candidate;
+            }
+            byte[] bytes = new byte[len];
+            in.get(pos, bytes);
+            pos += len;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private boolean asciiEquals(String candidate, int len) {
+            if (candidate.length() != len) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                char c = candidate.charAt(i);
+                if (c >= 0x80 || in.get(pos + i) != (byte) c) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.nawidali.sql_labb_2.model;
+
+import org.bson.Document;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Builds books in the embedded document shape that {@link BooksDbMongo}
+ * reads and writes (authors, genres, ratings, reviews, {@code created_by},
+ * {@code average_rating} and {@code rating_counts} in one document) from the normalized MySQL
+ * tables. Used by the MySQL to MongoDB migration and by {@link BookProjector}.
+ * <p>
+ * The caller owns the connection; for a consistent result the reads should
+ * run in one REPEATABLE READ transaction.
+ */
+public class BookDocumentReader {
+
+    private final LongAdder rowsRead;
+
+    /**
+     * @param rowsRead incremented for every row read, for progress reporting.
+     */
+    public BookDocumentReader(LongAdder rowsRead) {
+        this.rowsRead = rowsRead;
+    }
+
+    /**
+     * @return the books with ids in {@code [from, to]}, by book id in id order.
+     */
+    public Map<Integer, Document> readRange(Connection conn, int from, int to) throws SQLException {
+        return read(conn, column -> column + " BETWEEN ? AND ?", stmt -> {
+            stmt.setInt(1, from);
+            stmt.setInt(2, to);
+        });
+    }
+
+    /**
+     * @return the books that still exist (and are not marked deleted) among {@code bookIds}, by book id.
+     */
+    public Map<Integer, Document> readIds(Connection conn, Collection<Integer> bookIds) throws SQLException {
+        if (bookIds.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+        List<Integer> ids = List.copyOf(bookIds);
+        String in = " IN (" + String.join(",", Collections.nCopies(ids.size(), "?")) + ")";
+        return read(conn, column -> column + in, stmt -> {
+            for (int i = 0; i < ids.size(); i++) {
+                stmt.setInt(i + 1, ids.get(i));
+            }
+        });
+    }
+
+    private Map<Integer, Document> read(Connection conn, Condition where, Binder params) throws SQLException {
+        Map<Integer, Document> books = new LinkedHashMap<>();
+        forEachRow(conn, "SELECT b.book_id, b.isbn, b.title, b.published, b.created_by_user_id, u.username " +
+                "FROM book b LEFT JOIN app_user u ON u.user_id = b.created_by_user_id " +
+                "WHERE " + where.on("b.book_id") + " AND b.deleted_at IS NULL ORDER BY b.book_id", params, rs -> {
+            int bookId = rs.getInt("book_id");
+            Document doc = new Document("book_id", bookId)
+                    .append("isbn", rs.getString("isbn"))
+                    .append("title", rs.getString("title"));
+            Date published = toDate(rs.getDate("published"));
+            if (published != null) {
+                doc.append("published", published);
+            }
+            int creator = rs.getInt("created_by_user_id");
+            if (!rs.wasNull()) {
+                doc.append("created_by", new Document("user_id", creator).append("username", rs.getString("username")));
+            }
+            doc.append("authors", new ArrayList<Document>())
+                    .append("genres", new ArrayList<Document>())
+                    .append("ratings", new ArrayList<Document>())
+                    .append("reviews", new ArrayList<Document>());
+            books.put(bookId, doc);
+        });
+        if (books.isEmpty()) {
+            return books;
+        }
+        forEachRow(conn, "SELECT ba.book_id, a.author_id, a.name, a.birth_date FROM book_author ba " +
+                "JOIN author a ON a.author_id = ba.author_id " +
+                "WHERE " + where.on("ba.book_id") + " ORDER BY ba.book_id, a.author_id", params, rs ->
+                child(books, rs, "authors", new Document("author_id", rs.getInt("author_id"))
+                        .append("name", rs.getString("name"))
+                        .append("birth_date", toDate(rs.getDate("birth_date")))));
+        forEachRow(conn, "SELECT bg.book_id, g.genre_id, g.name FROM book_genre bg " +
+                "JOIN genre g ON g.genre_id = bg.genre_id " +
+                "WHERE " + where.on("bg.book_id") + " ORDER BY bg.book_id, g.genre_id", params, rs ->
+                child(books, rs, "genres", new Document("genre_id", rs.getInt("genre_id"))
+                        .append("name", rs.getString("name"))));
+        forEachRow(conn, "SELECT book_id, user_id, rating, rated_at FROM rating " +
+                "WHERE " + where.on("book_id") + " ORDER BY book_id, rating_id", params, rs ->
+                child(books, rs, "ratings", new Document("user_id", rs.getInt("user_id"))
+                        .append("rating", rs.getInt("rating"))
+                        .append("rated_at", toDate(rs.getDate("rated_at")))));
+        forEachRow(conn, "SELECT r.book_id, r.review_id, r.user_id, u.username, r.review_text, r.review_date " +
+                "FROM review r JOIN app_user u ON u.user_id = r.user_id " +
+                "WHERE " + where.on("r.book_id") + " ORDER BY r.book_id, r.review_id", params, rs ->
+                child(books, rs, "reviews", new Document("review_id", rs.getInt("review_id"))
+                        .append("user_id", rs.getInt("user_id"))
+                        .append("username", rs.getString("username"))
+                        .append("review_text", rs.getString("review_text"))
+                        .append("review_date", toDate(rs.getDate("review_date")))));
+        for (Document doc : books.values()) {
+            doc.put("average_rating", averageRating(doc.getList("ratings", Document.class)));
+            doc.put("rating_counts", ratingCounts(doc.getList("ratings", Document.class)));
+        }
+        return books;
+    }
+
+    private static void child(Map<Integer, Document> books, ResultSet rs, String field, Document child)
+            throws SQLException {
+        Document book = books.get(rs.getInt("book_id"));
+        if (book != null) {
+            book.getList(field, Document.class).add(child);
+        }
+    }
+
+    /**
+     * Same value as the server-side $avg in {@code BooksDbMongo.rateBook}.
+     */
+    public static double averageRating(List<Document> ratings) {
+        if (ratings == null || ratings.isEmpty()) {
+            return 0.0;
+        }
+        long sum = 0;
+        for (Document r : ratings) {
+            sum += r.getInteger("rating");
+        }
+        return (double) sum / ratings.size();
+    }
+
+    /**
+     * Number of ratings per value, keyed "1" to "5", as {@code BooksDbMongo.rateBook} maintains it.
+     */
+    public static Document ratingCounts(List<Document> ratings) {
+        int[] counts = new int[5];
+        if (ratings != null) {
+            for (Document r : ratings) {
+                counts[r.getInteger("rating") - 1]++;
+            }
+        }
+        Document doc = new Document();
+        for (int i = 0; i < counts.length; i++) {
+            doc.append(String.valueOf(i + 1), counts[i]);
+        }
+        return doc;
+    }
+
+    /**
+     * Dates are stored as UTC midnight, like the seed data and BooksDbMongo reviews.
+     */
+    public static Date toDate(java.sql.Date date) {
+        if (date == null) {
+            return null;
+        }
+        LocalDate day = date.toLocalDate();
+        return Date.from(day.atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+
+    private void forEachRow(Connection conn, String sql, Binder params, RowHandler handler) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            params.bind(stmt);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    handler.handle(rs);
+                    rowsRead.increment();
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Condition {
+        String on(String bookIdColumn);
+    }
+
+    @FunctionalInterface
+    private interface Binder {
+        void bind(PreparedStatement stmt) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface RowHandler {
+        void handle(ResultSet rs) throws SQLException;
+    }
+}
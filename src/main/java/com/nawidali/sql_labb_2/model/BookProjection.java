@@ -0,0 +1,96 @@
+package com.nawidali.sql_labb_2.model;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Anger vilka falt av en bok som ska hamtas fran databasen.
+ * bookId hamtas alltid. Falt som inte efterfragas lamnas tomma i Book
+ * och motsvarande joins/delfragor kors inte.
+ */
+public final class BookProjection {
+
+    public enum Field {
+        ISBN("isbn"),
+        TITLE("title"),
+        PUBLISHED("published"),
+        AUTHORS("authors"),
+        GENRES("genres"),
+        AVERAGE_RATING("averageRating");
+
+        private final String jsonName;
+
+        Field(String jsonName) {
+            this.jsonName = jsonName;
+        }
+
+        public String getJsonName() {
+            return jsonName;
+        }
+    }
+
+    public static final BookProjection ALL = new BookProjection(EnumSet.allOf(Field.class));
+
+    private final Set<Field> fields;
+
+    private BookProjection(Set<Field> fields) {
+        this.fields = fields;
+    }
+
+    public static BookProjection of(Field first, Field... rest) {
+        return new BookProjection(EnumSet.of(first, rest));
+    }
+
+    /**
+     * Tolkar en kommaseparerad lista med faltnamn (samma namn som i JSON-svaret).
+     * "bookId" accepteras men ar alltid med.
+     *
+     * @throws IllegalArgumentException vid okant faltnamn
+     */
+    public static BookProjection parse(String csv) {
+        if (csv == null || csv.isBlank()) {
+            return ALL;
+        }
+        EnumSet<Field> selected = EnumSet.noneOf(Field.class);
+        for (String raw : csv.split(",")) {
+            String name = raw.trim();
+            if (name.isEmpty() || name.equals("bookId")) {
+                continue;
+            }
+            selected.add(fieldByJsonName(name));
+        }
+        return new BookProjection(selected);
+    }
+
+    private static Field fieldByJsonName(String name) {
+        for (Field f : Field.values()) {
+            if (f.jsonName.equalsIgnoreCase(name)) {
+                return f;
+            }
+        }
+        throw new IllegalArgumentException("Unknown field: " + name);
+    }
+
+    public boolean includes(Field field) {
+        return fields.contains(field);
+    }
+
+    public boolean isAll() {
+        return fields.size() == Field.values().length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof BookProjection other && fields.equals(other.fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return fields.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return fields.toString();
+    }
+}
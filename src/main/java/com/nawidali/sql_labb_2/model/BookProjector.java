@@ -0,0 +1,414 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps MongoDB book documents in step with MySQL for the CQRS mode (see
+ * {@link CqrsBooksDb}). MySQL writes a {@code book_outbox} row per changed
+ * book in the change's transaction; this projector polls those rows, reads
+ * the changed books from the normalized tables with {@link BookDocumentReader}
+ * and replaces their documents (or deletes them, for deleted books).
+ * <p>
+ * The position is checkpointed in {@code projection_checkpoint}. Without a
+ * checkpoint, or when the outbox has been pruned past it, every book is
+ * projected again. Outbox ids are handed out at insert time but become
+ * visible at commit, so a lower id can appear after a higher one; the
+ * projector keeps re-reading from below such gaps until they fill or are
+ * older than {@link #GAP_GRACE_MILLIS} (rolled back).
+ * <p>
+ * {@link #caughtUpAt()} is the start time of the last poll after which
+ * nothing was pending: every change committed before it is in MongoDB.
+ * Every instance starts a projector, but only the one holding a MySQL named
+ * lock projects; the others read its progress from the checkpoint, so their
+ * view of the lag also depends on clock skew between instances.
+ */
+public class BookProjector {
+
+    private static final Logger log = LoggerFactory.getLogger(BookProjector.class);
+
+    static final String CHECKPOINTS = "projection_checkpoint";
+    private static final String CHECKPOINT_ID = "book_outbox";
+    private static final String LOCK_NAME = "books.book_projector";
+    private static final String OLDEST_EVENT = "SELECT COALESCE(MIN(event_id), 0) FROM book_outbox";
+    private static final int POLL_LIMIT = 500;
+    private static final int REBUILD_PAGE = 500;
+    static final long GAP_GRACE_MILLIS = 5_000;
+    private static final long PRUNE_INTERVAL_MILLIS = 60_000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+
+    private final String mysqlUrl;
+    private final String mongoUrl;
+    private final long pollMillis;
+    private final int retentionMinutes;
+    private final LongSupplier clock;
+    private final BookDocumentReader reader = new BookDocumentReader(new LongAdder());
+
+    private volatile boolean running;
+    private volatile long caughtUpAt;
+    private Thread poller;
+
+    private final LongAdder projected = new LongAdder();
+    private final LongAdder deleted = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    /**
+     * @param retentionMinutes outbox rows older than this, and already projected, are removed.
+     */
+    public BookProjector(String mysqlUrl, String mongoUrl, long pollMillis, int retentionMinutes) {
+        this(mysqlUrl, mongoUrl, pollMillis, retentionMinutes, System::currentTimeMillis);
+    }
+
+    BookProjector(String mysqlUrl, String mongoUrl, long pollMillis, int retentionMinutes, LongSupplier clock) {
+        this.mysqlUrl = mysqlUrl;
+        this.mongoUrl = mongoUrl;
+        this.pollMillis = pollMillis;
+        this.retentionMinutes = retentionMinutes;
+        this.clock = clock;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        poller = new Thread(this::run, "book-projector");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (poller != null) {
+            poller.interrupt();
+            poller = null;
+        }
+    }
+
+    /**
+     * @return when the projection last had nothing pending (epoch millis), 0 if never.
+     */
+    public long caughtUpAt() {
+        return caughtUpAt;
+    }
+
+    /**
+     * True if every change committed more than {@code maxLagMillis} ago is projected.
+     */
+    public boolean isWithin(long maxLagMillis) {
+        long at = caughtUpAt;
+        return at > 0 && clock.getAsLong() - at <= maxLagMillis;
+    }
+
+    private void run() {
+        long retryDelay = pollMillis;
+        while (running) {
+            try (Connection conn = DriverManager.getConnection(mysqlUrl);
+                 MongoClient client = MongoClients.create(mongoUrl)) {
+                MongoDatabase mongo = client.getDatabase(BooksDbMongo.DB_NAME);
+                MongoCollection<Document> books = mongo.getCollection("book");
+                MongoCollection<Document> checkpoints = mongo.getCollection(CHECKPOINTS);
+                retryDelay = pollMillis;
+                while (running && !tryLock(conn)) {
+                    follow(checkpoints);
+                    Thread.sleep(pollMillis);
+                }
+                if (!running) {
+                    return;
+                }
+                log.info("Book projection running in this instance");
+                OutboxCursor cursor = new OutboxCursor(startPosition(conn, books, checkpoints), GAP_GRACE_MILLIS);
+                long lastPrune = 0;
+                while (running) {
+                    long pollStart = clock.getAsLong();
+                    int rows = poll(conn, books, cursor, pollStart);
+                    if (rows < POLL_LIMIT && !cursor.hasGaps()) {
+                        caughtUpAt = pollStart;
+                    }
+                    saveCheckpoint(checkpoints, cursor.watermark());
+                    if (pollStart - lastPrune >= PRUNE_INTERVAL_MILLIS) {
+                        prune(conn, cursor.watermark());
+                        lastPrune = pollStart;
+                        if (cursor.watermark() < scalar(conn, OLDEST_EVENT) - 1) {
+                            // Pruned elsewhere (invalidation transport) before being projected
+                            cursor = new OutboxCursor(startPosition(conn, books, checkpoints), GAP_GRACE_MILLIS);
+                        }
+                    }
+                    if (rows < POLL_LIMIT) {
+                        Thread.sleep(pollMillis);
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                log.warn("Book projection failed, retrying in {} ms: {}", retryDelay, e.getMessage());
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                Thread.sleep(retryDelay);
+            } catch (InterruptedException e) {
+                return;
+            }
+            retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MILLIS);
+        }
+    }
+
+    // ---------------- START ----------------
+
+    /**
+     * One instance projects; the lock is held by its MySQL session and
+     * released when that connection closes, so another instance takes over.
+     */
+    private static boolean tryLock(Connection conn) throws SQLException {
+        return scalar(conn, "SELECT GET_LOCK('" + LOCK_NAME + "', 0)") == 1;
+    }
+
+    /**
+     * Instances that do not project take the progress from the checkpoint.
+     */
+    private void follow(MongoCollection<Document> checkpoints) {
+        Document checkpoint = checkpoints.find(Filters.eq("_id", CHECKPOINT_ID)).first();
+        Number at = checkpoint != null ? checkpoint.get("caught_up_at", Number.class) : null;
+        caughtUpAt = at != null ? at.longValue() : 0;
+    }
+
+    /**
+     * Resumes after the checkpoint, or projects everything and starts at the
+     * outbox head read before the rebuild (changes during it are replayed).
+     */
+    private long startPosition(Connection conn, MongoCollection<Document> books,
+                               MongoCollection<Document> checkpoints) throws SQLException {
+        Document checkpoint = checkpoints.find(Filters.eq("_id", CHECKPOINT_ID)).first();
+        long oldest = scalar(conn, OLDEST_EVENT);
+        if (checkpoint != null) {
+            long position = checkpoint.get("event_id", Number.class).longValue();
+            if (oldest == 0 || position >= oldest - 1) {
+                log.info("Book projection resuming after outbox event {}", position);
+                return position;
+            }
+            log.warn("Outbox was pruned past the projection checkpoint {}, projecting all books", position);
+        }
+        long head = scalar(conn, "SELECT COALESCE(MAX(event_id), 0) FROM book_outbox");
+        rebuild(conn, books);
+        saveCheckpoint(checkpoints, head);
+        return head;
+    }
+
+    private void rebuild(Connection conn, MongoCollection<Document> books) throws SQLException {
+        long began = clock.getAsLong();
+        int min = (int) scalar(conn, "SELECT COALESCE(MIN(book_id), 0) FROM book");
+        int max = (int) scalar(conn, "SELECT COALESCE(MAX(book_id), 0) FROM book");
+        long count = 0;
+        for (long start = min; start <= max && max > 0; start += REBUILD_PAGE) {
+            int from = (int) start;
+            int to = (int) Math.min(max, start + REBUILD_PAGE - 1);
+            Map<Integer, Document> docs = readConsistent(conn, c -> reader.readRange(c, from, to));
+            write(books, docs);
+            // Documents in this id window without a MySQL book are stale
+            books.deleteMany(Filters.and(Filters.gte("book_id", from), Filters.lte("book_id", to),
+                    Filters.nin("book_id", docs.keySet())));
+            count += docs.size();
+        }
+        books.deleteMany(Filters.or(Filters.gt("book_id", max), Filters.lt("book_id", min)));
+        rebuilds.increment();
+        log.info("Projected {} books in {} ms", count, clock.getAsLong() - began);
+    }
+
+    // ---------------- PROJEKTION ----------------
+
+    private int poll(Connection conn, MongoCollection<Document> books, OutboxCursor cursor, long now)
+            throws SQLException {
+        Set<Integer> changed = new LinkedHashSet<>();
+        int rows = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT event_id, book_id FROM book_outbox WHERE event_id > ? ORDER BY event_id LIMIT ?")) {
+            stmt.setLong(1, cursor.watermark());
+            stmt.setInt(2, POLL_LIMIT);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows++;
+                    if (cursor.markSeen(rs.getLong(1))) {
+                        changed.add(rs.getInt(2));
+                    }
+                }
+            }
+        }
+        if (!changed.isEmpty()) {
+            Map<Integer, Document> docs = readConsistent(conn, c -> reader.readIds(c, changed));
+            write(books, docs);
+            List<Integer> gone = new ArrayList<>();
+            for (Integer id : changed) {
+                if (!docs.containsKey(id)) {
+                    gone.add(id);
+                }
+            }
+            if (!gone.isEmpty()) {
+                deleted.add(books.deleteMany(Filters.in("book_id", gone)).getDeletedCount());
+            }
+        }
+        cursor.settle(now);
+        return rows;
+    }
+
+    private void write(MongoCollection<Document> books, Map<Integer, Document> docs) {
+        if (docs.isEmpty()) {
+            return;
+        }
+        List<WriteModel<Document>> writes = new ArrayList<>(docs.size());
+        for (Document doc : docs.values()) {
+            writes.add(new ReplaceOneModel<>(Filters.eq("book_id", doc.getInteger("book_id")), doc,
+                    new ReplaceOptions().upsert(true)));
+        }
+        books.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+        projected.add(docs.size());
+    }
+
+    /**
+     * Reads a book's rows in one snapshot, so a document never mixes two versions.
+     */
+    private static Map<Integer, Document> readConsistent(Connection conn, Read read) throws SQLException {
+        conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        conn.setAutoCommit(false);
+        try {
+            return read.apply(conn);
+        } finally {
+            conn.commit();
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private void saveCheckpoint(MongoCollection<Document> checkpoints, long eventId) {
+        checkpoints.replaceOne(Filters.eq("_id", CHECKPOINT_ID),
+                new Document("_id", CHECKPOINT_ID).append("event_id", eventId).append("caught_up_at", caughtUpAt),
+                new ReplaceOptions().upsert(true));
+    }
+
+    private void prune(Connection conn, long projectedUpTo) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "DELETE FROM book_outbox WHERE event_id <= ? AND created_at < NOW() - INTERVAL ? MINUTE LIMIT 10000")) {
+            stmt.setLong(1, projectedUpTo);
+            stmt.setInt(2, retentionMinutes);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static long scalar(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // ---------------- METRIK ----------------
+
+    /**
+     * @return ms since the projection last had nothing pending, -1 before the first catch-up.
+     */
+    public long getLagMillis() {
+        long at = caughtUpAt;
+        return at > 0 ? Math.max(0, clock.getAsLong() - at) : -1;
+    }
+
+    public long getProjected() {
+        return projected.sum();
+    }
+
+    public long getDeleted() {
+        return deleted.sum();
+    }
+
+    public long getRebuilds() {
+        return rebuilds.sum();
+    }
+
+    @FunctionalInterface
+    private interface Read {
+        Map<Integer, Document> apply(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Position in the outbox: every event up to {@link #watermark()} is
+     * projected, plus the ids in {@code seen} above it. Ids missing below
+     * the highest seen id are gaps; the watermark stops below the first gap
+     * until the gap is filled or has been open for the grace period.
+     */
+    static final class OutboxCursor {
+
+        // A jump larger than this is not tracked id by id (e.g. after a restore)
+        private static final int MAX_TRACKED_GAP = 10_000;
+
+        private final long graceMillis;
+        private long watermark;
+        private final TreeSet<Long> seen = new TreeSet<>();
+        private final TreeMap<Long, Long> gaps = new TreeMap<>();
+
+        OutboxCursor(long watermark, long graceMillis) {
+            this.watermark = watermark;
+            this.graceMillis = graceMillis;
+        }
+
+        long watermark() {
+            return watermark;
+        }
+
+        boolean hasGaps() {
+            return !gaps.isEmpty();
+        }
+
+        /**
+         * @return true the first time an event is seen.
+         */
+        boolean markSeen(long eventId) {
+            if (eventId <= watermark || !seen.add(eventId)) {
+                return false;
+            }
+            gaps.remove(eventId);
+            return true;
+        }
+
+        /**
+         * Records new gaps, drops expired ones and advances the watermark.
+         */
+        void settle(long now) {
+            if (seen.isEmpty()) {
+                return;
+            }
+            long max = seen.last();
+            if (max - watermark <= MAX_TRACKED_GAP) {
+                for (long id = watermark + 1; id < max; id++) {
+                    if (!seen.contains(id)) {
+                        gaps.putIfAbsent(id, now);
+                    }
+                }
+            }
+            gaps.values().removeIf(openedAt -> now - openedAt >= graceMillis);
+            watermark = gaps.isEmpty() ? max : gaps.firstKey() - 1;
+            seen.headSet(watermark, true).clear();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.InsertException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Removes the data of deleted books in the background. Every interval each
+ * registered backend removes at most {@code batchRows} rows or documents, so
+ * the purge never holds many locks at once and its rate is bounded.
+ * <p>
+ * Backends are registered before they connect; until they are connected a
+ * round simply fails and is retried.
+ */
+public class BookPurger {
+
+    private static final Logger log = LoggerFactory.getLogger(BookPurger.class);
+
+    private final int batchRows;
+    private final long intervalMillis;
+    private final List<DeletedBookPurge> backends = new CopyOnWriteArrayList<>();
+    private final LongAdder purgedRows = new LongAdder();
+
+    private ScheduledExecutorService scheduler;
+    private volatile boolean failing;
+
+    /**
+     * @param batchRows      rows or documents removed per backend and interval; 0 disables the purge.
+     * @param intervalMillis pause between rounds.
+     */
+    public BookPurger(int batchRows, long intervalMillis) {
+        this.batchRows = batchRows;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public void register(DeletedBookPurge backend) {
+        backends.add(backend);
+    }
+
+    public synchronized void start() {
+        if (scheduler != null || batchRows <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "book-purger");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::purgeOnce, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Runs one round over all backends.
+     * @return rows or documents removed.
+     */
+    int purgeOnce() {
+        int removed = 0;
+        boolean failed = false;
+        for (DeletedBookPurge backend : backends) {
+            try {
+                removed += backend.purgeDeletedBooks(batchRows);
+            } catch (InsertException | RuntimeException e) {
+                failed = true;
+                if (!failing) {
+                    log.warn("Purging deleted books failed, retrying every {} ms: {}", intervalMillis, e.getMessage());
+                }
+            }
+        }
+        if (failing && !failed) {
+            log.info("Purging deleted books resumed");
+        }
+        failing = failed;
+        purgedRows.add(removed);
+        return removed;
+    }
+
+    public long getPurgedRows() {
+        return purgedRows.sum();
+    }
+}
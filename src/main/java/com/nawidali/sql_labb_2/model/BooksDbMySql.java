@@ -3,7 +3,10 @@ package com.nawidali.sql_labb_2.model;
 import com.nawidali.sql_labb_2.model.exceptions.ConnectionException;
 import com.nawidali.sql_labb_2.model.exceptions.InsertException;
 import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.DriverManager;
@@ -12,29 +15,181 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * JDBC-implementation av IBooksDb mot MySQL.
+ * <p>
+ * Borttagna bocker markeras med book.deleted_at och syns inte i nagon lasning;
+ * betyg, recensioner och kopplingar tas bort senare i sma satser
+ * ({@link #purgeDeletedBooks}, se BookPurger).
+ * <p>
+ * Lasningar delar en anslutning i autocommit. Transaktioner kors var for sig
+ * pa egna anslutningar ur en liten pool, eftersom en JDBC-session bara har en
+ * transaktion at gangen: pa den delade anslutningen skulle en annan trads
+ * commit eller rollback avsluta var transaktion halvvags.
  */
-public class BooksDbMySql implements IBooksDb {
+public class BooksDbMySql implements IBooksDb, ReplicationLagProbe, DeletedBookPurge {
+
+    private static final Logger log = LoggerFactory.getLogger(BooksDbMySql.class);
+
+    public enum BookCardRebuild { NEVER, IF_INCOMPLETE, ALWAYS }
+
+    /**
+     * Skiljer namnen i book_card.author_key och genre_key at. Namn innehaller
+     * aldrig radbrytningar, sa en sokterm utan radbrytning matchar bara inom ett namn.
+     */
+    static final String KEY_SEPARATOR = "\n";
+
+    /**
+     * Bygger om kortet for bocker ur bastabellerna; anvands bade vid skrivning
+     * och vid ombyggnad. Villkoret pa b.book_id laggs till av anroparen.
+     */
+    private static final String UPSERT_CARD_SQL =
+            "INSERT INTO book_card (book_id, isbn, title, published, authors, genres, author_key, genre_key, " +
+                    "  rating_count, rating_sum, rating_1, rating_2, rating_3, rating_4, rating_5) " +
+                    "SELECT b.book_id, b.isbn, b.title, b.published, " +
+                    "  (SELECT COALESCE(JSON_ARRAYAGG(JSON_OBJECT('id', a.author_id, 'name', a.name, 'birth', a.birth_date)), JSON_ARRAY()) " +
+                    "     FROM book_author ba JOIN author a ON a.author_id = ba.author_id WHERE ba.book_id = b.book_id), " +
+                    "  (SELECT COALESCE(JSON_ARRAYAGG(JSON_OBJECT('id', g.genre_id, 'name', g.name)), JSON_ARRAY()) " +
+                    "     FROM book_genre bg JOIN genre g ON g.genre_id = bg.genre_id WHERE bg.book_id = b.book_id), " +
+                    "  (SELECT COALESCE(LOWER(GROUP_CONCAT(a.name SEPARATOR '" + KEY_SEPARATOR + "')), '') " +
+                    "     FROM book_author ba JOIN author a ON a.author_id = ba.author_id WHERE ba.book_id = b.book_id), " +
+                    "  (SELECT COALESCE(LOWER(GROUP_CONCAT(g.name SEPARATOR '" + KEY_SEPARATOR + "')), '') " +
+                    "     FROM book_genre bg JOIN genre g ON g.genre_id = bg.genre_id WHERE bg.book_id = b.book_id), " +
+                    "  (SELECT COUNT(*) FROM rating r WHERE r.book_id = b.book_id), " +
+                    "  (SELECT COALESCE(SUM(r.rating), 0) FROM rating r WHERE r.book_id = b.book_id), " +
+                    "  (SELECT COUNT(*) FROM rating r WHERE r.book_id = b.book_id AND r.rating = 1), " +
+                    "  (SELECT COUNT(*) FROM rating r WHERE r.book_id = b.book_id AND r.rating = 2), " +
+                    "  (SELECT COUNT(*) FROM rating r WHERE r.book_id = b.book_id AND r.rating = 3), " +
+                    "  (SELECT COUNT(*) FROM rating r WHERE r.book_id = b.book_id AND r.rating = 4), " +
+                    "  (SELECT COUNT(*) FROM rating r WHERE r.book_id = b.book_id AND r.rating = 5) " +
+                    "FROM book b ";
+
+    private static final String UPSERT_CARD_UPDATE =
+            "ON DUPLICATE KEY UPDATE isbn = VALUES(isbn), title = VALUES(title), published = VALUES(published), " +
+                    "authors = VALUES(authors), genres = VALUES(genres), " +
+                    "author_key = VALUES(author_key), genre_key = VALUES(genre_key), " +
+                    "rating_count = VALUES(rating_count), rating_sum = VALUES(rating_sum), " +
+                    "rating_1 = VALUES(rating_1), rating_2 = VALUES(rating_2), rating_3 = VALUES(rating_3), " +
+                    "rating_4 = VALUES(rating_4), rating_5 = VALUES(rating_5)";
+
+    private static final int CARD_REBUILD_BATCH = 1000;
+
+    /**
+     * Tabeller som rensas for borttagna bocker, i den ordning de rensas (book sist).
+     */
+    private static final List<String> PURGED_TABLES = List.of("rating", "review", "book_author", "book_genre");
+
+    /**
+     * Lediga transaktionsanslutningar som sparas; fler stangs efter anvandning.
+     * ConcurrencyLimitedBooksDb slapper in hogst 16 skrivningar at gangen.
+     */
+    private static final int MAX_IDLE_TX_CONNECTIONS = 16;
 
     private Connection conn;
+    private Connection purgeConn;
+    private volatile String databaseUrl;
+    private final Deque<Connection> idleTxConnections = new ArrayDeque<>();
+    private Connector connector = DriverManager::getConnection;
+    private boolean writeOutbox;
+    private BookCardRebuild bookCardRebuild = BookCardRebuild.NEVER;
+    private ReferenceData referenceData = new ReferenceData(30_000);
+    private int bookIdOffset = 1;
+    private int bookIdIncrement = 1;
 
     @Override
     public boolean connect(String databaseUrl) throws ConnectionException {
+        Connection connection;
+        try {
+            connection = connector.open(databaseUrl);
+        } catch (SQLException e) {
+            throw new ConnectionException("Kunde inte ansluta till databasen", e);
+        }
+        return connect(connection, databaseUrl);
+    }
+
+    /**
+     * Anvander en redan oppnad anslutning; {@link #connect(String)} oppnar en fran URL:en.
+     */
+    boolean connect(Connection connection, String databaseUrl) throws ConnectionException {
         try {
-            conn = DriverManager.getConnection(databaseUrl);
+            conn = connection;
             conn.setAutoCommit(true);
-            return true;
+            this.databaseUrl = databaseUrl;
+            applySessionSettings(conn);
         } catch (SQLException e) {
             throw new ConnectionException("Kunde inte ansluta till databasen", e);
         }
+        try {
+            if (bookCardRebuild == BookCardRebuild.ALWAYS
+                    || (bookCardRebuild == BookCardRebuild.IF_INCOMPLETE && cardsIncomplete())) {
+                rebuildBookCards();
+            }
+        } catch (SQLException e) {
+            disconnect();
+            throw new ConnectionException("Kunde inte bygga om book_card", e);
+        }
+        try {
+            loadReferenceData(0, 0);
+        } catch (SQLException e) {
+            disconnect();
+            throw new ConnectionException("Kunde inte ladda forfattare och genrer", e);
+        }
+        return true;
+    }
+
+    /**
+     * Sessionsinstallningar som varje anslutning behover, aven transaktionernas.
+     */
+    private void applySessionSettings(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            // Sokfalten i book_card ar GROUP_CONCAT av alla namn; standardgransen ar 1024 tecken
+            stmt.execute("SET SESSION group_concat_max_len = 1048576");
+        }
+        if (bookIdIncrement > 1) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("SET SESSION auto_increment_increment = " + bookIdIncrement
+                        + ", auto_increment_offset = " + bookIdOffset);
+            }
+        }
+    }
+
+    /**
+     * Oppnar anslutningar fran URL:en; DriverManager om inget annat anges (for tester).
+     */
+    void setConnector(Connector connector) {
+        this.connector = connector;
     }
 
     @Override
     public void disconnect() throws ConnectionException {
+        synchronized (this) {
+            databaseUrl = null;
+            if (purgeConn != null) {
+                try {
+                    purgeConn.close();
+                } catch (SQLException ignore) {
+                }
+                purgeConn = null;
+            }
+        }
+        synchronized (idleTxConnections) {
+            for (Connection tx : idleTxConnections) {
+                closeQuietly(tx);
+            }
+            idleTxConnections.clear();
+        }
         if (conn != null) {
             try {
                 conn.close();
@@ -46,137 +201,252 @@ public class BooksDbMySql implements IBooksDb {
         }
     }
 
-    // ---------------- SOKNING ----------------
+    /**
+     * Nar aktiverat skrivs en rad i book_outbox for varje andrad bok, i samma
+     * transaktion som andringen. Andra noder laser tabellen for att
+     * invalidera sina cachar (se MySqlOutboxTransport).
+     */
+    public void setWriteOutbox(boolean writeOutbox) {
+        this.writeOutbox = writeOutbox;
+    }
+
+    /**
+     * Styr om {@link #connect} bygger om book_card: aldrig (standard, t.ex. for
+     * repliker), nar antalet kort inte stammer med antalet bocker, eller alltid.
+     */
+    public void setBookCardRebuild(BookCardRebuild bookCardRebuild) {
+        this.bookCardRebuild = bookCardRebuild;
+    }
+
+    /**
+     * Nya bok-id blir offset, offset + increment, ... (for shardning, se ShardedBooksDb).
+     * Galler for anslutningens auto_increment, dvs. aven ovriga tabeller far glesa id.
+     */
+    public void setBookIdSequence(int offset, int increment) {
+        this.bookIdOffset = offset;
+        this.bookIdIncrement = increment;
+    }
 
+    /**
+     * Cache for forfattare och genrer; kan delas med andra instanser (repliker, bokcachen).
+     */
+    public void setReferenceData(ReferenceData referenceData) {
+        this.referenceData = referenceData;
+    }
+
+    /**
+     * Laser replikeringsfordrojningen fran SHOW REPLICA STATUS.
+     * Returnerar 0 om servern inte ar en replika.
+     */
     @Override
-    public List<Book> findBooksByTitle(String title) throws SelectException {
+    public long replicationLagMillis() throws SelectException {
         ensureConnectedForSelect();
-        String sql =
-                "SELECT b.book_id, b.isbn, b.title, b.published, " +
-                        "       AVG(r.rating) AS avg_rating " +
-                        "FROM book b " +
-                        "LEFT JOIN rating r ON r.book_id = b.book_id " +
-                        "WHERE LOWER(b.title) LIKE ? " +
-                        "GROUP BY b.book_id";
-        List<Book> books = new ArrayList<>();
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, "%" + title.toLowerCase() + "%");
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    books.add(mapBook(rs));
-                }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SHOW REPLICA STATUS")) {
+            if (!rs.next()) {
+                return 0;
             }
+            long seconds = rs.getLong("Seconds_Behind_Source");
+            return rs.wasNull() ? Long.MAX_VALUE : seconds * 1000;
         } catch (SQLException e) {
-            throw new SelectException("Fel vid sokning pa titel", e);
+            throw new SelectException("Kunde inte lasa replikeringsstatus", e);
         }
-        return books;
+    }
+
+    // ---------------- SOKNING ----------------
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        return findBooksByTitle(title, BookProjection.ALL);
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title, BookProjection fields) throws SelectException {
+        ensureConnectedForSelect();
+        String sql = selectCards(fields) +
+                "FROM book_card " +
+                "WHERE title_key LIKE ?";
+        return queryBooks(sql, fields, 0, "Fel vid sokning pa titel",
+                stmt -> stmt.setString(1, "%" + title.toLowerCase() + "%"));
     }
 
     @Override
     public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        return findBooksByIsbn(isbn, BookProjection.ALL);
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn, BookProjection fields) throws SelectException {
         ensureConnectedForSelect();
-        String sql =
-                "SELECT b.book_id, b.isbn, b.title, b.published, " +
-                        "       AVG(r.rating) AS avg_rating " +
-                        "FROM book b " +
-                        "LEFT JOIN rating r ON r.book_id = b.book_id " +
-                        "WHERE b.isbn = ? " +
-                        "GROUP BY b.book_id";
-        List<Book> books = new ArrayList<>();
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, isbn.trim());
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    books.add(mapBook(rs));
-                }
-            }
-        } catch (SQLException e) {
-            throw new SelectException("Fel vid sokning pa ISBN", e);
-        }
-        return books;
+        String sql = selectCards(fields) +
+                "FROM book_card " +
+                "WHERE isbn = ?";
+        return queryBooks(sql, fields, 0, "Fel vid sokning pa ISBN",
+                stmt -> stmt.setString(1, isbn.trim()));
     }
 
     @Override
     public List<Book> findBooksByAuthorName(String authorName) throws SelectException {
+        return findBooksByAuthorName(authorName, BookProjection.ALL);
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorName(String authorName, BookProjection fields) throws SelectException {
         ensureConnectedForSelect();
-        String sql =
-                "SELECT DISTINCT b.book_id, b.isbn, b.title, b.published, " +
-                        "       AVG(r.rating) AS avg_rating " +
-                        "FROM book b " +
-                        "JOIN book_author ba ON ba.book_id = b.book_id " +
-                        "JOIN author a ON a.author_id = ba.author_id " +
-                        "LEFT JOIN rating r ON r.book_id = b.book_id " +
-                        "WHERE LOWER(a.name) LIKE ? " +
-                        "GROUP BY b.book_id";
-        List<Book> books = new ArrayList<>();
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, "%" + authorName.toLowerCase() + "%");
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    books.add(mapBook(rs));
-                }
-            }
-        } catch (SQLException e) {
-            throw new SelectException("Fel vid sokning pa forfattare", e);
+        String sql = selectCards(fields) +
+                "FROM book_card " +
+                "WHERE author_key LIKE ?";
+        if (authorName.contains(KEY_SEPARATOR)) {
+            return new ArrayList<>();
         }
-        return books;
+        return queryBooks(sql, fields, 0, "Fel vid sokning pa forfattare",
+                stmt -> stmt.setString(1, "%" + authorName.toLowerCase() + "%"));
     }
 
     @Override
     public List<Book> findBooksByGenre(String genreName) throws SelectException {
+        return findBooksByGenre(genreName, BookProjection.ALL);
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genreName, BookProjection fields) throws SelectException {
         ensureConnectedForSelect();
-        String sql =
-                "SELECT DISTINCT b.book_id, b.isbn, b.title, b.published, " +
-                        "       AVG(r.rating) AS avg_rating " +
-                        "FROM book b " +
-                        "JOIN book_genre bg ON bg.book_id = b.book_id " +
-                        "JOIN genre g ON g.genre_id = bg.genre_id " +
-                        "LEFT JOIN rating r ON r.book_id = b.book_id " +
-                        "WHERE LOWER(g.name) LIKE ? " +
-                        "GROUP BY b.book_id";
-        List<Book> books = new ArrayList<>();
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, "%" + genreName.toLowerCase() + "%");
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    books.add(mapBook(rs));
-                }
-            }
-        } catch (SQLException e) {
-            throw new SelectException("Fel vid sokning pa genre", e);
+        String sql = selectCards(fields) +
+                "FROM book_card " +
+                "WHERE genre_key LIKE ?";
+        if (genreName.contains(KEY_SEPARATOR)) {
+            return new ArrayList<>();
         }
-        return books;
+        return queryBooks(sql, fields, 0, "Fel vid sokning pa genre",
+                stmt -> stmt.setString(1, "%" + genreName.toLowerCase() + "%"));
     }
 
     @Override
     public List<Book> findBooksByMinRating(int minRating) throws SelectException {
+        return findBooksByMinRating(minRating, BookProjection.ALL);
+    }
+
+    @Override
+    public List<Book> findBooksByMinRating(int minRating, BookProjection fields) throws SelectException {
         ensureConnectedForSelect();
-        String sql =
-                "SELECT b.book_id, b.isbn, b.title, b.published, " +
-                        "       AVG(r.rating) AS avg_rating " +
-                        "FROM book b " +
-                        "JOIN rating r ON r.book_id = b.book_id " +
-                        "GROUP BY b.book_id " +
-                        "HAVING AVG(r.rating) >= ?";
-        List<Book> books = new ArrayList<>();
+        // Bocker utan betyg tas inte med, som tidigare med JOIN mot rating.
+        String sql = selectCards(fields) +
+                "FROM book_card " +
+                "WHERE rating_count > 0 AND rating_avg >= ?";
+        return queryBooks(sql, fields, 0, "Fel vid sokning pa betyg",
+                stmt -> stmt.setInt(1, minRating));
+    }
+
+    // ---------------- BATCHUPPSLAG ----------------
+
+    /**
+     * Slar upp alla ISBN med en IN-fraga. Nycklarna i resultatet ar de trimmade ISBN som angavs,
+     * inte de lagrade: kolumnens collation skiljer inte pa versaler och gemener, sa "x" hittar "X".
+     */
+    @Override
+    public Map<String, Book> findBooksByIsbns(Collection<String> isbns) throws SelectException {
+        ensureConnectedForSelect();
+        List<String> keys = new ArrayList<>(new LinkedHashSet<>(isbns.stream().map(String::trim).toList()));
+        if (keys.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+        String sql = selectCards(BookProjection.ALL) +
+                "FROM book_card " +
+                "WHERE isbn IN (" + placeholders(keys.size()) + ")";
+        List<Book> books = queryBooks(sql, BookProjection.ALL, keys.size(), "Fel vid uppslag pa ISBN", stmt -> {
+            for (int i = 0; i < keys.size(); i++) {
+                stmt.setString(i + 1, keys.get(i));
+            }
+        });
+        return byRequestedIsbn(keys, books);
+    }
+
+    /**
+     * Lagger varje bok under de angivna ISBN den matchade, jamfort som
+     * kolumnens collation gor (utan hansyn till versaler och gemener).
+     */
+    static Map<String, Book> byRequestedIsbn(List<String> keys, List<Book> books) {
+        Map<String, List<String>> requested = new HashMap<>();
+        for (String key : keys) {
+            requested.computeIfAbsent(key.toLowerCase(Locale.ROOT), k -> new ArrayList<>(1)).add(key);
+        }
+        Map<String, Book> result = LinkedHashMap.newLinkedHashMap(keys.size());
+        for (Book b : books) {
+            for (String key : requested.getOrDefault(b.getIsbn().trim().toLowerCase(Locale.ROOT), List.of())) {
+                result.put(key, b);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Slar upp alla bok-id med en IN-fraga.
+     */
+    @Override
+    public Map<Integer, Book> findBooksByIds(Collection<Integer> bookIds) throws SelectException {
+        ensureConnectedForSelect();
+        List<Integer> keys = new ArrayList<>(new LinkedHashSet<>(bookIds));
+        Map<Integer, Book> result = LinkedHashMap.newLinkedHashMap(keys.size());
+        if (keys.isEmpty()) {
+            return result;
+        }
+        String sql = selectCards(BookProjection.ALL) +
+                "FROM book_card " +
+                "WHERE book_id IN (" + placeholders(keys.size()) + ")";
+        List<Book> books = queryBooks(sql, BookProjection.ALL, keys.size(), "Fel vid uppslag pa bok-id",
+                stmt -> setInts(stmt, keys));
+        for (Book b : books) {
+            result.put(b.getBookId(), b);
+        }
+        return result;
+    }
+
+    // ---------------- GENOMLOPNING ----------------
+
+    @Override
+    public List<Book> findBooksAfterId(int afterBookId, int limit, BookProjection fields) throws SelectException {
+        ensureConnectedForSelect();
+        String sql = selectCards(fields) +
+                "FROM book_card " +
+                "WHERE book_id > ? " +
+                "ORDER BY book_id " +
+                "LIMIT ?";
+        return queryBooks(sql, fields, limit, "Fel vid genomlopning av bocker", stmt -> {
+            stmt.setInt(1, afterBookId);
+            stmt.setInt(2, limit);
+        });
+    }
+
+    /**
+     * Betyg for ej borttagna bocker i intervallet; anvander rating:s index pa book_id.
+     */
+    @Override
+    public List<Rating> findRatingsByBookIdRange(int fromBookId, int toBookId) throws SelectException {
+        ensureConnectedForSelect();
+        String sql = "SELECT r.book_id, r.user_id, r.rating " +
+                "FROM rating r " +
+                "JOIN book b ON b.book_id = r.book_id AND b.deleted_at IS NULL " +
+                "WHERE r.book_id BETWEEN ? AND ?";
+        List<Rating> ratings = new ArrayList<>();
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, minRating);
+            stmt.setInt(1, fromBookId);
+            stmt.setInt(2, toBookId);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    books.add(mapBook(rs));
+                    ratings.add(new Rating(rs.getInt(1), rs.getInt(2), rs.getInt(3)));
                 }
             }
         } catch (SQLException e) {
-            throw new SelectException("Fel vid sokning pa betyg", e);
+            throw new SelectException("Fel vid hamtning av betyg", e);
         }
-        return books;
+        return ratings;
     }
 
     // ---------------- BOKHANTERING ----------------
 
     /**
-     * Lägger till en bok samt kopplingar till författare och genrer i en transaktion.
-     * Sätter autoCommit till false, gör rollback vid fel och kastar InsertException.
+     * Lägger till en bok samt kopplingar till författare och genrer i en transaktion
+     * pa en egen anslutning; rollback vid fel och InsertException.
      */
     @Override
     public Book addBook(Book book,
@@ -197,11 +467,18 @@ public class BooksDbMySql implements IBooksDb {
         String insertBookGenreSql =
                 "INSERT INTO book_genre (book_id, genre_id) VALUES (?, ?)";
 
+        List<Author> canonicalAuthors;
+        List<Genre> canonicalGenres;
         try {
-            conn.setAutoCommit(false);
+            canonicalAuthors = resolveAuthors(authors);
+            canonicalGenres = resolveGenres(genres);
+        } catch (SQLException e) {
+            throw new InsertException("Kunde inte ladda forfattare och genrer", e);
+        }
 
+        return inTransaction("Fel vid insattning av bok", tx -> {
             int newBookId;
-            try (PreparedStatement stmt = conn.prepareStatement(
+            try (PreparedStatement stmt = tx.prepareStatement(
                     insertBookSql, Statement.RETURN_GENERATED_KEYS)) {
                 stmt.setString(1, book.getIsbn());
                 stmt.setString(2, book.getTitle());
@@ -217,9 +494,9 @@ public class BooksDbMySql implements IBooksDb {
                 }
             }
 
-            if (authors != null && !authors.isEmpty()) {
-                try (PreparedStatement stmt = conn.prepareStatement(insertBookAuthorSql)) {
-                    for (Author a : authors) {
+            if (!canonicalAuthors.isEmpty()) {
+                try (PreparedStatement stmt = tx.prepareStatement(insertBookAuthorSql)) {
+                    for (Author a : canonicalAuthors) {
                         stmt.setInt(1, newBookId);
                         stmt.setInt(2, a.getAuthorId());
                         stmt.setInt(3, addedBy.getUserId());
@@ -229,9 +506,9 @@ public class BooksDbMySql implements IBooksDb {
                 }
             }
 
-            if (genres != null && !genres.isEmpty()) {
-                try (PreparedStatement stmt = conn.prepareStatement(insertBookGenreSql)) {
-                    for (Genre g : genres) {
+            if (!canonicalGenres.isEmpty()) {
+                try (PreparedStatement stmt = tx.prepareStatement(insertBookGenreSql)) {
+                    for (Genre g : canonicalGenres) {
                         stmt.setInt(1, newBookId);
                         stmt.setInt(2, g.getGenreId());
                         stmt.addBatch();
@@ -240,74 +517,101 @@ public class BooksDbMySql implements IBooksDb {
                 }
             }
 
-            conn.commit();
+            upsertCard(tx, newBookId);
+            recordChange(tx, newBookId);
 
             return new Book(newBookId, book.getIsbn(), book.getTitle(),
-                    book.getPublished(), authors, genres, 0.0);
-
-        } catch (SQLException e) {
-            try {
-                conn.rollback();
-            } catch (SQLException ignore) {
-            }
-            throw new InsertException("Fel vid insattning av bok", e);
-        } finally {
-            try {
-                conn.setAutoCommit(true);
-            } catch (SQLException ignore) {
-            }
-        }
+                    book.getPublished(), canonicalAuthors, canonicalGenres, 0.0);
+        });
     }
 
     /**
-     * Tar bort en bok och alla relaterade rader (betyg, recensioner, kopplingar).
+     * Markerar boken som borttagen och tar bort dess kort, sa att den forsvinner
+     * ur alla lasningar direkt. Betyg, recensioner och kopplingar ligger kvar
+     * tills {@link #purgeDeletedBooks} tar bort dem, sa borttagningen laser bara
+     * bokens egen rad och inte dess betyg.
      * Riktiga behörighetskontroller görs i controllern; här utförs bara SQL-operationen.
      */
     @Override
     public void deleteBook(int bookId, User byUser) throws InsertException {
         ensureConnectedForInsert();
-        String deleteRatingSql = "DELETE FROM rating WHERE book_id = ?";
-        String deleteReviewSql = "DELETE FROM review WHERE book_id = ?";
-        String deleteBookAuthorSql = "DELETE FROM book_author WHERE book_id = ?";
-        String deleteBookGenreSql = "DELETE FROM book_genre WHERE book_id = ?";
-        String deleteBookSql = "DELETE FROM book WHERE book_id = ?";
-
-        try {
-            conn.setAutoCommit(false);
+        String markDeletedSql = "UPDATE book SET deleted_at = CURRENT_TIMESTAMP WHERE book_id = ? AND deleted_at IS NULL";
+        String deleteCardSql = "DELETE FROM book_card WHERE book_id = ?";
 
-            try (PreparedStatement stmt = conn.prepareStatement(deleteRatingSql)) {
+        inTransaction("Fel vid borttagning av bok", tx -> {
+            try (PreparedStatement stmt = tx.prepareStatement(markDeletedSql)) {
                 stmt.setInt(1, bookId);
-                stmt.executeUpdate();
+                if (stmt.executeUpdate() == 0) {
+                    throw new InsertException("Ingen bok hittades att ta bort");
+                }
             }
-            try (PreparedStatement stmt = conn.prepareStatement(deleteReviewSql)) {
+            try (PreparedStatement stmt = tx.prepareStatement(deleteCardSql)) {
                 stmt.setInt(1, bookId);
                 stmt.executeUpdate();
             }
-            try (PreparedStatement stmt = conn.prepareStatement(deleteBookAuthorSql)) {
-                stmt.setInt(1, bookId);
-                stmt.executeUpdate();
+
+            recordChange(tx, bookId);
+            return null;
+        });
+    }
+
+    /**
+     * Tar bort upp till maxRows rader som hor till borttagna bocker, aldst
+     * borttagna forst: forst betyg, recensioner och kopplingar, sist
+     * bokraden nar inget refererar den langre. Varje DELETE ar en egen
+     * kort sats (autocommit) pa en egen anslutning.
+     */
+    @Override
+    public synchronized int purgeDeletedBooks(int maxRows) throws InsertException {
+        if (databaseUrl == null) {
+            throw new InsertException("Inte ansluten till databasen");
+        }
+        int removed = 0;
+        try {
+            if (purgeConn == null) {
+                purgeConn = connector.open(databaseUrl);
             }
-            try (PreparedStatement stmt = conn.prepareStatement(deleteBookGenreSql)) {
-                stmt.setInt(1, bookId);
-                stmt.executeUpdate();
+            List<Integer> deleted = new ArrayList<>();
+            try (PreparedStatement stmt = purgeConn.prepareStatement(
+                    "SELECT book_id FROM book WHERE deleted_at IS NOT NULL ORDER BY deleted_at LIMIT ?")) {
+                stmt.setInt(1, maxRows);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        deleted.add(rs.getInt(1));
+                    }
+                }
             }
-            try (PreparedStatement stmt = conn.prepareStatement(deleteBookSql)) {
-                stmt.setInt(1, bookId);
-                stmt.executeUpdate();
+            for (int bookId : deleted) {
+                for (String table : PURGED_TABLES) {
+                    removed += deleteRows(table, bookId, maxRows - removed);
+                    if (removed >= maxRows) {
+                        return removed;
+                    }
+                }
+                removed += deleteRows("book", bookId, 1);
+                if (removed >= maxRows) {
+                    return removed;
+                }
             }
-
-            conn.commit();
+            return removed;
         } catch (SQLException e) {
             try {
-                conn.rollback();
-            } catch (SQLException ignore) {
-            }
-            throw new InsertException("Fel vid borttagning av bok", e);
-        } finally {
-            try {
-                conn.setAutoCommit(true);
+                if (purgeConn != null) {
+                    purgeConn.close();
+                }
             } catch (SQLException ignore) {
             }
+            purgeConn = null;
+            throw new InsertException("Fel vid rensning av borttagna bocker", e);
+        }
+    }
+
+    private int deleteRows(String table, int bookId, int limit) throws SQLException {
+        try (PreparedStatement stmt = purgeConn.prepareStatement(
+                "DELETE FROM " + table + " WHERE book_id = ? LIMIT ?")) {
+            stmt.setInt(1, bookId);
+            stmt.setInt(2, limit);
+            return stmt.executeUpdate();
         }
     }
 
@@ -323,17 +627,52 @@ public class BooksDbMySql implements IBooksDb {
         if (user == null) {
             throw new InsertException("Anvandare kravs for att satta betyg");
         }
+        if (rating < 1 || rating > 5) {
+            throw new InsertException("Betyg maste vara mellan 1 och 5");
+        }
+        // Raden skrivs bara om boken inte ar borttagen; SELECT:en delas-laser bokraden
         String sql =
                 "INSERT INTO rating (book_id, user_id, rating, rated_at) " +
-                        "VALUES (?, ?, ?, CURRENT_DATE) " +
+                        "SELECT ?, ?, ?, CURRENT_DATE FROM book WHERE book_id = ? AND deleted_at IS NULL " +
                         "ON DUPLICATE KEY UPDATE rating = VALUES(rating), rated_at = VALUES(rated_at)";
+        inTransaction("Fel vid sparande av betyg", tx -> {
+            Integer previous = lockRating(tx, bookId, user.getUserId());
+            try (PreparedStatement stmt = tx.prepareStatement(sql)) {
+                stmt.setInt(1, bookId);
+                stmt.setInt(2, user.getUserId());
+                stmt.setInt(3, rating);
+                stmt.setInt(4, bookId);
+                if (stmt.executeUpdate() == 0) {
+                    throw new InsertException("Ingen bok hittades att betygsatta");
+                }
+            }
+            updateCardRating(tx, bookId, previous, rating);
+            recordChange(tx, bookId);
+            return null;
+        });
+    }
+
+    /**
+     * Laser fordelningen fran bokens kort (en rad pa primarnyckel).
+     */
+    @Override
+    public RatingSummary findRatingSummary(int bookId) throws SelectException {
+        ensureConnectedForSelect();
+        String sql = "SELECT rating_1, rating_2, rating_3, rating_4, rating_5 FROM book_card WHERE book_id = ?";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, bookId);
-            stmt.setInt(2, user.getUserId());
-            stmt.setInt(3, rating);
-            stmt.executeUpdate();
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                int[] counts = new int[5];
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] = rs.getInt(i + 1);
+                }
+                return new RatingSummary(bookId, counts);
+            }
         } catch (SQLException e) {
-            throw new InsertException("Fel vid sparande av betyg", e);
+            throw new SelectException("Fel vid hamtning av betygsfordelning", e);
         }
     }
 
@@ -382,26 +721,33 @@ public class BooksDbMySql implements IBooksDb {
         }
         String sql =
                 "INSERT INTO review (book_id, user_id, review_text, review_date, created_by_user_id) " +
-                        "VALUES (?, ?, ?, ?, ?)";
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, bookId);
-            stmt.setInt(2, user.getUserId());
-            stmt.setString(3, text);
-            stmt.setDate(4, Date.valueOf(date));
-            stmt.setInt(5, user.getUserId());
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            throw new InsertException("Fel vid sparande av recension", e);
-        }
+                        "SELECT ?, ?, ?, ?, ? FROM book WHERE book_id = ? AND deleted_at IS NULL";
+        Date reviewDate = Date.valueOf(date);
+        inTransaction("Fel vid sparande av recension", tx -> {
+            try (PreparedStatement stmt = tx.prepareStatement(sql)) {
+                stmt.setInt(1, bookId);
+                stmt.setInt(2, user.getUserId());
+                stmt.setString(3, text);
+                stmt.setDate(4, reviewDate);
+                stmt.setInt(5, user.getUserId());
+                stmt.setInt(6, bookId);
+                if (stmt.executeUpdate() == 0) {
+                    throw new InsertException("Ingen bok hittades att recensera");
+                }
+            }
+            recordChange(tx, bookId);
+            return null;
+        });
     }
 
     @Override
     public List<Review> findReviewsByBookId(int bookId) throws SelectException {
         ensureConnectedForSelect();
         String sql =
-                "SELECT r.review_id, r.review_text, r.review_date, " +
+                "SELECT r.review_id, r.book_id, r.review_text, r.review_date, " +
                         "       u.user_id, u.username " +
                         "FROM review r " +
+                        "JOIN book b ON b.book_id = r.book_id AND b.deleted_at IS NULL " +
                         "JOIN app_user u ON u.user_id = r.user_id " +
                         "WHERE r.book_id = ? " +
                         "ORDER BY r.review_date DESC";
@@ -410,14 +756,7 @@ public class BooksDbMySql implements IBooksDb {
             stmt.setInt(1, bookId);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    int reviewId = rs.getInt("review_id");
-                    String text = rs.getString("review_text");
-                    Date d = rs.getDate("review_date");
-                    LocalDate ld = d != null ? d.toLocalDate() : null;
-                    int userId = rs.getInt("user_id");
-                    String username = rs.getString("username");
-                    User user = new User(userId, username);
-                    reviews.add(new Review(reviewId, bookId, user, text, ld));
+                    reviews.add(mapReview(rs));
                 }
             }
         } catch (SQLException e) {
@@ -426,6 +765,36 @@ public class BooksDbMySql implements IBooksDb {
         return reviews;
     }
 
+    @Override
+    public Map<Integer, List<Review>> findReviewsByBookIds(Collection<Integer> bookIds) throws SelectException {
+        ensureConnectedForSelect();
+        List<Integer> keys = new ArrayList<>(new LinkedHashSet<>(bookIds));
+        Map<Integer, List<Review>> result = LinkedHashMap.newLinkedHashMap(keys.size());
+        if (keys.isEmpty()) {
+            return result;
+        }
+        String sql =
+                "SELECT r.review_id, r.book_id, r.review_text, r.review_date, " +
+                        "       u.user_id, u.username " +
+                        "FROM review r " +
+                        "JOIN book b ON b.book_id = r.book_id AND b.deleted_at IS NULL " +
+                        "JOIN app_user u ON u.user_id = r.user_id " +
+                        "WHERE r.book_id IN (" + placeholders(keys.size()) + ") " +
+                        "ORDER BY r.book_id, r.review_date DESC";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            setInts(stmt, keys);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Review review = mapReview(rs);
+                    result.computeIfAbsent(review.getBookId(), id -> new ArrayList<>()).add(review);
+                }
+            }
+        } catch (SQLException e) {
+            throw new SelectException("Fel vid hamtning av recensioner", e);
+        }
+        return result;
+    }
+
     @Override
     public User findBookCreator(int bookId) throws SelectException {
         ensureConnectedForSelect();
@@ -433,7 +802,7 @@ public class BooksDbMySql implements IBooksDb {
                 "SELECT u.user_id, u.username " +
                         "FROM book b " +
                         "JOIN app_user u ON u.user_id = b.created_by_user_id " +
-                        "WHERE b.book_id = ?";
+                        "WHERE b.book_id = ? AND b.deleted_at IS NULL";
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, bookId);
             try (ResultSet rs = stmt.executeQuery()) {
@@ -451,57 +820,346 @@ public class BooksDbMySql implements IBooksDb {
 
     // ---------------- HJÄLPMETODER ----------------
 
-    private Book mapBook(ResultSet rs) throws SQLException {
-        int bookId = rs.getInt("book_id");
-        String isbn = rs.getString("isbn");
-        String title = rs.getString("title");
-        Date published = rs.getDate("published");
-        double avgRating = rs.getDouble("avg_rating");
-        List<Author> authors = loadAuthorsForBook(bookId);
-        List<Genre> genres = loadGenresForBook(bookId);
-        return new Book(bookId, isbn, title, published, authors, genres, avgRating);
+    /**
+     * Bygger SELECT-delen for fragor mot book_card. Endast efterfragade kolumner tas med.
+     */
+    private static String selectCards(BookProjection fields) {
+        return CardColumns.of(fields).select;
     }
 
-    private List<Author> loadAuthorsForBook(int bookId) throws SQLException {
-        String sql =
-                "SELECT a.author_id, a.name, a.birth_date " +
-                        "FROM author a " +
-                        "JOIN book_author ba ON ba.author_id = a.author_id " +
-                        "WHERE ba.book_id = ?";
-        List<Author> authors = new ArrayList<>();
+    /**
+     * @param expectedRows kant antal rader (t.ex. antal nycklar eller LIMIT), 0 om okant.
+     */
+    private List<Book> queryBooks(String sql, BookProjection fields, int expectedRows, String errorMessage,
+                                  ParameterSetter params) throws SelectException {
+        CardColumns columns = CardColumns.of(fields);
+        List<Book> books = new ArrayList<>(Math.max(expectedRows, 10));
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, bookId);
+            params.set(stmt);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    int authorId = rs.getInt("author_id");
-                    String name = rs.getString("name");
-                    Date birth = rs.getDate("birth_date");
-                    LocalDate birthDate = birth != null ? birth.toLocalDate() : null;
-                    authors.add(new Author(authorId, name, birthDate));
+                    books.add(columns.map(rs, referenceData));
                 }
             }
+            if (referenceData.tryStartRefresh()) {
+                loadReferenceData(referenceData.getMaxAuthorId(), referenceData.getMaxGenreId());
+            }
+            return books;
+        } catch (SQLException e) {
+            throw new SelectException(errorMessage, e);
         }
-        return authors;
     }
 
-    private List<Genre> loadGenresForBook(int bookId) throws SQLException {
-        String sql =
-                "SELECT g.genre_id, g.name " +
-                        "FROM genre g " +
-                        "JOIN book_genre bg ON bg.genre_id = g.genre_id " +
-                        "WHERE bg.book_id = ?";
+    /**
+     * Mappar en rad ur recensionsfragorna: review_id, book_id, review_text,
+     * review_date, user_id, username (i den ordningen).
+     */
+    private static Review mapReview(ResultSet rs) throws SQLException {
+        User user = new User(rs.getInt(5), rs.getString(6));
+        return new Review(rs.getInt(1), rs.getInt(2), user, rs.getString(3), rs.getObject(4, LocalDate.class));
+    }
+
+    // ---------------- REFERENSDATA ----------------
+
+    /**
+     * Laddar forfattare och genrer med id over de angivna; (0, 0) laddar allt.
+     */
+    private void loadReferenceData(int afterAuthorId, int afterGenreId) throws SQLException {
+        List<Author> authors = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT author_id, name, birth_date FROM author WHERE author_id > ? ORDER BY author_id")) {
+            stmt.setInt(1, afterAuthorId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    authors.add(new Author(rs.getInt(1), rs.getString(2), rs.getObject(3, LocalDate.class)));
+                }
+            }
+        }
         List<Genre> genres = new ArrayList<>();
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, bookId);
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT genre_id, name FROM genre WHERE genre_id > ? ORDER BY genre_id")) {
+            stmt.setInt(1, afterGenreId);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    int genreId = rs.getInt("genre_id");
-                    String name = rs.getString("name");
-                    genres.add(new Genre(genreId, name));
+                    genres.add(new Genre(rs.getInt(1), rs.getString(2)));
+                }
+            }
+        }
+        referenceData.putAuthors(authors);
+        referenceData.putGenres(genres);
+    }
+
+    /**
+     * Laddar en enskild forfattare eller genre, for id som inte ligger over de
+     * hittills hogsta (t.ex. rader som committats i annan ordning an deras id).
+     */
+    private void loadReferenceRow(String sql, int id, boolean author) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return;
+                }
+                if (author) {
+                    referenceData.putAuthors(List.of(
+                            new Author(rs.getInt(1), rs.getString(2), rs.getObject(3, LocalDate.class))));
+                } else {
+                    referenceData.putGenres(List.of(new Genre(rs.getInt(1), rs.getString(2))));
                 }
             }
         }
-        return genres;
+    }
+
+    /**
+     * Slar upp forfattarna i cachen; okanda id laddas (nya rader, sedan just
+     * det id:t) innan de avvisas.
+     */
+    private List<Author> resolveAuthors(List<Author> refs) throws SQLException, InsertException {
+        List<Author> out = new ArrayList<>();
+        if (refs == null) {
+            return out;
+        }
+        boolean refreshed = false;
+        for (Author ref : refs) {
+            Author a = referenceData.author(ref.getAuthorId());
+            if (a == null && !refreshed) {
+                loadReferenceData(referenceData.getMaxAuthorId(), referenceData.getMaxGenreId());
+                refreshed = true;
+                a = referenceData.author(ref.getAuthorId());
+            }
+            if (a == null) {
+                loadReferenceRow("SELECT author_id, name, birth_date FROM author WHERE author_id = ?",
+                        ref.getAuthorId(), true);
+                a = referenceData.author(ref.getAuthorId());
+            }
+            if (a == null) {
+                throw new InsertException("Forfattare saknas: " + ref.getAuthorId());
+            }
+            out.add(a);
+        }
+        return out;
+    }
+
+    private List<Genre> resolveGenres(List<Genre> refs) throws SQLException, InsertException {
+        List<Genre> out = new ArrayList<>();
+        if (refs == null) {
+            return out;
+        }
+        boolean refreshed = false;
+        for (Genre ref : refs) {
+            Genre g = referenceData.genre(ref.getGenreId());
+            if (g == null && !refreshed) {
+                loadReferenceData(referenceData.getMaxAuthorId(), referenceData.getMaxGenreId());
+                refreshed = true;
+                g = referenceData.genre(ref.getGenreId());
+            }
+            if (g == null) {
+                loadReferenceRow("SELECT genre_id, name FROM genre WHERE genre_id = ?", ref.getGenreId(), false);
+                g = referenceData.genre(ref.getGenreId());
+            }
+            if (g == null) {
+                throw new InsertException("Genre saknas: " + ref.getGenreId());
+            }
+            out.add(g);
+        }
+        return out;
+    }
+
+    // ---------------- BOKKORT ----------------
+
+    private static void upsertCard(Connection tx, int bookId) throws SQLException {
+        try (PreparedStatement stmt = tx.prepareStatement(
+                UPSERT_CARD_SQL + "WHERE b.book_id = ? " + UPSERT_CARD_UPDATE)) {
+            stmt.setInt(1, bookId);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Anvandarens nuvarande betyg pa boken (null om inget), last till
+     * transaktionens slut sa att samtidiga andringar flyttar ratt antal.
+     */
+    private static Integer lockRating(Connection tx, int bookId, int userId) throws SQLException {
+        try (PreparedStatement stmt = tx.prepareStatement(
+                "SELECT rating FROM rating WHERE user_id = ? AND book_id = ? FOR UPDATE")) {
+            stmt.setInt(1, userId);
+            stmt.setInt(2, bookId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
+    /**
+     * Uppdaterar kortets antal, summa och fordelning stegvis: ett nytt betyg
+     * laggs till, ett andrat flyttas fran det gamla vardet till det nya.
+     */
+    private static void updateCardRating(Connection tx, int bookId, Integer previous, int rating) throws SQLException {
+        String newColumn = "rating_" + rating;
+        String sql;
+        if (previous == null) {
+            sql = "UPDATE book_card SET rating_count = rating_count + 1, rating_sum = rating_sum + ?, " +
+                    newColumn + " = " + newColumn + " + 1 WHERE book_id = ?";
+        } else if (previous == rating) {
+            return;
+        } else {
+            String oldColumn = "rating_" + previous;
+            sql = "UPDATE book_card SET rating_sum = rating_sum + ?, " +
+                    oldColumn + " = " + oldColumn + " - 1, " +
+                    newColumn + " = " + newColumn + " + 1 WHERE book_id = ?";
+        }
+        try (PreparedStatement stmt = tx.prepareStatement(sql)) {
+            stmt.setInt(1, previous == null ? rating : rating - previous);
+            stmt.setInt(2, bookId);
+            stmt.executeUpdate();
+        }
+    }
+
+    private boolean cardsIncomplete() throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT (SELECT COUNT(*) FROM book WHERE deleted_at IS NULL) <> (SELECT COUNT(*) FROM book_card)")) {
+            rs.next();
+            return rs.getBoolean(1);
+        }
+    }
+
+    /**
+     * Bygger om hela book_card ur bastabellerna i intervall om
+     * {@value #CARD_REBUILD_BATCH} bocker. Kort for borttagna (aven markerade) bocker tas bort.
+     * Varje intervall ar en egen sats, sa samtidiga skrivningar blockeras bara kort.
+     * @return antal bocker som fick ett kort.
+     */
+    public int rebuildBookCards() throws SQLException {
+        long start = System.nanoTime();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE c FROM book_card c LEFT JOIN book b ON b.book_id = c.book_id " +
+                    "WHERE b.book_id IS NULL OR b.deleted_at IS NOT NULL");
+        }
+        int maxId;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(book_id), 0) FROM book")) {
+            rs.next();
+            maxId = rs.getInt(1);
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(
+                UPSERT_CARD_SQL + "WHERE b.book_id > ? AND b.book_id <= ? AND b.deleted_at IS NULL " + UPSERT_CARD_UPDATE)) {
+            for (long from = 0; from < maxId; from += CARD_REBUILD_BATCH) {
+                stmt.setInt(1, (int) from);
+                stmt.setInt(2, (int) Math.min(maxId, from + CARD_REBUILD_BATCH));
+                stmt.executeUpdate();
+            }
+        }
+        int cards;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM book_card")) {
+            rs.next();
+            cards = rs.getInt(1);
+        }
+        log.info("Rebuilt book_card for {} books in {} ms", cards, (System.nanoTime() - start) / 1_000_000);
+        return cards;
+    }
+
+    /**
+     * Skriver en outbox-rad for boken i pagaende transaktion (om aktiverat).
+     */
+    private void recordChange(Connection tx, int bookId) throws SQLException {
+        if (!writeOutbox) {
+            return;
+        }
+        try (PreparedStatement stmt = tx.prepareStatement("INSERT INTO book_outbox (book_id) VALUES (?)")) {
+            stmt.setInt(1, bookId);
+            stmt.executeUpdate();
+        }
+    }
+
+    // ---------------- TRANSAKTIONER ----------------
+
+    /**
+     * Kor arbetet som en transaktion pa en egen anslutning och committar.
+     * Vid fel gors rollback; en anslutning som fick ett SQL-fel stangs i
+     * stallet for att ga tillbaka till poolen.
+     */
+    private <T> T inTransaction(String errorMessage, Transaction<T> work) throws InsertException {
+        Connection tx;
+        try {
+            tx = takeTxConnection();
+        } catch (SQLException e) {
+            throw new InsertException(errorMessage, e);
+        }
+        boolean reusable = false;
+        try {
+            T result = work.run(tx);
+            tx.commit();
+            reusable = true;
+            return result;
+        } catch (SQLException e) {
+            rollbackQuietly(tx);
+            throw new InsertException(errorMessage, e);
+        } catch (InsertException e) {
+            reusable = rollbackQuietly(tx);
+            throw e;
+        } finally {
+            releaseTxConnection(tx, reusable);
+        }
+    }
+
+    private Connection takeTxConnection() throws SQLException {
+        synchronized (idleTxConnections) {
+            Connection idle = idleTxConnections.pollFirst();
+            if (idle != null) {
+                return idle;
+            }
+        }
+        String url = databaseUrl;
+        if (url == null) {
+            throw new SQLException("Inte ansluten till databasen");
+        }
+        Connection tx = connector.open(url);
+        try {
+            applySessionSettings(tx);
+            tx.setAutoCommit(false);
+        } catch (SQLException e) {
+            closeQuietly(tx);
+            throw e;
+        }
+        return tx;
+    }
+
+    private void releaseTxConnection(Connection tx, boolean reusable) {
+        synchronized (idleTxConnections) {
+            if (reusable && databaseUrl != null && idleTxConnections.size() < MAX_IDLE_TX_CONNECTIONS) {
+                idleTxConnections.addFirst(tx);
+                return;
+            }
+        }
+        closeQuietly(tx);
+    }
+
+    private static boolean rollbackQuietly(Connection tx) {
+        try {
+            tx.rollback();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignore) {
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static void setInts(PreparedStatement stmt, List<Integer> values) throws SQLException {
+        for (int i = 0; i < values.size(); i++) {
+            stmt.setInt(i + 1, values.get(i));
+        }
     }
 
     private void ensureConnectedForSelect() throws SelectException {
@@ -515,4 +1173,19 @@ public class BooksDbMySql implements IBooksDb {
             throw new InsertException("Inte ansluten till databasen");
         }
     }
+
+    @FunctionalInterface
+    private interface ParameterSetter {
+        void set(PreparedStatement stmt) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface Transaction<T> {
+        T run(Connection tx) throws SQLException, InsertException;
+    }
+
+    @FunctionalInterface
+    interface Connector {
+        Connection open(String databaseUrl) throws SQLException;
+    }
 }
@@ -0,0 +1,217 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.ConnectionException;
+import com.nawidali.sql_labb_2.model.exceptions.InsertException;
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Serves full-book lookups by ISBN and id from an {@link OffHeapBookCache}
+ * and fills it on misses. Searches and projected lookups pass through.
+ * Deletes and ratings evict the book; changes on other nodes arrive through
+ * the invalidation bus.
+ */
+public class CachingBooksDb implements IBooksDb {
+
+    private final IBooksDb delegate;
+    private final OffHeapBookCache cache;
+
+    public CachingBooksDb(IBooksDb delegate, OffHeapBookCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    // ---------------- ANSLUTNING ----------------
+
+    @Override
+    public boolean connect(String databaseUrl) throws ConnectionException {
+        return delegate.connect(databaseUrl);
+    }
+
+    @Override
+    public void disconnect() throws ConnectionException {
+        delegate.disconnect();
+    }
+
+    // ---------------- LASNING ----------------
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        return delegate.findBooksByTitle(title);
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        Book cached = cache.getByIsbn(isbn == null ? null : isbn.trim());
+        if (cached != null) {
+            List<Book> result = new ArrayList<>(1);
+            result.add(cached);
+            return result;
+        }
+        long stamp = cache.stamp();
+        List<Book> books = delegate.findBooksByIsbn(isbn);
+        for (Book b : books) {
+            cache.put(b, stamp);
+        }
+        return books;
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorName(String authorName) throws SelectException {
+        return delegate.findBooksByAuthorName(authorName);
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genreName) throws SelectException {
+        return delegate.findBooksByGenre(genreName);
+    }
+
+    @Override
+    public List<Book> findBooksByMinRating(int minRating) throws SelectException {
+        return delegate.findBooksByMinRating(minRating);
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title, BookProjection fields) throws SelectException {
+        return delegate.findBooksByTitle(title, fields);
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn, BookProjection fields) throws SelectException {
+        return delegate.findBooksByIsbn(isbn, fields);
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorName(String authorName, BookProjection fields) throws SelectException {
+        return delegate.findBooksByAuthorName(authorName, fields);
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genreName, BookProjection fields) throws SelectException {
+        return delegate.findBooksByGenre(genreName, fields);
+    }
+
+    @Override
+    public List<Book> findBooksByMinRating(int minRating, BookProjection fields) throws SelectException {
+        return delegate.findBooksByMinRating(minRating, fields);
+    }
+
+    @Override
+    public Map<String, Book> findBooksByIsbns(Collection<String> isbns) throws SelectException {
+        Map<String, Book> result = new LinkedHashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String isbn : isbns) {
+            String key = isbn.trim();
+            Book cached = cache.getByIsbn(key);
+            if (cached != null) {
+                result.put(key, cached);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            long stamp = cache.stamp();
+            // Keyed by the requested ISBN, which may differ from the stored one in case
+            for (Map.Entry<String, Book> found : delegate.findBooksByIsbns(missing).entrySet()) {
+                cache.put(found.getValue(), stamp);
+                result.put(found.getKey(), found.getValue());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<Integer, Book> findBooksByIds(Collection<Integer> bookIds) throws SelectException {
+        Map<Integer, Book> result = new LinkedHashMap<>();
+        Set<Integer> missing = new LinkedHashSet<>();
+        for (Integer id : bookIds) {
+            Book cached = cache.get(id);
+            if (cached != null) {
+                result.put(id, cached);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            long stamp = cache.stamp();
+            for (Book b : delegate.findBooksByIds(missing).values()) {
+                cache.put(b, stamp);
+                result.put(b.getBookId(), b);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Book> findBooksAfterId(int afterBookId, int limit, BookProjection fields) throws SelectException {
+        return delegate.findBooksAfterId(afterBookId, limit, fields);
+    }
+
+    @Override
+    public List<Rating> findRatingsByBookIdRange(int fromBookId, int toBookId) throws SelectException {
+        return delegate.findRatingsByBookIdRange(fromBookId, toBookId);
+    }
+
+    @Override
+    public RatingSummary findRatingSummary(int bookId) throws SelectException {
+        return delegate.findRatingSummary(bookId);
+    }
+
+    @Override
+    public User login(String username, String password) throws SelectException {
+        return delegate.login(username, password);
+    }
+
+    @Override
+    public List<Review> findReviewsByBookId(int bookId) throws SelectException {
+        return delegate.findReviewsByBookId(bookId);
+    }
+
+    @Override
+    public Map<Integer, List<Review>> findReviewsByBookIds(Collection<Integer> bookIds) throws SelectException {
+        return delegate.findReviewsByBookIds(bookIds);
+    }
+
+    @Override
+    public User findBookCreator(int bookId) throws SelectException {
+        return delegate.findBookCreator(bookId);
+    }
+
+    // ---------------- SKRIVNING ----------------
+
+    @Override
+    public Book addBook(Book book, List<Author> authors, List<Genre> genres, User addedBy) throws InsertException {
+        return delegate.addBook(book, authors, genres, addedBy);
+    }
+
+    @Override
+    public void deleteBook(int bookId, User byUser) throws InsertException {
+        try {
+            delegate.deleteBook(bookId, byUser);
+        } finally {
+            cache.remove(bookId);
+        }
+    }
+
+    @Override
+    public void rateBook(int bookId, int rating, User user) throws InsertException {
+        try {
+            delegate.rateBook(bookId, rating, user);
+        } finally {
+            cache.remove(bookId);
+        }
+    }
+
+    @Override
+    public void addReview(int bookId, User user, String text, LocalDate date) throws InsertException {
+        delegate.addReview(bookId, user, text, date);
+    }
+}
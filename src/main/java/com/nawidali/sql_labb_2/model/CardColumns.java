@@ -0,0 +1,86 @@
+package com.nawidali.sql_labb_2.model;
+
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * SELECT-lista och kolumnindex for en projektion av book_card. Indexen raknas
+ * ut en gang per projektion (det finns bara 64), sa att raderna kan lasas med
+ * rs.getX(index) i stallet for att drivrutinen slar upp kolumnnamnet per rad.
+ */
+final class CardColumns {
+
+    private static final BookProjection.Field[] FIELDS = BookProjection.Field.values();
+    // En post per kombination av falt; fylls vid forsta anvandning
+    private static final CardColumns[] SHAPES = new CardColumns[1 << FIELDS.length];
+
+    final String select;
+    // 0 = kolumnen ar inte med i fragan
+    final int isbn;
+    final int title;
+    final int published;
+    final int authors;
+    final int genres;
+    final int ratingAvg;
+
+    private CardColumns(BookProjection fields) {
+        StringBuilder sb = new StringBuilder("SELECT book_id");
+        int next = 2;
+        isbn = fields.includes(BookProjection.Field.ISBN) ? next++ : 0;
+        title = fields.includes(BookProjection.Field.TITLE) ? next++ : 0;
+        published = fields.includes(BookProjection.Field.PUBLISHED) ? next++ : 0;
+        authors = fields.includes(BookProjection.Field.AUTHORS) ? next++ : 0;
+        genres = fields.includes(BookProjection.Field.GENRES) ? next++ : 0;
+        ratingAvg = fields.includes(BookProjection.Field.AVERAGE_RATING) ? next : 0;
+        if (isbn > 0) sb.append(", isbn");
+        if (title > 0) sb.append(", title");
+        if (published > 0) sb.append(", published");
+        if (authors > 0) sb.append(", authors");
+        if (genres > 0) sb.append(", genres");
+        if (ratingAvg > 0) sb.append(", rating_avg");
+        select = sb.append(' ').toString();
+    }
+
+    static CardColumns of(BookProjection fields) {
+        int mask = 0;
+        for (BookProjection.Field f : FIELDS) {
+            if (fields.includes(f)) {
+                mask |= 1 << f.ordinal();
+            }
+        }
+        CardColumns shape = SHAPES[mask];
+        if (shape == null) {
+            // Samtidiga anrop kan bygga samma post tva ganger; posterna ar likadana
+            shape = new CardColumns(fields);
+            SHAPES[mask] = shape;
+        }
+        return shape;
+    }
+
+    /**
+     * Mappar aktuell rad; forfattare och genrer delar instanser med referensdatan.
+     */
+    Book map(ResultSet rs, ReferenceData referenceData) throws SQLException {
+        int bookId = rs.getInt(1);
+        String isbnValue = isbn > 0 ? rs.getString(isbn) : null;
+        String titleValue = title > 0 ? rs.getString(title) : null;
+        Date publishedValue = published > 0 ? rs.getDate(published) : null;
+        List<Author> authorList = null;
+        List<Genre> genreList = null;
+        try {
+            if (authors > 0) {
+                authorList = BookCardJson.authors(rs.getString(authors), referenceData);
+            }
+            if (genres > 0) {
+                genreList = BookCardJson.genres(rs.getString(genres), referenceData);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Ogiltig JSON i book_card", e);
+        }
+        double avg = ratingAvg > 0 ? rs.getDouble(ratingAvg) : 0.0;
+        return new Book(bookId, isbnValue, titleValue, publishedValue, authorList, genreList, avg);
+    }
+}
@@ -0,0 +1,153 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.OverloadedException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Streams the whole catalog to a {@link Sink}, one page of books (and
+ * optionally their reviews) at a time, so memory use does not grow with the
+ * catalog size.
+ * <p>
+ * Exports yield to interactive traffic: each page is an ordinary read
+ * through the limited database, the number of concurrent exports is capped,
+ * books are written at most {@code maxBooksPerSecond}, and while
+ * {@code busy} reports queued interactive reads the export pauses between pages.
+ */
+public class CatalogExporter {
+
+    private static final long MAX_PAUSE_PER_PAGE_MILLIS = 5_000;
+    private static final long RETRY_AFTER_SECONDS = 30;
+
+    private final int pageSize;
+    private final int maxBooksPerSecond;
+    private final long busyBackoffMillis;
+    private final BooleanSupplier busy;
+    private final int maxConcurrent;
+    private final Semaphore exports;
+
+    /**
+     * @param maxConcurrent     exports allowed at once; more are refused.
+     * @param maxBooksPerSecond write rate cap; 0 for none.
+     * @param busy              true while interactive reads are waiting.
+     */
+    public CatalogExporter(int pageSize, int maxConcurrent, int maxBooksPerSecond,
+                           long busyBackoffMillis, BooleanSupplier busy) {
+        this.pageSize = Math.max(1, pageSize);
+        this.maxBooksPerSecond = Math.max(0, maxBooksPerSecond);
+        this.busyBackoffMillis = Math.max(1, busyBackoffMillis);
+        this.busy = busy;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.exports = new Semaphore(this.maxConcurrent);
+    }
+
+    /**
+     * Reserves an export slot. Do this before sending any response, so a
+     * refusal can still be reported to the client.
+     * @throws OverloadedException if the maximum number of exports is running.
+     */
+    public Session start() {
+        if (!exports.tryAcquire()) {
+            throw new OverloadedException("Too many catalog exports running", RETRY_AFTER_SECONDS);
+        }
+        return new Session();
+    }
+
+    public int getActiveExports() {
+        return maxConcurrent - exports.availablePermits();
+    }
+
+    /**
+     * One running export; close it to free the slot.
+     */
+    public final class Session implements AutoCloseable {
+
+        private boolean closed;
+
+        private Session() {
+        }
+
+        /**
+         * Writes every book ordered by book id.
+         * @return number of books written.
+         * @throws IOException database errors ({@code SelectException}) and
+         *                     errors from the sink.
+         */
+        public long run(IBooksDb db, boolean withReviews, Sink sink) throws IOException {
+            long start = System.nanoTime();
+            long written = 0;
+            int after = 0;
+            List<Book> page;
+            do {
+                page = db.findBooksAfterId(after, pageSize, BookProjection.ALL);
+                if (page.isEmpty()) {
+                    break;
+                }
+                Map<Integer, List<Review>> reviews = withReviews ? reviewsFor(db, page) : Map.of();
+                for (Book book : page) {
+                    sink.write(book, withReviews ? reviews.getOrDefault(book.getBookId(), List.of()) : null);
+                    after = book.getBookId();
+                }
+                written += page.size();
+                throttle(start, written);
+            } while (page.size() == pageSize);
+            sink.flush();
+            return written;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                exports.release();
+            }
+        }
+    }
+
+    private static Map<Integer, List<Review>> reviewsFor(IBooksDb db, List<Book> page) throws IOException {
+        List<Integer> ids = new ArrayList<>(page.size());
+        for (Book book : page) {
+            ids.add(book.getBookId());
+        }
+        return db.findReviewsByBookIds(ids);
+    }
+
+    private void throttle(long startNanos, long written) throws InterruptedIOException {
+        long pause = 0;
+        if (maxBooksPerSecond > 0) {
+            long due = written * 1000 / maxBooksPerSecond;
+            long elapsed = (System.nanoTime() - startNanos) / 1_000_000;
+            pause = Math.max(0, due - elapsed);
+        }
+        try {
+            if (pause > 0) {
+                Thread.sleep(pause);
+            }
+            for (long waited = 0; waited < MAX_PAUSE_PER_PAGE_MILLIS && busy.getAsBoolean(); waited += busyBackoffMillis) {
+                Thread.sleep(busyBackoffMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export interrupted");
+        }
+    }
+
+    /**
+     * Receives exported books in book id order.
+     */
+    public interface Sink {
+        /**
+         * @param reviews the book's reviews, or null when reviews were not requested.
+         */
+        void write(Book book, List<Review> reviews) throws IOException;
+
+        default void flush() throws IOException {
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.ConnectionException;
+import com.nawidali.sql_labb_2.model.exceptions.InsertException;
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * Coalesces identical concurrent reads through a {@link RequestCoalescer}.
+ * Arguments are normalized the way the backends compare them: text searches
+ * are case-insensitive, ISBNs are trimmed and batch keys are treated as sets.
+ * Login and catalog paging are never coalesced; writes pass through and invalidate in-flight reads.
+ * <p>
+ * When the backend routes per user ({@link ReadRoute}), the route is part of
+ * the key, so a user pinned to the primary never joins a replica read. Joined
+ * callers get their own copies of the books and lists.
+ */
+public class CoalescingBooksDb implements IBooksDb {
+
+    private final IBooksDb delegate;
+    private final RequestCoalescer coalescer;
+    private final ReadRoute route;
+
+    public CoalescingBooksDb(IBooksDb delegate, RequestCoalescer coalescer) {
+        this(delegate, coalescer, () -> null);
+    }
+
+    /**
+     * @param route where the backend sends the current caller's reads (see {@link ReadRoute}).
+     */
+    public CoalescingBooksDb(IBooksDb delegate, RequestCoalescer coalescer, ReadRoute route) {
+        this.delegate = delegate;
+        this.coalescer = coalescer;
+        this.route = route;
+    }
+
+    // ---------------- ANSLUTNING ----------------
+
+    @Override
+    public boolean connect(String databaseUrl) throws ConnectionException {
+        return delegate.connect(databaseUrl);
+    }
+
+    @Override
+    public void disconnect() throws ConnectionException {
+        delegate.disconnect();
+    }
+
+    // ---------------- LASNING ----------------
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        return list(() -> delegate.findBooksByTitle(title), "title", text(title));
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        return list(() -> delegate.findBooksByIsbn(isbn), "isbn", trim(isbn));
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorName(String authorName) throws SelectException {
+        return list(() -> delegate.findBooksByAuthorName(authorName), "author", text(authorName));
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genreName) throws SelectException {
+        return list(() -> delegate.findBooksByGenre(genreName), "genre", text(genreName));
+    }
+
+    @Override
+    public List<Book> findBooksByMinRating(int minRating) throws SelectException {
+        return list(() -> delegate.findBooksByMinRating(minRating), "minRating", minRating);
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title, BookProjection fields) throws SelectException {
+        return list(() -> delegate.findBooksByTitle(title, fields), "title", text(title), fields);
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn, BookProjection fields) throws SelectException {
+        return list(() -> delegate.findBooksByIsbn(isbn, fields), "isbn", trim(isbn), fields);
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorName(String authorName, BookProjection fields) throws SelectException {
+        return list(() -> delegate.findBooksByAuthorName(authorName, fields), "author", text(authorName), fields);
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genreName, BookProjection fields) throws SelectException {
+        return list(() -> delegate.findBooksByGenre(genreName, fields), "genre", text(genreName), fields);
+    }
+
+    @Override
+    public List<Book> findBooksByMinRating(int minRating, BookProjection fields) throws SelectException {
+        return list(() -> delegate.findBooksByMinRating(minRating, fields), "minRating", minRating, fields);
+    }
+
+    @Override
+    public Map<String, Book> findBooksByIsbns(Collection<String> isbns) throws SelectException {
+        Set<String> keys = new HashSet<>();
+        for (String isbn : isbns) {
+            keys.add(trim(isbn));
+        }
+        return map(() -> delegate.findBooksByIsbns(isbns), "isbns", keys);
+    }
+
+    @Override
+    public Map<Integer, Book> findBooksByIds(Collection<Integer> bookIds) throws SelectException {
+        return map(() -> delegate.findBooksByIds(bookIds), "ids", new HashSet<>(bookIds));
+    }
+
+    @Override
+    public List<Book> findBooksAfterId(int afterBookId, int limit, BookProjection fields) throws SelectException {
+        return delegate.findBooksAfterId(afterBookId, limit, fields);
+    }
+
+    @Override
+    public List<Rating> findRatingsByBookIdRange(int fromBookId, int toBookId) throws SelectException {
+        return delegate.findRatingsByBookIdRange(fromBookId, toBookId);
+    }
+
+    @Override
+    public RatingSummary findRatingSummary(int bookId) throws SelectException {
+        return delegate.findRatingSummary(bookId);
+    }
+
+    @Override
+    public User login(String username, String password) throws SelectException {
+        return delegate.login(username, password);
+    }
+
+    @Override
+    public List<Review> findReviewsByBookId(int bookId) throws SelectException {
+        return coalescer.execute(key("review", bookId), () -> delegate.findReviewsByBookId(bookId), ArrayList::new);
+    }
+
+    @Override
+    public Map<Integer, List<Review>> findReviewsByBookIds(Collection<Integer> bookIds) throws SelectException {
+        return coalescer.execute(key("reviews", new HashSet<>(bookIds)), () -> delegate.findReviewsByBookIds(bookIds),
+                CoalescingBooksDb::copyReviews);
+    }
+
+    @Override
+    public User findBookCreator(int bookId) throws SelectException {
+        return coalescer.execute(key("creator", bookId), () -> delegate.findBookCreator(bookId),
+                UnaryOperator.identity());
+    }
+
+    // ---------------- SKRIVNING ----------------
+
+    @Override
+    public Book addBook(Book book, List<Author> authors, List<Genre> genres, User addedBy) throws InsertException {
+        try {
+            return delegate.addBook(book, authors, genres, addedBy);
+        } finally {
+            coalescer.invalidate();
+        }
+    }
+
+    @Override
+    public void deleteBook(int bookId, User byUser) throws InsertException {
+        try {
+            delegate.deleteBook(bookId, byUser);
+        } finally {
+            coalescer.invalidate();
+        }
+    }
+
+    @Override
+    public void rateBook(int bookId, int rating, User user) throws InsertException {
+        try {
+            delegate.rateBook(bookId, rating, user);
+        } finally {
+            coalescer.invalidate();
+        }
+    }
+
+    @Override
+    public void addReview(int bookId, User user, String text, LocalDate date) throws InsertException {
+        try {
+            delegate.addReview(bookId, user, text, date);
+        } finally {
+            coalescer.invalidate();
+        }
+    }
+
+    // ---------------- HJALPMETODER ----------------
+
+    private List<Book> list(RequestCoalescer.Read<List<Book>> read, Object... key) throws SelectException {
+        return coalescer.execute(key(key), read, books -> {
+            List<Book> copy = new ArrayList<>(books.size());
+            for (Book b : books) {
+                copy.add(copy(b));
+            }
+            return copy;
+        });
+    }
+
+    private <K> Map<K, Book> map(RequestCoalescer.Read<Map<K, Book>> read, Object... key) throws SelectException {
+        return coalescer.execute(key(key), read, books -> {
+            Map<K, Book> copy = new LinkedHashMap<>();
+            books.forEach((k, b) -> copy.put(k, copy(b)));
+            return copy;
+        });
+    }
+
+    // Arrays.asList: equals/hashCode by content and allows null arguments; the route comes first
+    private List<Object> key(Object... parts) {
+        Object[] withRoute = new Object[parts.length + 1];
+        withRoute[0] = route.currentRoute();
+        System.arraycopy(parts, 0, withRoute, 1, parts.length);
+        return Arrays.asList(withRoute);
+    }
+
+    // Authors and genres are immutable (and shared reference data); only the lists are copied
+    private static Book copy(Book b) {
+        return b == null ? null : new Book(b.getBookId(), b.getIsbn(), b.getTitle(), b.getPublished(),
+                new ArrayList<>(b.getAuthors()), new ArrayList<>(b.getGenres()), b.getAverageRating());
+    }
+
+    private static Map<Integer, List<Review>> copyReviews(Map<Integer, List<Review>> reviews) {
+        Map<Integer, List<Review>> copy = new LinkedHashMap<>();
+        reviews.forEach((id, list) -> copy.put(id, new ArrayList<>(list)));
+        return copy;
+    }
+
+    // Same folding as the backends' case-insensitive LIKE/regex
+    private static String text(String s) {
+        return s == null ? null : s.toLowerCase();
+    }
+
+    private static String trim(String s) {
+        return s == null ? null : s.trim();
+    }
+}
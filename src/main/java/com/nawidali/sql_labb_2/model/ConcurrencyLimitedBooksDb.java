@@ -0,0 +1,170 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.ConnectionException;
+import com.nawidali.sql_labb_2.model.exceptions.InsertException;
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Puts every database call behind an {@link AdaptiveLimiter}, with separate
+ * bulkheads for reads and writes so a slow write path cannot starve searches
+ * (and the other way around). Calls over the limit are shed with
+ * {@link com.nawidali.sql_labb_2.model.exceptions.OverloadedException}.
+ * Connect and disconnect are not limited.
+ */
+public class ConcurrencyLimitedBooksDb implements IBooksDb {
+
+    private final IBooksDb delegate;
+    private final AdaptiveLimiter reads;
+    private final AdaptiveLimiter writes;
+
+    public ConcurrencyLimitedBooksDb(IBooksDb delegate, AdaptiveLimiter reads, AdaptiveLimiter writes) {
+        this.delegate = delegate;
+        this.reads = reads;
+        this.writes = writes;
+    }
+
+    // ---------------- ANSLUTNING ----------------
+
+    @Override
+    public boolean connect(String databaseUrl) throws ConnectionException {
+        return delegate.connect(databaseUrl);
+    }
+
+    @Override
+    public void disconnect() throws ConnectionException {
+        delegate.disconnect();
+    }
+
+    // ---------------- LASNING ----------------
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        return reads.execute(() -> delegate.findBooksByTitle(title));
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        return reads.execute(() -> delegate.findBooksByIsbn(isbn));
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorName(String authorName) throws SelectException {
+        return reads.execute(() -> delegate.findBooksByAuthorName(authorName));
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genreName) throws SelectException {
+        return reads.execute(() -> delegate.findBooksByGenre(genreName));
+    }
+
+    @Override
+    public List<Book> findBooksByMinRating(int minRating) throws SelectException {
+        return reads.execute(() -> delegate.findBooksByMinRating(minRating));
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title, BookProjection fields) throws SelectException {
+        return reads.execute(() -> delegate.findBooksByTitle(title, fields));
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn, BookProjection fields) throws SelectException {
+        return reads.execute(() -> delegate.findBooksByIsbn(isbn, fields));
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorName(String authorName, BookProjection fields) throws SelectException {
+        return reads.execute(() -> delegate.findBooksByAuthorName(authorName, fields));
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genreName, BookProjection fields) throws SelectException {
+        return reads.execute(() -> delegate.findBooksByGenre(genreName, fields));
+    }
+
+    @Override
+    public List<Book> findBooksByMinRating(int minRating, BookProjection fields) throws SelectException {
+        return reads.execute(() -> delegate.findBooksByMinRating(minRating, fields));
+    }
+
+    @Override
+    public Map<String, Book> findBooksByIsbns(Collection<String> isbns) throws SelectException {
+        return reads.execute(() -> delegate.findBooksByIsbns(isbns));
+    }
+
+    @Override
+    public Map<Integer, Book> findBooksByIds(Collection<Integer> bookIds) throws SelectException {
+        return reads.execute(() -> delegate.findBooksByIds(bookIds));
+    }
+
+    @Override
+    public List<Book> findBooksAfterId(int afterBookId, int limit, BookProjection fields) throws SelectException {
+        return reads.execute(() -> delegate.findBooksAfterId(afterBookId, limit, fields));
+    }
+
+    @Override
+    public List<Rating> findRatingsByBookIdRange(int fromBookId, int toBookId) throws SelectException {
+        return reads.execute(() -> delegate.findRatingsByBookIdRange(fromBookId, toBookId));
+    }
+
+    @Override
+    public RatingSummary findRatingSummary(int bookId) throws SelectException {
+        return reads.execute(() -> delegate.findRatingSummary(bookId));
+    }
+
+    @Override
+    public User login(String username, String password) throws SelectException {
+        return reads.execute(() -> delegate.login(username, password));
+    }
+
+    @Override
+    public List<Review> findReviewsByBookId(int bookId) throws SelectException {
+        return reads.execute(() -> delegate.findReviewsByBookId(bookId));
+    }
+
+    @Override
+    public Map<Integer, List<Review>> findReviewsByBookIds(Collection<Integer> bookIds) throws SelectException {
+        return reads.execute(() -> delegate.findReviewsByBookIds(bookIds));
+    }
+
+    @Override
+    public User findBookCreator(int bookId) throws SelectException {
+        return reads.execute(() -> delegate.findBookCreator(bookId));
+    }
+
+    // ---------------- SKRIVNING ----------------
+
+    @Override
+    public Book addBook(Book book, List<Author> authors, List<Genre> genres, User addedBy) throws InsertException {
+        return writes.execute(() -> delegate.addBook(book, authors, genres, addedBy));
+    }
+
+    @Override
+    public void deleteBook(int bookId, User byUser) throws InsertException {
+        writes.execute(() -> {
+            delegate.deleteBook(bookId, byUser);
+            return null;
+        });
+    }
+
+    @Override
+    public void rateBook(int bookId, int rating, User user) throws InsertException {
+        writes.execute(() -> {
+            delegate.rateBook(bookId, rating, user);
+            return null;
+        });
+    }
+
+    @Override
+    public void addReview(int bookId, User user, String text, LocalDate date) throws InsertException {
+        writes.execute(() -> {
+            delegate.addReview(bookId, user, text, date);
+            return null;
+        });
+    }
+}
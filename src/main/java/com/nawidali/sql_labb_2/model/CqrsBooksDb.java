@@ -0,0 +1,263 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.ConnectionException;
+import com.nawidali.sql_labb_2.model.exceptions.InsertException;
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes to MySQL and reads from the MongoDB documents that
+ * {@link BookProjector} builds from MySQL's outbox.
+ * <p>
+ * Reads go to the documents only while the projection is within the
+ * configured lag, and, for a user who wrote something (identified through
+ * {@link CurrentUser}), only once the projection has caught up past that
+ * write. Otherwise, and when a document read fails, they go to MySQL.
+ * Login always reads MySQL.
+ */
+public class CqrsBooksDb implements IBooksDb, ReadRoute {
+
+    private static final Logger log = LoggerFactory.getLogger(CqrsBooksDb.class);
+
+    private final IBooksDb writes;
+    private final IBooksDb documents;
+    private final BookProjector projector;
+    private final String documentsUrl;
+    private final long maxLagMillis;
+
+    private final Map<Integer, Long> lastWriteByUser = new ConcurrentHashMap<>();
+    private volatile boolean projectionCurrent = true;
+
+    /**
+     * @param writes       MySQL database, writing the outbox
+     * @param documents    MongoDB database holding the projected documents
+     * @param documentsUrl connection string for {@code documents}
+     */
+    public CqrsBooksDb(IBooksDb writes, IBooksDb documents, BookProjector projector,
+                       String documentsUrl, long maxLagMillis) {
+        this.writes = writes;
+        this.documents = documents;
+        this.projector = projector;
+        this.documentsUrl = documentsUrl;
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    // ---------------- ANSLUTNING ----------------
+
+    @Override
+    public boolean connect(String databaseUrl) throws ConnectionException {
+        writes.connect(databaseUrl);
+        documents.connect(documentsUrl);
+        projector.start();
+        return true;
+    }
+
+    @Override
+    public void disconnect() throws ConnectionException {
+        projector.stop();
+        try {
+            documents.disconnect();
+        } finally {
+            writes.disconnect();
+        }
+    }
+
+    // ---------------- LASNING (dokument) ----------------
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        return read(db -> db.findBooksByTitle(title));
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        return read(db -> db.findBooksByIsbn(isbn));
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorName(String authorName) throws SelectException {
+        return read(db -> db.findBooksByAuthorName(authorName));
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genreName) throws SelectException {
+        return read(db -> db.findBooksByGenre(genreName));
+    }
+
+    @Override
+    public List<Book> findBooksByMinRating(int minRating) throws SelectException {
+        return read(db -> db.findBooksByMinRating(minRating));
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title, BookProjection fields) throws SelectException {
+        return read(db -> db.findBooksByTitle(title, fields));
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn, BookProjection fields) throws SelectException {
+        return read(db -> db.findBooksByIsbn(isbn, fields));
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorName(String authorName, BookProjection fields) throws SelectException {
+        return read(db -> db.findBooksByAuthorName(authorName, fields));
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genreName, BookProjection fields) throws SelectException {
+        return read(db -> db.findBooksByGenre(genreName, fields));
+    }
+
+    @Override
+    public List<Book> findBooksByMinRating(int minRating, BookProjection fields) throws SelectException {
+        return read(db -> db.findBooksByMinRating(minRating, fields));
+    }
+
+    @Override
+    public Map<String, Book> findBooksByIsbns(Collection<String> isbns) throws SelectException {
+        return read(db -> db.findBooksByIsbns(isbns));
+    }
+
+    @Override
+    public Map<Integer, Book> findBooksByIds(Collection<Integer> bookIds) throws SelectException {
+        return read(db -> db.findBooksByIds(bookIds));
+    }
+
+    @Override
+    public List<Book> findBooksAfterId(int afterBookId, int limit, BookProjection fields) throws SelectException {
+        return read(db -> db.findBooksAfterId(afterBookId, limit, fields));
+    }
+
+    @Override
+    public List<Rating> findRatingsByBookIdRange(int fromBookId, int toBookId) throws SelectException {
+        return read(db -> db.findRatingsByBookIdRange(fromBookId, toBookId));
+    }
+
+    @Override
+    public List<Review> findReviewsByBookId(int bookId) throws SelectException {
+        return read(db -> db.findReviewsByBookId(bookId));
+    }
+
+    @Override
+    public Map<Integer, List<Review>> findReviewsByBookIds(Collection<Integer> bookIds) throws SelectException {
+        return read(db -> db.findReviewsByBookIds(bookIds));
+    }
+
+    @Override
+    public User findBookCreator(int bookId) throws SelectException {
+        return read(db -> db.findBookCreator(bookId));
+    }
+
+    @Override
+    public RatingSummary findRatingSummary(int bookId) throws SelectException {
+        return read(db -> db.findRatingSummary(bookId));
+    }
+
+    @Override
+    public User login(String username, String password) throws SelectException {
+        return writes.login(username, password);
+    }
+
+    // ---------------- SKRIVNING (MySQL) ----------------
+
+    @Override
+    public Book addBook(Book book, List<Author> authors, List<Genre> genres, User addedBy) throws InsertException {
+        Book added = writes.addBook(book, authors, genres, addedBy);
+        recordWrite(addedBy);
+        return added;
+    }
+
+    @Override
+    public void deleteBook(int bookId, User byUser) throws InsertException {
+        writes.deleteBook(bookId, byUser);
+        recordWrite(byUser);
+    }
+
+    @Override
+    public void rateBook(int bookId, int rating, User user) throws InsertException {
+        writes.rateBook(bookId, rating, user);
+        recordWrite(user);
+    }
+
+    @Override
+    public void addReview(int bookId, User user, String text, LocalDate date) throws InsertException {
+        writes.addReview(bookId, user, text, date);
+        recordWrite(user);
+    }
+
+    // ---------------- ROUTING ----------------
+
+    /**
+     * "writes" while the current user has a write not yet projected,
+     * otherwise null (documents, or MySQL for everyone while lagging).
+     */
+    @Override
+    public Object currentRoute() {
+        return hasUnprojectedWrite() ? "writes" : null;
+    }
+
+    private void recordWrite(User user) {
+        if (user != null) {
+            lastWriteByUser.put(user.getUserId(), System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * True if the current user's last write is not yet in the documents.
+     * Entries are dropped once projected, so the map only holds recent writers.
+     */
+    private boolean hasUnprojectedWrite() {
+        Integer userId = CurrentUser.get();
+        if (userId == null) {
+            return false;
+        }
+        Long writtenAt = lastWriteByUser.get(userId);
+        if (writtenAt == null) {
+            return false;
+        }
+        if (writtenAt < projector.caughtUpAt()) {
+            lastWriteByUser.remove(userId, writtenAt);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean projectionWithinLag() {
+        boolean current = projector.isWithin(maxLagMillis);
+        if (current != projectionCurrent) {
+            projectionCurrent = current;
+            if (current) {
+                log.info("Book projection caught up, reading from documents");
+            } else {
+                log.warn("Book projection lags more than {} ms (lag {} ms), reading from MySQL",
+                        maxLagMillis, projector.getLagMillis());
+            }
+        }
+        return current;
+    }
+
+    private <T> T read(Read<T> op) throws SelectException {
+        if (!projectionWithinLag() || hasUnprojectedWrite()) {
+            return op.apply(writes);
+        }
+        try {
+            return op.apply(documents);
+        } catch (SelectException e) {
+            log.warn("Read from book documents failed, reading from MySQL: {}", e.getMessage());
+            return op.apply(writes);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Read<T> {
+        T apply(IBooksDb db) throws SelectException;
+    }
+}
@@ -0,0 +1,33 @@
+package com.nawidali.sql_labb_2.model;
+
+/**
+ * Holds the id of the user the current request is made on behalf of, if known.
+ * Set by the REST layer per request and read by the database layer, e.g. to
+ * route a user's reads to the primary right after they wrote something.
+ */
+public final class CurrentUser {
+
+    private static final ThreadLocal<Integer> USER_ID = new ThreadLocal<>();
+
+    private CurrentUser() {
+    }
+
+    public static void set(Integer userId) {
+        if (userId == null) {
+            USER_ID.remove();
+        } else {
+            USER_ID.set(userId);
+        }
+    }
+
+    /**
+     * @return the current user id, or {@code null} if the request is anonymous.
+     */
+    public static Integer get() {
+        return USER_ID.get();
+    }
+
+    public static void clear() {
+        USER_ID.remove();
+    }
+}
@@ -0,0 +1,19 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.InsertException;
+
+/**
+ * Implemented by database backends whose {@code deleteBook} only marks the
+ * book as deleted. The rows or documents of deleted books are removed later,
+ * a little at a time, by {@link BookPurger}.
+ */
+public interface DeletedBookPurge {
+
+    /**
+     * Removes data of deleted books, at most {@code maxRows} rows or documents.
+     *
+     * @return number of rows or documents removed; less than {@code maxRows} when nothing is left.
+     * @throws InsertException if not connected or a delete fails.
+     */
+    int purgeDeletedBooks(int maxRows) throws InsertException;
+}
@@ -0,0 +1,39 @@
+package com.nawidali.sql_labb_2.model;
+
+import java.util.List;
+
+/**
+ * Combines several transports into one, e.g. one outbox poller or change
+ * stream per shard, since every shard records only its own changes.
+ * Batches from all of them go to the same sink; a gap on any of them
+ * flushes everything.
+ */
+public class FanInTransport implements InvalidationTransport {
+
+    private final List<InvalidationTransport> transports;
+
+    public FanInTransport(List<InvalidationTransport> transports) {
+        this.transports = List.copyOf(transports);
+    }
+
+    @Override
+    public void start(Sink sink) {
+        for (InvalidationTransport transport : transports) {
+            transport.start(sink);
+        }
+    }
+
+    @Override
+    public void send(int[] bookIds) {
+        for (InvalidationTransport transport : transports) {
+            transport.send(bookIds);
+        }
+    }
+
+    @Override
+    public void stop() {
+        for (InvalidationTransport transport : transports) {
+            transport.stop();
+        }
+    }
+}
@@ -5,7 +5,9 @@ import com.nawidali.sql_labb_2.model.exceptions.SelectException;
 import com.nawidali.sql_labb_2.model.exceptions.InsertException;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Databasgranssnitt for bokdatabasen.
@@ -53,6 +55,61 @@ public interface IBooksDb {
      */
     List<Book> findBooksByMinRating(int minRating) throws SelectException;
 
+    // --- SOKNING MED PROJEKTION ---
+    // Hamtar endast de falt som anges i projektionen. Standardimplementationen
+    // hamtar hela boken; implementationer bor hoppa over onodiga joins/falt.
+
+    default List<Book> findBooksByTitle(String title, BookProjection fields) throws SelectException {
+        return findBooksByTitle(title);
+    }
+
+    default List<Book> findBooksByIsbn(String isbn, BookProjection fields) throws SelectException {
+        return findBooksByIsbn(isbn);
+    }
+
+    default List<Book> findBooksByAuthorName(String authorName, BookProjection fields) throws SelectException {
+        return findBooksByAuthorName(authorName);
+    }
+
+    default List<Book> findBooksByGenre(String genreName, BookProjection fields) throws SelectException {
+        return findBooksByGenre(genreName);
+    }
+
+    default List<Book> findBooksByMinRating(int minRating, BookProjection fields) throws SelectException {
+        return findBooksByMinRating(minRating);
+    }
+
+    // --- BATCHUPPSLAG ---
+
+    /**
+     * Hamtar flera bocker pa ISBN i ett anrop.
+     * Nyckeln i resultatet ar ISBN sa som det angavs (trimmat); ISBN som inte
+     * hittades saknas i mappen.
+     */
+    Map<String, Book> findBooksByIsbns(Collection<String> isbns) throws SelectException;
+
+    /**
+     * Hamtar flera bocker pa bok-id i ett anrop. Id som inte hittades saknas i mappen.
+     */
+    Map<Integer, Book> findBooksByIds(Collection<Integer> bookIds) throws SelectException;
+
+    // --- GENOMLOPNING ---
+
+    /**
+     * Hamtar nasta sida av katalogen ordnad pa bok-id (keyset-paginering):
+     * upp till limit bocker med bok-id storre an afterBookId. Borja med 0 och
+     * skicka sedan sista bok-id fran foregaende sida. Anvands for att bygga
+     * index i minnet utan att lasa hela katalogen i en fraga.
+     */
+    List<Book> findBooksAfterId(int afterBookId, int limit, BookProjection fields) throws SelectException;
+
+    /**
+     * Hamtar alla betyg for bocker med bok-id fran och med fromBookId till och
+     * med toBookId. Anvands for att bygga index i minnet; anroparen valjer
+     * intervall sa att varje anrop far ett rimligt antal rader.
+     */
+    List<Rating> findRatingsByBookIdRange(int fromBookId, int toBookId) throws SelectException;
+
     // --- BOKHANTERING (B,F) ---
 
     /**
@@ -77,6 +134,12 @@ public interface IBooksDb {
      */
     void rateBook(int bookId, int rating, User user) throws InsertException;
 
+    /**
+     * Hamtar fordelningen av bokens betyg. Den underhalls av rateBook, sa
+     * inga enskilda betyg lases. Returnerar null om boken inte finns.
+     */
+    RatingSummary findRatingSummary(int bookId) throws SelectException;
+
     // --- LOGIN (E,F,G,H) ---
 
     /**
@@ -96,6 +159,12 @@ public interface IBooksDb {
      */
     List<Review> findReviewsByBookId(int bookId) throws SelectException;
 
+    /**
+     * Hamta recensioner for flera bocker i en fraga, nyast forst per bok.
+     * Bocker utan recensioner saknas i resultatet.
+     */
+    Map<Integer, List<Review>> findReviewsByBookIds(Collection<Integer> bookIds) throws SelectException;
+
     /**
      * Hamta anvandaren som skapade boken.
      */
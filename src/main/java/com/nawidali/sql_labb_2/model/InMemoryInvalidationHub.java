@@ -0,0 +1,89 @@
+package com.nawidali.sql_labb_2.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Connects several {@link InvalidationBus} instances in one JVM, standing in
+ * for a cluster of processes in tests and local runs. Delivery is synchronous
+ * on the sending thread. A disconnected node misses everything sent to it
+ * (and gets a full flush on reconnect); what it sends meanwhile is held back
+ * and delivered on reconnect.
+ */
+public class InMemoryInvalidationHub {
+
+    private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+
+    public InvalidationTransport transport(String nodeId) {
+        return new Node(nodeId);
+    }
+
+    public void disconnect(String nodeId) {
+        Node node = nodes.get(nodeId);
+        if (node != null) {
+            node.connected = false;
+        }
+    }
+
+    public void reconnect(String nodeId) {
+        Node node = nodes.get(nodeId);
+        if (node == null || node.connected) {
+            return;
+        }
+        node.connected = true;
+        node.sink.flushAll();
+        List<int[]> held;
+        synchronized (node.heldBack) {
+            held = new ArrayList<>(node.heldBack);
+            node.heldBack.clear();
+        }
+        for (int[] ids : held) {
+            node.broadcast(ids);
+        }
+    }
+
+    private final class Node implements InvalidationTransport {
+        private final String nodeId;
+        private final List<int[]> heldBack = new ArrayList<>();
+        private volatile Sink sink;
+        private volatile boolean connected;
+
+        private Node(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        @Override
+        public void start(Sink sink) {
+            this.sink = sink;
+            this.connected = true;
+            nodes.put(nodeId, this);
+        }
+
+        @Override
+        public void send(int[] bookIds) {
+            if (!connected) {
+                synchronized (heldBack) {
+                    heldBack.add(bookIds.clone());
+                }
+                return;
+            }
+            broadcast(bookIds);
+        }
+
+        private void broadcast(int[] bookIds) {
+            for (Node other : nodes.values()) {
+                if (other != this && other.connected) {
+                    other.sink.deliver(bookIds.clone());
+                }
+            }
+        }
+
+        @Override
+        public void stop() {
+            connected = false;
+            nodes.remove(nodeId, this);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.nawidali.sql_labb_2.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps in-process caches on several nodes consistent. Local writes (seen as
+ * {@link BookChangeListener} events) are collected, deduplicated and sent as
+ * one batch of book ids per interval. Batches from other nodes are handed to
+ * the registered {@link InvalidationListener}s, and after a reconnect they
+ * are told to drop everything.
+ * <p>
+ * Local caches are expected to handle this node's own writes directly; the
+ * bus only carries them to the other nodes.
+ */
+public class InvalidationBus implements BookChangeListener, InvalidationTransport.Sink {
+
+    private static final Logger log = LoggerFactory.getLogger(InvalidationBus.class);
+
+    private final InvalidationTransport transport;
+    private final long batchMillis;
+    private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<>();
+    private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder batchesSent = new LongAdder();
+    private final LongAdder batchesReceived = new LongAdder();
+    private final LongAdder idsReceived = new LongAdder();
+    private final LongAdder fullFlushes = new LongAdder();
+
+    private ScheduledExecutorService flusher;
+
+    public InvalidationBus(InvalidationTransport transport, long batchMillis) {
+        this.transport = transport;
+        this.batchMillis = batchMillis;
+    }
+
+    public void addListener(InvalidationListener listener) {
+        listeners.add(listener);
+    }
+
+    public void start() {
+        transport.start(this);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "invalidation-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, batchMillis, batchMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            flusher = null;
+        }
+        flush();
+        transport.stop();
+    }
+
+    // ---------------- LOKALA ANDRINGAR ----------------
+
+    @Override
+    public void bookAdded(Book book) {
+        pending.add(book.getBookId());
+    }
+
+    @Override
+    public void bookDeleted(int bookId) {
+        pending.add(bookId);
+    }
+
+    @Override
+    public void bookChanged(int bookId) {
+        pending.add(bookId);
+    }
+
+    /**
+     * Sends everything collected since the last flush as one batch.
+     */
+    void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        int[] batch = new int[pending.size()];
+        int n = 0;
+        for (Iterator<Integer> it = pending.iterator(); it.hasNext() && n < batch.length; ) {
+            batch[n++] = it.next();
+            it.remove();
+        }
+        int[] ids = n == batch.length ? batch : Arrays.copyOf(batch, n);
+        try {
+            transport.send(ids);
+            batchesSent.increment();
+        } catch (RuntimeException e) {
+            log.warn("Could not send invalidation batch of {} ids: {}", ids.length, e.getMessage());
+        }
+    }
+
+    // ---------------- FJARRANDRINGAR ----------------
+
+    @Override
+    public void deliver(int[] bookIds) {
+        if (bookIds.length == 0) {
+            return;
+        }
+        batchesReceived.increment();
+        idsReceived.add(bookIds.length);
+        for (InvalidationListener listener : listeners) {
+            try {
+                listener.invalidate(bookIds);
+            } catch (RuntimeException e) {
+                log.warn("Invalidation listener {} failed: {}", listener, e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void flushAll() {
+        fullFlushes.increment();
+        log.info("Invalidating all cached books");
+        for (InvalidationListener listener : listeners) {
+            try {
+                listener.invalidateAll();
+            } catch (RuntimeException e) {
+                log.warn("Invalidation listener {} failed on full flush: {}", listener, e.getMessage(), e);
+            }
+        }
+    }
+
+    public long getBatchesSent() {
+        return batchesSent.sum();
+    }
+
+    public long getBatchesReceived() {
+        return batchesReceived.sum();
+    }
+
+    public long getIdsReceived() {
+        return idsReceived.sum();
+    }
+
+    public long getFullFlushes() {
+        return fullFlushes.sum();
+    }
+}
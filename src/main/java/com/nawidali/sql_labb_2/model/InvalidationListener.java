@@ -0,0 +1,17 @@
+package com.nawidali.sql_labb_2.model;
+
+/**
+ * Receives invalidations for books changed on other nodes. Invalidations may
+ * arrive more than once and for books this node already has fresh, so
+ * handling them must be idempotent.
+ */
+public interface InvalidationListener {
+
+    void invalidate(int[] bookIds);
+
+    /**
+     * Everything may be stale, e.g. after this node lost contact with the bus
+     * and cannot know what it missed.
+     */
+    void invalidateAll();
+}
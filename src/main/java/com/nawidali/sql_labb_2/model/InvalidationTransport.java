@@ -0,0 +1,31 @@
+package com.nawidali.sql_labb_2.model;
+
+/**
+ * Carries batches of changed book ids between nodes for an {@link InvalidationBus}.
+ */
+public interface InvalidationTransport {
+
+    /**
+     * Starts delivering remote batches to the sink, typically on a background thread.
+     * Connection problems are handled (retried) by the transport itself.
+     */
+    void start(Sink sink);
+
+    /**
+     * Broadcasts book ids changed on this node. Transports where the database
+     * write itself is the message (outbox table, change stream) ignore this.
+     */
+    void send(int[] bookIds);
+
+    void stop();
+
+    interface Sink {
+
+        void deliver(int[] bookIds);
+
+        /**
+         * Called when delivery may have had a gap, e.g. after a reconnect.
+         */
+        void flushAll();
+    }
+}
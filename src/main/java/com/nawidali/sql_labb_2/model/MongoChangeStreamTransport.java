@@ -0,0 +1,153 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.FullDocumentBeforeChange;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invalidation transport driven by a MongoDB change stream on the book
+ * collection, so every write is seen by every node without an extra message.
+ * Requires a replica set.
+ * <p>
+ * Books are deleted by setting {@code deleted_at}, an update that carries
+ * the book id. Documents are only removed afterwards by the purge, when the
+ * book is already gone from every read, so a delete without a pre-image
+ * ({@code changeStreamPreAndPostImages}) is skipped.
+ */
+public class MongoChangeStreamTransport implements InvalidationTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(MongoChangeStreamTransport.class);
+
+    private static final String DB_NAME = "booksdb";
+    private static final int MAX_BATCH = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+    // "$changeStream stage is only supported on replica sets"
+    private static final int NOT_A_REPLICA_SET = 40573;
+
+    private final String uri;
+    private final long batchMillis;
+
+    private volatile boolean running;
+    private Thread watcher;
+
+    public MongoChangeStreamTransport(String uri, long batchMillis) {
+        this.uri = uri;
+        this.batchMillis = batchMillis;
+    }
+
+    @Override
+    public void start(Sink sink) {
+        running = true;
+        watcher = new Thread(() -> run(sink), "invalidation-change-stream");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @Override
+    public void send(int[] bookIds) {
+        // Every node watches the collection itself
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+    }
+
+    private void run(Sink sink) {
+        boolean connectedBefore = false;
+        long retryDelay = batchMillis;
+        List<Bson> pipeline = List.of(
+                Aggregates.match(Filters.in("operationType", "insert", "update", "replace", "delete")),
+                Aggregates.project(Projections.include(
+                        "operationType", "documentKey", "ns",
+                        "fullDocument.book_id", "fullDocumentBeforeChange.book_id")));
+
+        while (running) {
+            try (MongoClient client = MongoClients.create(uri)) {
+                MongoCollection<Document> books = client.getDatabase(DB_NAME).getCollection("book");
+                try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = books.watch(pipeline)
+                        .fullDocument(FullDocument.UPDATE_LOOKUP)
+                        .fullDocumentBeforeChange(FullDocumentBeforeChange.WHEN_AVAILABLE)
+                        .maxAwaitTime(batchMillis, TimeUnit.MILLISECONDS)
+                        .cursor()) {
+                    if (connectedBefore) {
+                        sink.flushAll();
+                    }
+                    connectedBefore = true;
+                    retryDelay = batchMillis;
+                    while (running) {
+                        readBatch(cursor, sink);
+                    }
+                }
+            } catch (MongoCommandException e) {
+                if (e.getErrorCode() == NOT_A_REPLICA_SET) {
+                    log.warn("MongoDB change streams need a replica set; cross-node invalidation is off");
+                    return;
+                }
+                log.warn("Change stream failed, reconnecting in {} ms: {}", retryDelay, e.getMessage());
+            } catch (MongoException e) {
+                log.warn("Change stream failed, reconnecting in {} ms: {}", retryDelay, e.getMessage());
+            }
+            try {
+                Thread.sleep(retryDelay);
+            } catch (InterruptedException e) {
+                return;
+            }
+            retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Collects events until the stream has nothing more within the await time
+     * (or the batch is full) and delivers them as one batch.
+     */
+    private void readBatch(MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor, Sink sink) {
+        Set<Integer> batch = new LinkedHashSet<>();
+        ChangeStreamDocument<Document> event = cursor.tryNext();
+        while (event != null) {
+            Integer bookId = bookId(event.getFullDocument());
+            if (bookId == null) {
+                bookId = bookId(event.getFullDocumentBeforeChange());
+            }
+            if (bookId != null) {
+                batch.add(bookId);
+            }
+            if (batch.size() >= MAX_BATCH) {
+                break;
+            }
+            event = cursor.tryNext();
+        }
+        if (!batch.isEmpty()) {
+            sink.deliver(batch.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    private static Integer bookId(Document doc) {
+        if (doc == null) {
+            return null;
+        }
+        Object id = doc.get("book_id");
+        return id instanceof Number n ? n.intValue() : null;
+    }
+}
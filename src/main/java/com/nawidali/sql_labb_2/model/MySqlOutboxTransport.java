@@ -0,0 +1,136 @@
+package com.nawidali.sql_labb_2.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Invalidation transport over the {@code book_outbox} table. Writers insert
+ * a row per changed book in the same transaction as the change (see
+ * {@link BooksDbMySql#setWriteOutbox}); every node polls the rows after the
+ * last event it has seen, on its own connection. Old rows are pruned after
+ * the retention period.
+ * <p>
+ * A node also reads its own rows back; invalidations are idempotent, so
+ * that is harmless.
+ */
+public class MySqlOutboxTransport implements InvalidationTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(MySqlOutboxTransport.class);
+
+    private static final int POLL_LIMIT = 1000;
+    private static final long PRUNE_INTERVAL_MILLIS = 60_000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+
+    private final String databaseUrl;
+    private final long pollMillis;
+    private final int retentionMinutes;
+
+    private volatile boolean running;
+    private Thread poller;
+
+    public MySqlOutboxTransport(String databaseUrl, long pollMillis, int retentionMinutes) {
+        this.databaseUrl = databaseUrl;
+        this.pollMillis = pollMillis;
+        this.retentionMinutes = retentionMinutes;
+    }
+
+    @Override
+    public void start(Sink sink) {
+        running = true;
+        poller = new Thread(() -> run(sink), "invalidation-outbox-poller");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    @Override
+    public void send(int[] bookIds) {
+        // The outbox rows are written by BooksDbMySql inside the change's transaction
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (poller != null) {
+            poller.interrupt();
+        }
+    }
+
+    private void run(Sink sink) {
+        boolean connectedBefore = false;
+        long retryDelay = pollMillis;
+        while (running) {
+            try (Connection conn = DriverManager.getConnection(databaseUrl)) {
+                long lastEventId = maxEventId(conn);
+                if (connectedBefore) {
+                    // Whatever happened while we were away is unknown
+                    sink.flushAll();
+                }
+                connectedBefore = true;
+                retryDelay = pollMillis;
+                long lastPrune = 0;
+                while (running) {
+                    Set<Integer> batch = new LinkedHashSet<>();
+                    int rows;
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            "SELECT event_id, book_id FROM book_outbox WHERE event_id > ? ORDER BY event_id LIMIT ?")) {
+                        stmt.setLong(1, lastEventId);
+                        stmt.setInt(2, POLL_LIMIT);
+                        rows = 0;
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                lastEventId = rs.getLong("event_id");
+                                batch.add(rs.getInt("book_id"));
+                                rows++;
+                            }
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        sink.deliver(batch.stream().mapToInt(Integer::intValue).toArray());
+                    }
+                    long now = System.currentTimeMillis();
+                    if (now - lastPrune >= PRUNE_INTERVAL_MILLIS) {
+                        prune(conn);
+                        lastPrune = now;
+                    }
+                    if (rows < POLL_LIMIT) {
+                        Thread.sleep(pollMillis);
+                    }
+                }
+            } catch (SQLException e) {
+                log.warn("Outbox polling failed, reconnecting in {} ms: {}", retryDelay, e.getMessage());
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                Thread.sleep(retryDelay);
+            } catch (InterruptedException e) {
+                return;
+            }
+            retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MILLIS);
+        }
+    }
+
+    private static long maxEventId(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(event_id), 0) FROM book_outbox")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private void prune(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "DELETE FROM book_outbox WHERE created_at < NOW() - INTERVAL ? MINUTE LIMIT 10000")) {
+            stmt.setInt(1, retentionMinutes);
+            stmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.ConnectionException;
+import com.nawidali.sql_labb_2.model.exceptions.InsertException;
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Publishes a {@link BookChangeListener} event after each successful catalog
+ * change. Failed writes publish nothing. Everything else passes straight through.
+ */
+public class NotifyingBooksDb implements IBooksDb {
+
+    private final IBooksDb delegate;
+    private final BookChangeListener listener;
+
+    public NotifyingBooksDb(IBooksDb delegate, BookChangeListener listener) {
+        this.delegate = delegate;
+        this.listener = listener;
+    }
+
+    // ---------------- ANSLUTNING ----------------
+
+    @Override
+    public boolean connect(String databaseUrl) throws ConnectionException {
+        return delegate.connect(databaseUrl);
+    }
+
+    @Override
+    public void disconnect() throws ConnectionException {
+        delegate.disconnect();
+    }
+
+    // ---------------- LASNING ----------------
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        return delegate.findBooksByTitle(title);
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        return delegate.findBooksByIsbn(isbn);
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorName(String authorName) throws SelectException {
+        return delegate.findBooksByAuthorName(authorName);
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genreName) throws SelectException {
+        return delegate.findBooksByGenre(genreName);
+    }
+
+    @Override
+    public List<Book> findBooksByMinRating(int minRating) throws SelectException {
+        return delegate.findBooksByMinRating(minRating);
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title, BookProjection fields) throws SelectException {
+        return delegate.findBooksByTitle(title, fields);
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn, BookProjection fields) throws SelectException {
+        return delegate.findBooksByIsbn(isbn, fields);
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorName(String authorName, BookProjection fields) throws SelectException {
+        return delegate.findBooksByAuthorName(authorName, fields);
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genreName, BookProjection fields) throws SelectException {
+        return delegate.findBooksByGenre(genreName, fields);
+    }
+
+    @Override
+    public List<Book> findBooksByMinRating(int minRating, BookProjection fields) throws SelectException {
+        return delegate.findBooksByMinRating(minRating, fields);
+    }
+
+    @Override
+    public Map<String, Book> findBooksByIsbns(Collection<String> isbns) throws SelectException {
+        return delegate.findBooksByIsbns(isbns);
+    }
+
+    @Override
+    public Map<Integer, Book> findBooksByIds(Collection<Integer> bookIds) throws SelectException {
+        return delegate.findBooksByIds(bookIds);
+    }
+
+    @Override
+    public List<Book> findBooksAfterId(int afterBookId, int limit, BookProjection fields) throws SelectException {
+        return delegate.findBooksAfterId(afterBookId, limit, fields);
+    }
+
+    @Override
+    public List<Rating> findRatingsByBookIdRange(int fromBookId, int toBookId) throws SelectException {
+        return delegate.findRatingsByBookIdRange(fromBookId, toBookId);
+    }
+
+    @Override
+    public RatingSummary findRatingSummary(int bookId) throws SelectException {
+        return delegate.findRatingSummary(bookId);
+    }
+
+    @Override
+    public User login(String username, String password) throws SelectException {
+        return delegate.login(username, password);
+    }
+
+    @Override
+    public List<Review> findReviewsByBookId(int bookId) throws SelectException {
+        return delegate.findReviewsByBookId(bookId);
+    }
+
+    @Override
+    public Map<Integer, List<Review>> findReviewsByBookIds(Collection<Integer> bookIds) throws SelectException {
+        return delegate.findReviewsByBookIds(bookIds);
+    }
+
+    @Override
+    public User findBookCreator(int bookId) throws SelectException {
+        return delegate.findBookCreator(bookId);
+    }
+
+    // ---------------- SKRIVNING ----------------
+
+    @Override
+    public Book addBook(Book book, List<Author> authors, List<Genre> genres, User addedBy) throws InsertException {
+        Book added = delegate.addBook(book, authors, genres, addedBy);
+        listener.bookAdded(added);
+        return added;
+    }
+
+    @Override
+    public void deleteBook(int bookId, User byUser) throws InsertException {
+        delegate.deleteBook(bookId, byUser);
+        listener.bookDeleted(bookId);
+    }
+
+    @Override
+    public void rateBook(int bookId, int rating, User user) throws InsertException {
+        delegate.rateBook(bookId, rating, user);
+        listener.bookRated(bookId, user.getUserId(), rating);
+    }
+
+    @Override
+    public void addReview(int bookId, User user, String text, LocalDate date) throws InsertException {
+        delegate.addReview(bookId, user, text, date);
+        listener.bookReviewed(bookId, user.getUserId());
+    }
+}
@@ -0,0 +1,365 @@
+package com.nawidali.sql_labb_2.model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongPredicate;
+
+/**
+ * Book cache kept outside the Java heap, in {@link BookCodec} form.
+ * <p>
+ * Records are appended to one direct buffer used as a ring: when it is full
+ * (or holds {@code maxEntries} books), the oldest records are overwritten.
+ * Two open-addressing tables of primitive arrays map book id and ISBN hash to
+ * a record's position, so the cache holds no objects per book. A hit decodes
+ * a fresh {@link Book}; callers may change it freely.
+ * <p>
+ * Record: length, book id, ISBN hash (one int each), then the encoded book.
+ * A record never wraps around the end of the buffer; the gap is skipped.
+ * Positions are counted from the start without wrapping, so a record's
+ * offset is {@code position % capacity}.
+ */
+public class OffHeapBookCache implements InvalidationListener {
+
+    private static final int HEADER = 12;
+    private static final int PADDING = -1;
+
+    private final ByteBuffer arena;
+    private final int capacity;
+    private final int maxEntries;
+    private final int maxRecordBytes;
+    private final ProbeTable byId;
+    private final ProbeTable byIsbn;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile ReferenceData referenceData;
+
+    // Guarded by the write lock
+    private long head;
+    private long tail;
+    private volatile int entries;
+    private volatile long usedBytes;
+
+    private final AtomicLong version = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacityBytes off-heap bytes to reserve; 0 disables caching.
+     * @param maxEntries    most books held at once; sizes the index tables.
+     */
+    public OffHeapBookCache(int capacityBytes, int maxEntries) {
+        this.capacity = Math.max(0, capacityBytes);
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxRecordBytes = capacity / 4;
+        this.arena = ByteBuffer.allocateDirect(capacity);
+        this.byId = new ProbeTable(this.maxEntries);
+        this.byIsbn = new ProbeTable(this.maxEntries);
+    }
+
+    /**
+     * Decoded books then share the reference data's author and genre instances.
+     */
+    public void setReferenceData(ReferenceData referenceData) {
+        this.referenceData = referenceData;
+    }
+
+    // ---------------- LASNING ----------------
+
+    /**
+     * @return the cached book, or null.
+     */
+    public Book get(int bookId) {
+        lock.readLock().lock();
+        try {
+            long pos = byId.find(bookId, p -> true);
+            return decodeOrMiss(pos);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the cached book with exactly this ISBN, or null.
+     */
+    public Book getByIsbn(String isbn) {
+        if (isbn == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            long pos = byIsbn.find(isbn.hashCode(),
+                    p -> isbn.equals(BookCodec.decodeIsbn(arena, offset(p) + HEADER)));
+            return decodeOrMiss(pos);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Book decodeOrMiss(long pos) {
+        if (pos < 0) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return BookCodec.decode(arena, offset(pos) + HEADER, referenceData);
+    }
+
+    // ---------------- SKRIVNING ----------------
+
+    /**
+     * Current invalidation version; take it before reading the database and
+     * pass it to {@link #put(Book, long)}.
+     */
+    public long stamp() {
+        return version.get();
+    }
+
+    /**
+     * Caches the book unless something was invalidated since {@code stamp},
+     * in which case the book may already be stale.
+     * @return whether the book was cached.
+     */
+    public boolean put(Book book, long stamp) {
+        byte[] payload = BookCodec.encode(book);
+        if (payload == null || HEADER + payload.length > maxRecordBytes) {
+            return false;
+        }
+        int length = HEADER + payload.length;
+        int isbnHash = book.getIsbn() == null ? 0 : book.getIsbn().hashCode();
+
+        lock.writeLock().lock();
+        try {
+            if (version.get() != stamp) {
+                return false;
+            }
+            removeLocked(book.getBookId());
+            if (book.getIsbn() != null) {
+                long sameIsbn = byIsbn.find(isbnHash,
+                        p -> book.getIsbn().equals(BookCodec.decodeIsbn(arena, offset(p) + HEADER)));
+                if (sameIsbn >= 0) {
+                    removeLocked(arena.getInt(offset(sameIsbn) + 4));
+                }
+            }
+            while (entries >= maxEntries) {
+                evictOldest();
+            }
+            int gap;
+            while (true) {
+                int toEnd = capacity - offset(head);
+                gap = length > toEnd ? toEnd : 0;
+                if (capacity - (head - tail) >= gap + length) {
+                    break;
+                }
+                evictOldest();
+            }
+            if (gap > 0) {
+                if (gap >= 4) {
+                    arena.putInt(offset(head), PADDING);
+                }
+                head += gap;
+            }
+
+            int at = offset(head);
+            arena.putInt(at, length);
+            arena.putInt(at + 4, book.getBookId());
+            arena.putInt(at + 8, isbnHash);
+            arena.put(at + HEADER, payload);
+            byId.put(book.getBookId(), head);
+            byIsbn.put(isbnHash, head);
+            head += length;
+            entries++;
+            usedBytes += length;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int bookId) {
+        lock.writeLock().lock();
+        try {
+            version.incrementAndGet();
+            removeLocked(bookId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            version.incrementAndGet();
+            byId.clear();
+            byIsbn.clear();
+            head = 0;
+            tail = 0;
+            entries = 0;
+            usedBytes = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void invalidate(int[] bookIds) {
+        lock.writeLock().lock();
+        try {
+            version.incrementAndGet();
+            for (int id : bookIds) {
+                removeLocked(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        clear();
+    }
+
+    // The record's bytes stay in the ring until the tail passes them
+    private void removeLocked(int bookId) {
+        long pos = byId.find(bookId, p -> true);
+        if (pos < 0) {
+            return;
+        }
+        int at = offset(pos);
+        byId.remove(bookId, pos);
+        byIsbn.remove(arena.getInt(at + 8), pos);
+        entries--;
+        usedBytes -= arena.getInt(at);
+    }
+
+    private void evictOldest() {
+        int at = offset(tail);
+        int toEnd = capacity - at;
+        if (toEnd < HEADER || arena.getInt(at) == PADDING) {
+            tail += toEnd;
+            return;
+        }
+        int length = arena.getInt(at);
+        int bookId = arena.getInt(at + 4);
+        // Removed or replaced records are no longer in the index
+        if (byId.remove(bookId, tail)) {
+            byIsbn.remove(arena.getInt(at + 8), tail);
+            entries--;
+            usedBytes -= length;
+            evictions.increment();
+        }
+        tail += length;
+    }
+
+    private int offset(long position) {
+        return (int) (position % capacity);
+    }
+
+    // ---------------- METRIK ----------------
+
+    public int getCapacityBytes() {
+        return capacity;
+    }
+
+    /**
+     * @return bytes held by cached books, excluding space not yet reclaimed.
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Linear-probing table from int key to a record position. Keys may repeat
+     * (ISBN hashes collide); a position identifies one entry.
+     */
+    private static final class ProbeTable {
+        private static final long EMPTY = -1;
+
+        private final int[] keys;
+        private final long[] values;
+        private final int mask;
+
+        ProbeTable(int maxEntries) {
+            // At most half full
+            int size = Integer.highestOneBit(Math.max(2, maxEntries) * 2 - 1) << 1;
+            keys = new int[size];
+            values = new long[size];
+            mask = size - 1;
+            clear();
+        }
+
+        long find(int key, LongPredicate match) {
+            for (int i = home(key); values[i] != EMPTY; i = (i + 1) & mask) {
+                if (keys[i] == key && match.test(values[i])) {
+                    return values[i];
+                }
+            }
+            return EMPTY;
+        }
+
+        void put(int key, long value) {
+            int i = home(key);
+            while (values[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        boolean remove(int key, long value) {
+            for (int i = home(key); values[i] != EMPTY; i = (i + 1) & mask) {
+                if (keys[i] == key && values[i] == value) {
+                    deleteSlot(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void clear() {
+            Arrays.fill(values, EMPTY);
+        }
+
+        // Backward-shift deletion keeps probe chains intact without tombstones
+        private void deleteSlot(int hole) {
+            int j = hole;
+            while (true) {
+                j = (j + 1) & mask;
+                if (values[j] == EMPTY) {
+                    break;
+                }
+                int h = home(keys[j]);
+                boolean stays = hole <= j ? (hole < h && h <= j) : (hole < h || h <= j);
+                if (!stays) {
+                    keys[hole] = keys[j];
+                    values[hole] = values[j];
+                    hole = j;
+                }
+            }
+            values[hole] = EMPTY;
+        }
+
+        private int home(int key) {
+            int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
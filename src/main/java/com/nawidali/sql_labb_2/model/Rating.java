@@ -0,0 +1,34 @@
+package com.nawidali.sql_labb_2.model;
+
+/**
+ * Betyg som en anvandare har satt pa en bok.
+ */
+public class Rating {
+
+    private final int bookId;
+    private final int userId;
+    private final int rating;
+
+    public Rating(int bookId, int userId, int rating) {
+        this.bookId = bookId;
+        this.userId = userId;
+        this.rating = rating;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public int getRating() {
+        return rating;
+    }
+
+    @Override
+    public String toString() {
+        return "user " + userId + " -> book " + bookId + ": " + rating;
+    }
+}
@@ -0,0 +1,53 @@
+package com.nawidali.sql_labb_2.model;
+
+import java.util.Arrays;
+
+/**
+ * Fordelningen av betyg 1-5 for en bok, med antal och medelvarde.
+ */
+public class RatingSummary {
+
+    private final int bookId;
+    private final int[] counts;
+
+    /**
+     * @param counts antal betyg per varde, counts[0] for betyg 1 till counts[4] for betyg 5
+     */
+    public RatingSummary(int bookId, int[] counts) {
+        if (counts.length != 5) {
+            throw new IllegalArgumentException("Fem antal kravs, ett per betyg");
+        }
+        this.bookId = bookId;
+        this.counts = counts.clone();
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public int[] getCounts() {
+        return counts.clone();
+    }
+
+    public int getCount() {
+        return Arrays.stream(counts).sum();
+    }
+
+    /**
+     * Medelbetyg, 0 om boken saknar betyg.
+     */
+    public double getMean() {
+        long sum = 0;
+        int count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            sum += (long) (i + 1) * counts[i];
+            count += counts[i];
+        }
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    @Override
+    public String toString() {
+        return "book " + bookId + ": " + Arrays.toString(counts);
+    }
+}
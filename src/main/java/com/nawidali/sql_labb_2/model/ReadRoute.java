@@ -0,0 +1,16 @@
+package com.nawidali.sql_labb_2.model;
+
+/**
+ * Implemented by backends that send a read to different places depending on
+ * who makes it, e.g. to the primary for a user who just wrote something.
+ * Callers that share results between requests must only share between reads
+ * with the same route.
+ */
+public interface ReadRoute {
+
+    /**
+     * Where a read made now on behalf of {@link CurrentUser} would go, as a
+     * value with equals/hashCode; {@code null} for the default route.
+     */
+    Object currentRoute();
+}
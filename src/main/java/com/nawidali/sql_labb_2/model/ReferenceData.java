@@ -0,0 +1,235 @@
+package com.nawidali.sql_labb_2.model;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * All authors and genres in memory, in arrays indexed by id, so that books
+ * can share one canonical {@link Author}/{@link Genre} instance each and
+ * inserts can check ids without asking the database.
+ * <p>
+ * The backends load the tables on connect and then incrementally: ids are
+ * increasing, so a refresh only reads rows above the highest id held. Reads
+ * are lock-free; writers replace the arrays. Ids too large for an array
+ * (sparse ids, e.g. from auto_increment_increment) are kept in a map, so
+ * every loaded row is found. Interning compares every field,
+ * so a stale entry (e.g. an author renamed outside the API) never changes a
+ * result, it is just not shared.
+ */
+public class ReferenceData {
+
+    // Larger ids go to the maps (they would make the arrays too big)
+    static final int MAX_ID = 1 << 20;
+
+    private volatile Author[] authors = new Author[0];
+    private volatile Genre[] genres = new Genre[0];
+    private final Map<Integer, Author> largeAuthors = new ConcurrentHashMap<>();
+    private final Map<Integer, Genre> largeGenres = new ConcurrentHashMap<>();
+    private volatile int maxAuthorId;
+    private volatile int maxGenreId;
+    private volatile int authorCount;
+    private volatile int genreCount;
+
+    private final long refreshIntervalMillis;
+    private final LongSupplier clock;
+    private final AtomicLong lastRefresh = new AtomicLong(Long.MIN_VALUE / 2);
+    // Set by misses: there may be rows newer than what is held
+    private volatile boolean stale;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param refreshIntervalMillis least time between refreshes caused by misses.
+     */
+    public ReferenceData(long refreshIntervalMillis) {
+        this(refreshIntervalMillis, System::currentTimeMillis);
+    }
+
+    ReferenceData(long refreshIntervalMillis, LongSupplier clock) {
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.clock = clock;
+    }
+
+    // ---------------- LASNING ----------------
+
+    /**
+     * @return the cached author, or null.
+     */
+    public Author author(int authorId) {
+        if (authorId >= MAX_ID) {
+            return largeAuthors.get(authorId);
+        }
+        Author[] a = authors;
+        return authorId >= 0 && authorId < a.length ? a[authorId] : null;
+    }
+
+    /**
+     * @return the cached genre, or null.
+     */
+    public Genre genre(int genreId) {
+        if (genreId >= MAX_ID) {
+            return largeGenres.get(genreId);
+        }
+        Genre[] g = genres;
+        return genreId >= 0 && genreId < g.length ? g[genreId] : null;
+    }
+
+    /**
+     * @return the cached instance if it has exactly these values, else a new one.
+     */
+    public Author internAuthor(int authorId, String name, LocalDate birthDate) {
+        Author cached = author(authorId);
+        if (cached != null && Objects.equals(cached.getName(), name)
+                && Objects.equals(cached.getBirthDate(), birthDate)) {
+            hits.increment();
+            return cached;
+        }
+        recordMiss();
+        return new Author(authorId, name, birthDate);
+    }
+
+    /**
+     * @return the cached instance if it has exactly this name, else a new one.
+     */
+    public Genre internGenre(int genreId, String name) {
+        Genre cached = genre(genreId);
+        if (cached != null && Objects.equals(cached.getName(), name)) {
+            hits.increment();
+            return cached;
+        }
+        recordMiss();
+        return new Genre(genreId, name);
+    }
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+        stale = true;
+    }
+
+    // ---------------- UPPDATERING ----------------
+
+    /**
+     * Highest author id held; load rows above it to catch up.
+     */
+    public int getMaxAuthorId() {
+        return maxAuthorId;
+    }
+
+    public int getMaxGenreId() {
+        return maxGenreId;
+    }
+
+    public synchronized void putAuthors(Collection<Author> loaded) {
+        Author[] next = authors;
+        int count = authorCount;
+        int max = maxAuthorId;
+        for (Author a : loaded) {
+            int id = a.getAuthorId();
+            if (id < 0) {
+                continue;
+            }
+            max = Math.max(max, id);
+            if (id >= MAX_ID) {
+                if (largeAuthors.put(id, a) == null) {
+                    count++;
+                }
+                continue;
+            }
+            if (id >= next.length) {
+                next = Arrays.copyOf(next, grow(next.length, id));
+            } else if (next == authors) {
+                next = next.clone();
+            }
+            if (next[id] == null) {
+                count++;
+            }
+            next[id] = a;
+        }
+        maxAuthorId = max;
+        authorCount = count;
+        authors = next;
+    }
+
+    public synchronized void putGenres(Collection<Genre> loaded) {
+        Genre[] next = genres;
+        int count = genreCount;
+        int max = maxGenreId;
+        for (Genre g : loaded) {
+            int id = g.getGenreId();
+            if (id < 0) {
+                continue;
+            }
+            max = Math.max(max, id);
+            if (id >= MAX_ID) {
+                if (largeGenres.put(id, g) == null) {
+                    count++;
+                }
+                continue;
+            }
+            if (id >= next.length) {
+                next = Arrays.copyOf(next, grow(next.length, id));
+            } else if (next == genres) {
+                next = next.clone();
+            }
+            if (next[id] == null) {
+                count++;
+            }
+            next[id] = g;
+        }
+        maxGenreId = max;
+        genreCount = count;
+        genres = next;
+    }
+
+    /**
+     * True for one caller per refresh interval, and only after a miss; that
+     * caller should load new rows. Unknown ids thus cost at most one small
+     * query per interval, and a fully cached catalog none.
+     */
+    public boolean tryStartRefresh() {
+        if (!stale) {
+            return false;
+        }
+        long now = clock.getAsLong();
+        long last = lastRefresh.get();
+        if (now - last >= refreshIntervalMillis && lastRefresh.compareAndSet(last, now)) {
+            stale = false;
+            return true;
+        }
+        return false;
+    }
+
+    private static int grow(int length, int id) {
+        return Math.min(MAX_ID, Math.max(id + 1, Math.max(16, length + (length >> 1))));
+    }
+
+    // ---------------- METRIK ----------------
+
+    public int getAuthorCount() {
+        return authorCount;
+    }
+
+    public int getGenreCount() {
+        return genreCount;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,377 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.ConnectionException;
+import com.nawidali.sql_labb_2.model.exceptions.InsertException;
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Routes select methods to replicas and mutations to the primary.
+ * <p>
+ * A user who just wrote something reads from the primary for a short window
+ * (read-your-writes), identified through {@link CurrentUser}. Replicas are
+ * probed for lag in the background; a replica that lags more than the
+ * configured maximum, fails to connect or fails a read is taken out of
+ * rotation until a later probe finds it healthy again. With no healthy
+ * replica, reads fall back to the primary.
+ */
+public class ReplicaRoutingBooksDb implements IBooksDb, ReadRoute {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingBooksDb.class);
+
+    private static final long PROBE_INTERVAL_MILLIS = 2000;
+
+    private final IBooksDb primary;
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final long readYourWritesMillis;
+
+    private final Map<Integer, Long> lastWriteByUser = new ConcurrentHashMap<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private ScheduledExecutorService lagMonitor;
+
+    public ReplicaRoutingBooksDb(IBooksDb primary,
+                                 List<String> replicaUrls,
+                                 Supplier<IBooksDb> replicaFactory,
+                                 long maxLagMillis,
+                                 long readYourWritesMillis) {
+        this.primary = primary;
+        this.maxLagMillis = maxLagMillis;
+        this.readYourWritesMillis = readYourWritesMillis;
+        List<Replica> list = new ArrayList<>();
+        for (String url : replicaUrls) {
+            list.add(new Replica(url, replicaFactory.get()));
+        }
+        this.replicas = List.copyOf(list);
+    }
+
+    // ---------------- ANSLUTNING ----------------
+
+    /**
+     * Connects the primary (failure is fatal) and every replica (failure only
+     * keeps that replica out of rotation), then starts the lag monitor.
+     */
+    @Override
+    public boolean connect(String databaseUrl) throws ConnectionException {
+        primary.connect(databaseUrl);
+        for (Replica replica : replicas) {
+            replica.tryConnect();
+            replica.probe();
+        }
+        lagMonitor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "replica-lag-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+        lagMonitor.scheduleWithFixedDelay(this::probeReplicas,
+                PROBE_INTERVAL_MILLIS, PROBE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    @Override
+    public void disconnect() throws ConnectionException {
+        if (lagMonitor != null) {
+            lagMonitor.shutdownNow();
+            lagMonitor = null;
+        }
+        for (Replica replica : replicas) {
+            try {
+                replica.db.disconnect();
+            } catch (ConnectionException e) {
+                log.warn("Disconnect error for replica {}: {}", replica.label(), e.getMessage());
+            }
+            replica.connected = false;
+            replica.inRotation = false;
+        }
+        primary.disconnect();
+    }
+
+    /**
+     * Current lag per replica in milliseconds ({@code -1} if unknown), keyed by replica label.
+     */
+    public Map<String, Long> replicaLags() {
+        Map<String, Long> lags = new LinkedHashMap<>();
+        for (Replica replica : replicas) {
+            lags.put(replica.label(), replica.lagMillis);
+        }
+        return lags;
+    }
+
+    public int replicasInRotation() {
+        int n = 0;
+        for (Replica replica : replicas) {
+            if (replica.inRotation) n++;
+        }
+        return n;
+    }
+
+    // ---------------- LASNING (replikor) ----------------
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        return read(db -> db.findBooksByTitle(title));
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        return read(db -> db.findBooksByIsbn(isbn));
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorName(String authorName) throws SelectException {
+        return read(db -> db.findBooksByAuthorName(authorName));
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genreName) throws SelectException {
+        return read(db -> db.findBooksByGenre(genreName));
+    }
+
+    @Override
+    public List<Book> findBooksByMinRating(int minRating) throws SelectException {
+        return read(db -> db.findBooksByMinRating(minRating));
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title, BookProjection fields) throws SelectException {
+        return read(db -> db.findBooksByTitle(title, fields));
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn, BookProjection fields) throws SelectException {
+        return read(db -> db.findBooksByIsbn(isbn, fields));
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorName(String authorName, BookProjection fields) throws SelectException {
+        return read(db -> db.findBooksByAuthorName(authorName, fields));
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genreName, BookProjection fields) throws SelectException {
+        return read(db -> db.findBooksByGenre(genreName, fields));
+    }
+
+    @Override
+    public List<Book> findBooksByMinRating(int minRating, BookProjection fields) throws SelectException {
+        return read(db -> db.findBooksByMinRating(minRating, fields));
+    }
+
+    @Override
+    public Map<String, Book> findBooksByIsbns(Collection<String> isbns) throws SelectException {
+        return read(db -> db.findBooksByIsbns(isbns));
+    }
+
+    @Override
+    public Map<Integer, Book> findBooksByIds(Collection<Integer> bookIds) throws SelectException {
+        return read(db -> db.findBooksByIds(bookIds));
+    }
+
+    @Override
+    public List<Book> findBooksAfterId(int afterBookId, int limit, BookProjection fields) throws SelectException {
+        return read(db -> db.findBooksAfterId(afterBookId, limit, fields));
+    }
+
+    @Override
+    public List<Rating> findRatingsByBookIdRange(int fromBookId, int toBookId) throws SelectException {
+        return read(db -> db.findRatingsByBookIdRange(fromBookId, toBookId));
+    }
+
+    @Override
+    public RatingSummary findRatingSummary(int bookId) throws SelectException {
+        return read(db -> db.findRatingSummary(bookId));
+    }
+
+    @Override
+    public User login(String username, String password) throws SelectException {
+        return read(db -> db.login(username, password));
+    }
+
+    @Override
+    public List<Review> findReviewsByBookId(int bookId) throws SelectException {
+        return read(db -> db.findReviewsByBookId(bookId));
+    }
+
+    @Override
+    public Map<Integer, List<Review>> findReviewsByBookIds(Collection<Integer> bookIds) throws SelectException {
+        return read(db -> db.findReviewsByBookIds(bookIds));
+    }
+
+    @Override
+    public User findBookCreator(int bookId) throws SelectException {
+        return read(db -> db.findBookCreator(bookId));
+    }
+
+    // ---------------- SKRIVNING (primar) ----------------
+
+    @Override
+    public Book addBook(Book book, List<Author> authors, List<Genre> genres, User addedBy) throws InsertException {
+        Book added = primary.addBook(book, authors, genres, addedBy);
+        recordWrite(addedBy);
+        return added;
+    }
+
+    @Override
+    public void deleteBook(int bookId, User byUser) throws InsertException {
+        primary.deleteBook(bookId, byUser);
+        recordWrite(byUser);
+    }
+
+    @Override
+    public void rateBook(int bookId, int rating, User user) throws InsertException {
+        primary.rateBook(bookId, rating, user);
+        recordWrite(user);
+    }
+
+    @Override
+    public void addReview(int bookId, User user, String text, LocalDate date) throws InsertException {
+        primary.addReview(bookId, user, text, date);
+        recordWrite(user);
+    }
+
+    // ---------------- ROUTING ----------------
+
+    /**
+     * "primary" while the current user is in the read-your-writes window,
+     * otherwise null (any replica).
+     */
+    @Override
+    public Object currentRoute() {
+        return inReadYourWritesWindow() ? "primary" : null;
+    }
+
+    private void recordWrite(User user) {
+        if (user != null) {
+            lastWriteByUser.put(user.getUserId(), System.currentTimeMillis());
+        }
+    }
+
+    private boolean inReadYourWritesWindow() {
+        Integer userId = CurrentUser.get();
+        if (userId == null) {
+            return false;
+        }
+        Long writtenAt = lastWriteByUser.get(userId);
+        if (writtenAt == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - writtenAt < readYourWritesMillis) {
+            return true;
+        }
+        lastWriteByUser.remove(userId, writtenAt);
+        return false;
+    }
+
+    private Replica pickReplica() {
+        int n = replicas.size();
+        int start = nextReplica.getAndIncrement();
+        for (int i = 0; i < n; i++) {
+            Replica replica = replicas.get(Math.floorMod(start + i, n));
+            if (replica.inRotation) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private <T> T read(Read<T> op) throws SelectException {
+        if (inReadYourWritesWindow()) {
+            return op.apply(primary);
+        }
+        Replica replica = pickReplica();
+        if (replica == null) {
+            return op.apply(primary);
+        }
+        try {
+            return op.apply(replica.db);
+        } catch (SelectException e) {
+            log.warn("Read from replica {} failed, removing it from rotation: {}",
+                    replica.label(), e.getMessage());
+            replica.inRotation = false;
+            return op.apply(primary);
+        }
+    }
+
+    private void probeReplicas() {
+        for (Replica replica : replicas) {
+            if (!replica.connected) {
+                replica.tryConnect();
+            }
+            replica.probe();
+        }
+        long cutoff = System.currentTimeMillis() - readYourWritesMillis;
+        lastWriteByUser.values().removeIf(writtenAt -> writtenAt < cutoff);
+    }
+
+    @FunctionalInterface
+    private interface Read<T> {
+        T apply(IBooksDb db) throws SelectException;
+    }
+
+    private final class Replica {
+        private final String url;
+        private final IBooksDb db;
+        private volatile boolean connected;
+        private volatile boolean inRotation;
+        private volatile long lagMillis = -1;
+
+        private Replica(String url, IBooksDb db) {
+            this.url = url;
+            this.db = db;
+        }
+
+        /**
+         * Host part of the URL, so credentials in the query string never end up in logs.
+         */
+        private String label() {
+            int q = url.indexOf('?');
+            String withoutQuery = q >= 0 ? url.substring(0, q) : url;
+            int at = withoutQuery.lastIndexOf('@');
+            return at >= 0 ? withoutQuery.substring(at + 1) : withoutQuery;
+        }
+
+        private void tryConnect() {
+            try {
+                db.connect(url);
+                connected = true;
+            } catch (ConnectionException e) {
+                connected = false;
+                inRotation = false;
+                log.warn("Could not connect to replica {}: {}", label(), e.getMessage());
+            }
+        }
+
+        private void probe() {
+            if (!connected) {
+                return;
+            }
+            boolean wasInRotation = inRotation;
+            try {
+                lagMillis = db instanceof ReplicationLagProbe p ? p.replicationLagMillis() : 0;
+                inRotation = lagMillis <= maxLagMillis;
+            } catch (SelectException e) {
+                lagMillis = -1;
+                inRotation = false;
+            }
+            if (wasInRotation && !inRotation) {
+                log.warn("Replica {} removed from rotation (lag {} ms)", label(), lagMillis);
+            } else if (!wasInRotation && inRotation) {
+                log.info("Replica {} in rotation (lag {} ms)", label(), lagMillis);
+            }
+        }
+    }
+}
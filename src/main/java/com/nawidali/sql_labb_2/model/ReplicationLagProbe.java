@@ -0,0 +1,17 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+
+/**
+ * Implemented by database backends that can report how far behind their
+ * primary they are when connected to a replica.
+ */
+public interface ReplicationLagProbe {
+
+    /**
+     * @return replication lag in milliseconds, 0 if the connected server is not a replica,
+     * or {@link Long#MAX_VALUE} if replication is stopped.
+     * @throws SelectException if the lag cannot be determined.
+     */
+    long replicationLagMillis() throws SelectException;
+}
@@ -0,0 +1,121 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Single-flight execution of reads: while a read for a key is running, other
+ * callers with the same key wait for it and share its result instead of
+ * issuing their own.
+ * <p>
+ * This is not a cache. A flight is removed before its result is published,
+ * so a call arriving after completion always starts a new read. Writes call
+ * {@link #invalidate()}, and flights that started before a write are not
+ * joined afterwards, so a caller never sees a result older than its own write.
+ */
+public class RequestCoalescer {
+
+    private final ConcurrentHashMap<Object, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicLong epoch = new AtomicLong();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Runs the read, or joins an identical one already in flight.
+     * @param key        normalized call identity (method and arguments), with equals/hashCode.
+     * @param read       the backend call.
+     * @param shareCopy  applied to the result for callers that joined, so no two
+     *                   callers hold the same mutable collection.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Object key, Read<T> read, UnaryOperator<T> shareCopy) throws SelectException {
+        calls.increment();
+        long currentEpoch = epoch.get();
+        Flight mine = new Flight(currentEpoch);
+        Flight flight = flights.compute(key, (k, existing) ->
+                existing != null && existing.epoch == currentEpoch ? existing : mine);
+
+        if (flight != mine) {
+            coalesced.increment();
+            return shareCopy.apply((T) await(flight));
+        }
+
+        try {
+            T result = read.run();
+            flights.remove(key, mine);
+            mine.result.complete(result);
+            return result;
+        } catch (Throwable e) {
+            flights.remove(key, mine);
+            mine.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Stops in-flight reads from being joined; called after every write.
+     */
+    public void invalidate() {
+        epoch.incrementAndGet();
+    }
+
+    private static Object await(Flight flight) throws SelectException {
+        try {
+            return flight.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SelectException("Avbruten i vantan pa pagaende sokning", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            // Fresh exception per caller; the leader's is the cause
+            if (cause instanceof SelectException se) {
+                throw new SelectException(se.getMessage(), se);
+            }
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw new SelectException(cause.getMessage(), (Exception) cause);
+        }
+    }
+
+    /**
+     * @return reads requested, including those that joined another call.
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * @return reads that shared another call's result instead of hitting the database.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public int getInFlight() {
+        return flights.size();
+    }
+
+    @FunctionalInterface
+    public interface Read<T> {
+        T run() throws SelectException;
+    }
+
+    private static final class Flight {
+        private final long epoch;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        private Flight(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.nawidali.sql_labb_2.model;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Issues and verifies signed session tokens, so a request's user is known
+ * without a database round trip. Login still goes through
+ * {@link IBooksDb#login}; everything after that is checked in memory.
+ * <p>
+ * A token is {@code base64url(payload).base64url(HMAC-SHA256(payload))}; the
+ * payload holds a format version, a random token id, the user id and name,
+ * and the expiry time. Every node configured with the same secret accepts the
+ * same tokens. Revoked token ids are kept in a local deny-list only until
+ * the token would have expired anyway, so it stays small.
+ */
+public class SessionTokens {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte VERSION = 1;
+    private static final int MAX_USERNAME_BYTES = 255;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final ThreadLocal<Mac> macs;
+    private final SecureRandom random = new SecureRandom();
+
+    // Token id -> expiry of the revoked token
+    private final ConcurrentHashMap<Long, Long> denied = new ConcurrentHashMap<>();
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param secret    HMAC key, at least 32 bytes.
+     * @param ttlMillis how long a token stays valid.
+     */
+    public SessionTokens(byte[] secret, long ttlMillis) {
+        this(secret, ttlMillis, System::currentTimeMillis);
+    }
+
+    SessionTokens(byte[] secret, long ttlMillis, LongSupplier clock) {
+        if (secret == null || secret.length < 32) {
+            throw new IllegalArgumentException("Session secret must be at least 32 bytes");
+        }
+        this.key = new SecretKeySpec(secret.clone(), ALGORITHM);
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * @return a random secret for a single node; tokens do not survive a restart.
+     */
+    public static byte[] randomSecret() {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        return secret;
+    }
+
+    /**
+     * Creates a token for a user who has just logged in.
+     */
+    public Issued issue(User user) {
+        byte[] name = user.getUsername() == null ? new byte[0] : user.getUsername().getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_USERNAME_BYTES) {
+            throw new IllegalArgumentException("Username too long for a session token");
+        }
+        long expiresAt = clock.getAsLong() + ttlMillis;
+        ByteBuffer payload = ByteBuffer.allocate(1 + 8 + 4 + 8 + 1 + name.length);
+        payload.put(VERSION).putLong(random.nextLong()).putInt(user.getUserId()).putLong(expiresAt)
+                .put((byte) name.length).put(name);
+        byte[] body = payload.array();
+        issued.increment();
+        return new Issued(ENCODER.encodeToString(body) + "." + ENCODER.encodeToString(sign(body)), expiresAt);
+    }
+
+    /**
+     * Checks signature, expiry and the deny-list.
+     * @return the session, or null if the token is malformed, forged, expired or revoked.
+     */
+    public Session verify(String token) {
+        Session session = parse(token);
+        if (session == null || session.expiresAtMillis() <= clock.getAsLong()
+                || denied.containsKey(session.tokenId())) {
+            rejected.increment();
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * Rejects the session's token from now on, on this node.
+     */
+    public void revoke(Session session) {
+        long now = clock.getAsLong();
+        denied.values().removeIf(expiry -> expiry <= now);
+        if (session.expiresAtMillis() > now) {
+            denied.put(session.tokenId(), session.expiresAtMillis());
+        }
+    }
+
+    private Session parse(String token) {
+        if (token == null) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0 || dot != token.lastIndexOf('.')) {
+            return null;
+        }
+        byte[] body;
+        byte[] signature;
+        try {
+            body = DECODER.decode(token.substring(0, dot));
+            signature = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(sign(body), signature)) {
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(body);
+        if (body.length < 1 + 8 + 4 + 8 + 1 || in.get() != VERSION) {
+            return null;
+        }
+        long tokenId = in.getLong();
+        int userId = in.getInt();
+        long expiresAt = in.getLong();
+        int nameLength = Byte.toUnsignedInt(in.get());
+        if (in.remaining() != nameLength) {
+            return null;
+        }
+        String username = new String(body, in.position(), nameLength, StandardCharsets.UTF_8);
+        return new Session(tokenId, new User(userId, username), expiresAt);
+    }
+
+    private byte[] sign(byte[] body) {
+        Mac mac = macs.get();
+        mac.reset();
+        return mac.doFinal(body);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    // ---------------- METRIK ----------------
+
+    public long getIssued() {
+        return issued.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public int getDenyListSize() {
+        return denied.size();
+    }
+
+    /**
+     * A newly issued token and when it expires.
+     */
+    public record Issued(String token, long expiresAtMillis) {
+    }
+
+    /**
+     * A verified token: who it belongs to and until when.
+     */
+    public record Session(long tokenId, User user, long expiresAtMillis) {
+    }
+}
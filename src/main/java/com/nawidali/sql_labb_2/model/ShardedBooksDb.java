@@ -0,0 +1,408 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.ConnectionException;
+import com.nawidali.sql_labb_2.model.exceptions.InsertException;
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Spreads books over several databases (shards) with the same schema.
+ * <p>
+ * Book {@code n} lives on shard {@code (n - 1) % shards}; each shard hands
+ * out only its own ids (see {@link #bookIdOffset}), so a book id alone tells
+ * where the book is. Point operations go to that one shard, and searches run
+ * on every shard in parallel and are merged by book id. A new book goes to
+ * the shard chosen by a hash of its ISBN, so that shard's unique ISBN index
+ * rejects a concurrent duplicate; books added before that rule may sit on
+ * any shard, so every shard is checked for the ISBN first. Users, authors
+ * and genres are reference data and must exist on every shard; logins are
+ * checked against the first.
+ */
+public class ShardedBooksDb implements IBooksDb {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedBooksDb.class);
+
+    private static final Comparator<Book> BY_ID = Comparator.comparingInt(Book::getBookId);
+    private static final BookProjection ISBN_ONLY = BookProjection.of(BookProjection.Field.ISBN);
+
+    private final List<IBooksDb> shards;
+    private final List<String> shardUrls;
+    private final int maxResults;
+    private volatile ExecutorService pool;
+
+    /**
+     * @param first        the first shard, connected with the URL given to {@link #connect}.
+     * @param shardUrls    URLs of the other shards, in shard order.
+     * @param shardFactory creates the backend for shard {@code i}, 1..n (the first shard is 0).
+     * @param maxResults   most books a merged search returns; 0 means no limit.
+     */
+    public ShardedBooksDb(IBooksDb first,
+                          List<String> shardUrls,
+                          IntFunction<IBooksDb> shardFactory,
+                          int maxResults) {
+        List<IBooksDb> list = new ArrayList<>();
+        list.add(first);
+        for (int i = 0; i < shardUrls.size(); i++) {
+            list.add(shardFactory.apply(i + 1));
+        }
+        this.shards = List.copyOf(list);
+        this.shardUrls = List.copyOf(shardUrls);
+        this.maxResults = maxResults;
+        this.pool = newPool(shards.size());
+    }
+
+    private static ExecutorService newPool(int shardCount) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(2, shardCount * 4), r -> {
+            Thread t = new Thread(r, "shard-query-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Remainder that shard {@code index} uses for its book ids: the shard
+     * must only hand out ids with {@code id % shardCount == bookIdOffset % shardCount}.
+     */
+    public static int bookIdOffset(int index) {
+        return index + 1;
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    int shardOf(int bookId) {
+        return Math.floorMod(bookId - 1, shards.size());
+    }
+
+    /**
+     * Shard a new book with this ISBN is added on; ISBNs differing only in
+     * case or surrounding spaces map to the same shard.
+     */
+    int shardOfIsbn(String isbn) {
+        String key = isbn == null ? "" : isbn.trim().toLowerCase(Locale.ROOT);
+        return Math.floorMod(key.hashCode(), shards.size());
+    }
+
+    // ---------------- ANSLUTNING ----------------
+
+    /**
+     * Connects every shard; the application cannot serve a partial catalog,
+     * so any failure disconnects the shards already connected and fails.
+     */
+    @Override
+    public boolean connect(String databaseUrl) throws ConnectionException {
+        if (pool.isShutdown()) {
+            pool = newPool(shards.size());
+        }
+        for (int i = 0; i < shards.size(); i++) {
+            try {
+                shards.get(i).connect(i == 0 ? databaseUrl : shardUrls.get(i - 1));
+            } catch (ConnectionException e) {
+                for (int j = 0; j < i; j++) {
+                    disconnectQuietly(j);
+                }
+                throw new ConnectionException("Kunde inte ansluta till shard " + i, e);
+            }
+        }
+        log.info("Connected to {} shards", shards.size());
+        return true;
+    }
+
+    @Override
+    public void disconnect() throws ConnectionException {
+        pool.shutdownNow();
+        for (int i = 1; i < shards.size(); i++) {
+            disconnectQuietly(i);
+        }
+        shards.get(0).disconnect();
+    }
+
+    private void disconnectQuietly(int index) {
+        try {
+            shards.get(index).disconnect();
+        } catch (ConnectionException e) {
+            log.warn("Disconnect error for shard {}: {}", index, e.getMessage());
+        }
+    }
+
+    // ---------------- SOKNING (alla shards) ----------------
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        return merge(scatter(db -> db.findBooksByTitle(title)), maxResults);
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        return merge(scatter(db -> db.findBooksByIsbn(isbn)), maxResults);
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorName(String authorName) throws SelectException {
+        return merge(scatter(db -> db.findBooksByAuthorName(authorName)), maxResults);
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genreName) throws SelectException {
+        return merge(scatter(db -> db.findBooksByGenre(genreName)), maxResults);
+    }
+
+    @Override
+    public List<Book> findBooksByMinRating(int minRating) throws SelectException {
+        return merge(scatter(db -> db.findBooksByMinRating(minRating)), maxResults);
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title, BookProjection fields) throws SelectException {
+        return merge(scatter(db -> db.findBooksByTitle(title, fields)), maxResults);
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn, BookProjection fields) throws SelectException {
+        return merge(scatter(db -> db.findBooksByIsbn(isbn, fields)), maxResults);
+    }
+
+    @Override
+    public List<Book> findBooksByAuthorName(String authorName, BookProjection fields) throws SelectException {
+        return merge(scatter(db -> db.findBooksByAuthorName(authorName, fields)), maxResults);
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genreName, BookProjection fields) throws SelectException {
+        return merge(scatter(db -> db.findBooksByGenre(genreName, fields)), maxResults);
+    }
+
+    @Override
+    public List<Book> findBooksByMinRating(int minRating, BookProjection fields) throws SelectException {
+        return merge(scatter(db -> db.findBooksByMinRating(minRating, fields)), maxResults);
+    }
+
+    /**
+     * ISBN is not the shard key, so every shard is asked.
+     */
+    @Override
+    public Map<String, Book> findBooksByIsbns(Collection<String> isbns) throws SelectException {
+        Map<String, Book> result = new LinkedHashMap<>();
+        for (Map<String, Book> part : scatter(db -> db.findBooksByIsbns(isbns))) {
+            result.putAll(part);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<Integer, Book> findBooksByIds(Collection<Integer> bookIds) throws SelectException {
+        Map<Integer, Book> result = new LinkedHashMap<>();
+        for (Map<Integer, Book> part : scatterByShard(bookIds, IBooksDb::findBooksByIds)) {
+            result.putAll(part);
+        }
+        return result;
+    }
+
+    /**
+     * Every shard returns its next {@code limit} books; the smallest ids of the
+     * union are the next page of the whole catalog.
+     */
+    @Override
+    public List<Book> findBooksAfterId(int afterBookId, int limit, BookProjection fields) throws SelectException {
+        return merge(scatter(db -> db.findBooksAfterId(afterBookId, limit, fields)), limit);
+    }
+
+    @Override
+    public List<Rating> findRatingsByBookIdRange(int fromBookId, int toBookId) throws SelectException {
+        List<Rating> ratings = new ArrayList<>();
+        for (List<Rating> part : scatter(db -> db.findRatingsByBookIdRange(fromBookId, toBookId))) {
+            ratings.addAll(part);
+        }
+        return ratings;
+    }
+
+    @Override
+    public User login(String username, String password) throws SelectException {
+        return shards.get(0).login(username, password);
+    }
+
+    // ---------------- PUNKTOPERATIONER (en shard) ----------------
+
+    @Override
+    public List<Review> findReviewsByBookId(int bookId) throws SelectException {
+        return shardFor(bookId).findReviewsByBookId(bookId);
+    }
+
+    @Override
+    public Map<Integer, List<Review>> findReviewsByBookIds(Collection<Integer> bookIds) throws SelectException {
+        Map<Integer, List<Review>> result = new LinkedHashMap<>();
+        for (Map<Integer, List<Review>> part : scatterByShard(bookIds, IBooksDb::findReviewsByBookIds)) {
+            result.putAll(part);
+        }
+        return result;
+    }
+
+    @Override
+    public User findBookCreator(int bookId) throws SelectException {
+        return shardFor(bookId).findBookCreator(bookId);
+    }
+
+    @Override
+    public RatingSummary findRatingSummary(int bookId) throws SelectException {
+        return shardFor(bookId).findRatingSummary(bookId);
+    }
+
+    /**
+     * Adds the book on the shard its ISBN hashes to, unless some shard already
+     * has a book with that ISBN. A returned id that belongs to another shard
+     * means that shard's id sequence is misconfigured; the book is removed
+     * again instead of becoming unreachable.
+     */
+    @Override
+    public Book addBook(Book book, List<Author> authors, List<Genre> genres, User addedBy) throws InsertException {
+        List<Book> existing;
+        try {
+            existing = merge(scatter(db -> db.findBooksByIsbn(book.getIsbn(), ISBN_ONLY)), 1);
+        } catch (SelectException e) {
+            throw new InsertException("Kunde inte kontrollera ISBN mot alla shards", e);
+        }
+        if (!existing.isEmpty()) {
+            throw new InsertException("En bok med ISBN " + book.getIsbn() + " finns redan");
+        }
+        int index = shardOfIsbn(book.getIsbn());
+        IBooksDb shard = shards.get(index);
+        Book added = shard.addBook(book, authors, genres, addedBy);
+        if (shardOf(added.getBookId()) != index) {
+            try {
+                shard.deleteBook(added.getBookId(), addedBy);
+            } catch (InsertException e) {
+                log.warn("Could not remove misplaced book {} from shard {}: {}",
+                        added.getBookId(), index, e.getMessage());
+            }
+            throw new InsertException("Shard " + index + " gav bok-id " + added.getBookId()
+                    + " som hor till shard " + shardOf(added.getBookId()));
+        }
+        return added;
+    }
+
+    @Override
+    public void deleteBook(int bookId, User byUser) throws InsertException {
+        shardFor(bookId).deleteBook(bookId, byUser);
+    }
+
+    @Override
+    public void rateBook(int bookId, int rating, User user) throws InsertException {
+        shardFor(bookId).rateBook(bookId, rating, user);
+    }
+
+    @Override
+    public void addReview(int bookId, User user, String text, LocalDate date) throws InsertException {
+        shardFor(bookId).addReview(bookId, user, text, date);
+    }
+
+    // ---------------- HJALPMETODER ----------------
+
+    private IBooksDb shardFor(int bookId) {
+        return shards.get(shardOf(bookId));
+    }
+
+    /**
+     * Runs the read on every shard in parallel; the first failure fails the call.
+     */
+    private <T> List<T> scatter(Read<T> op) throws SelectException {
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (IBooksDb shard : shards) {
+            futures.add(pool.submit(() -> op.apply(shard)));
+        }
+        return gather(futures);
+    }
+
+    /**
+     * Splits the ids by shard and asks only the shards that own any of them.
+     */
+    private <T> List<T> scatterByShard(Collection<Integer> bookIds, ReadIds<T> op) throws SelectException {
+        List<List<Integer>> byShard = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (Integer id : new LinkedHashSet<>(bookIds)) {
+            byShard.get(shardOf(id)).add(id);
+        }
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            List<Integer> ids = byShard.get(i);
+            if (!ids.isEmpty()) {
+                IBooksDb shard = shards.get(i);
+                futures.add(pool.submit(() -> op.apply(shard, ids)));
+            }
+        }
+        return gather(futures);
+    }
+
+    private static <T> List<T> gather(List<Future<T>> futures) throws SelectException {
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> f : futures) {
+                results.add(f.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof SelectException se) {
+                throw se;
+            }
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw new SelectException("Fel vid fraga mot shard", (Exception) cause);
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new SelectException("Avbruten under fraga mot shards", e);
+        }
+    }
+
+    /**
+     * Concatenates the shards' results in book id order, cut at {@code limit} (0 = all).
+     */
+    static List<Book> merge(List<List<Book>> parts, int limit) {
+        int total = 0;
+        for (List<Book> part : parts) {
+            total += part.size();
+        }
+        List<Book> all = new ArrayList<>(total);
+        for (List<Book> part : parts) {
+            all.addAll(part);
+        }
+        all.sort(BY_ID);
+        return limit > 0 && all.size() > limit ? new ArrayList<>(all.subList(0, limit)) : all;
+    }
+
+    @FunctionalInterface
+    private interface Read<T> {
+        T apply(IBooksDb db) throws SelectException;
+    }
+
+    @FunctionalInterface
+    private interface ReadIds<T> {
+        T apply(IBooksDb db, Collection<Integer> bookIds) throws SelectException;
+    }
+}
@@ -0,0 +1,538 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * "Readers also rated": for every book, how many users rated both it and
+ * each other book, kept in memory and updated as ratings come in.
+ * <p>
+ * Each book has its own open-addressing table from neighbor book id to
+ * count, in two int arrays, holding at most {@code maxNeighbors} entries.
+ * When a full table meets a new neighbor, the neighbor with the lowest count
+ * is replaced and the new one starts at that count plus one (Space-Saving),
+ * so the frequent neighbors stay and their counts are exact or slightly
+ * high. Per user the last {@code maxBooksPerUser} rated books are kept; a
+ * new rating pairs the book with those. Each user also has a Bloom filter of
+ * {@value #FILTER_BITS_PER_BOOK} bits per kept book over every book they
+ * rated, so changing an existing rating, even of a book that has left the
+ * last {@code maxBooksPerUser}, adds no pairs. A false positive makes a new
+ * rating add no pairs, which gets likelier the more books a user has rated
+ * (about 5% at five times {@code maxBooksPerUser}). Memory is therefore
+ * bounded by books times {@code maxNeighbors} plus users times
+ * {@code maxBooksPerUser}.
+ * <p>
+ * {@link #load} reads all ratings in book id ranges on several threads and
+ * builds a new index that replaces the current one. Ratings made during the
+ * load are replayed into it. A deleted book's table is dropped and its id is
+ * remembered: {@link #similar} leaves it out and new ratings do not pair with
+ * it. Other tables keep it until the next load, which starts without it.
+ */
+public class SimilarBooksIndex implements BookChangeListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SimilarBooksIndex.class);
+
+    private static final int ID_SCAN_PAGE_SIZE = 20_000;
+    private static final BookProjection ID_SCAN_FIELDS = BookProjection.of(BookProjection.Field.ISBN);
+    // Books per findRatingsByBookIdRange call while loading
+    private static final int LOAD_WINDOW_BOOKS = 2000;
+    // Bloom filter size per kept book of a user's history, and hashes per book
+    private static final int FILTER_BITS_PER_BOOK = 32;
+    private static final int FILTER_HASHES = 3;
+
+    public record Neighbor(int bookId, int readers) {
+    }
+
+    private final int maxNeighbors;
+    private final int maxBooksPerUser;
+    private final int loadThreads;
+
+    private final Object writeLock = new Object();
+    private volatile State state;
+    // Non-null while loading: changes to replay into the new state
+    private List<Consumer<State>> pending;
+
+    public SimilarBooksIndex(int maxNeighbors, int maxBooksPerUser, int loadThreads) {
+        if (maxNeighbors < 1 || maxBooksPerUser < 2 || loadThreads < 1) {
+            throw new IllegalArgumentException("maxNeighbors >= 1, maxBooksPerUser >= 2 and loadThreads >= 1 required");
+        }
+        this.maxNeighbors = maxNeighbors;
+        this.maxBooksPerUser = maxBooksPerUser;
+        this.loadThreads = loadThreads;
+        this.state = new State(false);
+    }
+
+    /**
+     * Reads all ratings and replaces the index. Ratings published while
+     * loading are applied to both the old and the new index.
+     */
+    public void load(IBooksDb db) throws SelectException {
+        long start = System.nanoTime();
+        synchronized (writeLock) {
+            if (pending != null) {
+                throw new IllegalStateException("Already loading");
+            }
+            pending = new ArrayList<>();
+        }
+        State fresh;
+        long ratings;
+        try {
+            AtomicInteger threadNo = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(loadThreads, r -> {
+                Thread t = new Thread(r, "similar-index-load-" + threadNo.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            try {
+                long[] userBooks = readRatings(db, pool);
+                ratings = userBooks.length;
+                fresh = build(userBooks, pool);
+            } finally {
+                pool.shutdownNow();
+            }
+        } catch (SelectException | RuntimeException e) {
+            synchronized (writeLock) {
+                pending = null;
+            }
+            throw e;
+        }
+
+        List<Consumer<State>> replay;
+        synchronized (writeLock) {
+            replay = pending;
+            pending = null;
+            state = fresh;
+        }
+        // Rating events are idempotent, so one that also reached the new state directly is harmless
+        for (Consumer<State> change : replay) {
+            change.accept(fresh);
+        }
+        log.info("Similar books index loaded: {} ratings, {} users, {} books in {} ms",
+                ratings, fresh.users.size(), fresh.books.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public boolean isReady() {
+        return state.ready;
+    }
+
+    /**
+     * Returns up to {@code n} books most often rated by users who also rated
+     * {@code bookId}, most readers first (ties by lower book id).
+     */
+    public List<Neighbor> similar(int bookId, int n) {
+        State s = state;
+        Neighbors neighbors = s.books.get(bookId);
+        if (neighbors == null || n <= 0) {
+            return List.of();
+        }
+        if (s.deleted.isEmpty()) {
+            return neighbors.top(n);
+        }
+        List<Neighbor> out = new ArrayList<>(n);
+        for (Neighbor neighbor : neighbors.top(maxNeighbors)) {
+            if (!s.deleted.contains(neighbor.bookId())) {
+                out.add(neighbor);
+                if (out.size() == n) {
+                    break;
+                }
+            }
+        }
+        return out;
+    }
+
+    public int getBookCount() {
+        return state.books.size();
+    }
+
+    public int getUserCount() {
+        return state.users.size();
+    }
+
+    // ---------------- ANDRINGAR ----------------
+
+    @Override
+    public void bookAdded(Book book) {
+        // A book gets neighbors once it is rated
+    }
+
+    @Override
+    public void bookRated(int bookId, int userId, int rating) {
+        apply(s -> s.rate(userId, bookId));
+    }
+
+    @Override
+    public void bookDeleted(int bookId) {
+        apply(s -> s.delete(bookId));
+    }
+
+    private void apply(Consumer<State> change) {
+        State s;
+        synchronized (writeLock) {
+            s = state;
+            if (pending != null) {
+                pending.add(change);
+            }
+        }
+        change.accept(s);
+    }
+
+    // ---------------- LADDNING ----------------
+
+    /**
+     * Reads all ratings as {@code userId << 32 | bookId}, sorted, so each
+     * user's books are one run in ascending book id order.
+     */
+    private long[] readRatings(IBooksDb db, ExecutorService pool) throws SelectException {
+        List<Future<long[]>> windows = new ArrayList<>();
+        int[] ids = new int[LOAD_WINDOW_BOOKS];
+        int count = 0;
+        int after = 0;
+        List<Book> page;
+        do {
+            page = db.findBooksAfterId(after, ID_SCAN_PAGE_SIZE, ID_SCAN_FIELDS);
+            for (Book b : page) {
+                ids[count++] = b.getBookId();
+                if (count == ids.length) {
+                    windows.add(submitWindow(db, pool, ids[0], ids[count - 1]));
+                    count = 0;
+                }
+                after = b.getBookId();
+            }
+        } while (page.size() == ID_SCAN_PAGE_SIZE);
+        if (count > 0) {
+            windows.add(submitWindow(db, pool, ids[0], ids[count - 1]));
+        }
+
+        List<long[]> parts = new ArrayList<>(windows.size());
+        int total = 0;
+        for (Future<long[]> window : windows) {
+            long[] part = await(window);
+            parts.add(part);
+            total += part.length;
+        }
+        long[] all = new long[total];
+        int pos = 0;
+        for (long[] part : parts) {
+            System.arraycopy(part, 0, all, pos, part.length);
+            pos += part.length;
+        }
+        Arrays.parallelSort(all);
+        return all;
+    }
+
+    private static Future<long[]> submitWindow(IBooksDb db, ExecutorService pool, int fromBookId, int toBookId) {
+        return pool.submit(() -> {
+            List<Rating> ratings = db.findRatingsByBookIdRange(fromBookId, toBookId);
+            long[] packed = new long[ratings.size()];
+            for (int i = 0; i < packed.length; i++) {
+                Rating r = ratings.get(i);
+                packed[i] = (long) r.getUserId() << 32 | r.getBookId();
+            }
+            return packed;
+        });
+    }
+
+    /**
+     * Counts the pairs per user on the pool. A user with more than
+     * maxBooksPerUser ratings pairs only the highest book ids, the newest
+     * books, as later events would.
+     */
+    private State build(long[] userBooks, ExecutorService pool) throws SelectException {
+        List<int[]> runs = new ArrayList<>();
+        for (int from = 0; from < userBooks.length; ) {
+            int to = from + 1;
+            while (to < userBooks.length && userBooks[to] >>> 32 == userBooks[from] >>> 32) {
+                to++;
+            }
+            runs.add(new int[]{from, to});
+            from = to;
+        }
+
+        State fresh = new State(true);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < loadThreads; t++) {
+            int first = t;
+            tasks.add(pool.submit(() -> {
+                for (int i = first; i < runs.size(); i += loadThreads) {
+                    int[] run = runs.get(i);
+                    fresh.addUser(userBooks, run[0], run[1]);
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            await(task);
+        }
+        return fresh;
+    }
+
+    private static <T> T await(Future<T> future) throws SelectException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SelectException("Interrupted while loading similar books", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SelectException se) {
+                throw se;
+            }
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw new SelectException("Could not load similar books", (Exception) cause);
+        }
+    }
+
+    // ---------------- TILLSTAND ----------------
+
+    private final class State {
+        final boolean ready;
+        final Map<Integer, Neighbors> books = new ConcurrentHashMap<>();
+        final Map<Integer, History> users = new ConcurrentHashMap<>();
+        // Books deleted since this state was built; other tables may still list them
+        final Set<Integer> deleted = ConcurrentHashMap.newKeySet();
+
+        State(boolean ready) {
+            this.ready = ready;
+        }
+
+        void rate(int userId, int bookId) {
+            if (deleted.contains(bookId)) {
+                return;
+            }
+            History history = users.computeIfAbsent(userId, id -> new History(maxBooksPerUser));
+            synchronized (history) {
+                if (!history.addRated(bookId)) {
+                    return;
+                }
+                for (int i = 0; i < history.recentSize; i++) {
+                    if (!deleted.contains(history.recent[i])) {
+                        pair(bookId, history.recent[i]);
+                    }
+                }
+                history.addRecent(bookId);
+            }
+        }
+
+        /**
+         * Adds one user's books from the loaded ratings, {@code userBooks[from, to)},
+         * pairing the last maxBooksPerUser of them.
+         */
+        void addUser(long[] userBooks, int from, int to) {
+            History history = new History(maxBooksPerUser, userBooks, from, to);
+            for (int i = Math.max(from, to - maxBooksPerUser); i < to; i++) {
+                int bookId = (int) userBooks[i];
+                for (int j = 0; j < history.recentSize; j++) {
+                    pair(bookId, history.recent[j]);
+                }
+                history.addRecent(bookId);
+            }
+            users.put((int) (userBooks[from] >>> 32), history);
+        }
+
+        /**
+         * Drops the book's table and remembers the id, without walking the
+         * other tables or the users.
+         */
+        void delete(int bookId) {
+            deleted.add(bookId);
+            books.remove(bookId);
+        }
+
+        private void pair(int a, int b) {
+            books.computeIfAbsent(a, id -> new Neighbors(maxNeighbors)).increment(b);
+            books.computeIfAbsent(b, id -> new Neighbors(maxNeighbors)).increment(a);
+        }
+    }
+
+    /**
+     * The last books a user rated, oldest first, and a Bloom filter of all
+     * books the user rated.
+     */
+    private static final class History {
+        final int[] recent;
+        int recentSize;
+        private final long[] rated;
+
+        History(int capacity) {
+            this.recent = new int[capacity];
+            this.rated = new long[Math.max(1, capacity * FILTER_BITS_PER_BOOK / 64)];
+        }
+
+        // userBooks[from, to) is one user's ratings
+        History(int capacity, long[] userBooks, int from, int to) {
+            this(capacity);
+            for (int i = from; i < to; i++) {
+                addRated((int) userBooks[i]);
+            }
+        }
+
+        /**
+         * Adds the book to the rated filter; false if the user had already
+         * rated it, or, rarely, if the filter wrongly says so.
+         */
+        boolean addRated(int bookId) {
+            long bits = (long) rated.length * 64;
+            int h1 = Neighbors.mix(bookId);
+            int h2 = Neighbors.mix(h1) | 1;
+            boolean added = false;
+            for (int i = 0; i < FILTER_HASHES; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, bits);
+                long mask = 1L << bit;
+                int word = (int) (bit >>> 6);
+                if ((rated[word] & mask) == 0) {
+                    rated[word] |= mask;
+                    added = true;
+                }
+            }
+            return added;
+        }
+
+        void addRecent(int bookId) {
+            if (recentSize == recent.length) {
+                System.arraycopy(recent, 1, recent, 0, --recentSize);
+            }
+            recent[recentSize++] = bookId;
+        }
+    }
+
+    /**
+     * Neighbor id to count, linear probing; 0 marks a free slot (book ids
+     * start at 1). Grows up to twice maxEntries slots.
+     */
+    static final class Neighbors {
+        private static final int INITIAL_SLOTS = 8;
+
+        private final int maxEntries;
+        private int[] keys = new int[INITIAL_SLOTS];
+        private int[] counts = new int[INITIAL_SLOTS];
+        private int size;
+
+        Neighbors(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        synchronized void increment(int key) {
+            int slot = find(key);
+            if (keys[slot] == key) {
+                counts[slot]++;
+                return;
+            }
+            int count = 1;
+            if (size == maxEntries) {
+                int min = minSlot();
+                count = counts[min] + 1;
+                remove(min);
+                slot = find(key);
+            } else if ((size + 1) * 2 > keys.length) {
+                grow();
+                slot = find(key);
+            }
+            keys[slot] = key;
+            counts[slot] = count;
+            size++;
+        }
+
+        synchronized int count(int key) {
+            int slot = find(key);
+            return keys[slot] == key ? counts[slot] : 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized List<Neighbor> top(int n) {
+            // count high, id low sorts last: ascending sort, read from the end
+            long[] ranked = new long[size];
+            int r = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    ranked[r++] = (long) counts[i] << 32 | (Integer.MAX_VALUE - keys[i]);
+                }
+            }
+            Arrays.sort(ranked);
+            int k = Math.min(n, ranked.length);
+            List<Neighbor> out = new ArrayList<>(k);
+            for (int i = ranked.length - 1; i >= ranked.length - k; i--) {
+                out.add(new Neighbor(Integer.MAX_VALUE - (int) ranked[i], (int) (ranked[i] >>> 32)));
+            }
+            return out;
+        }
+
+        // Slot holding key, or the free slot where it would go
+        private int find(int key) {
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private int minSlot() {
+            int min = -1;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0 && (min < 0 || counts[i] < counts[min])) {
+                    min = i;
+                }
+            }
+            return min;
+        }
+
+        // Backward-shift deletion keeps probe chains intact without tombstones
+        private void remove(int slot) {
+            int mask = keys.length - 1;
+            int hole = slot;
+            int i = (slot + 1) & mask;
+            while (keys[i] != 0) {
+                int home = mix(keys[i]) & mask;
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    keys[hole] = keys[i];
+                    counts[hole] = counts[i];
+                    hole = i;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[hole] = 0;
+            counts[hole] = 0;
+            size--;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new int[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = find(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.nawidali.sql_labb_2.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Versioned, checksummed binary file for persisting an in-memory structure
+ * across restarts.
+ * <p>
+ * Header: magic, file format version, content type and its schema version,
+ * creation time, a caller-defined high-water mark, body length and CRC32C of
+ * the body. Files are written to a temporary name and moved into place, so a
+ * crash never leaves a half-written snapshot. Reading memory-maps the file
+ * and verifies everything before the body is handed out.
+ */
+public final class SnapshotFile {
+
+    private static final int MAGIC = 0x424B534E; // "BKSN"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 4 + 8 + 8 + 8 + 8;
+    private static final int NULL_STRING = 0xFFFF;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes a snapshot; {@code body} fills it through the given output.
+     */
+    public static void write(Path file, int type, int schemaVersion, long highWaterMark, BodyWriter body)
+            throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.position(HEADER_BYTES);
+            CRC32C crc = new CRC32C();
+            OutputStream raw = Channels.newOutputStream(channel);
+            // Not closed: that would close the channel before the header is written
+            Output out = new Output(new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(raw, crc), 64 * 1024)));
+            body.write(out);
+            out.out.flush();
+            long bodyBytes = channel.position() - HEADER_BYTES;
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(type).putInt(schemaVersion)
+                    .putLong(System.currentTimeMillis()).putLong(highWaterMark)
+                    .putLong(bodyBytes).putLong(crc.getValue()).flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps and verifies a snapshot.
+     * @return the snapshot, or null if the file does not exist.
+     * @throws IOException if the file is unreadable, corrupt, or of another
+     *                     type or version; the caller should rebuild from the database.
+     */
+    public static Snapshot read(Path file, int type, int schemaVersion) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Snapshot " + file + " is truncated");
+            }
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (map.getInt(0) != MAGIC || map.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Snapshot " + file + " has an unknown format");
+        }
+        if (map.getInt(8) != type || map.getInt(12) != schemaVersion) {
+            throw new IOException("Snapshot " + file + " has type/version " + map.getInt(8) + "/"
+                    + map.getInt(12) + ", expected " + type + "/" + schemaVersion);
+        }
+        long createdAt = map.getLong(16);
+        long highWaterMark = map.getLong(24);
+        long bodyBytes = map.getLong(32);
+        long expectedCrc = map.getLong(40);
+        if (bodyBytes != map.capacity() - HEADER_BYTES) {
+            throw new IOException("Snapshot " + file + " is truncated");
+        }
+        ByteBuffer body = map.slice(HEADER_BYTES, (int) bodyBytes);
+        CRC32C crc = new CRC32C();
+        crc.update(body.duplicate());
+        if (crc.getValue() != expectedCrc) {
+            throw new IOException("Snapshot " + file + " failed its checksum");
+        }
+        return new Snapshot(createdAt, highWaterMark, new Input(body));
+    }
+
+    @FunctionalInterface
+    public interface BodyWriter {
+        void write(Output out) throws IOException;
+    }
+
+    /**
+     * A verified snapshot; {@link #body()} reads straight from the mapping.
+     */
+    public record Snapshot(long createdAtMillis, long highWaterMark, Input body) {
+    }
+
+    public static final class Output {
+        private final DataOutputStream out;
+
+        private Output(DataOutputStream out) {
+            this.out = out;
+        }
+
+        public void writeInt(int v) throws IOException {
+            out.writeInt(v);
+        }
+
+        public void writeFloat(float v) throws IOException {
+            out.writeFloat(v);
+        }
+
+        public void writeByte(int v) throws IOException {
+            out.writeByte(v);
+        }
+
+        /**
+         * UTF-8 with an unsigned 16-bit length; null is allowed.
+         */
+        public void writeString(String s) throws IOException {
+            if (s == null) {
+                out.writeShort(NULL_STRING);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length >= NULL_STRING) {
+                throw new IOException("String too long for snapshot: " + bytes.length + " bytes");
+            }
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    public static final class Input {
+        private final ByteBuffer in;
+
+        private Input(ByteBuffer in) {
+            this.in = in;
+        }
+
+        public int readInt() {
+            return in.getInt();
+        }
+
+        public float readFloat() {
+            return in.getFloat();
+        }
+
+        public byte readByte() {
+            return in.get();
+        }
+
+        public String readString() {
+            int len = Short.toUnsignedInt(in.getShort());
+            if (len == NULL_STRING) {
+                return null;
+            }
+            byte[] bytes = new byte[len];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
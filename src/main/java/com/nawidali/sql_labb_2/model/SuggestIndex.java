@@ -0,0 +1,575 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-memory autocomplete over normalized book titles and author names.
+ * <p>
+ * Entries sit in an array sorted by normalized text, so the completions of
+ * a prefix are one contiguous range found by binary search. A max-rating
+ * segment tree over the same array yields the best-rated entries of any range
+ * in O(k log n) without scanning it, also for one-letter prefixes that match
+ * much of the catalog.
+ * <p>
+ * The sorted array is immutable. Books added after it was built go to a
+ * small overlay that is scanned linearly, and deleted books are filtered
+ * through a tombstone set. Once enough changes have built up, the array is
+ * rebuilt in the background. Readers see one consistent {@link State} and
+ * never lock.
+ * <p>
+ * Ratings are the ones loaded when the book was indexed.
+ */
+public class SuggestIndex implements BookChangeListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SuggestIndex.class);
+
+    private static final int LOAD_PAGE_SIZE = 5000;
+    private static final BookProjection LOAD_FIELDS = BookProjection.of(
+            BookProjection.Field.ISBN, BookProjection.Field.TITLE,
+            BookProjection.Field.AUTHORS, BookProjection.Field.AVERAGE_RATING);
+    private static final int MIN_PENDING_BEFORE_REBUILD = 1024;
+    private static final int ID_SCAN_PAGE_SIZE = 20_000;
+    private static final BookProjection ID_SCAN_FIELDS = BookProjection.of(BookProjection.Field.ISBN);
+
+    private static final int SNAPSHOT_TYPE = 1;
+    // Bump when the entry layout or normalize() changes
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final Object writeLock = new Object();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final ExecutorService rebuilder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "suggest-index-rebuild");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile State state = new State(Snapshot.EMPTY, List.of(), Set.of(), false);
+    private volatile int snapshotHighWater = -1;
+
+    /**
+     * Reads the whole catalog page by page and replaces the indexed snapshot.
+     * Changes published while loading are kept.
+     */
+    public void load(IBooksDb db) throws SelectException {
+        long start = System.nanoTime();
+        Map<String, String> keys = new HashMap<>();
+        List<Entry> entries = new ArrayList<>();
+        int books = 0;
+        int after = 0;
+        List<Book> page;
+        do {
+            page = db.findBooksAfterId(after, LOAD_PAGE_SIZE, LOAD_FIELDS);
+            for (Book book : page) {
+                addEntries(book, keys, entries);
+                after = book.getBookId();
+            }
+            books += page.size();
+        } while (page.size() == LOAD_PAGE_SIZE);
+
+        Snapshot snapshot = new Snapshot(entries);
+        synchronized (writeLock) {
+            State s = state;
+            state = new State(snapshot, s.overlay, s.deleted, true);
+        }
+        log.info("Suggest index loaded: {} books, {} entries in {} ms",
+                books, entries.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // ---------------- OGONBLICKSBILD ----------------
+
+    /**
+     * Writes the current entries to a snapshot file for the next start.
+     * @return false if the index is not loaded yet and nothing was written.
+     */
+    public boolean writeSnapshot(Path file) throws IOException {
+        State s = state;
+        if (!s.ready) {
+            return false;
+        }
+        Entry[] entries = s.overlay.isEmpty() && s.deleted.isEmpty()
+                ? s.snapshot.entries
+                : new Snapshot(merged(s)).entries;
+        int maxBookId = 0;
+        for (Entry e : entries) {
+            maxBookId = Math.max(maxBookId, e.bookId);
+        }
+        SnapshotFile.write(file, SNAPSHOT_TYPE, SNAPSHOT_VERSION, maxBookId, out -> {
+            out.writeInt(entries.length);
+            for (Entry e : entries) {
+                out.writeString(e.key);
+                out.writeString(e.text);
+                out.writeByte(e.kind.ordinal());
+                out.writeInt(e.bookId);
+                out.writeString(e.isbn);
+                out.writeFloat(e.rating);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Makes the index ready from a snapshot written by {@link #writeSnapshot},
+     * without touching the database. Follow up with {@link #catchUp} once
+     * the database is available.
+     * @return false if there is no snapshot, or the index was already loaded.
+     * @throws IOException if the snapshot is corrupt or from another version.
+     */
+    public boolean loadSnapshot(Path file) throws IOException {
+        long start = System.nanoTime();
+        SnapshotFile.Snapshot snap = SnapshotFile.read(file, SNAPSHOT_TYPE, SNAPSHOT_VERSION);
+        if (snap == null) {
+            return false;
+        }
+        List<Entry> entries;
+        try {
+            SnapshotFile.Input in = snap.body();
+            int count = in.readInt();
+            entries = new ArrayList<>(count);
+            Suggestion.Kind[] kinds = Suggestion.Kind.values();
+            Map<String, String> shared = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = in.readString();
+                String text = in.readString();
+                Suggestion.Kind kind = kinds[in.readByte()];
+                if (kind == Suggestion.Kind.AUTHOR) {
+                    // Authors repeat across books, as in load()
+                    key = shared.computeIfAbsent(key, k -> k);
+                    text = shared.computeIfAbsent(text, t -> t);
+                }
+                entries.add(new Entry(key, text, kind, in.readInt(), in.readString(), in.readFloat()));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Snapshot " + file + " is corrupt: " + e, e);
+        }
+
+        Snapshot snapshot = new Snapshot(entries);
+        synchronized (writeLock) {
+            State s = state;
+            if (s.ready) {
+                return false;
+            }
+            state = new State(snapshot, s.overlay, s.deleted, true);
+            snapshotHighWater = (int) snap.highWaterMark();
+        }
+        log.info("Suggest index loaded from snapshot written {}: {} entries in {} ms",
+                Instant.ofEpochMilli(snap.createdAtMillis()), entries.size(), (System.nanoTime() - start) / 1_000_000);
+        return true;
+    }
+
+    /**
+     * Brings an index loaded from a snapshot up to date: books added since
+     * the snapshot are read in full, and deleted ones are found with an
+     * ISBN-only scan, far cheaper than {@link #load}. As with events,
+     * ratings stay as they were when the book was indexed.
+     */
+    public void catchUp(IBooksDb db) throws SelectException {
+        int highWater = snapshotHighWater;
+        if (highWater < 0) {
+            throw new IllegalStateException("No snapshot loaded");
+        }
+        long start = System.nanoTime();
+
+        int added = 0;
+        int after = highWater;
+        List<Book> page;
+        do {
+            page = db.findBooksAfterId(after, LOAD_PAGE_SIZE, LOAD_FIELDS);
+            if (!page.isEmpty()) {
+                int[] ids = new int[page.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = page.get(i).getBookId();
+                }
+                refresh(ids, page);
+                after = ids[ids.length - 1];
+                added += ids.length;
+            }
+        } while (page.size() == LOAD_PAGE_SIZE);
+
+        BitSet live = new BitSet(highWater + 1);
+        after = 0;
+        do {
+            page = db.findBooksAfterId(after, ID_SCAN_PAGE_SIZE, ID_SCAN_FIELDS);
+            for (Book b : page) {
+                live.set(b.getBookId());
+                after = b.getBookId();
+            }
+        } while (page.size() == ID_SCAN_PAGE_SIZE && after < highWater);
+
+        Set<Integer> gone = new HashSet<>();
+        for (Entry e : state.snapshot.entries) {
+            if (e.bookId <= highWater && !live.get(e.bookId)) {
+                gone.add(e.bookId);
+            }
+        }
+        if (!gone.isEmpty()) {
+            refresh(gone.stream().mapToInt(Integer::intValue).toArray(), List.of());
+        }
+        log.info("Suggest index caught up with the database: {} new, {} deleted books in {} ms",
+                added, gone.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public boolean isReady() {
+        return state.ready;
+    }
+
+    /**
+     * @return number of searchable entries (titles plus author-book pairs).
+     */
+    public int size() {
+        State s = state;
+        return s.snapshot.entries.length + s.overlay.size();
+    }
+
+    /**
+     * Returns up to {@code limit} completions of {@code query}, best rated first.
+     * Titles and author names are matched on their normalized start; an author
+     * or title that occurs in several books is returned once.
+     */
+    public List<Suggestion> suggest(String query, int limit) {
+        String prefix = normalize(query);
+        if (prefix.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        State s = state;
+
+        List<Entry> fromOverlay = new ArrayList<>();
+        for (Entry e : s.overlay) {
+            if (e.key.startsWith(prefix)) {
+                fromOverlay.add(e);
+            }
+        }
+
+        Set<String> seen = new HashSet<>();
+        List<Entry> candidates = s.snapshot.top(prefix, limit + fromOverlay.size(),
+                e -> !s.deleted.contains(e.bookId) && seen.add(e.dedupeKey()));
+        candidates.addAll(fromOverlay);
+        candidates.sort(Entry.BY_RATING_DESC);
+
+        seen.clear();
+        List<Suggestion> out = new ArrayList<>(limit);
+        for (Entry e : candidates) {
+            if (out.size() == limit) {
+                break;
+            }
+            if (seen.add(e.dedupeKey())) {
+                out.add(new Suggestion(e.text, e.kind, e.kind == Suggestion.Kind.TITLE ? e.isbn : null, e.rating));
+            }
+        }
+        return out;
+    }
+
+    // ---------------- ANDRINGAR ----------------
+
+    @Override
+    public void bookAdded(Book book) {
+        List<Entry> added = new ArrayList<>();
+        addEntries(book, new HashMap<>(), added);
+        if (added.isEmpty()) {
+            return;
+        }
+        synchronized (writeLock) {
+            State s = state;
+            List<Entry> overlay = new ArrayList<>(s.overlay.size() + added.size());
+            overlay.addAll(s.overlay);
+            overlay.addAll(added);
+            state = new State(s.snapshot, List.copyOf(overlay), s.deleted, s.ready);
+        }
+        maybeRebuild();
+    }
+
+    @Override
+    public void bookDeleted(int bookId) {
+        synchronized (writeLock) {
+            State s = state;
+            List<Entry> overlay = new ArrayList<>(s.overlay.size());
+            for (Entry e : s.overlay) {
+                if (e.bookId != bookId) {
+                    overlay.add(e);
+                }
+            }
+            Set<Integer> deleted = new HashSet<>(s.deleted);
+            deleted.add(bookId);
+            state = new State(s.snapshot, List.copyOf(overlay), Set.copyOf(deleted), s.ready);
+        }
+        maybeRebuild();
+    }
+
+    /**
+     * Replaces what is indexed for the given books with their current state,
+     * in one step; ids missing from {@code current} are treated as deleted.
+     * Used for changes made on other nodes, where only the ids are known.
+     */
+    public void refresh(int[] bookIds, Collection<Book> current) {
+        List<Entry> added = new ArrayList<>();
+        Map<String, String> keys = new HashMap<>();
+        for (Book book : current) {
+            addEntries(book, keys, added);
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (int id : bookIds) {
+            ids.add(id);
+        }
+        synchronized (writeLock) {
+            State s = state;
+            List<Entry> overlay = new ArrayList<>(s.overlay.size() + added.size());
+            for (Entry e : s.overlay) {
+                if (!ids.contains(e.bookId)) {
+                    overlay.add(e);
+                }
+            }
+            overlay.addAll(added);
+            Set<Integer> deleted = new HashSet<>(s.deleted);
+            deleted.addAll(ids);
+            state = new State(s.snapshot, List.copyOf(overlay), Set.copyOf(deleted), s.ready);
+        }
+        maybeRebuild();
+    }
+
+    public void close() {
+        rebuilder.shutdownNow();
+    }
+
+    private void maybeRebuild() {
+        State s = state;
+        int pending = s.overlay.size() + s.deleted.size();
+        if (!s.ready || pending < Math.max(MIN_PENDING_BEFORE_REBUILD, s.snapshot.entries.length / 32)) {
+            return;
+        }
+        if (rebuilding.compareAndSet(false, true)) {
+            rebuilder.execute(this::rebuild);
+        }
+    }
+
+    /**
+     * Folds overlay and tombstones into a new sorted snapshot. Changes made
+     * while rebuilding stay in the overlay/tombstones of the new state.
+     */
+    private void rebuild() {
+        try {
+            State base = state;
+            Snapshot snapshot = new Snapshot(merged(base));
+
+            synchronized (writeLock) {
+                State now = state;
+                Set<Entry> folded = Collections.newSetFromMap(new IdentityHashMap<>());
+                folded.addAll(base.overlay);
+                List<Entry> overlay = new ArrayList<>();
+                for (Entry e : now.overlay) {
+                    if (!folded.contains(e)) {
+                        overlay.add(e);
+                    }
+                }
+                Set<Integer> deleted = new HashSet<>(now.deleted);
+                deleted.removeAll(base.deleted);
+                state = new State(snapshot, List.copyOf(overlay), Set.copyOf(deleted), now.ready);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Suggest index rebuild failed: {}", e.getMessage(), e);
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    private static List<Entry> merged(State s) {
+        List<Entry> merged = new ArrayList<>(s.snapshot.entries.length + s.overlay.size());
+        for (Entry e : s.snapshot.entries) {
+            if (!s.deleted.contains(e.bookId)) {
+                merged.add(e);
+            }
+        }
+        merged.addAll(s.overlay);
+        return merged;
+    }
+
+    // ---------------- NORMALISERING ----------------
+
+    /**
+     * Lower case, accents removed, runs of punctuation and whitespace
+     * collapsed to one space, trimmed. "Harry  Potter: De Vises Sten!" and
+     * "harry potter de vises sten" normalize to the same key.
+     */
+    static String normalize(String s) {
+        if (s == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(s, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                pendingSpace = false;
+                sb.append(Character.toLowerCase(c));
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void addEntries(Book book, Map<String, String> keyCache, List<Entry> out) {
+        float rating = (float) book.getAverageRating();
+        if (book.getTitle() != null) {
+            String key = normalize(book.getTitle());
+            if (!key.isEmpty()) {
+                out.add(new Entry(key, book.getTitle(), Suggestion.Kind.TITLE, book.getBookId(), book.getIsbn(), rating));
+            }
+        }
+        for (Author author : book.getAuthors()) {
+            String name = author.getName();
+            if (name == null) {
+                continue;
+            }
+            // Authors repeat across books; share one key string per name
+            String key = keyCache.computeIfAbsent(name, SuggestIndex::normalize);
+            if (!key.isEmpty()) {
+                out.add(new Entry(key, name, Suggestion.Kind.AUTHOR, book.getBookId(), null, rating));
+            }
+        }
+    }
+
+    // ---------------- DATASTRUKTURER ----------------
+
+    private static final class Entry {
+        static final Comparator<Entry> BY_KEY = Comparator.comparing(e -> e.key);
+        static final Comparator<Entry> BY_RATING_DESC = (a, b) -> Float.compare(b.rating, a.rating);
+
+        final String key;
+        final String text;
+        final Suggestion.Kind kind;
+        final int bookId;
+        final String isbn;
+        final float rating;
+
+        Entry(String key, String text, Suggestion.Kind kind, int bookId, String isbn, float rating) {
+            this.key = key;
+            this.text = text;
+            this.kind = kind;
+            this.bookId = bookId;
+            this.isbn = isbn;
+            this.rating = rating;
+        }
+
+        String dedupeKey() {
+            return kind == Suggestion.Kind.TITLE ? "t:" + key : "a:" + key;
+        }
+    }
+
+    @FunctionalInterface
+    private interface EntryFilter {
+        boolean accept(Entry e);
+    }
+
+    /**
+     * Entries sorted by key, plus a max-rating segment tree over them
+     * (leaves at {@code n..2n-1}, node {@code i} covers children {@code 2i} and {@code 2i+1}).
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(List.of());
+
+        final Entry[] entries;
+        final float[] maxRating;
+
+        Snapshot(List<Entry> unsorted) {
+            entries = unsorted.toArray(new Entry[0]);
+            Arrays.sort(entries, Entry.BY_KEY);
+            int n = entries.length;
+            maxRating = new float[2 * n];
+            for (int i = 0; i < n; i++) {
+                maxRating[n + i] = entries[i].rating;
+            }
+            for (int i = n - 1; i > 0; i--) {
+                maxRating[i] = Math.max(maxRating[2 * i], maxRating[2 * i + 1]);
+            }
+        }
+
+        /**
+         * Best-rated accepted entries whose key starts with the prefix, highest first.
+         */
+        List<Entry> top(String prefix, int want, EntryFilter filter) {
+            List<Entry> out = new ArrayList<>();
+            int n = entries.length;
+            int lo = lowerBound(prefix);
+            int hi = lowerBound(prefix + Character.MAX_VALUE);
+            if (lo >= hi) {
+                return out;
+            }
+            PriorityQueue<Integer> nodes = new PriorityQueue<>(
+                    (a, b) -> Float.compare(maxRating[b], maxRating[a]));
+            for (int l = lo + n, r = hi + n; l < r; l >>= 1, r >>= 1) {
+                if ((l & 1) == 1) nodes.add(l++);
+                if ((r & 1) == 1) nodes.add(--r);
+            }
+            while (!nodes.isEmpty() && out.size() < want) {
+                int node = nodes.poll();
+                if (node >= n) {
+                    Entry e = entries[node - n];
+                    if (filter.accept(e)) {
+                        out.add(e);
+                    }
+                } else {
+                    nodes.add(2 * node);
+                    nodes.add(2 * node + 1);
+                }
+            }
+            return out;
+        }
+
+        private int lowerBound(String key) {
+            int lo = 0;
+            int hi = entries.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (entries[mid].key.compareTo(key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    private static final class State {
+        final Snapshot snapshot;
+        final List<Entry> overlay;
+        final Set<Integer> deleted;
+        final boolean ready;
+
+        State(Snapshot snapshot, List<Entry> overlay, Set<Integer> deleted, boolean ready) {
+            this.snapshot = snapshot;
+            this.overlay = overlay;
+            this.deleted = deleted;
+            this.ready = ready;
+        }
+    }
+}
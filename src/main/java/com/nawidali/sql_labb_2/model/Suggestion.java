@@ -0,0 +1,44 @@
+package com.nawidali.sql_labb_2.model;
+
+/**
+ * Ett autocomplete-forslag: en boktitel eller ett forfattarnamn.
+ * For titlar anges bokens ISBN; for forfattare ar isbn null och betyget
+ * ar det hogsta medelbetyget bland forfattarens bocker.
+ */
+public class Suggestion {
+
+    public enum Kind { TITLE, AUTHOR }
+
+    private final String text;
+    private final Kind kind;
+    private final String isbn;
+    private final double rating;
+
+    public Suggestion(String text, Kind kind, String isbn, double rating) {
+        this.text = text;
+        this.kind = kind;
+        this.isbn = isbn;
+        this.rating = rating;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getIsbn() {
+        return isbn;
+    }
+
+    public double getRating() {
+        return rating;
+    }
+
+    @Override
+    public String toString() {
+        return kind + ": " + text;
+    }
+}
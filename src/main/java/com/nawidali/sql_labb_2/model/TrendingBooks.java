@@ -0,0 +1,206 @@
+package com.nawidali.sql_labb_2.model;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Books that are rated and reviewed the most right now.
+ * <p>
+ * Every rating or review adds one to the book's score in each window, and
+ * scores decay exponentially with the window as time constant, so a score
+ * is roughly the number of events in the last window, recent ones counting
+ * more. Events only touch memory: the book's scores are replaced with one
+ * compare-and-set, without locks or database queries. {@link #refresh}
+ * ranks the books per window into the lists {@link #top} serves, and drops
+ * books whose scores have decayed to nothing, so memory is bounded by the
+ * books that had events recently, not by the number of events.
+ * <p>
+ * Scores start empty on every start; they are not read from the database.
+ */
+public class TrendingBooks implements BookChangeListener {
+
+    // Books scoring below this in every window are dropped on refresh
+    private static final double NEGLIGIBLE = 0.01;
+    // Replaces the scores of a book being dropped; events that meet it start over
+    private static final Scores RETIRED = new Scores(new double[0], 0);
+
+    public record Entry(int bookId, double score) {
+    }
+
+    private final List<String> windowNames;
+    private final double[] decayMillis;
+    private final int topK;
+    private final LongSupplier clock;
+
+    private final Map<Integer, AtomicReference<Scores>> books = new ConcurrentHashMap<>();
+    private volatile Map<String, List<Entry>> ranked;
+
+    /**
+     * @param windows windows by the name clients ask for (e.g. "1h" to one hour), in order
+     * @param topK    books kept per window on refresh
+     */
+    public TrendingBooks(Map<String, Duration> windows, int topK) {
+        this(windows, topK, System::currentTimeMillis);
+    }
+
+    TrendingBooks(Map<String, Duration> windows, int topK, LongSupplier clock) {
+        if (windows.isEmpty() || topK < 1) {
+            throw new IllegalArgumentException("At least one window and topK >= 1 required");
+        }
+        this.windowNames = List.copyOf(windows.keySet());
+        this.decayMillis = new double[windows.size()];
+        int i = 0;
+        for (Map.Entry<String, Duration> w : windows.entrySet()) {
+            if (w.getValue().toMillis() <= 0) {
+                throw new IllegalArgumentException("Window " + w.getKey() + " must be positive");
+            }
+            decayMillis[i++] = w.getValue().toMillis();
+        }
+        this.topK = topK;
+        this.clock = clock;
+        Map<String, List<Entry>> empty = new LinkedHashMap<>();
+        for (String name : windowNames) {
+            empty.put(name, List.of());
+        }
+        this.ranked = empty;
+    }
+
+    public List<String> windows() {
+        return windowNames;
+    }
+
+    /**
+     * Up to {@code n} books with the highest scores in the window as of the
+     * last {@link #refresh}, highest first.
+     * @throws IllegalArgumentException if the window is not configured.
+     */
+    public List<Entry> top(String window, int n) {
+        List<Entry> list = ranked.get(window);
+        if (list == null) {
+            throw new IllegalArgumentException("window must be one of " + windowNames);
+        }
+        return list.subList(0, Math.min(n, list.size()));
+    }
+
+    public int getTrackedBooks() {
+        return books.size();
+    }
+
+    // ---------------- ANDRINGAR ----------------
+
+    @Override
+    public void bookAdded(Book book) {
+    }
+
+    @Override
+    public void bookRated(int bookId, int userId, int rating) {
+        record(bookId);
+    }
+
+    @Override
+    public void bookReviewed(int bookId, int userId) {
+        record(bookId);
+    }
+
+    @Override
+    public void bookDeleted(int bookId) {
+        AtomicReference<Scores> ref = books.remove(bookId);
+        if (ref != null) {
+            ref.set(RETIRED);
+        }
+    }
+
+    void record(int bookId) {
+        long now = clock.getAsLong();
+        while (true) {
+            AtomicReference<Scores> ref = books.computeIfAbsent(bookId, id -> new AtomicReference<>());
+            Scores current = ref.get();
+            if (current == RETIRED) {
+                // Dropped by refresh in the meantime; start over with a fresh entry
+                books.remove(bookId, ref);
+                continue;
+            }
+            if (ref.compareAndSet(current, Scores.plusOne(current, now, decayMillis))) {
+                return;
+            }
+        }
+    }
+
+    // ---------------- RANKING ----------------
+
+    /**
+     * Ranks the books of every window as of now and drops books whose
+     * scores are negligible in all windows.
+     */
+    public void refresh() {
+        long now = clock.getAsLong();
+        List<PriorityQueue<Entry>> heaps = new ArrayList<>(decayMillis.length);
+        for (int w = 0; w < decayMillis.length; w++) {
+            heaps.add(new PriorityQueue<>(topK + 1, Comparator.comparingDouble(Entry::score)));
+        }
+        for (Map.Entry<Integer, AtomicReference<Scores>> book : books.entrySet()) {
+            AtomicReference<Scores> ref = book.getValue();
+            Scores scores = ref.get();
+            if (scores == null || scores == RETIRED) {
+                continue;
+            }
+            double[] current = scores.decayedTo(now, decayMillis);
+            boolean negligible = true;
+            for (int w = 0; w < current.length; w++) {
+                negligible &= current[w] < NEGLIGIBLE;
+                PriorityQueue<Entry> heap = heaps.get(w);
+                if (heap.size() < topK || current[w] > heap.peek().score()) {
+                    heap.add(new Entry(book.getKey(), current[w]));
+                    if (heap.size() > topK) {
+                        heap.poll();
+                    }
+                }
+            }
+            // An event arriving now fails its compare-and-set and starts a new entry
+            if (negligible && ref.compareAndSet(scores, RETIRED)) {
+                books.remove(book.getKey(), ref);
+            }
+        }
+
+        Map<String, List<Entry>> next = new LinkedHashMap<>();
+        int w = 0;
+        for (String name : windowNames) {
+            List<Entry> list = new ArrayList<>(heaps.get(w++));
+            list.removeIf(e -> e.score() < NEGLIGIBLE);
+            list.sort(Comparator.comparingDouble(Entry::score).reversed().thenComparingInt(Entry::bookId));
+            next.put(name, List.copyOf(list));
+        }
+        ranked = next;
+    }
+
+    /**
+     * A book's scores per window, as of {@code atMillis}. Immutable; events replace it.
+     */
+    private record Scores(double[] values, long atMillis) {
+
+        static Scores plusOne(Scores current, long now, double[] decayMillis) {
+            double[] values = current == null ? new double[decayMillis.length] : current.decayedTo(now, decayMillis);
+            for (int w = 0; w < values.length; w++) {
+                values[w] += 1.0;
+            }
+            return new Scores(values, current == null ? now : Math.max(now, current.atMillis));
+        }
+
+        double[] decayedTo(long now, double[] decayMillis) {
+            long elapsed = Math.max(0, now - atMillis);
+            double[] out = new double[values.length];
+            for (int w = 0; w < values.length; w++) {
+                out[w] = values[w] * Math.exp(-elapsed / decayMillis[w]);
+            }
+            return out;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.nawidali.sql_labb_2.model.exceptions;
+
+/**
+ * Thrown when a call is shed because the database is already running at its
+ * concurrency limit and the wait queue is full (or the wait timed out).
+ * Unchecked, since it can come from any IBooksDb method.
+ */
+public class OverloadedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public OverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return suggested number of seconds before the client retries.
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,11 @@
+package com.nawidali.sql_labb_2.model.exceptions;
+
+/**
+ * Thrown when a request needs a user and has no valid session token.
+ */
+public class UnauthorizedException extends RuntimeException {
+
+    public UnauthorizedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,60 @@
+package com.nawidali.sql_labb_2.rest;
+
+import com.nawidali.sql_labb_2.model.IBooksDb;
+import com.nawidali.sql_labb_2.model.SessionTokens;
+import com.nawidali.sql_labb_2.model.User;
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+import com.nawidali.sql_labb_2.model.exceptions.UnauthorizedException;
+import com.nawidali.sql_labb_2.rest.dto.LoginRequest;
+import com.nawidali.sql_labb_2.rest.dto.LoginResponse;
+import jakarta.validation.Valid;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+
+/**
+ * Login and logout. Login checks the credentials in the database once and
+ * returns a session token; later requests are authenticated from the token alone.
+ */
+@RestController
+@RequestMapping("/auth")
+public class AuthController {
+
+    private final IBooksDb booksDb;
+    private final SessionTokens tokens;
+
+    public AuthController(IBooksDb booksDb, SessionTokens tokens) {
+        this.booksDb = booksDb;
+        this.tokens = tokens;
+    }
+
+    @PostMapping("/login")
+    public ResponseEntity<LoginResponse> login(@Valid @RequestBody LoginRequest request) throws SelectException {
+        User user = booksDb.login(request.getUsername(), request.getPassword());
+        if (user == null) {
+            throw new UnauthorizedException("Wrong username or password");
+        }
+        SessionTokens.Issued issued = tokens.issue(user);
+        return ResponseEntity.ok(new LoginResponse(issued.token(), user.getUserId(), user.getUsername(),
+                Instant.ofEpochMilli(issued.expiresAtMillis())));
+    }
+
+    /**
+     * Revokes the token the request was made with.
+     */
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(
+            @RequestAttribute(name = CurrentUserInterceptor.SESSION_ATTRIBUTE, required = false)
+            SessionTokens.Session session) {
+        if (session == null) {
+            throw new UnauthorizedException("A session token is required");
+        }
+        tokens.revoke(session);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -1,18 +1,29 @@
 package com.nawidali.sql_labb_2.rest;
 
 import com.nawidali.sql_labb_2.model.Book;
+import com.nawidali.sql_labb_2.model.BookProjection;
+import com.nawidali.sql_labb_2.model.CurrentUser;
 import com.nawidali.sql_labb_2.model.IBooksDb;
+import com.nawidali.sql_labb_2.model.RatingSummary;
 import com.nawidali.sql_labb_2.model.Review;
+import com.nawidali.sql_labb_2.model.SessionTokens;
 import com.nawidali.sql_labb_2.model.User;
 import com.nawidali.sql_labb_2.model.exceptions.InsertException;
 import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+import com.nawidali.sql_labb_2.model.exceptions.UnauthorizedException;
+import com.nawidali.sql_labb_2.rest.dto.BookLookupRequest;
+import com.nawidali.sql_labb_2.rest.dto.BookLookupResponse;
+import com.nawidali.sql_labb_2.rest.dto.BookView;
 import com.nawidali.sql_labb_2.rest.dto.RatingRequest;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * REST controller depending only on IBooksDb interface.
@@ -22,40 +33,111 @@ import java.util.List;
 public class BookController {
 
     private final IBooksDb booksDb;
+    private final boolean requireToken;
 
-    public BookController(IBooksDb booksDb) {
+    /**
+     * @param requireToken reject writes without a session token instead of
+     *                     trusting the userId in the request body.
+     */
+    public BookController(IBooksDb booksDb, @Value("${books.auth.require-token:false}") boolean requireToken) {
         this.booksDb = booksDb;
+        this.requireToken = requireToken;
     }
 
     @GetMapping
-    public ResponseEntity<List<Book>> searchByTitle(
-            @RequestParam @NotBlank(message = "Title parameter is required") String title)
+    public ResponseEntity<List<?>> searchByTitle(
+            @RequestParam @NotBlank(message = "Title parameter is required") String title,
+            @RequestParam(required = false) String fields)
             throws SelectException {
-        return ResponseEntity.ok(booksDb.findBooksByTitle(title));
+        if (fields == null) {
+            return ResponseEntity.ok(booksDb.findBooksByTitle(title));
+        }
+        BookProjection projection = BookProjection.parse(fields);
+        return ResponseEntity.ok(BookView.of(booksDb.findBooksByTitle(title, projection), projection));
     }
 
     @GetMapping("/{isbn}")
-    public ResponseEntity<Book> getByIsbn(@PathVariable String isbn) throws SelectException {
+    public ResponseEntity<?> getByIsbn(@PathVariable String isbn,
+                                       @RequestParam(required = false) String fields) throws SelectException {
         if (isbn == null || isbn.isBlank()) {
             throw new IllegalArgumentException("ISBN is required");
         }
 
-        List<Book> books = booksDb.findBooksByIsbn(isbn.trim());
+        BookProjection projection = fields != null ? BookProjection.parse(fields) : null;
+        List<Book> books = projection != null
+                ? booksDb.findBooksByIsbn(isbn.trim(), projection)
+                : booksDb.findBooksByIsbn(isbn.trim());
         if (books.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
-        return ResponseEntity.ok(books.get(0));
+        return ResponseEntity.ok(projection != null ? BookView.of(books.get(0), projection) : books.get(0));
+    }
+
+    @PostMapping("/lookup")
+    public ResponseEntity<BookLookupResponse> lookup(@Valid @RequestBody BookLookupRequest request)
+            throws SelectException {
+        List<String> isbns = request.getIsbns().stream()
+                .filter(i -> i != null && !i.isBlank())
+                .map(String::trim)
+                .distinct()
+                .toList();
+        List<Integer> bookIds = request.getBookIds().stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        if (isbns.isEmpty() && bookIds.isEmpty()) {
+            throw new IllegalArgumentException("At least one ISBN or book id is required");
+        }
+
+        Map<String, Book> byIsbn = isbns.isEmpty() ? Map.of() : booksDb.findBooksByIsbns(isbns);
+        Map<Integer, Book> byId = bookIds.isEmpty() ? Map.of() : booksDb.findBooksByIds(bookIds);
+
+        List<String> missingIsbns = isbns.stream().filter(i -> !byIsbn.containsKey(i)).toList();
+        List<Integer> missingIds = bookIds.stream().filter(id -> !byId.containsKey(id)).toList();
+        return ResponseEntity.ok(new BookLookupResponse(byIsbn, byId, missingIsbns, missingIds));
     }
 
     @PostMapping("/{bookId}/rating")
     public ResponseEntity<Void> rateBook(
             @PathVariable int bookId,
-            @Valid @RequestBody RatingRequest request) throws InsertException {
-        User user = new User(request.getUserId(), "api-user");
-        booksDb.rateBook(bookId, request.getRating(), user);
+            @Valid @RequestBody RatingRequest request,
+            @RequestAttribute(name = CurrentUserInterceptor.SESSION_ATTRIBUTE, required = false)
+            SessionTokens.Session session) throws InsertException {
+        booksDb.rateBook(bookId, request.getRating(), caller(session, request.getUserId()));
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * The token's user; without a token, the userId from the body unless tokens are required.
+     * An X-User-Id header must then name the same user, since the database
+     * layer pins reads to the primary by the header and records writes by this user.
+     */
+    private User caller(SessionTokens.Session session, Integer bodyUserId) {
+        if (session != null) {
+            return session.user();
+        }
+        if (requireToken) {
+            throw new UnauthorizedException("A session token is required");
+        }
+        if (bodyUserId == null) {
+            throw new IllegalArgumentException("userId or a session token is required");
+        }
+        Integer headerUserId = CurrentUser.get();
+        if (headerUserId != null && !headerUserId.equals(bodyUserId)) {
+            throw new IllegalArgumentException(CurrentUserInterceptor.USER_ID_HEADER + " must match userId");
+        }
+        return new User(bodyUserId, "api-user");
+    }
+
+    @GetMapping("/{bookId}/ratings/summary")
+    public ResponseEntity<RatingSummary> getRatingSummary(@PathVariable int bookId) throws SelectException {
+        RatingSummary summary = booksDb.findRatingSummary(bookId);
+        if (summary == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(summary);
+    }
+
     @GetMapping("/{bookId}/reviews")
     public ResponseEntity<List<Review>> getReviews(@PathVariable int bookId) throws SelectException {
         return ResponseEntity.ok(booksDb.findReviewsByBookId(bookId));
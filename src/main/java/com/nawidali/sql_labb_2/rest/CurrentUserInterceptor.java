@@ -0,0 +1,61 @@
+package com.nawidali.sql_labb_2.rest;
+
+import com.nawidali.sql_labb_2.model.CurrentUser;
+import com.nawidali.sql_labb_2.model.SessionTokens;
+import com.nawidali.sql_labb_2.model.exceptions.UnauthorizedException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Binds the calling user to the request thread so the database layer can
+ * give that user read-your-writes consistency.
+ * <p>
+ * A bearer session token is verified in memory and its user is exposed as
+ * the {@link #SESSION_ATTRIBUTE} request attribute; an invalid token is
+ * rejected with 401. Without a token the X-User-Id header is used as a
+ * routing hint only; writes reject a header naming another user than the body.
+ */
+public class CurrentUserInterceptor implements HandlerInterceptor {
+
+    public static final String USER_ID_HEADER = "X-User-Id";
+    public static final String SESSION_ATTRIBUTE = "books.session";
+
+    private static final String BEARER = "Bearer ";
+
+    private final SessionTokens tokens;
+
+    public CurrentUserInterceptor(SessionTokens tokens) {
+        this.tokens = tokens;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (tokens != null && authorization != null && authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            SessionTokens.Session session = tokens.verify(authorization.substring(BEARER.length()).trim());
+            if (session == null) {
+                throw new UnauthorizedException("Invalid or expired session token");
+            }
+            request.setAttribute(SESSION_ATTRIBUTE, session);
+            CurrentUser.set(session.user().getUserId());
+            return true;
+        }
+        String header = request.getHeader(USER_ID_HEADER);
+        if (header != null && !header.isBlank()) {
+            try {
+                CurrentUser.set(Integer.parseInt(header.trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(USER_ID_HEADER + " must be a number");
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
+                                Object handler, Exception ex) {
+        CurrentUser.clear();
+    }
+}
@@ -0,0 +1,154 @@
+package com.nawidali.sql_labb_2.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nawidali.sql_labb_2.model.Author;
+import com.nawidali.sql_labb_2.model.Book;
+import com.nawidali.sql_labb_2.model.CatalogExporter;
+import com.nawidali.sql_labb_2.model.Genre;
+import com.nawidali.sql_labb_2.model.IBooksDb;
+import com.nawidali.sql_labb_2.model.Review;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Full-catalog dump for offline analysis, streamed as NDJSON or CSV. Both
+ * types are in server.compression.mime-types, so the stream is gzipped for
+ * clients that accept it. See {@link CatalogExporter} for paging and throttling.
+ */
+@RestController
+@RequestMapping("/books")
+public class ExportController {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportController.class);
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final IBooksDb booksDb;
+    private final CatalogExporter exporter;
+    private final ObjectMapper objectMapper;
+
+    public ExportController(IBooksDb booksDb, CatalogExporter exporter, ObjectMapper objectMapper) {
+        this.booksDb = booksDb;
+        this.exporter = exporter;
+        this.objectMapper = objectMapper;
+    }
+
+    @GetMapping("/export")
+    public void export(@RequestParam(defaultValue = "ndjson") String format,
+                       @RequestParam(defaultValue = "false") boolean reviews,
+                       HttpServletResponse response) throws IOException {
+        Format f = Format.parse(format);
+        if (f == Format.CSV && reviews) {
+            throw new IllegalArgumentException("Reviews can only be exported as NDJSON");
+        }
+
+        try (CatalogExporter.Session session = exporter.start()) {
+            response.setContentType(f.contentType);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"books." + f.extension + "\"");
+            OutputStream out = new BufferedOutputStream(response.getOutputStream(), BUFFER_BYTES);
+
+            long start = System.nanoTime();
+            long count = session.run(booksDb, reviews, f == Format.CSV ? csv(out) : ndjson(out));
+            out.flush();
+            log.info("Exported {} books as {} in {} ms", count, f, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private CatalogExporter.Sink ndjson(OutputStream out) {
+        return new CatalogExporter.Sink() {
+            @Override
+            public void write(Book book, List<Review> reviews) throws IOException {
+                ObjectNode line = objectMapper.valueToTree(book);
+                if (reviews != null) {
+                    line.set("reviews", objectMapper.valueToTree(reviews));
+                }
+                out.write(objectMapper.writeValueAsBytes(line));
+                out.write('\n');
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+        };
+    }
+
+    private static CatalogExporter.Sink csv(OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writer.write("book_id,isbn,title,published,authors,genres,average_rating\n");
+        return new CatalogExporter.Sink() {
+            @Override
+            public void write(Book book, List<Review> reviews) throws IOException {
+                writer.write(Integer.toString(book.getBookId()));
+                writer.write(',');
+                writer.write(csvField(book.getIsbn()));
+                writer.write(',');
+                writer.write(csvField(book.getTitle()));
+                writer.write(',');
+                writer.write(book.getPublished() == null ? "" : book.getPublished().toString());
+                writer.write(',');
+                writer.write(csvField(book.getAuthors().stream().map(Author::getName).collect(Collectors.joining("; "))));
+                writer.write(',');
+                writer.write(csvField(book.getGenres().stream().map(Genre::getName).collect(Collectors.joining("; "))));
+                writer.write(',');
+                writer.write(Double.toString(book.getAverageRating()));
+                writer.write('\n');
+            }
+
+            @Override
+            public void flush() throws IOException {
+                writer.flush();
+            }
+        };
+    }
+
+    // RFC 4180: quote fields containing separators, quotes or line breaks
+    static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        static Format parse(String value) {
+            for (Format f : values()) {
+                if (f.extension.equalsIgnoreCase(value.trim())) {
+                    return f;
+                }
+            }
+            throw new IllegalArgumentException("format must be ndjson or csv");
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.nawidali.sql_labb_2.rest;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Answers 503 with Retry-After while the database is still connecting, and
+ * logs the time from JVM start to the first request that is actually served.
+ */
+public class ReadinessInterceptor implements HandlerInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadinessInterceptor.class);
+
+    private final BooleanSupplier ready;
+    private final AtomicBoolean firstRequestServed = new AtomicBoolean();
+
+    public ReadinessInterceptor(BooleanSupplier ready) {
+        this.ready = ready;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!ready.getAsBoolean()) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            return false;
+        }
+        if (firstRequestServed.compareAndSet(false, true)) {
+            log.info("First request served {} ms after JVM start",
+                    ManagementFactory.getRuntimeMXBean().getUptime());
+        }
+        return true;
+    }
+}
@@ -0,0 +1,68 @@
+package com.nawidali.sql_labb_2.rest;
+
+import com.nawidali.sql_labb_2.model.Book;
+import com.nawidali.sql_labb_2.model.IBooksDb;
+import com.nawidali.sql_labb_2.model.SimilarBooksIndex;
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+import com.nawidali.sql_labb_2.rest.dto.SimilarBook;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * "Readers also rated": neighbors come from the in-memory
+ * {@link SimilarBooksIndex}, the books themselves from one batch lookup.
+ */
+@RestController
+@RequestMapping("/books")
+public class SimilarBooksController {
+
+    static final int MAX_LIMIT = 50;
+
+    private final SimilarBooksIndex index;
+    private final IBooksDb booksDb;
+
+    public SimilarBooksController(SimilarBooksIndex index, IBooksDb booksDb) {
+        this.index = index;
+        this.booksDb = booksDb;
+    }
+
+    @GetMapping("/{bookId}/similar")
+    public ResponseEntity<List<SimilarBook>> similar(@PathVariable int bookId,
+                                                     @RequestParam(defaultValue = "10") int n)
+            throws SelectException {
+        if (n < 1 || n > MAX_LIMIT) {
+            throw new IllegalArgumentException("n must be between 1 and " + MAX_LIMIT);
+        }
+        if (!index.isReady()) {
+            // Still loading after startup
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .build();
+        }
+        List<SimilarBooksIndex.Neighbor> neighbors = index.similar(bookId, n);
+        if (neighbors.isEmpty()) {
+            return ResponseEntity.ok(List.of());
+        }
+        List<Integer> ids = neighbors.stream().map(SimilarBooksIndex.Neighbor::bookId).toList();
+        Map<Integer, Book> books = booksDb.findBooksByIds(ids);
+        List<SimilarBook> out = new ArrayList<>(neighbors.size());
+        for (SimilarBooksIndex.Neighbor neighbor : neighbors) {
+            Book book = books.get(neighbor.bookId());
+            // Deleted since it was rated
+            if (book != null) {
+                out.add(new SimilarBook(book, neighbor.readers()));
+            }
+        }
+        return ResponseEntity.ok(out);
+    }
+}
@@ -0,0 +1,47 @@
+package com.nawidali.sql_labb_2.rest;
+
+import com.nawidali.sql_labb_2.model.SuggestIndex;
+import com.nawidali.sql_labb_2.model.Suggestion;
+import jakarta.validation.constraints.NotBlank;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Search-box autocomplete served from the in-memory {@link SuggestIndex};
+ * never touches the database.
+ */
+@RestController
+@RequestMapping("/books")
+public class SuggestController {
+
+    static final int MAX_LIMIT = 50;
+
+    private final SuggestIndex index;
+
+    public SuggestController(SuggestIndex index) {
+        this.index = index;
+    }
+
+    @GetMapping("/suggest")
+    public ResponseEntity<List<Suggestion>> suggest(
+            @RequestParam @NotBlank(message = "Query parameter is required") String q,
+            @RequestParam(defaultValue = "10") int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        if (!index.isReady()) {
+            // Still loading after startup
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .build();
+        }
+        return ResponseEntity.ok(index.suggest(q, limit));
+    }
+}
@@ -0,0 +1,62 @@
+package com.nawidali.sql_labb_2.rest;
+
+import com.nawidali.sql_labb_2.model.Book;
+import com.nawidali.sql_labb_2.model.IBooksDb;
+import com.nawidali.sql_labb_2.model.TrendingBooks;
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+import com.nawidali.sql_labb_2.rest.dto.TrendingBook;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Books with the most ratings and reviews lately, ranked in memory by
+ * {@link TrendingBooks}; only the listed books are read from the database.
+ */
+@RestController
+@RequestMapping("/books")
+public class TrendingController {
+
+    static final int MAX_LIMIT = 50;
+
+    private final TrendingBooks trending;
+    private final IBooksDb booksDb;
+
+    public TrendingController(TrendingBooks trending, IBooksDb booksDb) {
+        this.trending = trending;
+        this.booksDb = booksDb;
+    }
+
+    /**
+     * @param window one of books.trending.windows; defaults to the first.
+     */
+    @GetMapping("/trending")
+    public ResponseEntity<List<TrendingBook>> trending(@RequestParam(required = false) String window,
+                                                       @RequestParam(defaultValue = "10") int limit)
+            throws SelectException {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        List<TrendingBooks.Entry> top = trending.top(window != null ? window : trending.windows().get(0), limit);
+        if (top.isEmpty()) {
+            return ResponseEntity.ok(List.of());
+        }
+        List<Integer> ids = top.stream().map(TrendingBooks.Entry::bookId).toList();
+        Map<Integer, Book> books = booksDb.findBooksByIds(ids);
+        List<TrendingBook> out = new ArrayList<>(top.size());
+        for (TrendingBooks.Entry entry : top) {
+            Book book = books.get(entry.bookId());
+            // Deleted since the last ranking
+            if (book != null) {
+                out.add(new TrendingBook(book, entry.score()));
+            }
+        }
+        return ResponseEntity.ok(out);
+    }
+}
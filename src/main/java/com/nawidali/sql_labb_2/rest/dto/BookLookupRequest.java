@@ -0,0 +1,41 @@
+package com.nawidali.sql_labb_2.rest.dto;
+
+import jakarta.validation.constraints.Size;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BookLookupRequest {
+
+    public static final int MAX_KEYS = 200;
+
+    @Size(max = MAX_KEYS, message = "At most " + MAX_KEYS + " ISBNs per lookup")
+    private List<String> isbns = new ArrayList<>();
+
+    @Size(max = MAX_KEYS, message = "At most " + MAX_KEYS + " book ids per lookup")
+    private List<Integer> bookIds = new ArrayList<>();
+
+    public BookLookupRequest() {
+    }
+
+    public BookLookupRequest(List<String> isbns, List<Integer> bookIds) {
+        this.isbns = isbns;
+        this.bookIds = bookIds;
+    }
+
+    public List<String> getIsbns() {
+        return isbns;
+    }
+
+    public void setIsbns(List<String> isbns) {
+        this.isbns = isbns != null ? isbns : new ArrayList<>();
+    }
+
+    public List<Integer> getBookIds() {
+        return bookIds;
+    }
+
+    public void setBookIds(List<Integer> bookIds) {
+        this.bookIds = bookIds != null ? bookIds : new ArrayList<>();
+    }
+}
@@ -0,0 +1,44 @@
+package com.nawidali.sql_labb_2.rest.dto;
+
+import com.nawidali.sql_labb_2.model.Book;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of a batch lookup, keyed by the keys the caller sent.
+ * Keys that did not match a book are listed explicitly under missing*.
+ */
+public class BookLookupResponse {
+
+    private final Map<String, Book> byIsbn;
+    private final Map<Integer, Book> byId;
+    private final List<String> missingIsbns;
+    private final List<Integer> missingIds;
+
+    public BookLookupResponse(Map<String, Book> byIsbn,
+                              Map<Integer, Book> byId,
+                              List<String> missingIsbns,
+                              List<Integer> missingIds) {
+        this.byIsbn = byIsbn;
+        this.byId = byId;
+        this.missingIsbns = missingIsbns;
+        this.missingIds = missingIds;
+    }
+
+    public Map<String, Book> getByIsbn() {
+        return byIsbn;
+    }
+
+    public Map<Integer, Book> getById() {
+        return byId;
+    }
+
+    public List<String> getMissingIsbns() {
+        return missingIsbns;
+    }
+
+    public List<Integer> getMissingIds() {
+        return missingIds;
+    }
+}
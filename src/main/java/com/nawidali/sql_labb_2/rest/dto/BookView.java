@@ -0,0 +1,72 @@
+package com.nawidali.sql_labb_2.rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.nawidali.sql_labb_2.model.Author;
+import com.nawidali.sql_labb_2.model.Book;
+import com.nawidali.sql_labb_2.model.BookProjection;
+import com.nawidali.sql_labb_2.model.Genre;
+
+import java.sql.Date;
+import java.util.List;
+
+/**
+ * Book response restricted to the fields requested with {@code fields=}.
+ * Fields that were not requested are left out of the JSON entirely.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BookView {
+
+    private final int bookId;
+    private final String isbn;
+    private final String title;
+    private final Date published;
+    private final List<Author> authors;
+    private final List<Genre> genres;
+    private final Double averageRating;
+
+    private BookView(Book book, BookProjection fields) {
+        this.bookId = book.getBookId();
+        this.isbn = fields.includes(BookProjection.Field.ISBN) ? book.getIsbn() : null;
+        this.title = fields.includes(BookProjection.Field.TITLE) ? book.getTitle() : null;
+        this.published = fields.includes(BookProjection.Field.PUBLISHED) ? book.getPublished() : null;
+        this.authors = fields.includes(BookProjection.Field.AUTHORS) ? book.getAuthors() : null;
+        this.genres = fields.includes(BookProjection.Field.GENRES) ? book.getGenres() : null;
+        this.averageRating = fields.includes(BookProjection.Field.AVERAGE_RATING) ? book.getAverageRating() : null;
+    }
+
+    public static BookView of(Book book, BookProjection fields) {
+        return new BookView(book, fields);
+    }
+
+    public static List<BookView> of(List<Book> books, BookProjection fields) {
+        return books.stream().map(b -> new BookView(b, fields)).toList();
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public String getIsbn() {
+        return isbn;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public Date getPublished() {
+        return published;
+    }
+
+    public List<Author> getAuthors() {
+        return authors;
+    }
+
+    public List<Genre> getGenres() {
+        return genres;
+    }
+
+    public Double getAverageRating() {
+        return averageRating;
+    }
+}
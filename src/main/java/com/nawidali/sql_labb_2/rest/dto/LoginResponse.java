@@ -0,0 +1,37 @@
+package com.nawidali.sql_labb_2.rest.dto;
+
+import java.time.Instant;
+
+/**
+ * A session token; send it as {@code Authorization: Bearer <token>}.
+ */
+public class LoginResponse {
+
+    private final String token;
+    private final int userId;
+    private final String username;
+    private final Instant expiresAt;
+
+    public LoginResponse(String token, int userId, String username, Instant expiresAt) {
+        this.token = token;
+        this.userId = userId;
+        this.username = username;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
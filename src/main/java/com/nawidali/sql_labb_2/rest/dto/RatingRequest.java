@@ -6,7 +6,7 @@ import jakarta.validation.constraints.NotNull;
 
 public class RatingRequest {
 
-    @NotNull(message = "userId is required")
+    // Ignored when the request carries a session token
     private Integer userId;
 
     @NotNull(message = "rating is required")
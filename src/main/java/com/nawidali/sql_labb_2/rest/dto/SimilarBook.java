@@ -0,0 +1,25 @@
+package com.nawidali.sql_labb_2.rest.dto;
+
+import com.nawidali.sql_labb_2.model.Book;
+
+/**
+ * A book rated by readers of another book, with how many such readers rated it.
+ */
+public class SimilarBook {
+
+    private final Book book;
+    private final int readers;
+
+    public SimilarBook(Book book, int readers) {
+        this.book = book;
+        this.readers = readers;
+    }
+
+    public Book getBook() {
+        return book;
+    }
+
+    public int getReaders() {
+        return readers;
+    }
+}
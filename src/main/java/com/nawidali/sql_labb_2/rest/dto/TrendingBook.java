@@ -0,0 +1,25 @@
+package com.nawidali.sql_labb_2.rest.dto;
+
+import com.nawidali.sql_labb_2.model.Book;
+
+/**
+ * A trending book with its score: roughly the ratings and reviews it got in the window.
+ */
+public class TrendingBook {
+
+    private final Book book;
+    private final double score;
+
+    public TrendingBook(Book book, double score) {
+        this.book = book;
+        this.score = score;
+    }
+
+    public Book getBook() {
+        return book;
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,141 @@
+package com.nawidali.sql_labb_2.migration;
+
+import com.nawidali.sql_labb_2.model.BookDocumentReader;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MySqlToMongoMigratorTest {
+
+    @Test
+    void splitsIdSpaceIntoInclusiveRanges() {
+        List<MySqlToMongoMigrator.KeyRange> ranges = MySqlToMongoMigrator.split(1, 12, 5);
+
+        assertEquals(List.of(new MySqlToMongoMigrator.KeyRange(1, 5),
+                new MySqlToMongoMigrator.KeyRange(6, 10),
+                new MySqlToMongoMigrator.KeyRange(11, 12)), ranges);
+        assertEquals("book:6-10", ranges.get(1).id());
+        assertTrue(MySqlToMongoMigrator.split(0, -1, 5).isEmpty());
+        assertEquals(1, MySqlToMongoMigrator.split(Integer.MAX_VALUE - 1, Integer.MAX_VALUE, 5).size());
+    }
+
+    @Test
+    void averageRatingMatchesMongoAvg() {
+        assertEquals(0.0, BookDocumentReader.averageRating(List.of()));
+        assertEquals(3.5, BookDocumentReader.averageRating(List.of(
+                new Document("user_id", 1).append("rating", 3),
+                new Document("user_id", 2).append("rating", 4))));
+    }
+
+    @Test
+    void rangeReplacesDocumentsRemovesDeletedBooksAndVerifies() throws Exception {
+        FakeTarget mongo = new FakeTarget();
+        mongo.docs.put(2, book(2, 1));
+        // Book 3 was deleted in MySQL after an earlier run copied it
+        mongo.docs.put(3, book(3, 5, 4));
+        mongo.docs.put(9, book(9));
+        Map<Integer, Document> mysql = new LinkedHashMap<>();
+        mysql.put(1, book(1, 4));
+        mysql.put(2, book(2, 1, 3));
+        MySqlToMongoMigrator.KeyRange range = new MySqlToMongoMigrator.KeyRange(1, 5);
+        MySqlToMongoMigrator migrator = new MySqlToMongoMigrator(
+                r -> new MySqlToMongoMigrator.RangeData(mysql, FakeTarget.totalsOf(mysql.values())), mongo);
+
+        MySqlToMongoMigrator.RangeResult result = migrator.migrateRange(range);
+
+        assertTrue(result.verified());
+        assertEquals(Set.of(1, 2, 9), mongo.docs.keySet(), "other ranges are left alone");
+        assertEquals(List.of(1, 3), mongo.docs.get(2).getList("ratings", Document.class).stream()
+                .map(d -> d.getInteger("rating")).toList());
+        assertEquals(List.of(range), mongo.verified);
+    }
+
+    @Test
+    void rangeThatDoesNotMatchIsNotCheckpointed() throws Exception {
+        FakeTarget mongo = new FakeTarget();
+        mongo.failWrites = true;
+        Map<Integer, Document> mysql = Map.of(1, book(1, 4));
+        MySqlToMongoMigrator migrator = new MySqlToMongoMigrator(
+                r -> new MySqlToMongoMigrator.RangeData(mysql, FakeTarget.totalsOf(mysql.values())), mongo);
+
+        assertFalse(migrator.migrateRange(new MySqlToMongoMigrator.KeyRange(1, 5)).verified());
+        assertTrue(mongo.verified.isEmpty());
+    }
+
+    private static Document book(int bookId, int... ratings) {
+        List<Document> list = new ArrayList<>();
+        for (int i = 0; i < ratings.length; i++) {
+            list.add(new Document("user_id", i + 1).append("rating", ratings[i]));
+        }
+        return new Document("book_id", bookId)
+                .append("isbn", "isbn-" + bookId)
+                .append("authors", List.of(new Document("author_id", 1).append("name", "A")))
+                .append("genres", List.of())
+                .append("ratings", list)
+                .append("reviews", List.of());
+    }
+
+    /**
+     * The book collection and checkpoints as maps.
+     */
+    private static final class FakeTarget implements MySqlToMongoMigrator.RangeTarget {
+        private final TreeMap<Integer, Document> docs = new TreeMap<>();
+        private final List<MySqlToMongoMigrator.KeyRange> verified = new ArrayList<>();
+        private boolean failWrites;
+
+        @Override
+        public void write(List<Document> books) {
+            if (!failWrites) {
+                books.forEach(d -> docs.put(d.getInteger("book_id"), d));
+            }
+        }
+
+        @Override
+        public void deleteExcept(MySqlToMongoMigrator.KeyRange range, Set<Integer> bookIds) {
+            docs.subMap(range.from(), true, range.to(), true).keySet().removeIf(id -> !bookIds.contains(id));
+        }
+
+        @Override
+        public MySqlToMongoMigrator.Totals totals(MySqlToMongoMigrator.KeyRange range) {
+            return totalsOf(docs.subMap(range.from(), true, range.to(), true).values());
+        }
+
+        @Override
+        public void markVerified(MySqlToMongoMigrator.KeyRange range, long books) {
+            verified.add(range);
+        }
+
+        static MySqlToMongoMigrator.Totals totalsOf(Iterable<Document> books) {
+            long count = 0, authors = 0, genres = 0, ratings = 0, ratingSum = 0, reviews = 0;
+            for (Document d : books) {
+                count++;
+                authors += d.getList("authors", Document.class).size();
+                genres += d.getList("genres", Document.class).size();
+                for (Document r : d.getList("ratings", Document.class)) {
+                    ratings++;
+                    ratingSum += r.getInteger("rating");
+                }
+                reviews += d.getList("reviews", Document.class).size();
+            }
+            return new MySqlToMongoMigrator.Totals(count, authors, genres, ratings, ratingSum, reviews);
+        }
+    }
+
+    @Test
+    void parsesCommandLineOptions() {
+        Map<String, String> opts = MigrationTool.parse(new String[]{
+                "--mysql=jdbc:mysql://db/booksdb?user=root&password=root", "--threads=4", "--restart"});
+
+        assertEquals("jdbc:mysql://db/booksdb?user=root&password=root", opts.get("mysql"));
+        assertEquals("4", opts.get("threads"));
+        assertEquals("true", opts.get("restart"));
+    }
+}
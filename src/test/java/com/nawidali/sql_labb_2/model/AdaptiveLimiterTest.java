@@ -0,0 +1,73 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.OverloadedException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveLimiterTest {
+
+    @Test
+    void shedsCallsWhenLimitAndQueueAreFull() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("read", 1, 1, 1, 10_000, 0, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> limiter.execute(() -> {
+                started.countDown();
+                release.await();
+                return null;
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            OverloadedException e = assertThrows(OverloadedException.class,
+                    () -> limiter.execute(() -> "second"));
+            assertTrue(e.getRetryAfterSeconds() >= 1);
+            assertEquals(1, limiter.getRejected());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals("ok", limiter.execute(() -> "ok"));
+    }
+
+    @Test
+    void slowCallsShrinkTheLimit() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("write", 10, 1, 10, 0, 10, 100);
+
+        limiter.execute(() -> {
+            Thread.sleep(2);
+            return null;
+        });
+
+        assertEquals(9, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void fastCallsAtTheLimitGrowIt() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("read", 1, 1, 4, 10_000, 10, 100);
+
+        limiter.execute(() -> null);
+
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void exceptionsFromTheCallReleaseTheSlot() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("read", 1, 1, 1, 10_000, 0, 0);
+
+        assertThrows(IllegalStateException.class, () -> limiter.execute(() -> {
+            throw new IllegalStateException("boom");
+        }));
+
+        assertEquals(0, limiter.getInFlight());
+    }
+}
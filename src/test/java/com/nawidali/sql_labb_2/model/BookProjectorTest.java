@@ -0,0 +1,52 @@
+package com.nawidali.sql_labb_2.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookProjectorTest {
+
+    @Test
+    void watermarkStopsBelowAGapUntilItFills() {
+        BookProjector.OutboxCursor cursor = new BookProjector.OutboxCursor(10, 5_000);
+
+        assertTrue(cursor.markSeen(11));
+        assertTrue(cursor.markSeen(13));
+        cursor.settle(1_000);
+        assertEquals(11, cursor.watermark());
+        assertTrue(cursor.hasGaps());
+
+        // 13 is read again from the watermark but is not projected twice
+        assertTrue(cursor.markSeen(12));
+        assertFalse(cursor.markSeen(13));
+        cursor.settle(2_000);
+        assertEquals(13, cursor.watermark());
+        assertFalse(cursor.hasGaps());
+    }
+
+    @Test
+    void gapIsSkippedAfterTheGracePeriod() {
+        BookProjector.OutboxCursor cursor = new BookProjector.OutboxCursor(0, 5_000);
+
+        cursor.markSeen(1);
+        cursor.markSeen(3);
+        cursor.settle(1_000);
+        cursor.settle(5_999);
+        assertEquals(1, cursor.watermark());
+
+        cursor.settle(6_000);
+        assertEquals(3, cursor.watermark());
+        assertFalse(cursor.markSeen(2));
+    }
+
+    @Test
+    void lagIsUnknownBeforeTheFirstCatchUp() {
+        AtomicLong now = new AtomicLong(10_000);
+        BookProjector projector = new BookProjector("jdbc:mysql://none", "mongodb://none", 200, 60, now::get);
+
+        assertEquals(-1, projector.getLagMillis());
+        assertFalse(projector.isWithin(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,41 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.InsertException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BookPurgerTest {
+
+    @Test
+    void eachBackendPurgesAtMostOneBatchPerRound() throws Exception {
+        DeletedBookPurge first = mock(DeletedBookPurge.class);
+        DeletedBookPurge second = mock(DeletedBookPurge.class);
+        when(first.purgeDeletedBooks(100)).thenReturn(100, 30, 0);
+        when(second.purgeDeletedBooks(100)).thenReturn(5, 0);
+        BookPurger purger = new BookPurger(100, 1000);
+        purger.register(first);
+        purger.register(second);
+
+        assertEquals(105, purger.purgeOnce());
+        assertEquals(30, purger.purgeOnce());
+        assertEquals(0, purger.purgeOnce());
+        assertEquals(135, purger.getPurgedRows());
+        verify(first, times(3)).purgeDeletedBooks(100);
+    }
+
+    @Test
+    void failingBackendDoesNotStopTheOthers() throws Exception {
+        DeletedBookPurge down = mock(DeletedBookPurge.class);
+        DeletedBookPurge up = mock(DeletedBookPurge.class);
+        when(down.purgeDeletedBooks(50)).thenThrow(new InsertException("Inte ansluten till databasen"));
+        when(up.purgeDeletedBooks(50)).thenReturn(7);
+        BookPurger purger = new BookPurger(50, 1000);
+        purger.register(down);
+        purger.register(up);
+
+        assertEquals(7, purger.purgeOnce());
+        assertEquals(7, purger.purgeOnce());
+    }
+}
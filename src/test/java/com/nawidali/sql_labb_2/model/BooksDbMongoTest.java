@@ -0,0 +1,158 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.result.UpdateResult;
+import com.nawidali.sql_labb_2.model.exceptions.InsertException;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings("unchecked")
+class BooksDbMongoTest {
+
+    private final MongoClient client = mock(MongoClient.class, RETURNS_DEEP_STUBS);
+    private final MongoDatabase mongo = mock(MongoDatabase.class, RETURNS_DEEP_STUBS);
+    private final MongoCollection<Document> books = mock(MongoCollection.class, RETURNS_DEEP_STUBS);
+    private final MongoCollection<Document> counter = mock(MongoCollection.class, RETURNS_DEEP_STUBS);
+    private final BooksDbMongo db = new BooksDbMongo();
+
+    private void connect(Document... isbnIndexes) throws Exception {
+        connect(BooksDbMongo.CollectionScanCheck.OFF, isbnIndexes);
+    }
+
+    private void connect(BooksDbMongo.CollectionScanCheck check, Document... isbnIndexes) throws Exception {
+        when(client.getDatabase(BooksDbMongo.DB_NAME).withReadPreference(any())).thenReturn(mongo);
+        when(mongo.getCollection("book")).thenReturn(books);
+        when(mongo.getCollection("counter")).thenReturn(counter);
+        MongoCursor<Document> indexes = cursor(List.of(isbnIndexes).iterator());
+        when(books.listIndexes().iterator()).thenReturn(indexes);
+        db.setCollectionScanCheck(check);
+        db.connect(client);
+    }
+
+    @Test
+    void replacesUniqueIsbnIndexThatIsNotSparse() throws Exception {
+        connect(new Document("name", "isbn_1").append("key", new Document("isbn", 1)).append("unique", true));
+
+        verify(books).dropIndex("isbn_1");
+        ArgumentCaptor<List<IndexModel>> created = ArgumentCaptor.forClass(List.class);
+        verify(books).createIndexes(created.capture());
+        IndexModel isbn = created.getValue().stream()
+                .filter(m -> m.getKeys().toBsonDocument().containsKey("isbn"))
+                .findFirst().orElseThrow();
+        assertTrue(isbn.getOptions().isUnique());
+        assertTrue(isbn.getOptions().isSparse());
+    }
+
+    @Test
+    void deletedBooksIsbnCanBeAddedAgain() throws Exception {
+        connect();
+        when(books.updateOne(any(Bson.class), any(Bson.class))).thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        when(counter.findOneAndUpdate(any(Bson.class), any(Bson.class), any(FindOneAndUpdateOptions.class)))
+                .thenReturn(new Document("next_book_id", 8));
+        User user = new User(1, "anna");
+
+        db.deleteBook(7, user);
+        Book again = db.addBook(new Book(0, "978-91-0", "Hobbit", null), List.of(), List.of(), user);
+
+        ArgumentCaptor<Bson> update = ArgumentCaptor.forClass(Bson.class);
+        verify(books).updateOne(any(Bson.class), update.capture());
+        BsonDocument delete = update.getValue().toBsonDocument();
+        assertTrue(delete.containsKey("$currentDate"));
+        // The sparse unique isbn index no longer covers the deleted book
+        assertEquals("deleted_isbn", delete.getDocument("$rename").getString("isbn").getValue());
+
+        ArgumentCaptor<Document> inserted = ArgumentCaptor.forClass(Document.class);
+        verify(books).insertOne(inserted.capture());
+        assertEquals("978-91-0", inserted.getValue().getString("isbn"));
+        assertEquals(8, again.getBookId());
+    }
+
+    @Test
+    void queryPlanCheckExplainsTheFiltersTheReadsRun() throws Exception {
+        connect(BooksDbMongo.CollectionScanCheck.FAIL);
+        ArgumentCaptor<Bson> explained = ArgumentCaptor.forClass(Bson.class);
+        verify(books, atLeastOnce()).find(explained.capture());
+        List<BsonDocument> shapes = explained.getAllValues().stream().map(Bson::toBsonDocument).toList();
+        clearInvocations(books);
+
+        db.findBooksByTitle("x");
+        db.findBooksByAuthorName("x");
+        db.findBooksByGenre("x");
+        db.findBooksByMinRating(1);
+        db.findBooksAfterId(0, 10, BookProjection.ALL);
+        db.findRatingsByBookIdRange(1, 2);
+        db.findReviewsByBookId(1);
+
+        ArgumentCaptor<Bson> run = ArgumentCaptor.forClass(Bson.class);
+        verify(books, times(7)).find(run.capture());
+        for (Bson filter : run.getAllValues()) {
+            assertTrue(shapes.contains(filter.toBsonDocument()), filter.toBsonDocument().toJson());
+        }
+    }
+
+    @Test
+    void ratingUpdatesRatingsAverageAndCountsInOneWrite() throws Exception {
+        connect();
+        when(books.updateOne(any(Bson.class), anyList())).thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        db.rateBook(7, 4, new User(3, "anna"));
+
+        ArgumentCaptor<List<Bson>> pipeline = ArgumentCaptor.forClass(List.class);
+        verify(books).updateOne(any(Bson.class), pipeline.capture());
+        verify(books, never()).findOneAndUpdate(any(Bson.class), any(Bson.class), any(FindOneAndUpdateOptions.class));
+        verify(books, never()).updateOne(any(Bson.class), any(Bson.class));
+        List<BsonDocument> stages = pipeline.getValue().stream().map(Bson::toBsonDocument).toList();
+        assertEquals(2, stages.size());
+        assertTrue(stages.get(0).getDocument("$set").containsKey("ratings"));
+        BsonDocument totals = stages.get(1).getDocument("$set");
+        assertTrue(totals.containsKey("average_rating"));
+        assertEquals(5, totals.getDocument("rating_counts").size());
+    }
+
+    @Test
+    void ratingUnknownBookFails() throws Exception {
+        connect();
+        when(books.updateOne(any(Bson.class), anyList())).thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        assertThrows(InsertException.class, () -> db.rateBook(7, 4, new User(3, "anna")));
+    }
+
+    @Test
+    void replicationLagIsTheMostStaleHealthySecondary() {
+        List<Document> members = List.of(
+                member(1, 1, 10_000), member(2, 1, 9_000), member(2, 1, 7_500),
+                member(2, 0, 1_000), member(7, 1, 10_000));
+
+        assertEquals(2_500, BooksDbMongo.replicationLagMillis(members));
+        assertEquals(0, BooksDbMongo.replicationLagMillis(List.of(member(1, 1, 10_000))));
+    }
+
+    private static Document member(int state, double health, long optimeMillis) {
+        return new Document("state", state).append("health", health)
+                .append("optimeDate", new Date(optimeMillis));
+    }
+
+    private static MongoCursor<Document> cursor(Iterator<Document> docs) {
+        MongoCursor<Document> cursor = mock(MongoCursor.class);
+        when(cursor.hasNext()).thenAnswer(inv -> docs.hasNext());
+        when(cursor.next()).thenAnswer(inv -> docs.next());
+        return cursor;
+    }
+}
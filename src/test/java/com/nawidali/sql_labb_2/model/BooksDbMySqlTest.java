@@ -0,0 +1,278 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.InsertException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+class BooksDbMySqlTest {
+
+    private final Connection conn = mock(Connection.class);
+    // Every transaction connection the connector opens
+    private final List<Connection> txConns = new ArrayList<>();
+    private final Map<String, PreparedStatement> prepared = new LinkedHashMap<>();
+    // Statements whose SQL contains the key are set up by the value when prepared
+    private final Map<String, Consumer<PreparedStatement>> setUp = new LinkedHashMap<>();
+    private final BooksDbMySql db = new BooksDbMySql();
+
+    @BeforeEach
+    void connect() throws Exception {
+        Statement stmt = answerStatements(conn);
+        db.setConnector(url -> {
+            Connection tx = mock(Connection.class);
+            answerStatements(tx);
+            txConns.add(tx);
+            return tx;
+        });
+        ResultSet maxId = mock(ResultSet.class);
+        when(maxId.next()).thenReturn(true);
+        when(maxId.getInt(1)).thenReturn(2500);
+        when(stmt.executeQuery(contains("MAX(book_id)"))).thenReturn(maxId);
+        db.connect(conn, "jdbc:mysql://test");
+    }
+
+    private Statement answerStatements(Connection connection) throws SQLException {
+        when(connection.prepareStatement(anyString())).thenAnswer(inv -> prepare(inv.getArgument(0)));
+        when(connection.prepareStatement(anyString(), anyInt())).thenAnswer(inv -> prepare(inv.getArgument(0)));
+        Statement stmt = mock(Statement.class, RETURNS_DEEP_STUBS);
+        when(connection.createStatement()).thenReturn(stmt);
+        return stmt;
+    }
+
+    private PreparedStatement prepare(String sql) throws Exception {
+        PreparedStatement stmt = mock(PreparedStatement.class, RETURNS_DEEP_STUBS);
+        when(stmt.executeUpdate()).thenReturn(1);
+        setUp.forEach((key, action) -> {
+            if (sql.contains(key)) {
+                action.accept(stmt);
+            }
+        });
+        prepared.put(sql, stmt);
+        return stmt;
+    }
+
+    private PreparedStatement preparedWith(String fragment) {
+        List<PreparedStatement> found = new ArrayList<>();
+        prepared.forEach((sql, stmt) -> {
+            if (sql.contains(fragment)) {
+                found.add(stmt);
+            }
+        });
+        assertEquals(1, found.size(), "statements containing " + fragment);
+        return found.get(0);
+    }
+
+    private static Consumer<PreparedStatement> returningRow(int value) {
+        return stmt -> {
+            try {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.next()).thenReturn(true, false);
+                when(rs.getInt(1)).thenReturn(value);
+                when(stmt.executeQuery()).thenReturn(rs);
+                when(stmt.getGeneratedKeys()).thenReturn(rs);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    @Test
+    void isbnLookupIsKeyedByTheRequestedIsbnNotTheStoredOne() {
+        Book book = new Book(1, "978-0-00-00000X", "Hobbit", null);
+        Book other = new Book(2, "111", "Other", null);
+
+        Map<String, Book> byIsbn = BooksDbMySql.byRequestedIsbn(
+                List.of("978-0-00-00000x", "111", "978-0-00-00000X", "999"), List.of(book, other));
+
+        assertSame(book, byIsbn.get("978-0-00-00000x"));
+        assertSame(book, byIsbn.get("978-0-00-00000X"));
+        assertSame(other, byIsbn.get("111"));
+        assertFalse(byIsbn.containsKey("999"));
+        assertEquals(3, byIsbn.size());
+    }
+
+    @Test
+    void authorAndGenreSearchesMatchOneNameOfTheKey() throws Exception {
+        db.findBooksByAuthorName("Tolkien");
+        db.findBooksByGenre("Fantasy");
+
+        verify(preparedWith("WHERE author_key LIKE ?")).setString(1, "%tolkien%");
+        verify(preparedWith("WHERE genre_key LIKE ?")).setString(1, "%fantasy%");
+    }
+
+    @Test
+    void searchSpanningTwoNamesMatchesNothing() throws Exception {
+        // "J.R.R. Tolkien" and "C.S. Lewis" are stored as "j.r.r. tolkien\nc.s. lewis"
+        String acrossNames = "tolkien" + BooksDbMySql.KEY_SEPARATOR + "c.s.";
+
+        assertTrue(db.findBooksByAuthorName(acrossNames).isEmpty());
+        assertTrue(db.findBooksByGenre("fantasy" + BooksDbMySql.KEY_SEPARATOR).isEmpty());
+        assertTrue(prepared.keySet().stream().noneMatch(sql -> sql.contains("_key LIKE")));
+    }
+
+    @Test
+    void addBookWritesTheCardWithJoinedNameKeysBeforeCommit() throws Exception {
+        setUp.put("INSERT INTO book (", returningRow(42));
+
+        db.addBook(new Book(0, "111", "Hobbit", null), List.of(), List.of(), new User(1, "anna"));
+
+        String upsert = prepared.keySet().stream().filter(sql -> sql.startsWith("INSERT INTO book_card"))
+                .findFirst().orElseThrow();
+        assertTrue(upsert.contains("GROUP_CONCAT(a.name SEPARATOR '\n')"), upsert);
+        assertTrue(upsert.contains("GROUP_CONCAT(g.name SEPARATOR '\n')"), upsert);
+        assertTrue(upsert.contains("author_key = VALUES(author_key), genre_key = VALUES(genre_key)"), upsert);
+        PreparedStatement card = prepared.get(upsert);
+        Connection tx = txConns.get(0);
+        InOrder order = inOrder(card, tx);
+        order.verify(card).setInt(1, 42);
+        order.verify(card).executeUpdate();
+        order.verify(tx).commit();
+        verify(conn, never()).commit();
+    }
+
+    @Test
+    void reviewAndItsOutboxRowCommitTogetherOnOneConnection() throws Exception {
+        db.setWriteOutbox(true);
+
+        db.addReview(5, new User(1, "anna"), "Bra", LocalDate.of(2024, 1, 2));
+
+        Connection tx = txConns.get(0);
+        InOrder order = inOrder(tx);
+        order.verify(tx).prepareStatement(startsWith("INSERT INTO review"));
+        order.verify(tx).prepareStatement("INSERT INTO book_outbox (book_id) VALUES (?)");
+        order.verify(tx).commit();
+        verify(conn, never()).prepareStatement(startsWith("INSERT INTO review"));
+    }
+
+    @Test
+    void reviewOfMissingBookRollsBackWithoutOutboxRow() throws Exception {
+        db.setWriteOutbox(true);
+        setUp.put("INSERT INTO review", stmt -> {
+            try {
+                when(stmt.executeUpdate()).thenReturn(0);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertThrows(InsertException.class,
+                () -> db.addReview(5, new User(1, "anna"), "Bra", LocalDate.of(2024, 1, 2)));
+
+        Connection tx = txConns.get(0);
+        verify(tx).rollback();
+        verify(tx, never()).commit();
+        assertTrue(prepared.keySet().stream().noneMatch(sql -> sql.contains("book_outbox")));
+    }
+
+    @Test
+    void firstRatingIsAddedToTheCard() throws Exception {
+        db.rateBook(5, 4, new User(1, "anna"));
+
+        PreparedStatement card = preparedWith("UPDATE book_card");
+        String sql = prepared.entrySet().stream().filter(e -> e.getValue() == card).findFirst().orElseThrow().getKey();
+        assertTrue(sql.contains("rating_count = rating_count + 1"), sql);
+        assertTrue(sql.contains("rating_4 = rating_4 + 1"), sql);
+        verify(card).setInt(1, 4);
+        verify(card).setInt(2, 5);
+        assertEquals(1, txConns.size());
+        verify(txConns.get(0)).setAutoCommit(false);
+        verify(txConns.get(0)).commit();
+        verify(conn, never()).setAutoCommit(false);
+        verify(conn, never()).commit();
+    }
+
+    @Test
+    void ratingsReuseAnIdleTransactionConnection() throws Exception {
+        db.rateBook(5, 4, new User(1, "anna"));
+        db.rateBook(6, 3, new User(1, "anna"));
+
+        assertEquals(1, txConns.size());
+        verify(txConns.get(0), times(2)).commit();
+        verify(txConns.get(0), never()).close();
+    }
+
+    @Test
+    void failedRatingRollsBackAndClosesItsConnection() throws Exception {
+        setUp.put("UPDATE book_card", stmt -> {
+            try {
+                when(stmt.executeUpdate()).thenThrow(new SQLException("deadlock"));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertThrows(InsertException.class, () -> db.rateBook(5, 4, new User(1, "anna")));
+        setUp.clear();
+        db.rateBook(5, 4, new User(1, "anna"));
+
+        assertEquals(2, txConns.size());
+        verify(txConns.get(0)).rollback();
+        verify(txConns.get(0), never()).commit();
+        verify(txConns.get(0)).close();
+        verify(txConns.get(1)).commit();
+    }
+
+    @Test
+    void disconnectClosesIdleTransactionConnections() throws Exception {
+        db.rateBook(5, 4, new User(1, "anna"));
+
+        db.disconnect();
+
+        verify(txConns.get(0)).close();
+    }
+
+    @Test
+    void changedRatingMovesOneCountBetweenColumns() throws Exception {
+        setUp.put("FOR UPDATE", returningRow(2));
+
+        db.rateBook(5, 4, new User(1, "anna"));
+
+        PreparedStatement card = preparedWith("UPDATE book_card");
+        String sql = prepared.entrySet().stream().filter(e -> e.getValue() == card).findFirst().orElseThrow().getKey();
+        assertFalse(sql.contains("rating_count"), sql);
+        assertTrue(sql.contains("rating_2 = rating_2 - 1"), sql);
+        assertTrue(sql.contains("rating_4 = rating_4 + 1"), sql);
+        verify(card).setInt(1, 2);
+    }
+
+    @Test
+    void unchangedRatingLeavesTheCardAlone() throws Exception {
+        setUp.put("FOR UPDATE", returningRow(4));
+
+        db.rateBook(5, 4, new User(1, "anna"));
+
+        assertTrue(prepared.keySet().stream().noneMatch(sql -> sql.startsWith("UPDATE book_card")));
+    }
+
+    @Test
+    void rebuildUpsertsCardsInIdRanges() throws Exception {
+        db.rebuildBookCards();
+
+        PreparedStatement upsert = preparedWith("AND b.deleted_at IS NULL ON DUPLICATE KEY");
+        InOrder order = inOrder(upsert);
+        for (int[] range : new int[][]{{0, 1000}, {1000, 2000}, {2000, 2500}}) {
+            order.verify(upsert).setInt(1, range[0]);
+            order.verify(upsert).setInt(2, range[1]);
+            order.verify(upsert).executeUpdate();
+        }
+        verify(upsert, times(3)).executeUpdate();
+    }
+}
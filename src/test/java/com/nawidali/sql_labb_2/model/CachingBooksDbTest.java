@@ -0,0 +1,71 @@
+package com.nawidali.sql_labb_2.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class CachingBooksDbTest {
+
+    private final IBooksDb backend = mock(IBooksDb.class);
+    private final OffHeapBookCache cache = new OffHeapBookCache(64 * 1024, 100);
+    private final CachingBooksDb db = new CachingBooksDb(backend, cache);
+
+    private static Book book(int id) {
+        return new Book(id, "isbn-" + id, "Titel " + id, Date.valueOf("2020-01-01"));
+    }
+
+    @Test
+    void isbnLookupIsServedFromCacheAfterFirstMiss() throws Exception {
+        when(backend.findBooksByIsbn("isbn-1")).thenReturn(new ArrayList<>(List.of(book(1))));
+
+        db.findBooksByIsbn("isbn-1");
+        List<Book> second = db.findBooksByIsbn(" isbn-1 ");
+
+        assertEquals(1, second.size());
+        assertEquals("Titel 1", second.get(0).getTitle());
+        verify(backend, times(1)).findBooksByIsbn(any());
+    }
+
+    @Test
+    void batchLookupOnlyFetchesMisses() throws Exception {
+        cache.put(book(1), cache.stamp());
+        when(backend.findBooksByIds(Set.of(2))).thenReturn(Map.of(2, book(2)));
+
+        Map<Integer, Book> result = db.findBooksByIds(List.of(1, 2));
+
+        assertEquals(Set.of(1, 2), result.keySet());
+        verify(backend).findBooksByIds(Set.of(2));
+        assertNotNull(cache.get(2));
+    }
+
+    @Test
+    void isbnBatchLookupIsKeyedByTheRequestedIsbns() throws Exception {
+        Book book = new Book(1, "978-0-00-00000X", "Hobbit", Date.valueOf("2020-01-01"));
+        cache.put(book, cache.stamp());
+        // The backend matches ISBNs case-insensitively and keys by what was asked for
+        when(backend.findBooksByIsbns(Set.of("978-0-00-00000x"))).thenReturn(Map.of("978-0-00-00000x", book));
+
+        Map<String, Book> result = db.findBooksByIsbns(List.of(" 978-0-00-00000X ", "978-0-00-00000x"));
+
+        assertEquals(Set.of("978-0-00-00000X", "978-0-00-00000x"), result.keySet());
+        assertEquals("Hobbit", result.get("978-0-00-00000x").getTitle());
+    }
+
+    @Test
+    void ratingEvictsTheBook() throws Exception {
+        cache.put(book(1), cache.stamp());
+
+        db.rateBook(1, 5, null);
+
+        assertNull(cache.get(1));
+        verify(backend).rateBook(1, 5, null);
+    }
+}
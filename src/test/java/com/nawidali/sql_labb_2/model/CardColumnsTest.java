@@ -0,0 +1,49 @@
+package com.nawidali.sql_labb_2.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class CardColumnsTest {
+
+    @Test
+    void indexesFollowTheSelectedColumns() {
+        CardColumns all = CardColumns.of(BookProjection.ALL);
+        CardColumns some = CardColumns.of(BookProjection.parse("title,averageRating"));
+
+        assertEquals("SELECT book_id, isbn, title, published, authors, genres, rating_avg ", all.select);
+        assertEquals(7, all.ratingAvg);
+        assertEquals("SELECT book_id, title, rating_avg ", some.select);
+        assertEquals(0, some.isbn);
+        assertEquals(2, some.title);
+        assertEquals(3, some.ratingAvg);
+        assertSame(some, CardColumns.of(BookProjection.of(BookProjection.Field.AVERAGE_RATING,
+                BookProjection.Field.TITLE)));
+    }
+
+    @Test
+    void mapsRowByIndexWithoutNameLookups() throws Exception {
+        ReferenceData ref = new ReferenceData(30_000);
+        Genre fantasy = new Genre(4, "Fantasy");
+        ref.putGenres(List.of(fantasy));
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getInt(1)).thenReturn(12);
+        when(rs.getString(2)).thenReturn("Hobbit");
+        when(rs.getString(3)).thenReturn("[{\"id\": 4, \"name\": \"Fantasy\"}]");
+        when(rs.getDouble(4)).thenReturn(4.5);
+
+        Book book = CardColumns.of(BookProjection.parse("title,genres,averageRating")).map(rs, ref);
+
+        assertEquals(12, book.getBookId());
+        assertEquals("Hobbit", book.getTitle());
+        assertSame(fantasy, book.getGenres().get(0));
+        assertEquals(4.5, book.getAverageRating());
+        verify(rs, never()).getString(anyString());
+        verify(rs, never()).getInt(anyString());
+    }
+}
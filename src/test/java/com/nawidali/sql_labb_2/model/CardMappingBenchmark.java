@@ -0,0 +1,220 @@
+package com.nawidali.sql_labb_2.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares mapping book_card rows by column name (the mapping before
+ * CardColumns) with CardColumns' mapping by index, over a stub ResultSet
+ * and the real BookCardJson parsing. Reports ns/row and bytes allocated per
+ * row for each path, plus the stub's own cost for reading the same columns.
+ * <p>
+ * Run with {@code mvn test -Dtest=CardMappingBenchmark -Dbenchmark=true};
+ * the benchmark is skipped otherwise. The stub is a dynamic proxy, whose
+ * per-call overhead is in every line, so compare the lines rather than
+ * reading them as driver numbers.
+ */
+class CardMappingBenchmark {
+
+    private static final String[] LABELS = {"book_id", "isbn", "title", "published", "authors", "genres", "rating_avg"};
+    private static final int ROWS = 10_000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 20;
+
+    // Keeps the JIT from dropping the mapping
+    private static volatile long sink;
+
+    private interface RowMapper {
+        Book map(ResultSet rs, ReferenceData ref) throws SQLException;
+    }
+
+    @Test
+    void bothPathsMapTheSameBook() throws Exception {
+        ReferenceData ref = referenceData();
+        StubRows rows = new StubRows(rows(1));
+        ResultSet rs = rows.resultSet();
+        CardColumns columns = CardColumns.of(BookProjection.ALL);
+
+        assertTrue(rs.next());
+        Book byName = mapByName(rs, ref);
+        Book byIndex = columns.map(rs, ref);
+
+        assertEquals(byName.getBookId(), byIndex.getBookId());
+        assertEquals(byName.getIsbn(), byIndex.getIsbn());
+        assertEquals(byName.getTitle(), byIndex.getTitle());
+        assertEquals(byName.getPublished(), byIndex.getPublished());
+        assertSame(byName.getAuthors().get(0), byIndex.getAuthors().get(0));
+        assertSame(byName.getGenres().get(0), byIndex.getGenres().get(0));
+        assertEquals(byName.getAverageRating(), byIndex.getAverageRating());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void reportNanosAndBytesPerRow() throws Exception {
+        ReferenceData ref = referenceData();
+        StubRows rows = new StubRows(rows(ROWS));
+        CardColumns columns = CardColumns.of(BookProjection.ALL);
+
+        Map<String, RowMapper> paths = new java.util.LinkedHashMap<>();
+        paths.put("stub only (7 getters by index)", CardMappingBenchmark::readOnly);
+        paths.put("by name (before CardColumns)", CardMappingBenchmark::mapByName);
+        paths.put("by index (CardColumns)", columns::map);
+
+        System.out.printf("%-32s %10s %12s%n", "path", "ns/row", "bytes/row");
+        for (Map.Entry<String, RowMapper> path : paths.entrySet()) {
+            Result r = measure(rows, ref, path.getValue());
+            System.out.printf("%-32s %10.1f %12.1f%n", path.getKey(), r.nanosPerRow, r.bytesPerRow);
+        }
+    }
+
+    private record Result(double nanosPerRow, double bytesPerRow) {
+    }
+
+    private static Result measure(StubRows rows, ReferenceData ref, RowMapper mapper) throws SQLException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            round(rows, ref, mapper);
+        }
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().threadId();
+        long bestNanos = Long.MAX_VALUE;
+        long totalBytes = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long bytesBefore = mx.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            round(rows, ref, mapper);
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+            totalBytes += mx.getThreadAllocatedBytes(thread) - bytesBefore;
+        }
+        return new Result((double) bestNanos / ROWS, (double) totalBytes / ROUNDS / ROWS);
+    }
+
+    private static void round(StubRows rows, ReferenceData ref, RowMapper mapper) throws SQLException {
+        rows.rewind();
+        ResultSet rs = rows.resultSet();
+        long acc = 0;
+        while (rs.next()) {
+            Book b = mapper.map(rs, ref);
+            acc += b == null ? 0 : b.getBookId();
+        }
+        sink += acc;
+    }
+
+    /**
+     * The row mapping as it was before CardColumns: every column looked up by name.
+     */
+    private static Book mapByName(ResultSet rs, ReferenceData ref) throws SQLException {
+        int bookId = rs.getInt("book_id");
+        String isbn = rs.getString("isbn");
+        String title = rs.getString("title");
+        Date published = rs.getDate("published");
+        List<Author> authors;
+        List<Genre> genres;
+        try {
+            authors = BookCardJson.authors(rs.getString("authors"), ref);
+            genres = BookCardJson.genres(rs.getString("genres"), ref);
+        } catch (IOException e) {
+            throw new SQLException("Ogiltig JSON i book_card", e);
+        }
+        double avgRating = rs.getDouble("rating_avg");
+        return new Book(bookId, isbn, title, published, authors, genres, avgRating);
+    }
+
+    private static Book readOnly(ResultSet rs, ReferenceData ref) throws SQLException {
+        long acc = rs.getInt(1);
+        acc += rs.getString(2).length() + rs.getString(3).length();
+        acc += rs.getDate(4) == null ? 0 : 1;
+        acc += rs.getString(5).length() + rs.getString(6).length();
+        acc += (long) rs.getDouble(7);
+        sink += acc;
+        return null;
+    }
+
+    private static ReferenceData referenceData() {
+        ReferenceData ref = new ReferenceData(30_000);
+        ref.putAuthors(List.of(new Author(1, "Joshua Bloch", LocalDate.of(1961, 8, 28)),
+                new Author(2, "Neal Gafter", null)));
+        ref.putGenres(List.of(new Genre(3, "Programming")));
+        return ref;
+    }
+
+    private static Object[][] rows(int count) {
+        Object[][] rows = new Object[count][];
+        for (int i = 0; i < count; i++) {
+            rows[i] = new Object[]{i + 1, "978-0-" + i, "Java Puzzlers " + i, Date.valueOf("2005-07-04"),
+                    "[{\"id\": 1, \"name\": \"Joshua Bloch\", \"birth\": \"1961-08-28\"},"
+                            + " {\"id\": 2, \"name\": \"Neal Gafter\", \"birth\": null}]",
+                    "[{\"id\": 3, \"name\": \"Programming\"}]", 4.25};
+        }
+        return rows;
+    }
+
+    /**
+     * A forward-only ResultSet over fixed rows. Getters by label resolve the
+     * label with a map lookup first, as drivers do (findColumn).
+     */
+    private static final class StubRows implements InvocationHandler {
+        private final Object[][] rows;
+        private final Map<String, Integer> index = new HashMap<>();
+        private final ResultSet resultSet;
+        private int row = -1;
+
+        StubRows(Object[][] rows) {
+            this.rows = rows;
+            for (int i = 0; i < LABELS.length; i++) {
+                index.put(LABELS[i], i + 1);
+            }
+            this.resultSet = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class<?>[]{ResultSet.class}, this);
+        }
+
+        ResultSet resultSet() {
+            return resultSet;
+        }
+
+        void rewind() {
+            row = -1;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+            String name = method.getName();
+            if (name.equals("next")) {
+                return ++row < rows.length;
+            }
+            if (args == null || args.length != 1 || !name.startsWith("get")) {
+                throw new UnsupportedOperationException(name);
+            }
+            int column = args[0] instanceof String label ? findColumn(label) : (Integer) args[0];
+            Object value = rows[row][column - 1];
+            return switch (name) {
+                case "getInt" -> value == null ? 0 : (Integer) value;
+                case "getDouble" -> value == null ? 0.0 : (Double) value;
+                case "getString", "getDate" -> value;
+                default -> throw new UnsupportedOperationException(name);
+            };
+        }
+
+        private int findColumn(String label) throws SQLException {
+            Integer column = index.get(label);
+            if (column == null) {
+                throw new SQLException("Column '" + label + "' not found");
+            }
+            return column;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.OverloadedException;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class CatalogExporterTest {
+
+    private final IBooksDb db = mock(IBooksDb.class);
+
+    private static Book book(int id) {
+        return new Book(id, "isbn-" + id, "Titel " + id, Date.valueOf("2020-01-01"));
+    }
+
+    private static Review review(int bookId) {
+        return new Review(1, bookId, new User(1, "anna"), "Bra", null);
+    }
+
+    @Test
+    void pagesThroughTheWholeCatalogWithReviews() throws Exception {
+        when(db.findBooksAfterId(0, 2, BookProjection.ALL)).thenReturn(List.of(book(1), book(2)));
+        when(db.findBooksAfterId(2, 2, BookProjection.ALL)).thenReturn(List.of(book(5)));
+        when(db.findReviewsByBookIds(any())).thenReturn(Map.of(5, List.of(review(5))));
+        CatalogExporter exporter = new CatalogExporter(2, 1, 0, 1, () -> false);
+
+        List<String> lines = new ArrayList<>();
+        long count;
+        try (CatalogExporter.Session session = exporter.start()) {
+            count = session.run(db, true, (book, reviews) -> lines.add(book.getBookId() + ":" + reviews.size()));
+        }
+
+        assertEquals(3, count);
+        assertEquals(List.of("1:0", "2:0", "5:1"), lines);
+        verify(db).findReviewsByBookIds(List.of(1, 2));
+        verify(db).findReviewsByBookIds(List.of(5));
+        verify(db, never()).findBooksAfterId(5, 2, BookProjection.ALL);
+    }
+
+    @Test
+    void withoutReviewsPassesNullAndSkipsReviewQueries() throws Exception {
+        when(db.findBooksAfterId(0, 10, BookProjection.ALL)).thenReturn(List.of(book(1)));
+        CatalogExporter exporter = new CatalogExporter(10, 1, 0, 1, () -> false);
+
+        try (CatalogExporter.Session session = exporter.start()) {
+            session.run(db, false, (book, reviews) -> assertNull(reviews));
+        }
+
+        verify(db, never()).findReviewsByBookIds(any());
+    }
+
+    @Test
+    void refusesExportsOverTheLimitUntilOneFinishes() {
+        CatalogExporter exporter = new CatalogExporter(10, 1, 0, 1, () -> false);
+
+        CatalogExporter.Session first = exporter.start();
+        assertEquals(1, exporter.getActiveExports());
+        OverloadedException e = assertThrows(OverloadedException.class, exporter::start);
+        assertTrue(e.getRetryAfterSeconds() > 0);
+
+        first.close();
+        first.close();
+        assertEquals(0, exporter.getActiveExports());
+        exporter.start().close();
+    }
+
+    @Test
+    void pausesWhileInteractiveReadsAreQueued() throws Exception {
+        when(db.findBooksAfterId(0, 1, BookProjection.ALL)).thenReturn(List.of(book(1)));
+        when(db.findBooksAfterId(1, 1, BookProjection.ALL)).thenReturn(List.of());
+        AtomicInteger busyChecks = new AtomicInteger();
+        // Busy for the first three checks
+        CatalogExporter exporter = new CatalogExporter(1, 1, 0, 1, () -> busyChecks.incrementAndGet() <= 3);
+
+        try (CatalogExporter.Session session = exporter.start()) {
+            session.run(db, false, (book, reviews) -> { });
+        }
+
+        assertEquals(4, busyChecks.get());
+    }
+}
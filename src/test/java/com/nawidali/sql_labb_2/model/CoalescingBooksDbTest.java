@@ -0,0 +1,158 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CoalescingBooksDbTest {
+
+    private final IBooksDb backend = mock(IBooksDb.class);
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+    private final CoalescingBooksDb db = new CoalescingBooksDb(backend, coalescer);
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    private final CountDownLatch backendEntered = new CountDownLatch(1);
+    private final CountDownLatch releaseBackend = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        releaseBackend.countDown();
+        executor.shutdownNow();
+    }
+
+    private Book book() {
+        return new Book(1, "978-0-13-468599-1", "Effective Java", Date.valueOf("2018-01-06"));
+    }
+
+    /**
+     * Starts a leader call that blocks in the backend, then a follower with the
+     * same (differently cased) title, and waits until the follower has joined.
+     */
+    private Future<List<Book>>[] leaderAndFollower() throws Exception {
+        Future<List<Book>> leader = executor.submit(() -> db.findBooksByTitle("Java"));
+        assertTrue(backendEntered.await(5, TimeUnit.SECONDS));
+        Future<List<Book>> follower = executor.submit(() -> db.findBooksByTitle("JAVA"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (coalescer.getCoalesced() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        @SuppressWarnings("unchecked")
+        Future<List<Book>>[] calls = new Future[]{leader, follower};
+        return calls;
+    }
+
+    @Test
+    void concurrentIdenticalSearchesShareOneBackendCall() throws Exception {
+        when(backend.findBooksByTitle(anyString())).thenAnswer(inv -> {
+            backendEntered.countDown();
+            releaseBackend.await();
+            return List.of(book());
+        });
+
+        Future<List<Book>>[] calls = leaderAndFollower();
+        releaseBackend.countDown();
+
+        List<Book> leaderResult = calls[0].get(5, TimeUnit.SECONDS);
+        List<Book> followerResult = calls[1].get(5, TimeUnit.SECONDS);
+        assertEquals("Effective Java", followerResult.get(0).getTitle());
+        assertNotSame(leaderResult, followerResult);
+        assertNotSame(leaderResult.get(0), followerResult.get(0));
+        assertNotSame(leaderResult.get(0).getAuthors(), followerResult.get(0).getAuthors());
+        verify(backend, times(1)).findBooksByTitle(anyString());
+        assertEquals(2, coalescer.getCalls());
+        assertEquals(1, coalescer.getCoalesced());
+    }
+
+    @Test
+    void failureIsPropagatedToEveryWaiter() throws Exception {
+        when(backend.findBooksByTitle(anyString())).thenAnswer(inv -> {
+            backendEntered.countDown();
+            releaseBackend.await();
+            throw new SelectException("Fel vid sokning");
+        });
+
+        Future<List<Book>>[] calls = leaderAndFollower();
+        releaseBackend.countDown();
+
+        for (Future<List<Book>> call : calls) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> call.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(SelectException.class, e.getCause());
+            assertEquals("Fel vid sokning", e.getCause().getMessage());
+        }
+        assertEquals(0, coalescer.getInFlight());
+    }
+
+    @Test
+    void completedCallIsNotReused() throws Exception {
+        when(backend.findBooksByIsbn("978-0-13-468599-1")).thenReturn(List.of(book()));
+
+        db.findBooksByIsbn("978-0-13-468599-1");
+        db.findBooksByIsbn("978-0-13-468599-1");
+
+        verify(backend, times(2)).findBooksByIsbn("978-0-13-468599-1");
+        assertEquals(0, coalescer.getCoalesced());
+    }
+
+    @Test
+    void userPinnedToPrimaryDoesNotJoinReplicaRead() throws Exception {
+        CoalescingBooksDb routed = new CoalescingBooksDb(backend, coalescer,
+                () -> Integer.valueOf(7).equals(CurrentUser.get()) ? "primary" : null);
+        when(backend.findBooksByTitle("Java"))
+                .thenAnswer(inv -> {
+                    backendEntered.countDown();
+                    releaseBackend.await();
+                    return List.of(book());
+                })
+                .thenReturn(List.of());
+
+        Future<List<Book>> replicaRead = executor.submit(() -> routed.findBooksByTitle("Java"));
+        assertTrue(backendEntered.await(5, TimeUnit.SECONDS));
+        Future<List<Book>> pinnedRead = executor.submit(() -> {
+            CurrentUser.set(7);
+            try {
+                return routed.findBooksByTitle("Java");
+            } finally {
+                CurrentUser.clear();
+            }
+        });
+        assertEquals(List.of(), pinnedRead.get(5, TimeUnit.SECONDS));
+        releaseBackend.countDown();
+        replicaRead.get(5, TimeUnit.SECONDS);
+
+        verify(backend, times(2)).findBooksByTitle("Java");
+        assertEquals(0, coalescer.getCoalesced());
+    }
+
+    @Test
+    void readStartedBeforeWriteIsNotJoinedAfterIt() throws Exception {
+        when(backend.findReviewsByBookId(1))
+                .thenAnswer(inv -> {
+                    backendEntered.countDown();
+                    releaseBackend.await();
+                    return List.of();
+                })
+                .thenReturn(List.of());
+
+        Future<List<Review>> stale = executor.submit(() -> db.findReviewsByBookId(1));
+        assertTrue(backendEntered.await(5, TimeUnit.SECONDS));
+        db.rateBook(1, 5, new User(7, "reader"));
+        db.findReviewsByBookId(1);
+        releaseBackend.countDown();
+        stale.get(5, TimeUnit.SECONDS);
+
+        verify(backend, times(2)).findReviewsByBookId(1);
+        assertEquals(0, coalescer.getCoalesced());
+    }
+}
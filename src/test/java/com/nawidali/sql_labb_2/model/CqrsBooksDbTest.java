@@ -0,0 +1,64 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class CqrsBooksDbTest {
+
+    private final IBooksDb mysql = mock(IBooksDb.class);
+    private final IBooksDb mongo = mock(IBooksDb.class);
+    private final BookProjector projector = mock(BookProjector.class);
+    private final CqrsBooksDb db = new CqrsBooksDb(mysql, mongo, projector, "mongodb://docs", 2000);
+
+    @AfterEach
+    void clearUser() {
+        CurrentUser.clear();
+    }
+
+    @Test
+    void readsDocumentsWhileProjectionIsCurrent() throws Exception {
+        when(projector.isWithin(2000)).thenReturn(true);
+        when(mongo.findBooksByTitle("java")).thenReturn(List.of(new Book(1, "isbn", "Java", null)));
+
+        assertEquals(1, db.findBooksByTitle("java").size());
+        verify(mysql, never()).findBooksByTitle("java");
+    }
+
+    @Test
+    void readsMySqlWhenProjectionLagsOrDocumentsFail() throws Exception {
+        when(projector.isWithin(2000)).thenReturn(false);
+        db.findReviewsByBookId(3);
+        verify(mysql).findReviewsByBookId(3);
+        verify(mongo, never()).findReviewsByBookId(anyInt());
+
+        when(projector.isWithin(2000)).thenReturn(true);
+        when(mongo.findReviewsByBookId(4)).thenThrow(new SelectException("mongo down"));
+        db.findReviewsByBookId(4);
+        verify(mysql).findReviewsByBookId(4);
+    }
+
+    @Test
+    void writerReadsMySqlUntilTheWriteIsProjected() throws Exception {
+        User user = new User(7, "anna");
+        when(projector.isWithin(anyLong())).thenReturn(true);
+        when(projector.caughtUpAt()).thenReturn(System.currentTimeMillis() - 1000);
+        CurrentUser.set(7);
+
+        db.rateBook(5, 4, user);
+        db.findBooksByGenre("x");
+        verify(mysql).rateBook(5, 4, user);
+        verify(mysql).findBooksByGenre("x");
+
+        when(projector.caughtUpAt()).thenReturn(System.currentTimeMillis() + 1000);
+        db.findBooksByGenre("x");
+        verify(mongo).findBooksByGenre("x");
+    }
+}
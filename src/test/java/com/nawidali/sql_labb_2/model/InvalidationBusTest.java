@@ -0,0 +1,152 @@
+package com.nawidali.sql_labb_2.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvalidationBusTest {
+
+    // Long interval so batches only go out when the test calls flush()
+    private static final long BATCH_MILLIS = 60_000;
+
+    private final InMemoryInvalidationHub hub = new InMemoryInvalidationHub();
+    private final InvalidationBus a = new InvalidationBus(hub.transport("a"), BATCH_MILLIS);
+    private final InvalidationBus b = new InvalidationBus(hub.transport("b"), BATCH_MILLIS);
+    private final Recorder onA = new Recorder();
+    private final Recorder onB = new Recorder();
+
+    @BeforeEach
+    void setUp() {
+        a.addListener(onA);
+        b.addListener(onB);
+        a.start();
+        b.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        a.stop();
+        b.stop();
+    }
+
+    @Test
+    void changesAreBatchedAndDeduplicated() {
+        a.bookChanged(7);
+        a.bookDeleted(3);
+        a.bookChanged(7);
+        assertTrue(onB.batches.isEmpty(), "nothing sent before the flush");
+
+        a.flush();
+
+        assertEquals(1, onB.batches.size());
+        int[] ids = onB.batches.get(0);
+        Arrays.sort(ids);
+        assertArrayEquals(new int[]{3, 7}, ids);
+        assertEquals(1, a.getBatchesSent());
+        assertEquals(2, b.getIdsReceived());
+    }
+
+    @Test
+    void ownChangesAreNotDeliveredBack() {
+        a.bookChanged(1);
+        a.flush();
+
+        assertTrue(onA.batches.isEmpty());
+        assertEquals(1, onB.batches.size());
+    }
+
+    @Test
+    void emptyFlushSendsNothing() {
+        a.flush();
+
+        assertEquals(0, a.getBatchesSent());
+        assertTrue(onB.batches.isEmpty());
+    }
+
+    @Test
+    void reconnectFlushesEverythingAndDeliversHeldBackBatches() {
+        hub.disconnect("b");
+        a.bookChanged(5);
+        a.flush();
+        b.bookChanged(9);
+        b.flush();
+        assertTrue(onB.batches.isEmpty(), "disconnected node misses batches");
+        assertTrue(onA.batches.isEmpty(), "disconnected node's batches are held back");
+
+        hub.reconnect("b");
+
+        assertEquals(1, onB.fullFlushes);
+        assertEquals(1, b.getFullFlushes());
+        assertEquals(1, onA.batches.size());
+        assertArrayEquals(new int[]{9}, onA.batches.get(0));
+        assertEquals(0, onA.fullFlushes);
+    }
+
+    @Test
+    void failingListenerDoesNotStopOthers() {
+        b.addListener(new InvalidationListener() {
+            @Override
+            public void invalidate(int[] bookIds) {
+                throw new IllegalStateException("boom");
+            }
+
+            @Override
+            public void invalidateAll() {
+            }
+        });
+        Recorder after = new Recorder();
+        b.addListener(after);
+
+        a.bookAdded(new Book(4, "111", "T", null));
+        a.flush();
+
+        assertEquals(1, onB.batches.size());
+        assertEquals(1, after.batches.size());
+    }
+
+    @Test
+    void fanInDeliversChangesFromEveryShard() {
+        InMemoryInvalidationHub shard1 = new InMemoryInvalidationHub();
+        InvalidationBus writer1 = new InvalidationBus(shard1.transport("a1"), BATCH_MILLIS);
+        InvalidationBus reader = new InvalidationBus(
+                new FanInTransport(List.of(hub.transport("r"), shard1.transport("r"))), BATCH_MILLIS);
+        Recorder onReader = new Recorder();
+        reader.addListener(onReader);
+        writer1.start();
+        reader.start();
+        try {
+            a.bookChanged(2);
+            a.flush();
+            writer1.bookChanged(3);
+            writer1.flush();
+
+            assertEquals(2, onReader.batches.size());
+            assertArrayEquals(new int[]{2}, onReader.batches.get(0));
+            assertArrayEquals(new int[]{3}, onReader.batches.get(1));
+        } finally {
+            writer1.stop();
+            reader.stop();
+        }
+    }
+
+    private static final class Recorder implements InvalidationListener {
+        private final List<int[]> batches = new ArrayList<>();
+        private int fullFlushes;
+
+        @Override
+        public void invalidate(int[] bookIds) {
+            batches.add(bookIds);
+        }
+
+        @Override
+        public void invalidateAll() {
+            fullFlushes++;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.nawidali.sql_labb_2.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapBookCacheTest {
+
+    private static Book book(int id) {
+        List<Author> authors = new ArrayList<>(List.of(
+                new Author(10 + id, "Forfattare " + id, LocalDate.of(1950, 1, 1 + id % 28)),
+                new Author(99, "Okand", null)));
+        List<Genre> genres = new ArrayList<>(List.of(new Genre(3, "Roman")));
+        return new Book(id, "isbn-" + id, "Titel " + id, Date.valueOf("2020-02-0" + (1 + id % 9)),
+                authors, genres, 3.5);
+    }
+
+    @Test
+    void roundTripsAllFields() {
+        OffHeapBookCache cache = new OffHeapBookCache(64 * 1024, 100);
+        Book original = new Book(7, "978-91", "Hösten", null,
+                List.of(new Author(1, "Åsa", LocalDate.of(1970, 5, 17))), List.of(), 4.25);
+        assertTrue(cache.put(original, cache.stamp()));
+
+        Book hit = cache.get(7);
+        assertNotNull(hit);
+        assertNotSame(original, hit);
+        assertEquals(7, hit.getBookId());
+        assertEquals("978-91", hit.getIsbn());
+        assertEquals("Hösten", hit.getTitle());
+        assertNull(hit.getPublished());
+        assertEquals(4.25, hit.getAverageRating());
+        assertEquals(1, hit.getAuthors().size());
+        assertEquals("Åsa", hit.getAuthors().get(0).getName());
+        assertEquals(LocalDate.of(1970, 5, 17), hit.getAuthors().get(0).getBirthDate());
+        assertTrue(hit.getGenres().isEmpty());
+
+        Book byIsbn = cache.getByIsbn("978-91");
+        assertNotNull(byIsbn);
+        assertEquals(7, byIsbn.getBookId());
+        assertNull(cache.getByIsbn("978-92"));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void evictsOldestWhenEntryLimitIsReached() {
+        OffHeapBookCache cache = new OffHeapBookCache(64 * 1024, 3);
+        for (int id = 1; id <= 5; id++) {
+            cache.put(book(id), cache.stamp());
+        }
+
+        assertEquals(3, cache.getEntries());
+        assertNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertNull(cache.getByIsbn("isbn-2"));
+        assertEquals("Titel 5", cache.get(5).getTitle());
+        assertEquals(2, cache.getEvictions());
+    }
+
+    @Test
+    void staysWithinCapacityAcrossManyWrapArounds() {
+        int capacity = 4096;
+        OffHeapBookCache cache = new OffHeapBookCache(capacity, 1000);
+        for (int id = 1; id <= 2000; id++) {
+            assertTrue(cache.put(book(id), cache.stamp()));
+            assertTrue(cache.getUsedBytes() <= capacity);
+            Book latest = cache.get(id);
+            assertNotNull(latest);
+            assertEquals("isbn-" + id, latest.getIsbn());
+        }
+        // Whatever survived decodes to the book it was stored as
+        int survivors = 0;
+        for (int id = 1; id <= 2000; id++) {
+            Book b = cache.get(id);
+            if (b != null) {
+                survivors++;
+                assertEquals("Titel " + id, b.getTitle());
+                assertEquals(id, cache.getByIsbn("isbn-" + id).getBookId());
+            }
+        }
+        assertEquals(cache.getEntries(), survivors);
+        assertTrue(survivors > 10);
+    }
+
+    @Test
+    void replacingABookKeepsOneEntry() {
+        OffHeapBookCache cache = new OffHeapBookCache(64 * 1024, 100);
+        cache.put(book(1), cache.stamp());
+        Book renamed = new Book(1, "isbn-1", "Ny titel", null);
+        cache.put(renamed, cache.stamp());
+
+        assertEquals(1, cache.getEntries());
+        assertEquals("Ny titel", cache.get(1).getTitle());
+        assertEquals("Ny titel", cache.getByIsbn("isbn-1").getTitle());
+    }
+
+    @Test
+    void putWithStampOlderThanAnInvalidationIsIgnored() {
+        OffHeapBookCache cache = new OffHeapBookCache(64 * 1024, 100);
+        long stamp = cache.stamp();
+        cache.invalidate(new int[]{1});
+
+        assertFalse(cache.put(book(1), stamp));
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    void invalidationRemovesBooks() {
+        OffHeapBookCache cache = new OffHeapBookCache(64 * 1024, 100);
+        for (int id = 1; id <= 3; id++) {
+            cache.put(book(id), cache.stamp());
+        }
+
+        cache.invalidate(new int[]{2, 42});
+        assertNull(cache.get(2));
+        assertNull(cache.getByIsbn("isbn-2"));
+        assertNotNull(cache.get(3));
+
+        cache.invalidateAll();
+        assertEquals(0, cache.getEntries());
+        assertEquals(0, cache.getUsedBytes());
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    void zeroCapacityCachesNothing() {
+        OffHeapBookCache cache = new OffHeapBookCache(0, 100);
+
+        assertFalse(cache.put(book(1), cache.stamp()));
+        assertNull(cache.get(1));
+        assertNull(cache.getByIsbn("isbn-1"));
+    }
+}
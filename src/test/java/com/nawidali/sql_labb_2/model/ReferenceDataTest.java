@@ -0,0 +1,93 @@
+package com.nawidali.sql_labb_2.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReferenceDataTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final ReferenceData ref = new ReferenceData(30_000, now::get);
+
+    @Test
+    void internReturnsSharedInstanceOnlyForEqualValues() {
+        Author bloch = new Author(1, "Joshua Bloch", LocalDate.of(1961, 8, 28));
+        ref.putAuthors(List.of(bloch));
+        ref.putGenres(List.of(new Genre(2, "Programming")));
+
+        assertSame(bloch, ref.internAuthor(1, "Joshua Bloch", LocalDate.of(1961, 8, 28)));
+        Author renamed = ref.internAuthor(1, "J. Bloch", LocalDate.of(1961, 8, 28));
+        assertNotSame(bloch, renamed);
+        assertEquals("J. Bloch", renamed.getName());
+        assertSame(ref.genre(2), ref.internGenre(2, "Programming"));
+        assertEquals(2, ref.getHits());
+        assertEquals(1, ref.getMisses());
+    }
+
+    @Test
+    void putAddsRowsIncrementally() {
+        ref.putAuthors(List.of(new Author(1, "a", null), new Author(3, "c", null)));
+        ref.putAuthors(List.of(new Author(40, "d", null)));
+
+        assertEquals(40, ref.getMaxAuthorId());
+        assertEquals(3, ref.getAuthorCount());
+        assertEquals("c", ref.author(3).getName());
+        assertNull(ref.author(2));
+        assertNull(ref.author(-1));
+        assertNull(ref.author(ReferenceData.MAX_ID + 5));
+    }
+
+    @Test
+    void idsTooLargeForTheArraysAreStillFound() {
+        int large = ReferenceData.MAX_ID + 5;
+        Author author = new Author(large, "Sparse", null);
+        Genre genre = new Genre(Integer.MAX_VALUE, "Last");
+        ref.putAuthors(List.of(new Author(1, "a", null), author));
+        ref.putGenres(List.of(genre));
+
+        assertSame(author, ref.author(large));
+        assertSame(author, ref.internAuthor(large, "Sparse", null));
+        assertSame(genre, ref.genre(Integer.MAX_VALUE));
+        assertEquals(large, ref.getMaxAuthorId());
+        assertEquals(2, ref.getAuthorCount());
+        assertEquals(1, ref.getGenreCount());
+        assertNull(ref.author(large + 1));
+    }
+
+    @Test
+    void refreshIsOfferedOncePerIntervalAndOnlyAfterAMiss() {
+        assertFalse(ref.tryStartRefresh());
+
+        ref.internGenre(9, "unknown");
+        assertTrue(ref.tryStartRefresh());
+        ref.internGenre(9, "unknown");
+        assertFalse(ref.tryStartRefresh());
+
+        now.addAndGet(30_000);
+        assertTrue(ref.tryStartRefresh());
+        assertFalse(ref.tryStartRefresh());
+    }
+
+    @Test
+    void bookCardJsonReusesCachedAuthorsAndGenres() throws Exception {
+        Author bloch = new Author(1, "Joshua Bloch", LocalDate.of(1961, 8, 28));
+        Genre programming = new Genre(2, "Programming");
+        ref.putAuthors(List.of(bloch));
+        ref.putGenres(List.of(programming));
+
+        List<Author> authors = BookCardJson.authors(
+                "[{\"id\": 1, \"name\": \"Joshua Bloch\", \"birth\": \"1961-08-28\"},"
+                        + " {\"id\": 5, \"name\": \"Neal Gafter\", \"birth\": null}]", ref);
+        List<Genre> genres = BookCardJson.genres("[{\"id\": 2, \"name\": \"Programming\"}]", ref);
+
+        assertSame(bloch, authors.get(0));
+        assertEquals("Neal Gafter", authors.get(1).getName());
+        assertNull(authors.get(1).getBirthDate());
+        assertSame(programming, genres.get(0));
+        assertTrue(BookCardJson.authors(null, ref).isEmpty());
+    }
+}
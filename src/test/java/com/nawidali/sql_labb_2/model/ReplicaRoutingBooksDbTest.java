@@ -0,0 +1,83 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+class ReplicaRoutingBooksDbTest {
+
+    private final BooksDbMySql primary = mock(BooksDbMySql.class);
+    private final BooksDbMySql replica = mock(BooksDbMySql.class);
+
+    private ReplicaRoutingBooksDb router;
+
+    private ReplicaRoutingBooksDb connectedRouter(long replicaLagMillis) throws Exception {
+        when(replica.replicationLagMillis()).thenReturn(replicaLagMillis);
+        router = new ReplicaRoutingBooksDb(primary, List.of("jdbc:mysql://replica:3306/booksdb"),
+                () -> replica, 1000, 60_000);
+        router.connect("jdbc:mysql://primary:3306/booksdb");
+        return router;
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        CurrentUser.clear();
+        if (router != null) {
+            router.disconnect();
+        }
+    }
+
+    @Test
+    void selectsGoToReplica_writesGoToPrimary() throws Exception {
+        connectedRouter(0);
+
+        router.findBooksByTitle("java");
+        router.rateBook(1, 5, new User(7, "reader"));
+
+        verify(replica).findBooksByTitle("java");
+        verify(primary, never()).findBooksByTitle("java");
+        verify(primary).rateBook(eq(1), eq(5), any(User.class));
+        verify(replica, never()).rateBook(anyInt(), anyInt(), any(User.class));
+    }
+
+    @Test
+    void userReadsOwnWriteFromPrimary() throws Exception {
+        connectedRouter(0);
+        router.rateBook(1, 5, new User(7, "reader"));
+
+        CurrentUser.set(7);
+        router.findReviewsByBookId(1);
+        CurrentUser.set(8);
+        router.findReviewsByBookId(2);
+
+        verify(primary).findReviewsByBookId(1);
+        verify(replica).findReviewsByBookId(2);
+    }
+
+    @Test
+    void laggingReplicaIsNotUsed() throws Exception {
+        connectedRouter(5000);
+
+        router.findBooksByTitle("java");
+
+        verify(primary).findBooksByTitle("java");
+        verify(replica, never()).findBooksByTitle(anyString());
+    }
+
+    @Test
+    void failingReplicaFallsBackToPrimary() throws Exception {
+        connectedRouter(0);
+        when(replica.findBooksByIsbn("1")).thenThrow(new SelectException("replica down"));
+
+        router.findBooksByIsbn("1");
+        router.findBooksByIsbn("2");
+
+        verify(primary).findBooksByIsbn("1");
+        verify(primary).findBooksByIsbn("2");
+        verify(replica, never()).findBooksByIsbn("2");
+    }
+}
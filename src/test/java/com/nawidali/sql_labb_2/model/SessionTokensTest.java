@@ -0,0 +1,80 @@
+package com.nawidali.sql_labb_2.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionTokensTest {
+
+    private static final byte[] SECRET = new byte[32];
+
+    static {
+        Arrays.fill(SECRET, (byte) 7);
+    }
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final SessionTokens tokens = new SessionTokens(SECRET, 60_000, now::get);
+
+    @Test
+    void verifiesIssuedTokenWithoutDatabase() {
+        SessionTokens.Issued issued = tokens.issue(new User(3, "Åsa"));
+
+        SessionTokens.Session session = tokens.verify(issued.token());
+
+        assertNotNull(session);
+        assertEquals(3, session.user().getUserId());
+        assertEquals("Åsa", session.user().getUsername());
+        assertEquals(1_060_000, session.expiresAtMillis());
+    }
+
+    @Test
+    void rejectsTamperedAndForeignTokens() {
+        String token = tokens.issue(new User(3, "anna")).token();
+        // The first signature character carries only signature bits (the last may end in padding bits)
+        int at = token.lastIndexOf('.') + 1;
+        char first = token.charAt(at);
+        String tampered = token.substring(0, at) + (first == 'A' ? 'w' : 'A') + token.substring(at + 1);
+        byte[] otherSecret = SECRET.clone();
+        otherSecret[0] = 1;
+        String foreign = new SessionTokens(otherSecret, 60_000, now::get).issue(new User(3, "anna")).token();
+
+        assertNull(tokens.verify(tampered));
+        assertNull(tokens.verify(foreign));
+        assertNull(tokens.verify("not-a-token"));
+        assertNull(tokens.verify("a.b.c"));
+        assertEquals(4, tokens.getRejected());
+    }
+
+    @Test
+    void rejectsExpiredToken() {
+        String token = tokens.issue(new User(3, "anna")).token();
+
+        now.addAndGet(60_000);
+
+        assertNull(tokens.verify(token));
+    }
+
+    @Test
+    void revokedTokenIsDeniedUntilItWouldHaveExpired() {
+        String token = tokens.issue(new User(3, "anna")).token();
+        String other = tokens.issue(new User(3, "anna")).token();
+
+        tokens.revoke(tokens.verify(token));
+
+        assertNull(tokens.verify(token));
+        assertNotNull(tokens.verify(other));
+        assertEquals(1, tokens.getDenyListSize());
+
+        now.addAndGet(60_000);
+        tokens.revoke(new SessionTokens.Session(42, new User(3, "anna"), now.get() + 1));
+        assertEquals(1, tokens.getDenyListSize());
+    }
+
+    @Test
+    void rejectsShortSecret() {
+        assertThrows(IllegalArgumentException.class, () -> new SessionTokens(new byte[16], 60_000));
+    }
+}
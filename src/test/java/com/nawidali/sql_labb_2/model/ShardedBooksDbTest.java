@@ -0,0 +1,139 @@
+package com.nawidali.sql_labb_2.model;
+
+import com.nawidali.sql_labb_2.model.exceptions.InsertException;
+import com.nawidali.sql_labb_2.model.exceptions.SelectException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ShardedBooksDbTest {
+
+    private final IBooksDb shard0 = mock(IBooksDb.class);
+    private final IBooksDb shard1 = mock(IBooksDb.class);
+    private final IBooksDb shard2 = mock(IBooksDb.class);
+    private final List<IBooksDb> others = List.of(shard1, shard2);
+
+    private ShardedBooksDb sharded(int maxResults) {
+        return new ShardedBooksDb(shard0, List.of("db1", "db2"), i -> others.get(i - 1), maxResults);
+    }
+
+    private static Book book(int id) {
+        return new Book(id, "isbn-" + id, "Book " + id, null);
+    }
+
+    @Test
+    void pointOperationsGoToTheOwningShard() throws Exception {
+        ShardedBooksDb db = sharded(0);
+        User user = new User(1, "anna");
+
+        db.rateBook(5, 4, user);
+        db.findReviewsByBookId(6);
+        db.deleteBook(7, user);
+
+        verify(shard1).rateBook(5, 4, user);
+        verify(shard2).findReviewsByBookId(6);
+        verify(shard0).deleteBook(7, user);
+        verify(shard0, never()).rateBook(anyInt(), anyInt(), any());
+    }
+
+    @Test
+    void searchesAreMergedInIdOrderAndLimited() throws Exception {
+        when(shard0.findBooksByTitle("java")).thenReturn(List.of(book(1), book(7)));
+        when(shard1.findBooksByTitle("java")).thenReturn(List.of(book(2)));
+        when(shard2.findBooksByTitle("java")).thenReturn(List.of(book(3), book(6)));
+
+        List<Book> found = sharded(4).findBooksByTitle("java");
+
+        assertEquals(List.of(1, 2, 3, 6), found.stream().map(Book::getBookId).toList());
+    }
+
+    @Test
+    void batchLookupsAskOnlyShardsOwningTheIds() throws Exception {
+        when(shard0.findBooksByIds(List.of(1, 4))).thenReturn(Map.of(1, book(1), 4, book(4)));
+        when(shard2.findBooksByIds(List.of(3))).thenReturn(Map.of(3, book(3)));
+
+        Map<Integer, Book> found = sharded(0).findBooksByIds(List.of(1, 3, 4));
+
+        assertEquals(3, found.size());
+        verify(shard1, never()).findBooksByIds(anyCollection());
+    }
+
+    @Test
+    void failingShardFailsTheSearch() throws Exception {
+        when(shard0.findBooksByGenre("x")).thenReturn(List.of(book(1)));
+        when(shard1.findBooksByGenre("x")).thenThrow(new SelectException("shard down"));
+        when(shard2.findBooksByGenre("x")).thenReturn(List.of());
+
+        SelectException e = assertThrows(SelectException.class, () -> sharded(0).findBooksByGenre("x"));
+        assertEquals("shard down", e.getMessage());
+    }
+
+    /**
+     * An ISBN that {@code db} adds on the given shard.
+     */
+    private static String isbnOnShard(ShardedBooksDb db, int shard) {
+        for (int i = 0; ; i++) {
+            if (db.shardOfIsbn("isbn-" + i) == shard) {
+                return "isbn-" + i;
+            }
+        }
+    }
+
+    @Test
+    void addBookRejectsIdsFromAnotherShardsSequence() throws Exception {
+        User user = new User(1, "anna");
+        ShardedBooksDb db = sharded(0);
+        Book onShard0 = new Book(isbnOnShard(db, 0), "Title", null);
+        Book onShard1 = new Book(isbnOnShard(db, 1), "Title", null);
+        when(shard0.addBook(onShard0, List.of(), List.of(), user)).thenReturn(book(4));
+        when(shard1.addBook(onShard1, List.of(), List.of(), user)).thenReturn(book(3));
+
+        assertEquals(4, db.addBook(onShard0, List.of(), List.of(), user).getBookId());
+        assertThrows(InsertException.class, () -> db.addBook(onShard1, List.of(), List.of(), user));
+        verify(shard1).deleteBook(3, user);
+    }
+
+    @Test
+    void sameIsbnGoesToTheSameShardWhateverItsCase() {
+        ShardedBooksDb db = sharded(0);
+
+        assertEquals(db.shardOfIsbn("978-0-00-00000X"), db.shardOfIsbn(" 978-0-00-00000x "));
+    }
+
+    @Test
+    void addBookRejectsAnIsbnThatAnyShardHas() throws Exception {
+        User user = new User(1, "anna");
+        ShardedBooksDb db = sharded(0);
+        String isbn = isbnOnShard(db, 0);
+        // Added round-robin before books were placed by ISBN
+        when(shard2.findBooksByIsbn(eq(isbn), any())).thenReturn(List.of(new Book(3, isbn, "Old", null)));
+
+        InsertException e = assertThrows(InsertException.class,
+                () -> db.addBook(new Book(isbn, "New", null), List.of(), List.of(), user));
+
+        assertTrue(e.getMessage().contains(isbn), e.getMessage());
+        verify(shard0, never()).addBook(any(), any(), any(), any());
+        verify(shard1, never()).addBook(any(), any(), any(), any());
+        verify(shard2, never()).addBook(any(), any(), any(), any());
+    }
+
+    @Test
+    void disconnectStopsTheQueryPoolAndConnectStartsANewOne() throws Exception {
+        ShardedBooksDb db = sharded(0);
+        db.connect("db0");
+        db.disconnect();
+
+        assertThrows(RejectedExecutionException.class, () -> db.findBooksByTitle("java"));
+        db.connect("db0");
+        assertEquals(List.of(), db.findBooksByTitle("java"));
+        db.disconnect();
+    }
+}
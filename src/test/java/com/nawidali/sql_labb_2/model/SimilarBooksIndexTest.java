@@ -0,0 +1,160 @@
+package com.nawidali.sql_labb_2.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SimilarBooksIndexTest {
+
+    private static Book book(int id) {
+        return new Book(id, "isbn-" + id, "Book " + id, Date.valueOf("2020-01-01"), List.of(), List.of(), 0);
+    }
+
+    private static IBooksDb db(List<Rating> ratings, int books) throws Exception {
+        IBooksDb db = mock(IBooksDb.class);
+        List<Book> all = new ArrayList<>();
+        for (int id = 1; id <= books; id++) {
+            all.add(book(id));
+        }
+        when(db.findBooksAfterId(eq(0), anyInt(), any())).thenReturn(all);
+        when(db.findRatingsByBookIdRange(anyInt(), anyInt())).thenAnswer(inv -> {
+            int from = inv.getArgument(0);
+            int to = inv.getArgument(1);
+            return ratings.stream().filter(r -> r.getBookId() >= from && r.getBookId() <= to).toList();
+        });
+        return db;
+    }
+
+    @Test
+    void load_countsUsersWhoRatedBothBooks() throws Exception {
+        SimilarBooksIndex index = new SimilarBooksIndex(10, 10, 2);
+        assertFalse(index.isReady());
+
+        index.load(db(List.of(
+                new Rating(1, 100, 5), new Rating(2, 100, 4), new Rating(3, 100, 3),
+                new Rating(1, 101, 5), new Rating(2, 101, 2),
+                new Rating(1, 102, 1), new Rating(4, 102, 5)), 4));
+
+        assertTrue(index.isReady());
+        assertEquals(List.of(new SimilarBooksIndex.Neighbor(2, 2),
+                new SimilarBooksIndex.Neighbor(3, 1),
+                new SimilarBooksIndex.Neighbor(4, 1)), index.similar(1, 10));
+        assertEquals(List.of(new SimilarBooksIndex.Neighbor(1, 2)), index.similar(2, 1));
+        assertEquals(List.of(), index.similar(99, 5));
+    }
+
+    @Test
+    void ratingEvents_updateIndexOncePerUserAndBook() throws Exception {
+        SimilarBooksIndex index = new SimilarBooksIndex(10, 10, 1);
+        index.load(db(List.of(new Rating(1, 100, 5)), 3));
+
+        index.bookRated(2, 100, 4);
+        index.bookRated(2, 100, 1);   // changed rating, no new pair
+        index.bookRated(3, 101, 4);
+        index.bookRated(1, 101, 4);
+
+        assertEquals(List.of(new SimilarBooksIndex.Neighbor(2, 1), new SimilarBooksIndex.Neighbor(3, 1)),
+                index.similar(1, 5));
+
+        index.bookDeleted(1);
+        assertEquals(List.of(), index.similar(1, 5));
+    }
+
+    @Test
+    void userHistoryIsBounded() throws Exception {
+        SimilarBooksIndex index = new SimilarBooksIndex(10, 2, 1);
+        index.load(db(List.of(), 0));
+
+        index.bookRated(1, 100, 5);
+        index.bookRated(2, 100, 5);
+        index.bookRated(3, 100, 5);   // pairs with 1 and 2, then pushes 1 out of the history
+        index.bookRated(4, 100, 5);
+
+        assertEquals(List.of(new SimilarBooksIndex.Neighbor(2, 1), new SimilarBooksIndex.Neighbor(3, 1)),
+                index.similar(4, 5));
+        assertEquals(List.of(new SimilarBooksIndex.Neighbor(2, 1), new SimilarBooksIndex.Neighbor(3, 1)),
+                index.similar(1, 5));
+    }
+
+    @Test
+    void changedRatingOfBookOutsideHistory_addsNoPairs() throws Exception {
+        SimilarBooksIndex index = new SimilarBooksIndex(10, 2, 1);
+        index.load(db(List.of(), 0));
+
+        index.bookRated(1, 100, 5);
+        index.bookRated(2, 100, 4);
+        index.bookRated(3, 100, 3);
+        index.bookRated(4, 100, 5);
+        index.bookRated(1, 100, 1);   // book 1 has left the history, still no new pairs
+
+        assertEquals(List.of(new SimilarBooksIndex.Neighbor(2, 1), new SimilarBooksIndex.Neighbor(3, 1)),
+                index.similar(1, 5));
+        assertEquals(List.of(new SimilarBooksIndex.Neighbor(2, 1), new SimilarBooksIndex.Neighbor(3, 1)),
+                index.similar(4, 5));
+    }
+
+    @Test
+    void bookDeleted_removesBookFromNeighborsAndUsers() throws Exception {
+        SimilarBooksIndex index = new SimilarBooksIndex(10, 10, 1);
+        index.load(db(List.of(new Rating(1, 100, 5), new Rating(2, 100, 4), new Rating(3, 100, 3),
+                new Rating(1, 101, 5), new Rating(2, 101, 2)), 3));
+
+        index.bookDeleted(1);
+        index.bookRated(4, 100, 5);
+
+        assertEquals(List.of(), index.similar(1, 5));
+        assertEquals(List.of(new SimilarBooksIndex.Neighbor(3, 1), new SimilarBooksIndex.Neighbor(4, 1)),
+                index.similar(2, 5));
+        // Book 1 was book 2's top neighbor; the deleted id is skipped before cutting to n
+        assertEquals(List.of(new SimilarBooksIndex.Neighbor(3, 1)), index.similar(2, 1));
+        assertEquals(List.of(new SimilarBooksIndex.Neighbor(2, 1), new SimilarBooksIndex.Neighbor(3, 1)),
+                index.similar(4, 5));
+    }
+
+    @Test
+    void neighbors_keepFrequentKeysWhenFull() {
+        SimilarBooksIndex.Neighbors neighbors = new SimilarBooksIndex.Neighbors(16);
+        Map<Integer, Integer> exact = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            // Keys 1..8 are frequent, the rest a long tail
+            int key = random.nextInt(3) > 0 ? 1 + random.nextInt(8) : 9 + random.nextInt(2000);
+            neighbors.increment(key);
+            exact.merge(key, 1, Integer::sum);
+        }
+
+        assertEquals(16, neighbors.size());
+        for (int key = 1; key <= 8; key++) {
+            assertTrue(neighbors.count(key) >= exact.get(key), "count never undershoots");
+        }
+        List<Integer> top = neighbors.top(8).stream().map(SimilarBooksIndex.Neighbor::bookId).sorted().toList();
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8), top);
+    }
+
+    @Test
+    void neighbors_removeKeepsProbeChains() {
+        SimilarBooksIndex.Neighbors neighbors = new SimilarBooksIndex.Neighbors(4);
+        for (int key = 1; key <= 4; key++) {
+            for (int i = 0; i < key; i++) {
+                neighbors.increment(key);
+            }
+        }
+        // Full: key 1 (count 1) is replaced by key 50 with count 2
+        neighbors.increment(50);
+
+        assertEquals(0, neighbors.count(1));
+        assertEquals(2, neighbors.count(50));
+        for (int key = 2; key <= 4; key++) {
+            assertEquals(key, neighbors.count(key));
+        }
+    }
+}
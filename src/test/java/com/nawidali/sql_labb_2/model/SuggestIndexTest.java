@@ -0,0 +1,198 @@
+package com.nawidali.sql_labb_2.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SuggestIndexTest {
+
+    private final SuggestIndex index = new SuggestIndex();
+
+    @AfterEach
+    void tearDown() {
+        index.close();
+    }
+
+    private static Book book(int id, String title, double rating, String... authors) {
+        List<Author> list = new ArrayList<>();
+        for (String name : authors) {
+            list.add(new Author(id * 10 + list.size(), name, null));
+        }
+        return new Book(id, "isbn-" + id, title, Date.valueOf("2020-01-01"), list, List.of(), rating);
+    }
+
+    private void load(Book... books) throws Exception {
+        IBooksDb db = mock(IBooksDb.class);
+        when(db.findBooksAfterId(eq(0), anyInt(), any())).thenReturn(List.of(books));
+        index.load(db);
+    }
+
+    private static List<String> texts(List<Suggestion> suggestions) {
+        return suggestions.stream().map(Suggestion::getText).toList();
+    }
+
+    @Test
+    void completesPrefixBestRatedFirst() throws Exception {
+        load(book(1, "Harry Potter and the Philosopher's Stone", 4.1, "J.K. Rowling"),
+                book(2, "Harry Potter and the Prisoner of Azkaban", 4.6, "J.K. Rowling"),
+                book(3, "Hamlet", 4.9, "William Shakespeare"),
+                book(4, "The Hobbit", 4.7, "J.R.R. Tolkien"));
+
+        List<Suggestion> result = index.suggest("harry p", 10);
+
+        assertEquals(List.of("Harry Potter and the Prisoner of Azkaban",
+                "Harry Potter and the Philosopher's Stone"), texts(result));
+        assertEquals("isbn-2", result.get(0).getIsbn());
+        assertEquals(Suggestion.Kind.TITLE, result.get(0).getKind());
+    }
+
+    @Test
+    void normalizesCaseAccentsAndPunctuation() throws Exception {
+        load(book(1, "Émile, ou De l'éducation", 3.0, "Jean-Jacques Rousseau"));
+
+        assertEquals(List.of("Émile, ou De l'éducation"), texts(index.suggest("EMILE OU", 5)));
+        assertEquals(List.of("Jean-Jacques Rousseau"), texts(index.suggest("jean jacques", 5)));
+    }
+
+    @Test
+    void authorWithSeveralBooksIsSuggestedOnceWithBestRating() throws Exception {
+        load(book(1, "Emma", 3.5, "Jane Austen"),
+                book(2, "Persuasion", 4.5, "Jane Austen"));
+
+        List<Suggestion> result = index.suggest("jane", 10);
+
+        assertEquals(1, result.size());
+        assertEquals(Suggestion.Kind.AUTHOR, result.get(0).getKind());
+        assertNull(result.get(0).getIsbn());
+        assertEquals(4.5, result.get(0).getRating(), 1e-6);
+    }
+
+    @Test
+    void followsAddedAndDeletedBooks() throws Exception {
+        load(book(1, "Dune", 4.0, "Frank Herbert"));
+
+        index.bookAdded(book(2, "Dune Messiah", 4.2, "Frank Herbert"));
+        assertEquals(List.of("Dune Messiah", "Dune"), texts(index.suggest("dune", 10)));
+
+        index.bookDeleted(1);
+        index.bookDeleted(2);
+        assertEquals(List.of(), index.suggest("dune", 10));
+        assertEquals(List.of(), index.suggest("frank", 10));
+    }
+
+    @Test
+    void notReadyUntilLoaded() throws Exception {
+        assertFalse(index.isReady());
+        load();
+        assertTrue(index.isReady());
+    }
+
+    @Test
+    void matchesBruteForceOnRandomCatalog() throws Exception {
+        Random random = new Random(42);
+        String[] words = {"alpha", "alps", "beta", "bet", "gamma", "game", "delta", "del"};
+        List<Book> books = new ArrayList<>();
+        for (int id = 1; id <= 3000; id++) {
+            String title = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)]
+                    + " " + id;
+            books.add(book(id, title, random.nextInt(500) / 100.0));
+        }
+        load(books.toArray(new Book[0]));
+        for (int id = 1; id <= 3000; id += 7) {
+            index.bookDeleted(id);
+        }
+
+        for (String prefix : List.of("a", "al", "alp", "bet", "beta b", "gam", "delta del", "x")) {
+            List<Double> expected = books.stream()
+                    .filter(b -> b.getBookId() % 7 != 1)
+                    .filter(b -> b.getTitle().startsWith(prefix))
+                    .map(Book::getAverageRating)
+                    .sorted(Comparator.reverseOrder())
+                    .limit(10)
+                    .toList();
+            List<Double> actual = index.suggest(prefix, 10).stream()
+                    .map(s -> (double) (float) s.getRating())
+                    .toList();
+            List<Double> expectedAsFloat = expected.stream().map(r -> (double) (float) r.doubleValue()).toList();
+            assertEquals(expectedAsFloat, actual, "prefix " + prefix);
+        }
+    }
+
+    @Test
+    void snapshotRestoresIndexWithoutDatabase(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("suggest.snap");
+        load(book(1, "Dune", 4.2, "Frank Herbert"), book(2, "Emma", 3.9, "Jane Austen"));
+        index.bookDeleted(2);
+        assertTrue(index.writeSnapshot(file));
+
+        SuggestIndex restored = new SuggestIndex();
+        try {
+            assertTrue(restored.loadSnapshot(file));
+            assertTrue(restored.isReady());
+            assertEquals(List.of("Dune"), texts(restored.suggest("dun", 5)));
+            assertEquals(List.of("Frank Herbert"), texts(restored.suggest("frank", 5)));
+            assertTrue(restored.suggest("emma", 5).isEmpty());
+        } finally {
+            restored.close();
+        }
+    }
+
+    @Test
+    void catchUpAddsNewBooksAndDropsDeletedOnes(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("suggest.snap");
+        load(book(1, "Dune", 4.2), book(2, "Emma", 3.9), book(3, "Ulysses", 3.5));
+        index.writeSnapshot(file);
+
+        SuggestIndex restored = new SuggestIndex();
+        try {
+            restored.loadSnapshot(file);
+            IBooksDb db = mock(IBooksDb.class);
+            // Book 2 was deleted and book 4 added while the service was down
+            when(db.findBooksAfterId(eq(3), anyInt(), any())).thenReturn(List.of(book(4, "Dracula", 4.0)));
+            when(db.findBooksAfterId(eq(0), anyInt(), any())).thenReturn(List.of(
+                    book(1, "Dune", 4.2), book(3, "Ulysses", 3.5), book(4, "Dracula", 4.0)));
+
+            restored.catchUp(db);
+
+            assertEquals(List.of("Dracula"), texts(restored.suggest("dra", 5)));
+            assertTrue(restored.suggest("emma", 5).isEmpty());
+            assertEquals(List.of("Ulysses"), texts(restored.suggest("uly", 5)));
+        } finally {
+            restored.close();
+        }
+    }
+
+    @Test
+    void corruptOrMissingSnapshotIsRejected(@TempDir Path dir) throws Exception {
+        assertFalse(index.loadSnapshot(dir.resolve("missing.snap")));
+
+        Path file = dir.resolve("suggest.snap");
+        load(book(1, "Dune", 4.2));
+        index.writeSnapshot(file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 3] ^= 0x5A;
+        Files.write(file, bytes);
+
+        SuggestIndex restored = new SuggestIndex();
+        try {
+            IOException e = assertThrows(IOException.class, () -> restored.loadSnapshot(file));
+            assertTrue(e.getMessage().contains("checksum"));
+            assertFalse(restored.isReady());
+        } finally {
+            restored.close();
+        }
+    }
+}
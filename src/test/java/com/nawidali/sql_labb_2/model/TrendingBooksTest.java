@@ -0,0 +1,111 @@
+package com.nawidali.sql_labb_2.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrendingBooksTest {
+
+    private static final long HOUR = 3_600_000;
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    private TrendingBooks trending(int topK) {
+        Map<String, Duration> windows = new LinkedHashMap<>();
+        windows.put("1h", Duration.ofHours(1));
+        windows.put("7d", Duration.ofDays(7));
+        return new TrendingBooks(windows, topK, now::get);
+    }
+
+    private static List<Integer> ids(List<TrendingBooks.Entry> entries) {
+        return entries.stream().map(TrendingBooks.Entry::bookId).toList();
+    }
+
+    @Test
+    void recentEventsOutrankOlderOnesInShortWindow() {
+        TrendingBooks trending = trending(10);
+        for (int i = 0; i < 10; i++) {
+            trending.bookRated(1, i, 5);
+        }
+        now.addAndGet(6 * HOUR);
+        for (int i = 0; i < 3; i++) {
+            trending.bookReviewed(2, i);
+        }
+        trending.refresh();
+
+        assertEquals(List.of(2, 1), ids(trending.top("1h", 10)));
+        assertEquals(List.of(1, 2), ids(trending.top("7d", 10)));
+        assertEquals(3.0, trending.top("1h", 1).get(0).score(), 1e-9);
+    }
+
+    @Test
+    void topKIsBoundedAndUnknownWindowRejected() {
+        TrendingBooks trending = trending(2);
+        for (int book = 1; book <= 5; book++) {
+            for (int i = 0; i < book; i++) {
+                trending.bookRated(book, i, 3);
+            }
+        }
+        trending.refresh();
+
+        assertEquals(List.of(5, 4), ids(trending.top("1h", 10)));
+        assertThrows(IllegalArgumentException.class, () -> trending.top("2h", 10));
+    }
+
+    @Test
+    void decayedAndDeletedBooksAreDropped() {
+        TrendingBooks trending = trending(10);
+        trending.bookRated(1, 1, 5);
+        trending.bookRated(2, 1, 5);
+        trending.bookDeleted(2);
+        assertEquals(1, trending.getTrackedBooks());
+
+        now.addAndGet(60 * 24 * HOUR);
+        trending.refresh();
+        assertEquals(0, trending.getTrackedBooks());
+        assertEquals(List.of(), trending.top("7d", 10));
+
+        // A later event starts the book over
+        trending.bookRated(1, 2, 4);
+        trending.refresh();
+        assertEquals(List.of(1), ids(trending.top("1h", 10)));
+    }
+
+    @Test
+    void concurrentEventsAreAllCounted() throws Exception {
+        TrendingBooks trending = trending(10);
+        int threads = 8;
+        int perThread = 5000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    trending.bookRated(1 + i % 3, i, 5);
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        trending.refresh();
+        double total = trending.top("1h", 10).stream().mapToDouble(TrendingBooks.Entry::score).sum();
+        assertEquals(threads * perThread, total, 1e-6);
+    }
+}
@@ -0,0 +1,97 @@
+package com.nawidali.sql_labb_2.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nawidali.sql_labb_2.config.WebConfig;
+import com.nawidali.sql_labb_2.model.IBooksDb;
+import com.nawidali.sql_labb_2.model.SessionTokens;
+import com.nawidali.sql_labb_2.model.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest({AuthController.class, BookController.class})
+@Import(WebConfig.class)
+class AuthControllerTest {
+
+    @TestConfiguration
+    static class TokenConfig {
+        @Bean
+        SessionTokens sessionTokens() {
+            return new SessionTokens(SessionTokens.randomSecret(), 60_000);
+        }
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockBean
+    private IBooksDb booksDb;
+
+    private String login() throws Exception {
+        when(booksDb.login("anna", "secret")).thenReturn(new User(2, "anna"));
+        String body = mockMvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\": \"anna\", \"password\": \"secret\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.userId").value(2))
+                .andExpect(jsonPath("$.expiresAt").exists())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body).get("token").asText();
+    }
+
+    @Test
+    void login_wrongPassword_returns401() throws Exception {
+        when(booksDb.login("anna", "wrong")).thenReturn(null);
+
+        mockMvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\": \"anna\", \"password\": \"wrong\"}"))
+                .andExpect(status().isUnauthorized())
+                .andExpect(header().string(HttpHeaders.WWW_AUTHENTICATE, "Bearer"));
+    }
+
+    @Test
+    void rateBook_withToken_usesTokenUserWithoutLogin() throws Exception {
+        String token = login();
+        clearInvocations(booksDb);
+
+        mockMvc.perform(post("/books/1/rating")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": 99, \"rating\": 4}"))
+                .andExpect(status().isOk());
+
+        verify(booksDb).rateBook(eq(1), eq(4), argThat(u -> u.getUserId() == 2));
+        verify(booksDb, never()).login(anyString(), anyString());
+    }
+
+    @Test
+    void logout_revokesToken() throws Exception {
+        String token = login();
+
+        mockMvc.perform(post("/auth/logout").header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(status().isNoContent());
+
+        mockMvc.perform(post("/books/1/rating")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"rating\": 4}"))
+                .andExpect(status().isUnauthorized());
+        verify(booksDb, never()).rateBook(anyInt(), anyInt(), any(User.class));
+    }
+}
@@ -1,15 +1,23 @@
 package com.nawidali.sql_labb_2.rest;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.nawidali.sql_labb_2.config.WebConfig;
 import com.nawidali.sql_labb_2.model.Book;
+import com.nawidali.sql_labb_2.model.BookProjection;
 import com.nawidali.sql_labb_2.model.IBooksDb;
+import com.nawidali.sql_labb_2.model.RatingSummary;
 import com.nawidali.sql_labb_2.model.Review;
 import com.nawidali.sql_labb_2.model.User;
 import com.nawidali.sql_labb_2.model.exceptions.InsertException;
+import com.nawidali.sql_labb_2.model.exceptions.OverloadedException;
 import com.nawidali.sql_labb_2.model.exceptions.SelectException;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
@@ -17,13 +25,16 @@ import java.sql.Date;
 import java.time.LocalDate;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(BookController.class)
+@Import(WebConfig.class)
 class BookControllerTest {
 
     @Autowired
@@ -45,12 +56,78 @@ class BookControllerTest {
         verify(booksDb).findBooksByTitle("java");
     }
 
+    @Test
+    void searchByTitle_acceptCbor_returnsCbor() throws Exception {
+        Book book = new Book(1, "978-0-13-468599-1", "Effective Java", Date.valueOf("2018-01-06"));
+        when(booksDb.findBooksByTitle("java")).thenReturn(List.of(book));
+
+        byte[] body = mockMvc.perform(get("/books").param("title", "java")
+                        .accept("application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/cbor"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode tree = new CBORMapper().readTree(body);
+        assertEquals("Effective Java", tree.get(0).get("title").asText());
+    }
+
+    @Test
+    void getByIsbn_acceptSmile_returnsSmile() throws Exception {
+        Book book = new Book(1, "978-0-13-468599-1", "Effective Java", Date.valueOf("2018-01-06"));
+        when(booksDb.findBooksByIsbn("978-0-13-468599-1")).thenReturn(List.of(book));
+
+        byte[] body = mockMvc.perform(get("/books/978-0-13-468599-1")
+                        .accept("application/x-jackson-smile"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-jackson-smile"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode tree = new SmileMapper().readTree(body);
+        assertEquals("978-0-13-468599-1", tree.get("isbn").asText());
+    }
+
+    @Test
+    void searchByTitle_noAcceptHeader_defaultsToJson() throws Exception {
+        when(booksDb.findBooksByTitle("java")).thenReturn(Collections.emptyList());
+
+        mockMvc.perform(get("/books").param("title", "java"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+    }
+
     @Test
     void searchByTitle_missingParameter_returns400() throws Exception {
         mockMvc.perform(get("/books"))
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    void searchByTitle_withFields_returnsOnlyRequestedFields() throws Exception {
+        Book book = new Book(1, "978-0-13-468599-1", "Effective Java", null,
+                null, null, 4.5);
+        BookProjection projection = BookProjection.parse("isbn,title,averageRating");
+        when(booksDb.findBooksByTitle("java", projection)).thenReturn(List.of(book));
+
+        mockMvc.perform(get("/books").param("title", "java")
+                        .param("fields", "isbn,title,averageRating"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].bookId").value(1))
+                .andExpect(jsonPath("$[0].title").value("Effective Java"))
+                .andExpect(jsonPath("$[0].averageRating").value(4.5))
+                .andExpect(jsonPath("$[0].authors").doesNotExist())
+                .andExpect(jsonPath("$[0].published").doesNotExist());
+
+        verify(booksDb).findBooksByTitle("java", projection);
+        verify(booksDb, never()).findBooksByTitle("java");
+    }
+
+    @Test
+    void searchByTitle_unknownField_returns400() throws Exception {
+        mockMvc.perform(get("/books").param("title", "java").param("fields", "isbn,price"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Unknown field: price"));
+    }
+
     @Test
     void getByIsbn_returnsBook() throws Exception {
         Book book = new Book(1, "978-0-13-468599-1", "Effective Java", Date.valueOf("2018-01-06"));
@@ -69,6 +146,37 @@ class BookControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void lookup_returnsFoundAndMissingKeys() throws Exception {
+        Book book = new Book(1, "978-0-13-468599-1", "Effective Java", Date.valueOf("2018-01-06"));
+        Book other = new Book(2, "978-0-13-235088-4", "Clean Code", Date.valueOf("2008-08-01"));
+        when(booksDb.findBooksByIsbns(List.of("978-0-13-468599-1", "missing-isbn")))
+                .thenReturn(Map.of("978-0-13-468599-1", book));
+        when(booksDb.findBooksByIds(List.of(2, 99)))
+                .thenReturn(Map.of(2, other));
+
+        mockMvc.perform(post("/books/lookup")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"isbns\": [\"978-0-13-468599-1\", \"missing-isbn\"], \"bookIds\": [2, 99, 2]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.byIsbn['978-0-13-468599-1'].title").value("Effective Java"))
+                .andExpect(jsonPath("$.byId['2'].title").value("Clean Code"))
+                .andExpect(jsonPath("$.missingIsbns[0]").value("missing-isbn"))
+                .andExpect(jsonPath("$.missingIds[0]").value(99));
+
+        verify(booksDb).findBooksByIsbns(List.of("978-0-13-468599-1", "missing-isbn"));
+        verify(booksDb).findBooksByIds(List.of(2, 99));
+        verify(booksDb, never()).findBooksByIsbn(anyString());
+    }
+
+    @Test
+    void lookup_emptyRequest_returns400() throws Exception {
+        mockMvc.perform(post("/books/lookup")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"isbns\": []}"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void rateBook_success() throws Exception {
         doNothing().when(booksDb).rateBook(anyInt(), anyInt(), any(User.class));
@@ -81,6 +189,29 @@ class BookControllerTest {
         verify(booksDb).rateBook(eq(1), eq(5), any(User.class));
     }
 
+    @Test
+    void rateBook_userIdHeaderMatchingBody_succeeds() throws Exception {
+        mockMvc.perform(post("/books/1/rating")
+                        .header("X-User-Id", "1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": 1, \"rating\": 5}"))
+                .andExpect(status().isOk());
+
+        verify(booksDb).rateBook(eq(1), eq(5), argThat(u -> u.getUserId() == 1));
+    }
+
+    @Test
+    void rateBook_userIdHeaderDifferingFromBody_returns400() throws Exception {
+        mockMvc.perform(post("/books/1/rating")
+                        .header("X-User-Id", "2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": 1, \"rating\": 5}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("X-User-Id must match userId"));
+
+        verify(booksDb, never()).rateBook(anyInt(), anyInt(), any(User.class));
+    }
+
     @Test
     void rateBook_invalidRating_returns400() throws Exception {
         mockMvc.perform(post("/books/1/rating")
@@ -109,6 +240,25 @@ class BookControllerTest {
                 .andExpect(jsonPath("$[0].text").value("Great book!"));
     }
 
+    @Test
+    void getRatingSummary_returnsHistogramCountAndMean() throws Exception {
+        when(booksDb.findRatingSummary(1)).thenReturn(new RatingSummary(1, new int[]{0, 1, 0, 2, 1}));
+
+        mockMvc.perform(get("/books/1/ratings/summary"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.counts[3]").value(2))
+                .andExpect(jsonPath("$.count").value(4))
+                .andExpect(jsonPath("$.mean").value(3.75));
+    }
+
+    @Test
+    void getRatingSummary_unknownBook_returns404() throws Exception {
+        when(booksDb.findRatingSummary(999)).thenReturn(null);
+
+        mockMvc.perform(get("/books/999/ratings/summary"))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     void databaseError_returns500() throws Exception {
         when(booksDb.findBooksByTitle(anyString()))
@@ -130,4 +280,15 @@ class BookControllerTest {
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.error").value("Data modification failed"));
     }
+
+    @Test
+    void overloaded_returns503WithRetryAfter() throws Exception {
+        when(booksDb.findBooksByTitle(anyString()))
+                .thenThrow(new OverloadedException("Databasen ar overbelastad (read)", 2));
+
+        mockMvc.perform(get("/books").param("title", "test"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "2"))
+                .andExpect(jsonPath("$.error").value("Service overloaded"));
+    }
 }
@@ -0,0 +1,99 @@
+package com.nawidali.sql_labb_2.rest;
+
+import com.nawidali.sql_labb_2.model.Author;
+import com.nawidali.sql_labb_2.model.Book;
+import com.nawidali.sql_labb_2.model.BookProjection;
+import com.nawidali.sql_labb_2.model.CatalogExporter;
+import com.nawidali.sql_labb_2.model.Genre;
+import com.nawidali.sql_labb_2.model.IBooksDb;
+import com.nawidali.sql_labb_2.model.Review;
+import com.nawidali.sql_labb_2.model.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(ExportController.class)
+class ExportControllerTest {
+
+    @TestConfiguration
+    static class ExporterConfig {
+        @Bean
+        CatalogExporter catalogExporter() {
+            return new CatalogExporter(100, 1, 0, 1, () -> false);
+        }
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private CatalogExporter exporter;
+
+    @MockBean
+    private IBooksDb booksDb;
+
+    private void catalog() throws Exception {
+        Book book = new Book(1, "978-1", "Krig, \"fred\"", Date.valueOf("1869-01-01"),
+                List.of(new Author(1, "Lev Tolstoj", null)), List.of(new Genre(1, "Roman")), 4.5);
+        when(booksDb.findBooksAfterId(0, 100, BookProjection.ALL)).thenReturn(List.of(book));
+    }
+
+    @Test
+    void export_ndjsonWithReviews() throws Exception {
+        catalog();
+        when(booksDb.findReviewsByBookIds(List.of(1))).thenReturn(Map.of(1,
+                List.of(new Review(7, 1, new User(2, "anna"), "Lang", LocalDate.of(2024, 1, 2)))));
+
+        mockMvc.perform(get("/books/export").param("reviews", "true"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"books.ndjson\""))
+                .andExpect(jsonPath("$.isbn").value("978-1"))
+                .andExpect(jsonPath("$.authors[0].name").value("Lev Tolstoj"))
+                .andExpect(jsonPath("$.reviews[0].text").value("Lang"));
+    }
+
+    @Test
+    void export_csvQuotesFields() throws Exception {
+        catalog();
+
+        mockMvc.perform(get("/books/export").param("format", "csv"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(content().string(
+                        "book_id,isbn,title,published,authors,genres,average_rating\n" +
+                        "1,978-1,\"Krig, \"\"fred\"\"\",1869-01-01,Lev Tolstoj,Roman,4.5\n"));
+        verify(booksDb, never()).findReviewsByBookIds(any());
+    }
+
+    @Test
+    void export_csvWithReviews_returns400() throws Exception {
+        mockMvc.perform(get("/books/export").param("format", "csv").param("reviews", "true"))
+                .andExpect(status().isBadRequest());
+        verify(booksDb, never()).findBooksAfterId(anyInt(), anyInt(), any());
+    }
+
+    @Test
+    void export_whileAnotherRuns_returns503() throws Exception {
+        try (CatalogExporter.Session running = exporter.start()) {
+            mockMvc.perform(get("/books/export"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().exists("Retry-After"));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.nawidali.sql_labb_2.rest;
+
+import com.nawidali.sql_labb_2.model.Book;
+import com.nawidali.sql_labb_2.model.IBooksDb;
+import com.nawidali.sql_labb_2.model.SimilarBooksIndex;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.sql.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(SimilarBooksController.class)
+class SimilarBooksControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private SimilarBooksIndex index;
+
+    @MockBean
+    private IBooksDb booksDb;
+
+    private static Book book(int id, String title) {
+        return new Book(id, "isbn-" + id, title, Date.valueOf("2020-01-01"), List.of(), List.of(), 4.0);
+    }
+
+    @Test
+    void similar_returnsBooksInRankOrderSkippingDeleted() throws Exception {
+        when(index.isReady()).thenReturn(true);
+        when(index.similar(1, 3)).thenReturn(List.of(
+                new SimilarBooksIndex.Neighbor(7, 12),
+                new SimilarBooksIndex.Neighbor(9, 5),
+                new SimilarBooksIndex.Neighbor(3, 2)));
+        when(booksDb.findBooksByIds(List.of(7, 9, 3))).thenReturn(Map.of(
+                3, book(3, "Dune"), 7, book(7, "Emma")));
+
+        mockMvc.perform(get("/books/1/similar").param("n", "3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].book.title").value("Emma"))
+                .andExpect(jsonPath("$[0].readers").value(12))
+                .andExpect(jsonPath("$[1].book.title").value("Dune"));
+    }
+
+    @Test
+    void similar_whileLoading_returns503() throws Exception {
+        when(index.isReady()).thenReturn(false);
+
+        mockMvc.perform(get("/books/1/similar"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+        verify(index, never()).similar(anyInt(), anyInt());
+    }
+
+    @Test
+    void similar_nOutOfRange_returns400() throws Exception {
+        mockMvc.perform(get("/books/1/similar").param("n", "0"))
+                .andExpect(status().isBadRequest());
+    }
+}
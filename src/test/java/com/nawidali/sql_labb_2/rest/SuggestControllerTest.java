@@ -0,0 +1,56 @@
+package com.nawidali.sql_labb_2.rest;
+
+import com.nawidali.sql_labb_2.model.SuggestIndex;
+import com.nawidali.sql_labb_2.model.Suggestion;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(SuggestController.class)
+class SuggestControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private SuggestIndex index;
+
+    @Test
+    void suggest_returnsCompletions() throws Exception {
+        when(index.isReady()).thenReturn(true);
+        when(index.suggest("harry", 5)).thenReturn(List.of(
+                new Suggestion("Harry Potter", Suggestion.Kind.TITLE, "978-0-7475-3269-9", 4.5)));
+
+        mockMvc.perform(get("/books/suggest").param("q", "harry").param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].text").value("Harry Potter"))
+                .andExpect(jsonPath("$[0].kind").value("TITLE"))
+                .andExpect(jsonPath("$[0].isbn").value("978-0-7475-3269-9"));
+    }
+
+    @Test
+    void suggest_whileLoading_returns503() throws Exception {
+        when(index.isReady()).thenReturn(false);
+
+        mockMvc.perform(get("/books/suggest").param("q", "harry"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+        verify(index, never()).suggest(anyString(), anyInt());
+    }
+
+    @Test
+    void suggest_limitOutOfRange_returns400() throws Exception {
+        mockMvc.perform(get("/books/suggest").param("q", "harry").param("limit", "500"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,58 @@
+package com.nawidali.sql_labb_2.rest;
+
+import com.nawidali.sql_labb_2.model.Book;
+import com.nawidali.sql_labb_2.model.IBooksDb;
+import com.nawidali.sql_labb_2.model.TrendingBooks;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.sql.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(TrendingController.class)
+class TrendingControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private TrendingBooks trending;
+
+    @MockBean
+    private IBooksDb booksDb;
+
+    private static Book book(int id, String title) {
+        return new Book(id, "isbn-" + id, title, Date.valueOf("2020-01-01"), List.of(), List.of(), 4.0);
+    }
+
+    @Test
+    void trending_defaultsToFirstWindowAndSkipsDeletedBooks() throws Exception {
+        when(trending.windows()).thenReturn(List.of("1h", "1d"));
+        when(trending.top("1h", 10)).thenReturn(List.of(
+                new TrendingBooks.Entry(4, 7.5), new TrendingBooks.Entry(8, 2.0)));
+        when(booksDb.findBooksByIds(List.of(4, 8))).thenReturn(Map.of(4, book(4, "Dune")));
+
+        mockMvc.perform(get("/books/trending"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].book.title").value("Dune"))
+                .andExpect(jsonPath("$[0].score").value(7.5));
+    }
+
+    @Test
+    void trending_unknownWindow_returns400() throws Exception {
+        when(trending.top("2h", 10)).thenThrow(new IllegalArgumentException("window must be one of [1h, 1d]"));
+
+        mockMvc.perform(get("/books/trending").param("window", "2h"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(booksDb);
+    }
+}